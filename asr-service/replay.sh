@@ -0,0 +1,15 @@
+#!/bin/bash
+
+# 回放录制的会话，输出分阶段延迟报告并与基线对比（超出容差时退出码为 1）
+# 用法：./replay.sh --recordings <录制目录> [--speed 4] [--concurrency 8] [--baseline replay-baseline.json] [--write-baseline]
+# 路径相对 asr-service 目录。上游全部为确定性模拟（application-replay.yaml），不需要 API Key，也不访问网络。
+# 回放工具和模拟实现位于测试源码（src/test），以测试 classpath 运行。
+
+cd "$(dirname "$0")"
+
+if ! mvn -q test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/test-classpath.txt; then
+    echo "❌ 编译失败"
+    exit 1
+fi
+
+exec java -cp "target/test-classes:target/classes:$(cat target/test-classpath.txt)" com.example.asr.replay.ReplayHarness "$@"
@@ -0,0 +1,158 @@
+package com.example.asr.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 自适应并发限制（AIMD + Vegas 风格的延迟判断）
+ * - 请求成功且延迟不超过基线的 latencyTolerance 倍：并发上限加性增长（每个“窗口”约 +1）
+ * - 延迟超过基线的 latencyTolerance 倍：上限乘以 backoffRatio
+ * - 上游返回限流 / 配额错误：上限减半
+ * 达到上限时调用方最多排队 maxWaitMs，超时即被拒绝（削峰）。
+ */
+public class AdaptiveConcurrencyLimiter {
+    // 基线延迟向上漂移的速度，避免上游整体变慢后永远判定为拥塞
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+    private final double backoffRatio;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private long baselineLatencyNanos = -1;
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                                      double latencyTolerance, double backoffRatio) {
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTolerance = latencyTolerance;
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取一个并发名额
+     *
+     * @param maxWaitMs 达到上限时最多排队等待的时间
+     * @return 是否获取成功；返回 true 时调用方必须随后调用 onSuccess / onOverload / onIgnore 之一
+     */
+    public boolean acquire(long maxWaitMs) throws InterruptedException {
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return true;
+            }
+            waiting++;
+            try {
+                while (inFlight >= (int) limit) {
+                    if (remainingNanos <= 0) {
+                        return false;
+                    }
+                    remainingNanos = released.awaitNanos(remainingNanos);
+                }
+                inFlight++;
+                return true;
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 请求成功完成，用本次延迟调整上限
+     */
+    public void onSuccess(long latencyNanos) {
+        lock.lock();
+        try {
+            if (baselineLatencyNanos < 0 || latencyNanos < baselineLatencyNanos) {
+                baselineLatencyNanos = latencyNanos;
+            } else {
+                baselineLatencyNanos += (long) ((latencyNanos - baselineLatencyNanos) * BASELINE_DRIFT);
+            }
+
+            if (latencyNanos > baselineLatencyNanos * latencyTolerance) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if (inFlight * 2 >= limit) {
+                // 只有上限确实被用到一半以上时才增长，避免空闲时上限无限膨胀
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            release();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 上游返回限流 / 配额错误，上限减半
+     */
+    public void onOverload() {
+        lock.lock();
+        try {
+            limit = Math.max(minLimit, limit / 2);
+            release();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 请求以与负载无关的原因结束（如业务错误、长连接释放），不调整上限
+     */
+    public void onIgnore() {
+        lock.lock();
+        try {
+            release();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release() {
+        inFlight--;
+        released.signalAll();
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
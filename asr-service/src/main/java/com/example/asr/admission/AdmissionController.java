@@ -0,0 +1,286 @@
+package com.example.asr.admission;
+
+import com.example.asr.metrics.PipelineMetrics;
+import io.micrometer.core.instrument.Counter;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 上游调用的准入控制
+ * 每个上游（asr / llm / tts）一个自适应并发限制，每个租户一个并发配额；
+ * 两者都满足才放行，否则排队至多 max-queue-wait-ms 后抛出 OverloadException，由调用方向客户端发送 busy 消息。
+ * 租户名来自客户端，只有 admission.tenant-quotas 中配置的租户拥有独立配额，其余一律归入 default 租户共享配额，
+ * 客户端无法通过换用新的租户名绕过配额，配额表的大小也固定为配置的租户数加一。
+ * 长连接的 ASR 识别流另有固定的并发上限，见 {@link #acquireStream}。
+ */
+@Slf4j
+@Component
+public class AdmissionController {
+    public static final String PROVIDER_ASR = "asr";
+    public static final String PROVIDER_LLM = "llm";
+    public static final String PROVIDER_TTS = "tts";
+
+    public static final String DEFAULT_TENANT = "default";
+
+    @Value("${admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${admission.initial-limit:20}")
+    private int initialLimit;
+
+    @Value("${admission.min-limit:2}")
+    private int minLimit;
+
+    @Value("${admission.max-limit:200}")
+    private int maxLimit;
+
+    @Value("${admission.latency-tolerance:2.0}")
+    private double latencyTolerance;
+
+    @Value("${admission.backoff-ratio:0.9}")
+    private double backoffRatio;
+
+    @Value("${admission.max-queue-wait-ms:2000}")
+    private long maxQueueWaitMs;
+
+    @Value("${admission.tenant-default-quota:50}")
+    private int tenantDefaultQuota;
+
+    // 形如 "tenantA=10,tenantB=100"
+    @Value("${admission.tenant-quotas:}")
+    private String tenantQuotaConfig;
+
+    // 同时存在的 ASR 识别流上限（固定值，识别流的持续时间取决于用户说话时长，不参与自适应调整）
+    @Value("${admission.asr.max-streams:200}")
+    private int asrMaxStreams;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    private final Map<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+    // 只在 init 中按配置创建，之后只读
+    private final Map<String, Semaphore> tenantPermits = new ConcurrentHashMap<>();
+    private final Map<String, Integer> tenantQuotas = new ConcurrentHashMap<>();
+    private final Map<String, String> sessionTenants = new ConcurrentHashMap<>();
+    private final Map<String, Counter> rejectedCounters = new ConcurrentHashMap<>();
+    private Semaphore asrStreams;
+
+    @PostConstruct
+    public void init() {
+        for (String entry : tenantQuotaConfig.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length == 2) {
+                tenantQuotas.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+            }
+        }
+        tenantQuotas.putIfAbsent(DEFAULT_TENANT, tenantDefaultQuota);
+        tenantQuotas.forEach((tenant, quota) -> tenantPermits.put(tenant, new Semaphore(quota)));
+        for (String provider : new String[]{PROVIDER_ASR, PROVIDER_LLM, PROVIDER_TTS}) {
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(provider, initialLimit, minLimit,
+                maxLimit, latencyTolerance, backoffRatio);
+            limiters.put(provider, limiter);
+            metrics.gauge("voice.admission.limit", "上游当前的自适应并发上限",
+                limiter, AdaptiveConcurrencyLimiter::getLimit, "provider", provider);
+            metrics.gauge("voice.admission.in_flight", "上游正在进行的调用数",
+                limiter, AdaptiveConcurrencyLimiter::getInFlight, "provider", provider);
+            metrics.gauge("voice.admission.waiting", "等待准入的调用数",
+                limiter, AdaptiveConcurrencyLimiter::getWaiting, "provider", provider);
+        }
+        asrStreams = new Semaphore(asrMaxStreams);
+        metrics.gauge("voice.admission.streams", "正在进行的 ASR 识别流数",
+            asrStreams, streams -> asrMaxStreams - streams.availablePermits(), "provider", PROVIDER_ASR);
+        log.info("Admission control enabled: {}, initial limit: {}, asr max streams: {}, tenant quotas: {}",
+            enabled, initialLimit, asrMaxStreams, tenantQuotas);
+    }
+
+    /**
+     * 将客户端声明的租户映射为计费用的租户：已配置配额的租户保持不变，为空或未配置的归入 default
+     */
+    public String resolveTenant(String tenant) {
+        return tenant != null && tenantPermits.containsKey(tenant) ? tenant : DEFAULT_TENANT;
+    }
+
+    /**
+     * 会话建立时记录其所属租户（未配置的租户归入 default）
+     */
+    public void registerSession(String sessionId, String tenant) {
+        sessionTenants.put(sessionId, resolveTenant(tenant));
+    }
+
+    public void unregisterSession(String sessionId) {
+        sessionTenants.remove(sessionId);
+    }
+
+    /**
+     * 为一次上游调用申请准入
+     *
+     * @param provider 上游（见 PROVIDER_* 常量）
+     * @param sessionId 发起调用的会话，用于查找租户
+     * @return 调用结束时必须释放的许可
+     * @throws OverloadException 排队超时仍无法获得准入
+     */
+    public Permit acquire(String provider, String sessionId) {
+        return acquire(provider, sessionId, maxQueueWaitMs);
+    }
+
+    /**
+     * 为一次上游调用申请准入，指定最长排队时间（0 表示不排队）
+     */
+    public Permit acquire(String provider, String sessionId, long maxWaitMs) {
+        if (!enabled) {
+            return Permit.NOOP;
+        }
+        String tenant = sessionTenants.getOrDefault(sessionId, DEFAULT_TENANT);
+        Semaphore tenantSemaphore = tenantPermits.get(tenant);
+        AdaptiveConcurrencyLimiter limiter = limiters.get(provider);
+
+        try {
+            if (!tenantSemaphore.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+                throw reject(provider, tenant, OverloadException.REASON_TENANT);
+            }
+            boolean admitted = false;
+            try {
+                admitted = limiter.acquire(maxWaitMs);
+            } finally {
+                if (!admitted) {
+                    tenantSemaphore.release();
+                }
+            }
+            if (!admitted) {
+                throw reject(provider, tenant, OverloadException.REASON_PROVIDER);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject(provider, tenant, OverloadException.REASON_PROVIDER);
+        }
+        return new Permit(limiter, tenantSemaphore);
+    }
+
+    /**
+     * 为一条 ASR 识别流申请名额，流结束或连接关闭时 close
+     * 识别流从连接建立一直持续到说话结束，其时长不能作为上游延迟样本，因此不占用自适应并发和租户配额，
+     * 只受固定上限 admission.asr.max-streams 约束；建立识别流的那次调用仍需通过 {@link #acquire} 准入。
+     *
+     * @throws OverloadException 排队超时仍无法获得名额
+     */
+    public Permit acquireStream(String sessionId) {
+        if (!enabled) {
+            return Permit.NOOP;
+        }
+        try {
+            if (!asrStreams.tryAcquire(maxQueueWaitMs, TimeUnit.MILLISECONDS)) {
+                throw reject(PROVIDER_ASR, sessionTenants.getOrDefault(sessionId, DEFAULT_TENANT),
+                    OverloadException.REASON_STREAMS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject(PROVIDER_ASR, sessionTenants.getOrDefault(sessionId, DEFAULT_TENANT),
+                OverloadException.REASON_STREAMS);
+        }
+        return new Permit(null, asrStreams);
+    }
+
+    private OverloadException reject(String provider, String tenant, String reason) {
+        rejectedCounters.computeIfAbsent(provider + "/" + reason, k -> metrics.counter("voice.admission.rejected",
+            "因过载被拒绝的上游调用数", "provider", provider, "reason", reason)).increment();
+        log.warn("Admission rejected: provider={}, tenant={}, reason={}", provider, tenant, reason);
+        return new OverloadException(provider, reason);
+    }
+
+    /**
+     * 判断上游错误是否为限流 / 配额类错误
+     */
+    public static boolean isQuotaError(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            String message = t.getMessage();
+            if (message != null && (message.contains("RateQuota") || message.contains("Throttling")
+                || message.contains("429") || message.toLowerCase().contains("rate limit"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 一次上游调用（或一条识别流）的准入许可，只能释放一次
+     */
+    public static class Permit {
+        static final Permit NOOP = new Permit(null, null);
+
+        // 识别流的许可没有自适应限制，只归还固定名额
+        private final AdaptiveConcurrencyLimiter limiter;
+        private final Semaphore semaphore;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile long firstResponseNanos = -1;
+
+        Permit(AdaptiveConcurrencyLimiter limiter, Semaphore semaphore) {
+            this.limiter = limiter;
+            this.semaphore = semaphore;
+        }
+
+        /**
+         * 流式调用收到首个响应（首 token、首个音频帧）时调用，只记录第一次
+         * 流式调用的总耗时随回复长度增长，不能反映上游是否拥塞，记录后以首响应耗时作为延迟样本
+         */
+        public void firstResponse() {
+            if (firstResponseNanos < 0) {
+                firstResponseNanos = System.nanoTime() - startNanos;
+            }
+        }
+
+        /**
+         * 调用成功，以首响应耗时（未记录时为从获得许可到现在的耗时）作为延迟样本
+         */
+        public void success() {
+            if (release()) {
+                long latencyNanos = firstResponseNanos;
+                limiter.onSuccess(latencyNanos >= 0 ? latencyNanos : System.nanoTime() - startNanos);
+            }
+        }
+
+        /**
+         * 调用失败；限流 / 配额错误会降低并发上限，其他错误不影响上限
+         */
+        public void failure(Throwable error) {
+            if (release()) {
+                if (isQuotaError(error)) {
+                    limiter.onOverload();
+                } else {
+                    limiter.onIgnore();
+                }
+            }
+        }
+
+        /**
+         * 释放许可但不提供延迟样本（如调用被取消、识别流结束）
+         */
+        public void close() {
+            if (release()) {
+                limiter.onIgnore();
+            }
+        }
+
+        /**
+         * @return 是否由本次调用释放且需要向自适应限制反馈
+         */
+        private boolean release() {
+            if (!released.compareAndSet(false, true)) {
+                return false;
+            }
+            if (semaphore != null) {
+                semaphore.release();
+            }
+            return limiter != null;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.asr.admission;
+
+/**
+ * 准入控制拒绝请求：上游并发已达上限、租户配额已用尽、识别流数已达上限，或上游返回限流错误
+ */
+public class OverloadException extends RuntimeException {
+    public static final String REASON_PROVIDER = "provider";
+    public static final String REASON_TENANT = "tenant";
+    public static final String REASON_QUOTA = "quota";
+    public static final String REASON_STREAMS = "streams";
+
+    private final String provider;
+    private final String reason;
+
+    public OverloadException(String provider, String reason) {
+        super("Overloaded: provider=" + provider + ", reason=" + reason);
+        this.provider = provider;
+        this.reason = reason;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.asr.audio;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * 上行音频重新分帧 + 抖动缓冲
+ * 客户端每次发送的字节数不固定（如浏览器每 250ms 一个 4096 样本的缓冲），这里按固定帧长重新切分，
+ * 完整的帧先进入队列，由定时器按帧长节奏逐帧发出；队列超过 maxQueued 帧时立即发出多余的帧，
+ * 抖动缓冲带来的延迟不超过 maxQueued 个帧长。maxQueued 为 0 时凑满一帧即发出。
+ */
+public final class FrameRechunker {
+    private final int frameBytes;
+    private final int maxQueued;
+
+    // 以下字段由 this 保护，sink 也在锁内调用，保证帧的发送顺序
+    private final ArrayDeque<byte[]> ready = new ArrayDeque<>();
+    private byte[] current;
+    private int filled;
+
+    /**
+     * @param frameBytes 帧长（字节），应为样本大小的整数倍
+     */
+    public FrameRechunker(int frameBytes, int maxQueued) {
+        this.frameBytes = frameBytes;
+        this.maxQueued = maxQueued;
+        this.current = new byte[frameBytes];
+    }
+
+    /**
+     * 追加客户端发来的音频
+     */
+    public synchronized void offer(byte[] data, Consumer<byte[]> sink) {
+        int offset = 0;
+        while (offset < data.length) {
+            int n = Math.min(frameBytes - filled, data.length - offset);
+            System.arraycopy(data, offset, current, filled, n);
+            filled += n;
+            offset += n;
+            if (filled == frameBytes) {
+                ready.addLast(current);
+                current = new byte[frameBytes];
+                filled = 0;
+            }
+        }
+        while (ready.size() > maxQueued) {
+            sink.accept(ready.pollFirst());
+        }
+    }
+
+    /**
+     * 定时器每个帧长调用一次，发出队首的一帧
+     */
+    public synchronized void tick(Consumer<byte[]> sink) {
+        byte[] frame = ready.pollFirst();
+        if (frame != null) {
+            sink.accept(frame);
+        }
+    }
+
+    /**
+     * 说话结束：立即发出队列中的帧和不足一帧的剩余数据
+     */
+    public synchronized void flush(Consumer<byte[]> sink) {
+        while (!ready.isEmpty()) {
+            sink.accept(ready.pollFirst());
+        }
+        if (filled > 0) {
+            sink.accept(Arrays.copyOf(current, filled));
+            filled = 0;
+        }
+    }
+
+    public synchronized int getBufferedBytes() {
+        return ready.size() * frameBytes + filled;
+    }
+}
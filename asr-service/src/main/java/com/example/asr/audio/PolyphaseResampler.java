@@ -0,0 +1,105 @@
+package com.example.asr.audio;
+
+/**
+ * 流式多相重采样器（有理数比例 L/M）
+ * 原型低通滤波器为 Blackman 窗 sinc，按相位拆成 L 组、每组 taps 个系数；每个输出样本只计算一组系数的点积，
+ * 不需要真正插零上采样。跨调用保留最后 taps - 1 个输入样本和相位，分块输入的结果与整段输入一致。
+ * 工作缓冲区只在输入块变大时扩容，稳定运行后不再分配内存。非线程安全，每个会话一个实例。
+ */
+public final class PolyphaseResampler {
+    private final int up;
+    private final int down;
+    private final int taps;
+    // coefficients[phase * taps + j]
+    private final float[] coefficients;
+
+    // 上一次调用留下的 taps - 1 个输入样本 + 本次输入
+    private float[] work;
+    private int history;
+    // 下一个输出样本对应的输入位置（相对 work 起点）和相位
+    private int position;
+    private int phase;
+
+    /**
+     * @param tapsPerPhase 上采样时每个相位的系数个数，越大过渡带越窄，计算量线性增加；
+     *                     降采样时截止频率按输出采样率计算，系数个数按降采样倍数放大，保持相同的过渡带宽度
+     */
+    public PolyphaseResampler(int inputRate, int outputRate, int tapsPerPhase) {
+        int gcd = gcd(inputRate, outputRate);
+        this.up = outputRate / gcd;
+        this.down = inputRate / gcd;
+        this.taps = tapsPerPhase * Math.max(1, (down + up - 1) / up);
+        this.coefficients = design(up, down, taps);
+        this.work = new float[4096];
+        this.history = taps - 1;
+        this.position = taps - 1;
+    }
+
+    /**
+     * 本次输入 inputLength 个样本时最多产生的输出样本数，用于预先分配输出缓冲
+     */
+    public int maxOutput(int inputLength) {
+        return (int) (((long) inputLength + 1) * up / down) + 1;
+    }
+
+    /**
+     * @return 写入 output 的样本数
+     */
+    public int process(float[] input, int inputLength, float[] output) {
+        int length = history + inputLength;
+        if (work.length < length) {
+            float[] grown = new float[Math.max(length, work.length * 2)];
+            System.arraycopy(work, 0, grown, 0, history);
+            work = grown;
+        }
+        System.arraycopy(input, 0, work, history, inputLength);
+
+        int produced = 0;
+        int pos = position;
+        int ph = phase;
+        float[] x = work;
+        float[] h = coefficients;
+        while (pos < length) {
+            int base = ph * taps;
+            float sum = 0;
+            for (int j = 0; j < taps; j++) {
+                sum += h[base + j] * x[pos - j];
+            }
+            output[produced++] = sum;
+            ph += down;
+            while (ph >= up) {
+                ph -= up;
+                pos++;
+            }
+        }
+
+        // 保留最后 taps - 1 个样本作为下一块的历史
+        int keep = taps - 1;
+        System.arraycopy(x, length - keep, x, 0, keep);
+        history = keep;
+        position = pos - (length - keep);
+        phase = ph;
+        return produced;
+    }
+
+    private static float[] design(int up, int down, int tapsPerPhase) {
+        int length = up * tapsPerPhase;
+        // 截止频率按上采样后的采样率归一化，取输入、输出奈奎斯特频率中较小者并留 10% 过渡带
+        double cutoff = 0.5 / Math.max(up, down) * 0.9;
+        double center = (length - 1) / 2.0;
+        float[] result = new float[length];
+        for (int n = 0; n < length; n++) {
+            double t = n - center;
+            double sinc = t == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * t) / (Math.PI * t);
+            double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * n / (length - 1))
+                + 0.08 * Math.cos(4 * Math.PI * n / (length - 1));
+            // 插零上采样损失的增益由系数乘以 up 补回；第 n 个系数属于相位 n % up 的第 n / up 个抽头
+            result[(n % up) * tapsPerPhase + n / up] = (float) (sinc * window * up);
+        }
+        return result;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+}
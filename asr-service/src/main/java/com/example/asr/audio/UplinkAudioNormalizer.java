@@ -0,0 +1,131 @@
+package com.example.asr.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 上行音频格式归一化：把客户端声明的格式（采样率 / 声道数 / 样本格式）转换为 ASR 需要的单声道 16bit PCM
+ * 处理顺序：解码为 float（s16le / f32le）→ 多声道取平均 → 多相重采样 → 量化为 16bit 小端。
+ * 中间缓冲区按会话复用，每帧只分配输出数组。非线程安全，每个会话一个实例。
+ */
+public final class UplinkAudioNormalizer {
+    public static final String FORMAT_S16LE = "s16le";
+    public static final String FORMAT_F32LE = "f32le";
+
+    static final int RESAMPLER_TAPS = 24;
+
+    private final int sampleRate;
+    private final int channels;
+    private final boolean float32;
+    private final PolyphaseResampler resampler;
+
+    private float[] mono = new float[4096];
+    private float[] resampled = new float[4096];
+
+    private UplinkAudioNormalizer(int sampleRate, int channels, boolean float32, int targetRate) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.float32 = float32;
+        this.resampler = sampleRate == targetRate ? null : new PolyphaseResampler(sampleRate, targetRate, RESAMPLER_TAPS);
+    }
+
+    /**
+     * @param sampleFormat s16le 或 f32le
+     * @return 已经是目标格式时返回 null，调用方直接透传
+     * @throws IllegalArgumentException 参数不受支持
+     */
+    public static UplinkAudioNormalizer create(int sampleRate, int channels, String sampleFormat, int targetRate) {
+        if (sampleRate < 8000 || sampleRate > 192000) {
+            throw new IllegalArgumentException("unsupported sample rate: " + sampleRate);
+        }
+        if (channels < 1 || channels > 8) {
+            throw new IllegalArgumentException("unsupported channel count: " + channels);
+        }
+        boolean float32;
+        if (FORMAT_S16LE.equals(sampleFormat)) {
+            float32 = false;
+        } else if (FORMAT_F32LE.equals(sampleFormat)) {
+            float32 = true;
+        } else {
+            throw new IllegalArgumentException("unsupported sample format: " + sampleFormat);
+        }
+        if (sampleRate == targetRate && channels == 1 && !float32) {
+            return null;
+        }
+        return new UplinkAudioNormalizer(sampleRate, channels, float32, targetRate);
+    }
+
+    /**
+     * 转换一帧音频，不足一个完整样本帧（所有声道）的尾部字节被丢弃
+     *
+     * @return 单声道 16bit 小端 PCM
+     */
+    public byte[] process(ByteBuffer input) {
+        ByteBuffer in = input.slice().order(ByteOrder.LITTLE_ENDIAN);
+        int bytesPerFrame = channels * (float32 ? 4 : 2);
+        int frames = in.remaining() / bytesPerFrame;
+        if (mono.length < frames) {
+            mono = new float[Math.max(frames, mono.length * 2)];
+        }
+        decode(in, frames);
+
+        float[] samples = mono;
+        int count = frames;
+        if (resampler != null) {
+            int capacity = resampler.maxOutput(frames);
+            if (resampled.length < capacity) {
+                resampled = new float[Math.max(capacity, resampled.length * 2)];
+            }
+            count = resampler.process(mono, frames, resampled);
+            samples = resampled;
+        }
+        return encode(samples, count);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public String getSampleFormat() {
+        return float32 ? FORMAT_F32LE : FORMAT_S16LE;
+    }
+
+    // 解码并把多声道平均为单声道
+    private void decode(ByteBuffer in, int frames) {
+        float[] out = mono;
+        float scale = 1f / channels;
+        int offset = 0;
+        if (float32) {
+            for (int i = 0; i < frames; i++) {
+                float sum = 0;
+                for (int c = 0; c < channels; c++, offset += 4) {
+                    sum += in.getFloat(offset);
+                }
+                out[i] = sum * scale;
+            }
+        } else {
+            for (int i = 0; i < frames; i++) {
+                float sum = 0;
+                for (int c = 0; c < channels; c++, offset += 2) {
+                    sum += in.getShort(offset) * (1f / 32768f);
+                }
+                out[i] = sum * scale;
+            }
+        }
+    }
+
+    private static byte[] encode(float[] samples, int count) {
+        byte[] out = new byte[count * 2];
+        for (int i = 0, o = 0; i < count; i++) {
+            float clamped = Math.max(-1f, Math.min(1f, samples[i]));
+            int value = Math.round(clamped * 32767f);
+            out[o++] = (byte) value;
+            out[o++] = (byte) (value >> 8);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.asr.config;
+
+import com.example.asr.model.TtsAudioFormat;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * /ws/asr 握手前按配置改写客户端的 Sec-WebSocket-Extensions，决定连接是否使用 permessage-deflate
+ * Tomcat 不经过 Spring 的扩展筛选：只要客户端请求了 permessage-deflate，容器就会按请求头直接协商，
+ * 因此只能在升级之前改写请求头。容器在协商了压缩的连接上会压缩每一个数据帧，无法按帧跳过，因此按连接选择：
+ * auto 模式下只有下行音频为 PCM 的连接才保留压缩请求，MP3 / Opus 音频本身已经压缩，再压缩只会浪费 CPU；
+ * 客户端可以用查询参数 compress=1 / compress=0 覆盖。保留压缩时按配置追加上下文接管参数，容器会在响应中确认。
+ */
+public class CompressionNegotiationFilter extends OncePerRequestFilter {
+    private static final Logger log = LoggerFactory.getLogger(CompressionNegotiationFilter.class);
+
+    public static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+    public static final String MODE_OFF = "off";
+    public static final String MODE_AUTO = "auto";
+    public static final String MODE_ALWAYS = "always";
+
+    static final String EXTENSIONS_HEADER = "Sec-WebSocket-Extensions";
+    private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+    private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+
+    private final String mode;
+    private final String defaultTtsFormat;
+    private final boolean serverNoContextTakeover;
+    private final boolean clientNoContextTakeover;
+
+    /**
+     * @param serverNoContextTakeover 服务端每条消息重置压缩字典：压缩率下降，但每个连接不再常驻约 256KB 的压缩状态
+     * @param clientNoContextTakeover 要求客户端每条消息重置压缩字典，降低服务端解压状态的内存
+     */
+    public CompressionNegotiationFilter(String mode, String defaultTtsFormat,
+                                        boolean serverNoContextTakeover, boolean clientNoContextTakeover) {
+        this.mode = mode;
+        this.defaultTtsFormat = defaultTtsFormat;
+        this.serverNoContextTakeover = serverNoContextTakeover;
+        this.clientNoContextTakeover = clientNoContextTakeover;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+        throws ServletException, IOException {
+        if (request.getHeader(EXTENSIONS_HEADER) == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        List<String> offers = rewriteOffers(Collections.list(request.getHeaders(EXTENSIONS_HEADER)), shouldCompress(request));
+        chain.doFilter(new ExtensionsRequestWrapper(request, offers), response);
+    }
+
+    boolean shouldCompress(HttpServletRequest request) {
+        if (MODE_OFF.equals(mode)) {
+            return false;
+        }
+        String requested = request.getParameter("compress");
+        if ("0".equals(requested) || "1".equals(requested)) {
+            return "1".equals(requested);
+        }
+        if (MODE_ALWAYS.equals(mode)) {
+            return true;
+        }
+        String formatKey = request.getParameter("tts_format");
+        TtsAudioFormat format = TtsAudioFormat.fromKey(formatKey != null ? formatKey : defaultTtsFormat);
+        boolean compressible = format != null && "pcm".equals(format.getCodec());
+        log.debug("permessage-deflate {} for tts format {}", compressible ? "kept" : "dropped", formatKey);
+        return compressible;
+    }
+
+    /**
+     * 逐个处理客户端的扩展请求（逗号分隔，参数以分号分隔）：不压缩时去掉 permessage-deflate，
+     * 压缩时补上配置的上下文接管参数（已请求的参数不重复添加，重复参数会导致协商失败）
+     */
+    List<String> rewriteOffers(List<String> headerValues, boolean compress) {
+        List<String> offers = new ArrayList<>();
+        for (String value : headerValues) {
+            for (String offer : value.split(",")) {
+                String trimmed = offer.trim();
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+                String[] parts = trimmed.split(";");
+                if (!PERMESSAGE_DEFLATE.equalsIgnoreCase(parts[0].trim())) {
+                    offers.add(trimmed);
+                } else if (compress) {
+                    offers.add(tune(trimmed, parts));
+                }
+            }
+        }
+        return offers;
+    }
+
+    private String tune(String offer, String[] parts) {
+        boolean hasServer = false;
+        boolean hasClient = false;
+        for (int i = 1; i < parts.length; i++) {
+            String name = parts[i].split("=", 2)[0].trim().toLowerCase(Locale.ROOT);
+            hasServer |= SERVER_NO_CONTEXT_TAKEOVER.equals(name);
+            hasClient |= CLIENT_NO_CONTEXT_TAKEOVER.equals(name);
+        }
+        StringBuilder tuned = new StringBuilder(offer);
+        if (serverNoContextTakeover && !hasServer) {
+            tuned.append("; ").append(SERVER_NO_CONTEXT_TAKEOVER);
+        }
+        if (clientNoContextTakeover && !hasClient) {
+            tuned.append("; ").append(CLIENT_NO_CONTEXT_TAKEOVER);
+        }
+        return tuned.toString();
+    }
+
+    /**
+     * 用改写后的扩展请求替换原请求头，全部去掉时请求头不存在
+     */
+    private static final class ExtensionsRequestWrapper extends HttpServletRequestWrapper {
+        private final List<String> offers;
+
+        ExtensionsRequestWrapper(HttpServletRequest request, List<String> offers) {
+            super(request);
+            this.offers = offers;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if (EXTENSIONS_HEADER.equalsIgnoreCase(name)) {
+                return offers.isEmpty() ? null : String.join(", ", offers);
+            }
+            return super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            if (EXTENSIONS_HEADER.equalsIgnoreCase(name)) {
+                return Collections.enumeration(offers);
+            }
+            return super.getHeaders(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            List<String> names = new ArrayList<>();
+            for (String name : Collections.list(super.getHeaderNames())) {
+                if (!EXTENSIONS_HEADER.equalsIgnoreCase(name) || !offers.isEmpty()) {
+                    names.add(name);
+                }
+            }
+            return Collections.enumeration(names);
+        }
+    }
+}
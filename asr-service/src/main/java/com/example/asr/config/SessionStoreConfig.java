@@ -0,0 +1,42 @@
+package com.example.asr.config;
+
+import com.example.asr.session.FileSessionStateStore;
+import com.example.asr.session.InMemorySessionStateStore;
+import com.example.asr.session.SessionStateStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+/**
+ * 会话状态存储配置
+ * session.store.type 可选：
+ * - memory：进程内存储（默认），只能在同一节点上恢复
+ * - file：存放在 session.store.dir 下的 JSON 文件，多个节点共享该目录即可跨节点恢复
+ */
+@Slf4j
+@Configuration
+public class SessionStoreConfig {
+
+    @Value("${session.store.type:memory}")
+    private String type;
+
+    @Value("${session.store.dir:./data/sessions}")
+    private String directory;
+
+    @Bean
+    public SessionStateStore sessionStateStore() {
+        switch (type) {
+            case "memory":
+                log.info("Session store: memory");
+                return new InMemorySessionStateStore();
+            case "file":
+                log.info("Session store: file ({})", directory);
+                return new FileSessionStateStore(Paths.get(directory));
+            default:
+                throw new IllegalArgumentException("Unsupported session.store.type: " + type);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.asr.config;
+
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内尾部采样
+ * 按 trace（即一个 WebSocket 会话）缓存已结束的 Span，直到根 Span 结束时再决定是否整体导出：
+ * 出现错误、根 Span 耗时超过阈值，或命中按 traceId 的采样比例时导出，否则丢弃。
+ * 缓存的 trace 数和每个 trace 的 Span 数都有上限，超限部分直接丢弃。
+ */
+public class TailSamplingSpanProcessor implements SpanProcessor {
+    private final SpanProcessor delegate;
+    private final double ratio;
+    private final long latencyThresholdNanos;
+    private final int maxTraces;
+    private final int maxSpansPerTrace;
+
+    private final Map<String, TraceBuffer> buffers = new ConcurrentHashMap<>();
+
+    public TailSamplingSpanProcessor(SpanProcessor delegate, double ratio, long latencyThresholdMs,
+                                     int maxTraces, int maxSpansPerTrace) {
+        this.delegate = delegate;
+        this.ratio = ratio;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs);
+        this.maxTraces = maxTraces;
+        this.maxSpansPerTrace = maxSpansPerTrace;
+    }
+
+    @Override
+    public void onStart(Context parentContext, ReadWriteSpan span) {
+    }
+
+    @Override
+    public boolean isStartRequired() {
+        return false;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+        String traceId = span.getSpanContext().getTraceId();
+        SpanContext parent = span.getParentSpanContext();
+        boolean root = !parent.isValid() || parent.isRemote();
+
+        TraceBuffer buffer = root ? buffers.remove(traceId) : buffers.get(traceId);
+        if (buffer == null && !root) {
+            if (buffers.size() >= maxTraces) {
+                return;
+            }
+            buffer = buffers.computeIfAbsent(traceId, k -> new TraceBuffer());
+        }
+
+        if (!root) {
+            buffer.add(span, isError(span), maxSpansPerTrace);
+            return;
+        }
+
+        boolean keep = isError(span)
+            || (buffer != null && buffer.hasError)
+            || span.getLatencyNanos() >= latencyThresholdNanos
+            || sampledByRatio(traceId);
+        if (!keep) {
+            return;
+        }
+        if (buffer != null) {
+            for (ReadableSpan buffered : buffer.drain()) {
+                delegate.onEnd(buffered);
+            }
+        }
+        delegate.onEnd(span);
+    }
+
+    @Override
+    public boolean isEndRequired() {
+        return true;
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        buffers.clear();
+        return delegate.shutdown();
+    }
+
+    @Override
+    public CompletableResultCode forceFlush() {
+        return delegate.forceFlush();
+    }
+
+    private static boolean isError(ReadableSpan span) {
+        return span.toSpanData().getStatus().getStatusCode() == StatusCode.ERROR;
+    }
+
+    // traceId 的低 64 位本身是随机的，直接用来做确定性的比例采样
+    private boolean sampledByRatio(String traceId) {
+        long low = Long.parseUnsignedLong(traceId.substring(16), 16);
+        return Math.abs(low % 10_000) < ratio * 10_000;
+    }
+
+    private static final class TraceBuffer {
+        private final List<ReadableSpan> spans = new ArrayList<>();
+        private volatile boolean hasError;
+
+        synchronized void add(ReadableSpan span, boolean error, int maxSpans) {
+            if (error) {
+                hasError = true;
+            }
+            if (spans.size() < maxSpans) {
+                spans.add(span);
+            }
+        }
+
+        synchronized List<ReadableSpan> drain() {
+            return new ArrayList<>(spans);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.asr.config;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.exporter.logging.LoggingSpanExporter;
+import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Tracing 配置
+ * tracing.mode 可选：
+ * - agent：使用 Java Agent 注册的全局 OpenTelemetry（默认，与之前的行为一致）
+ * - off：不产生任何 Span
+ * - full：全量采样
+ * - sampled：按会话头部采样，连接 Span 命中比例后其所有子 Span 一起保留
+ * - tail：全量记录，会话结束时只导出出错、耗时超阈值或命中比例的会话
+ * 非 agent 模式下 Span 统一经过有界队列的 BatchSpanProcessor 异步导出。
+ */
+@Slf4j
+@Configuration
+public class TracingConfig {
+    private static final String INSTRUMENTATION_NAME = "asr-service";
+    private static final String INSTRUMENTATION_VERSION = "1.0.0";
+
+    @Value("${tracing.mode:agent}")
+    private String mode;
+
+    @Value("${tracing.sample-ratio:0.1}")
+    private double sampleRatio;
+
+    @Value("${tracing.exporter:logging}")
+    private String exporter;
+
+    @Value("${tracing.otlp.endpoint:http://localhost:4317}")
+    private String otlpEndpoint;
+
+    @Value("${tracing.batch.max-queue-size:2048}")
+    private int maxQueueSize;
+
+    @Value("${tracing.batch.max-export-batch-size:512}")
+    private int maxExportBatchSize;
+
+    @Value("${tracing.batch.schedule-delay-ms:5000}")
+    private long scheduleDelayMs;
+
+    @Value("${tracing.tail.latency-threshold-ms:10000}")
+    private long tailLatencyThresholdMs;
+
+    @Value("${tracing.tail.max-traces:1000}")
+    private int tailMaxTraces;
+
+    @Value("${tracing.tail.max-spans-per-trace:256}")
+    private int tailMaxSpansPerTrace;
+
+    @Bean
+    public OpenTelemetry openTelemetry() {
+        switch (mode) {
+            case "agent":
+                log.info("Tracing mode: agent");
+                return GlobalOpenTelemetry.get();
+            case "off":
+                log.info("Tracing mode: off");
+                return OpenTelemetry.noop();
+            case "full":
+            case "sampled":
+            case "tail":
+                return buildSdk();
+            default:
+                throw new IllegalArgumentException("Unsupported tracing.mode: " + mode);
+        }
+    }
+
+    @Bean
+    public Tracer tracer(OpenTelemetry openTelemetry) {
+        return openTelemetry.getTracer(INSTRUMENTATION_NAME, INSTRUMENTATION_VERSION);
+    }
+
+    private OpenTelemetry buildSdk() {
+        SpanProcessor processor = BatchSpanProcessor.builder(createExporter())
+            .setMaxQueueSize(maxQueueSize)
+            .setMaxExportBatchSize(maxExportBatchSize)
+            .setScheduleDelay(Duration.ofMillis(scheduleDelayMs))
+            .build();
+
+        Sampler sampler = Sampler.alwaysOn();
+        if ("sampled".equals(mode)) {
+            sampler = Sampler.parentBased(Sampler.traceIdRatioBased(sampleRatio));
+        } else if ("tail".equals(mode)) {
+            processor = new TailSamplingSpanProcessor(processor, sampleRatio, tailLatencyThresholdMs,
+                tailMaxTraces, tailMaxSpansPerTrace);
+        }
+
+        SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
+            .setSampler(sampler)
+            .addSpanProcessor(processor)
+            .build();
+        OpenTelemetrySdk sdk = OpenTelemetrySdk.builder()
+            .setTracerProvider(tracerProvider)
+            .setPropagators(ContextPropagators.create(W3CTraceContextPropagator.getInstance()))
+            .build();
+        Runtime.getRuntime().addShutdownHook(new Thread(tracerProvider::close));
+
+        log.info("Tracing mode: {}, exporter: {}, sample ratio: {}, max queue size: {}",
+            mode, exporter, sampleRatio, maxQueueSize);
+        return sdk;
+    }
+
+    private SpanExporter createExporter() {
+        if ("otlp".equals(exporter)) {
+            return OtlpGrpcSpanExporter.builder()
+                .setEndpoint(otlpEndpoint)
+                .build();
+        }
+        return LoggingSpanExporter.create();
+    }
+}
@@ -1,6 +1,8 @@
 package com.example.asr.config;
 
 import com.example.asr.ws.AsrWebSocketHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
@@ -11,14 +13,38 @@ import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
 
+    // permessage-deflate：off / auto（仅 PCM 音频的连接）/ always
+    @Value("${ws.compression.mode:auto}")
+    private String compressionMode;
+
+    @Value("${ws.compression.server-no-context-takeover:false}")
+    private boolean serverNoContextTakeover;
+
+    @Value("${ws.compression.client-no-context-takeover:true}")
+    private boolean clientNoContextTakeover;
+
+    @Value("${dashscope.tts.format:mp3}")
+    private String defaultTtsFormat;
+
     @Bean
     public AsrWebSocketHandler asrWebSocketHandler() {
         return new AsrWebSocketHandler();
     }
 
+    // 在升级之前改写 Sec-WebSocket-Extensions，容器按改写后的请求头协商压缩
+    @Bean
+    public FilterRegistrationBean<CompressionNegotiationFilter> compressionNegotiationFilter() {
+        FilterRegistrationBean<CompressionNegotiationFilter> registration = new FilterRegistrationBean<>(
+            new CompressionNegotiationFilter(compressionMode, defaultTtsFormat,
+                serverNoContextTakeover, clientNoContextTakeover));
+        registration.addUrlPatterns("/ws/asr");
+        return registration;
+    }
+
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-        registry.addHandler(asrWebSocketHandler(), "/ws/asr").setAllowedOrigins("*");
+        registry.addHandler(asrWebSocketHandler(), "/ws/asr")
+            .setAllowedOrigins("*");
     }
 }
 
@@ -16,6 +16,7 @@ public class StatusController {
         response.put("status", "running");
         response.put("version", "0.1.0");
         response.put("websocket_endpoint", "ws://localhost:8080/ws/asr");
+        response.put("metrics_endpoint", "http://localhost:8080/actuator/prometheus");
         response.put("description", "Connect to /ws/asr for real-time audio streaming");
         return response;
     }
@@ -0,0 +1,84 @@
+package com.example.asr.logging;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 音频 / TTS 热路径日志
+ * 逐帧、逐 chunk 的日志改为按会话累加计数，每隔 summary-interval-ms 输出一次汇总，会话结束时再输出最终汇总；
+ * 仍需逐条输出的日志通过 SessionLogStats.tryLog() 按会话限流。
+ */
+@Slf4j
+@Component
+public class HotPathLogger {
+    @Value("${hot-path-log.summary-interval-ms:5000}")
+    private long summaryIntervalMs;
+
+    @Value("${hot-path-log.max-lines-per-second:5}")
+    private int maxLinesPerSecond;
+
+    private final Map<String, SessionLogStats> sessions = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService summaryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "hot-path-log-summary");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void startSummaries() {
+        summaryScheduler.scheduleAtFixedRate(this::logSummaries, summaryIntervalMs, summaryIntervalMs,
+            TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        summaryScheduler.shutdownNow();
+    }
+
+    /**
+     * 会话建立时注册
+     */
+    public SessionLogStats open(String sessionId) {
+        return sessions.computeIfAbsent(sessionId, id -> new SessionLogStats(id, maxLinesPerSecond));
+    }
+
+    /**
+     * 获取会话的日志状态；会话已关闭时返回一个不参与汇总的临时实例，调用方无需判空
+     */
+    public SessionLogStats stats(String sessionId) {
+        SessionLogStats stats = sessions.get(sessionId);
+        return stats != null ? stats : new SessionLogStats(sessionId, maxLinesPerSecond);
+    }
+
+    /**
+     * 会话关闭时输出最终汇总并移除
+     */
+    public void close(String sessionId) {
+        SessionLogStats stats = sessions.remove(sessionId);
+        if (stats != null) {
+            log.info("Session {} hot path totals: {}", sessionId, stats.summary());
+        }
+    }
+
+    private void logSummaries() {
+        try {
+            for (SessionLogStats stats : sessions.values()) {
+                if (stats.hasNewActivity()) {
+                    log.info("Session {} hot path summary: {}", stats.getSessionId(), stats.summary());
+                }
+            }
+        } catch (Exception e) {
+            log.error("Failed to log hot path summaries", e);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.asr.logging;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个会话的热路径日志状态
+ * 热路径上只累加计数器，由 HotPathLogger 定期输出汇总；逐条日志需先通过 tryLog() 的限流
+ */
+public final class SessionLogStats {
+    private final String sessionId;
+    private final int maxLinesPerSecond;
+
+    private final LongAdder audioFrames = new LongAdder();
+    private final LongAdder audioBytes = new LongAdder();
+    private final LongAdder ttsChunks = new LongAdder();
+    private final LongAdder ttsBytes = new LongAdder();
+    private final LongAdder llmChunks = new LongAdder();
+    private final LongAdder suppressedLines = new LongAdder();
+
+    // 限流窗口（按秒）及窗口内已输出的行数
+    private final AtomicLong windowSecond = new AtomicLong();
+    private final AtomicInteger windowLines = new AtomicInteger();
+
+    // 上一次汇总时的快照，用于判断是否有新活动
+    private long lastSummaryActivity;
+
+    SessionLogStats(String sessionId, int maxLinesPerSecond) {
+        this.sessionId = sessionId;
+        this.maxLinesPerSecond = maxLinesPerSecond;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void recordAudioFrame(int bytes) {
+        audioFrames.increment();
+        audioBytes.add(bytes);
+    }
+
+    public void recordTtsChunk(int bytes) {
+        ttsChunks.increment();
+        ttsBytes.add(bytes);
+    }
+
+    public void recordLlmChunk() {
+        llmChunks.increment();
+    }
+
+    /**
+     * 每个会话每秒最多放行 maxLinesPerSecond 条逐条日志，其余只计数，在汇总中体现
+     *
+     * @return 是否允许输出本条日志
+     */
+    public boolean tryLog() {
+        long second = System.nanoTime() / 1_000_000_000L;
+        long current = windowSecond.get();
+        if (current != second && windowSecond.compareAndSet(current, second)) {
+            windowLines.set(0);
+        }
+        if (windowLines.incrementAndGet() <= maxLinesPerSecond) {
+            return true;
+        }
+        suppressedLines.increment();
+        return false;
+    }
+
+    /**
+     * 自上次汇总后是否有新的活动，由汇总线程调用
+     */
+    boolean hasNewActivity() {
+        long activity = audioFrames.sum() + ttsChunks.sum() + llmChunks.sum();
+        if (activity == lastSummaryActivity) {
+            return false;
+        }
+        lastSummaryActivity = activity;
+        return true;
+    }
+
+    String summary() {
+        return String.format("audioFrames=%d, audioBytes=%d, ttsChunks=%d, ttsBytes=%d, llmChunks=%d, suppressedLines=%d",
+            audioFrames.sum(), audioBytes.sum(), ttsChunks.sum(), ttsBytes.sum(), llmChunks.sum(), suppressedLines.sum());
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.asr.metrics;
+
+import com.example.asr.ws.WebSocketPerformanceMeasure;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 语音链路聚合指标
+ * 将 WebSocketPerformanceMeasure 的单次测量结果按阶段（asr / tts / websocket.write / llm）
+ * 汇总为带分位数的直方图，通过 /actuator/prometheus 暴露
+ */
+@Component
+public class PipelineMetrics {
+    public static final String STAGE_ASR = "asr";
+    public static final String STAGE_TTS = "tts";
+    public static final String STAGE_WRITE = "websocket.write";
+    public static final String STAGE_LLM = "llm";
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    @Autowired
+    private MeterRegistry registry;
+
+    // 每个阶段的 Meter 只构建一次，避免在热路径上重复查找注册表
+    private final Map<String, StageMeters> stageMeters = new ConcurrentHashMap<>();
+    private final Map<String, LlmMeters> llmMeters = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一次阶段测量结果
+     *
+     * @param stage 阶段名称（见 STAGE_* 常量）
+     * @param measure 已完成的测量
+     */
+    public void recordStage(String stage, WebSocketPerformanceMeasure measure) {
+        if (measure == null) {
+            return;
+        }
+        StageMeters meters = stageMeters.computeIfAbsent(stage, this::createStageMeters);
+
+        long timeToFirstChunk = measure.getTimeToFirstChunkNanos();
+        if (timeToFirstChunk >= 0) {
+            meters.timeToFirstChunk.record(timeToFirstChunk, TimeUnit.NANOSECONDS);
+        }
+        long avgInterval = measure.getAverageIntervalNanos();
+        if (avgInterval >= 0) {
+            meters.chunkInterval.record(avgInterval, TimeUnit.NANOSECONDS);
+        }
+        meters.chunkCount.record(measure.getChunkCount());
+    }
+
+    /**
+     * 记录一次 LLM 流式生成
+     * 首 token 耗时按请求时携带的上下文消息数分档打标签，便于观察历史变长对延迟的影响
+     *
+     * @param timeToFirstTokenNanos 请求发出到第一个 token 的耗时，未收到 token 时为 -1
+     * @param tokensPerSecond 首 token 之后的输出速率，无法计算时为 -1
+     * @param promptTokens 输入 token 数（来自 usage），未知时为 -1
+     * @param completionTokens 输出 token 数（来自 usage），未知时为 -1
+     * @param contextMessages 请求时携带的历史消息数
+     */
+    public void recordLlmGeneration(long timeToFirstTokenNanos, double tokensPerSecond,
+                                    long promptTokens, long completionTokens, int contextMessages) {
+        LlmMeters meters = llmMeters.computeIfAbsent(contextBucket(contextMessages), this::createLlmMeters);
+        if (timeToFirstTokenNanos >= 0) {
+            meters.timeToFirstToken.record(timeToFirstTokenNanos, TimeUnit.NANOSECONDS);
+        }
+        if (tokensPerSecond >= 0) {
+            meters.tokensPerSecond.record(tokensPerSecond);
+        }
+        if (promptTokens >= 0) {
+            meters.promptTokens.record(promptTokens);
+        }
+        if (completionTokens >= 0) {
+            meters.completionTokens.record(completionTokens);
+        }
+        meters.contextMessages.record(contextMessages);
+    }
+
+    /**
+     * 注册一个由调用方持有状态的 Gauge（如活跃会话数、队列深度）
+     */
+    public <T> void gauge(String name, String description, T stateObject, ToDoubleFunction<T> valueFunction) {
+        gauge(name, description, stateObject, valueFunction, new String[0]);
+    }
+
+    /**
+     * 注册一个带标签的 Gauge
+     *
+     * @param tags 标签键值对，如 "provider", "llm"
+     */
+    public <T> void gauge(String name, String description, T stateObject, ToDoubleFunction<T> valueFunction, String... tags) {
+        Gauge.builder(name, stateObject, valueFunction)
+            .description(description)
+            .tags(tags)
+            .register(registry);
+    }
+
+    /**
+     * 获取（或注册）一个带标签的计数器，调用方应缓存返回值
+     *
+     * @param tags 标签键值对
+     */
+    public Counter counter(String name, String description, String... tags) {
+        return Counter.builder(name)
+            .description(description)
+            .tags(tags)
+            .register(registry);
+    }
+
+    /**
+     * 获取（或注册）一个带分位数的分布统计（如批量大小），调用方应缓存返回值
+     *
+     * @param tags 标签键值对
+     */
+    public DistributionSummary summary(String name, String description, String... tags) {
+        return DistributionSummary.builder(name)
+            .description(description)
+            .tags(tags)
+            .publishPercentiles(PERCENTILES)
+            .register(registry);
+    }
+
+    /**
+     * 监控线程池的活跃线程数、排队任务数等饱和度指标
+     */
+    public void monitorExecutor(ExecutorService executor, String name) {
+        new ExecutorServiceMetrics(executor, name, Tags.empty()).bindTo(registry);
+    }
+
+    private StageMeters createStageMeters(String stage) {
+        Timer timeToFirstChunk = Timer.builder("voice.stage.time_to_first_chunk")
+            .description("阶段开始到第一个 chunk 的耗时")
+            .tag("stage", stage)
+            .publishPercentiles(PERCENTILES)
+            .publishPercentileHistogram()
+            .register(registry);
+        Timer chunkInterval = Timer.builder("voice.stage.chunk_interval")
+            .description("阶段内 chunk 的平均间隔")
+            .tag("stage", stage)
+            .publishPercentiles(PERCENTILES)
+            .publishPercentileHistogram()
+            .register(registry);
+        DistributionSummary chunkCount = DistributionSummary.builder("voice.stage.chunk_count")
+            .description("阶段内 chunk 的数量")
+            .baseUnit("chunks")
+            .tag("stage", stage)
+            .publishPercentiles(PERCENTILES)
+            .register(registry);
+        return new StageMeters(timeToFirstChunk, chunkInterval, chunkCount);
+    }
+
+    private LlmMeters createLlmMeters(String context) {
+        Timer timeToFirstToken = Timer.builder("voice.llm.time_to_first_token")
+            .description("LLM 请求发出到第一个 token 的耗时")
+            .tag("context", context)
+            .publishPercentiles(PERCENTILES)
+            .publishPercentileHistogram()
+            .register(registry);
+        DistributionSummary tokensPerSecond = DistributionSummary.builder("voice.llm.tokens_per_second")
+            .description("首 token 之后的输出速率")
+            .baseUnit("tokens")
+            .tag("context", context)
+            .publishPercentiles(PERCENTILES)
+            .register(registry);
+        DistributionSummary promptTokens = DistributionSummary.builder("voice.llm.prompt_tokens")
+            .description("每次请求的输入 token 数")
+            .baseUnit("tokens")
+            .tag("context", context)
+            .publishPercentiles(PERCENTILES)
+            .register(registry);
+        DistributionSummary completionTokens = DistributionSummary.builder("voice.llm.completion_tokens")
+            .description("每次请求的输出 token 数")
+            .baseUnit("tokens")
+            .tag("context", context)
+            .publishPercentiles(PERCENTILES)
+            .register(registry);
+        DistributionSummary contextMessages = DistributionSummary.builder("voice.llm.context_messages")
+            .description("每次请求携带的历史消息数")
+            .baseUnit("messages")
+            .tag("context", context)
+            .register(registry);
+        return new LlmMeters(timeToFirstToken, tokensPerSecond, promptTokens, completionTokens, contextMessages);
+    }
+
+    // 历史消息数分档，避免标签基数随会话增长
+    private static String contextBucket(int contextMessages) {
+        if (contextMessages == 0) {
+            return "0";
+        } else if (contextMessages <= 4) {
+            return "1-4";
+        } else if (contextMessages <= 10) {
+            return "5-10";
+        } else if (contextMessages <= 20) {
+            return "11-20";
+        }
+        return "21+";
+    }
+
+    private record StageMeters(Timer timeToFirstChunk, Timer chunkInterval, DistributionSummary chunkCount) {
+    }
+
+    private record LlmMeters(Timer timeToFirstToken, DistributionSummary tokensPerSecond,
+                             DistributionSummary promptTokens, DistributionSummary completionTokens,
+                             DistributionSummary contextMessages) {
+    }
+}
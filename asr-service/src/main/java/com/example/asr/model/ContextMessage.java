@@ -0,0 +1,36 @@
+package com.example.asr.model;
+
+/**
+ * 可持久化的 LLM 上下文消息（只保留角色和文本）
+ */
+public class ContextMessage {
+    public static final String ROLE_USER = "user";
+    public static final String ROLE_ASSISTANT = "assistant";
+
+    private String role;
+    private String content;
+
+    public ContextMessage() {
+    }
+
+    public ContextMessage(String role, String content) {
+        this.role = role;
+        this.content = content;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public void setRole(String role) {
+        this.role = role;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.asr.model;
+
+/**
+ * 订单中的一行：商品和数量
+ */
+public class OrderLine {
+    private String item;
+    private int quantity;
+
+    public OrderLine() {
+    }
+
+    public OrderLine(String item, int quantity) {
+        this.item = item;
+        this.quantity = quantity;
+    }
+
+    public String getItem() {
+        return item;
+    }
+
+    public void setItem(String item) {
+        this.item = item;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    @Override
+    public String toString() {
+        return item + "x" + quantity;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.asr.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 会话中需要跨连接 / 跨节点保留的部分：LLM 上下文和轮次元数据
+ * 音频缓冲、TTS 队列等与单个连接绑定的状态不在此列
+ */
+public class SessionState {
+    private String token;
+    private String tenant;
+    private String ttsFormat;
+    private int turnCount;
+    private String lastTranscript;
+    private String lastIntent;
+    private long updatedAt;
+    private List<ContextMessage> messages = new ArrayList<>();
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public void setTenant(String tenant) {
+        this.tenant = tenant;
+    }
+
+    public String getTtsFormat() {
+        return ttsFormat;
+    }
+
+    public void setTtsFormat(String ttsFormat) {
+        this.ttsFormat = ttsFormat;
+    }
+
+    public int getTurnCount() {
+        return turnCount;
+    }
+
+    public void setTurnCount(int turnCount) {
+        this.turnCount = turnCount;
+    }
+
+    public String getLastTranscript() {
+        return lastTranscript;
+    }
+
+    public void setLastTranscript(String lastTranscript) {
+        this.lastTranscript = lastTranscript;
+    }
+
+    public String getLastIntent() {
+        return lastIntent;
+    }
+
+    public void setLastIntent(String lastIntent) {
+        this.lastIntent = lastIntent;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public List<ContextMessage> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<ContextMessage> messages) {
+        this.messages = messages;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.asr.model;
+
+/**
+ * LLM 在流式输出中发起的一次工具调用
+ */
+public class ToolCall {
+    private String id;
+    // MCP 方法名（如 order.place）
+    private String name;
+    // JSON 字符串形式的参数
+    private String arguments;
+
+    public ToolCall() {
+    }
+
+    public ToolCall(String id, String name, String arguments) {
+        this.id = id;
+        this.name = name;
+        this.arguments = arguments;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getArguments() {
+        return arguments;
+    }
+
+    public void setArguments(String arguments) {
+        this.arguments = arguments;
+    }
+
+    @Override
+    public String toString() {
+        return name + arguments;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.asr.model;
+
+import java.util.Map;
+
+/**
+ * MCP 服务声明的工具（来自 tools/list），用于生成 LLM 的函数定义
+ */
+public class ToolDescriptor {
+    private String name;
+    private String description;
+    // JSON Schema 形式的参数定义
+    private Map<String, Object> inputSchema;
+
+    public ToolDescriptor() {
+    }
+
+    public ToolDescriptor(String name, String description, Map<String, Object> inputSchema) {
+        this.name = name;
+        this.description = description;
+        this.inputSchema = inputSchema;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public Map<String, Object> getInputSchema() {
+        return inputSchema;
+    }
+
+    public void setInputSchema(Map<String, Object> inputSchema) {
+        this.inputSchema = inputSchema;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.asr.model;
+
+import com.alibaba.dashscope.audio.ttsv2.SpeechSynthesisAudioFormat;
+
+import java.util.Locale;
+
+/**
+ * 下行 TTS 音频格式档位
+ * 客户端在握手（查询参数 tts_format）或首个 config 控制帧中按 key 选择，
+ * 默认值来自 dashscope.tts.format
+ */
+public enum TtsAudioFormat {
+    MP3("mp3", SpeechSynthesisAudioFormat.MP3_22050HZ_MONO_256KBPS, "mp3", 256, "audio/mpeg"),
+    MP3_16K("mp3_16k", SpeechSynthesisAudioFormat.MP3_16000HZ_MONO_128KBPS, "mp3", 128, "audio/mpeg"),
+    MP3_8K("mp3_8k", SpeechSynthesisAudioFormat.MP3_8000HZ_MONO_128KBPS, "mp3", 128, "audio/mpeg"),
+    PCM_16K("pcm_16k", SpeechSynthesisAudioFormat.PCM_16000HZ_MONO_16BIT, "pcm", 256, "audio/pcm;rate=16000"),
+    PCM_8K("pcm_8k", SpeechSynthesisAudioFormat.PCM_8000HZ_MONO_16BIT, "pcm", 128, "audio/pcm;rate=8000"),
+    // SDK 的枚举中没有 Opus，这里以 16k 为基础格式，再通过 parameter 覆盖 format / bit_rate
+    OPUS_16K("opus_16k", SpeechSynthesisAudioFormat.PCM_16000HZ_MONO_16BIT, "opus", 32, "audio/ogg;codecs=opus");
+
+    private final String key;
+    private final SpeechSynthesisAudioFormat sdkFormat;
+    private final String codec;
+    private final int bitRateKbps;
+    private final String mimeType;
+
+    TtsAudioFormat(String key, SpeechSynthesisAudioFormat sdkFormat, String codec, int bitRateKbps, String mimeType) {
+        this.key = key;
+        this.sdkFormat = sdkFormat;
+        this.codec = codec;
+        this.bitRateKbps = bitRateKbps;
+        this.mimeType = mimeType;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public SpeechSynthesisAudioFormat getSdkFormat() {
+        return sdkFormat;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public int getSampleRate() {
+        return sdkFormat.getSampleRate();
+    }
+
+    public int getBitRateKbps() {
+        return bitRateKbps;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * 是否需要通过请求参数覆盖 SDK 枚举中的编码（SDK 枚举不支持的编码）
+     */
+    public boolean overridesSdkCodec() {
+        return !codec.equals(sdkFormat.getFormat());
+    }
+
+    /**
+     * 根据字节数估算对应的语音时长（毫秒）
+     * kbps 即每毫秒的比特数，所以 bytes * 8 / kbps 即为毫秒
+     */
+    public long estimateDurationMs(long bytes) {
+        return bytes * 8 / bitRateKbps;
+    }
+
+    /**
+     * 按 key 解析格式，无法识别时返回 null
+     */
+    public static TtsAudioFormat fromKey(String key) {
+        if (key == null || key.isBlank()) {
+            return null;
+        }
+        String normalized = key.trim().toLowerCase(Locale.ROOT);
+        for (TtsAudioFormat format : values()) {
+            if (format.key.equals(normalized)) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.asr.recording;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 会话录制中的一条记录
+ */
+public class SessionRecord {
+    // 上行音频：归一化后的单声道 16bit PCM（与发往 ASR 的数据一致）
+    public static final byte UPLINK_AUDIO = 1;
+    // 下行音频：TTS 音频帧（按协商的 ttsFormat 编码）
+    public static final byte DOWNLINK_AUDIO = 2;
+    // 客户端发来的文本帧（END、控制帧）
+    public static final byte INBOUND_TEXT = 3;
+    // 发给客户端的文本帧（带 seq）
+    public static final byte OUTBOUND_TEXT = 4;
+    // 录制开始时写入的会话元数据（JSON）
+    public static final byte META = 5;
+
+    private final byte type;
+    private final long epochNanos;
+    private final byte[] payload;
+
+    public SessionRecord(byte type, long epochNanos, byte[] payload) {
+        this.type = type;
+        this.epochNanos = epochNanos;
+        this.payload = payload;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    /**
+     * 记录时间（自 1970-01-01 起的纳秒数），同一录制内单调递增
+     */
+    public long getEpochNanos() {
+        return epochNanos;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public boolean isText() {
+        return type == INBOUND_TEXT || type == OUTBOUND_TEXT || type == META;
+    }
+
+    public String getText() {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    public static String typeName(byte type) {
+        switch (type) {
+            case UPLINK_AUDIO:
+                return "uplink_audio";
+            case DOWNLINK_AUDIO:
+                return "downlink_audio";
+            case INBOUND_TEXT:
+                return "inbound_text";
+            case OUTBOUND_TEXT:
+                return "outbound_text";
+            case META:
+                return "meta";
+            default:
+                return "unknown(" + type + ")";
+        }
+    }
+}
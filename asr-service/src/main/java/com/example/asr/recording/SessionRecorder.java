@@ -0,0 +1,168 @@
+package com.example.asr.recording;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单个会话的录制文件（只追加，内存映射）
+ * 录制目录下按序号滚动生成固定大小的段文件，每段开头为段头（魔数、版本、基准时间），之后逐条写入记录：
+ * 类型（1 字节）、负载长度（4 字节）、相对基准时间的纳秒数（8 字节）、负载。类型字节最后写入，
+ * 未写完的记录和段尾未使用的空间类型均为 0，读取到 0 即停止。
+ * 写入只是内存拷贝，由 SessionRecordingService 的后台线程定期 force 落盘；所有段的总大小超过上限时删除最早的段。
+ */
+@Slf4j
+public final class SessionRecorder {
+    static final int MAGIC = 0x56524543; // "VREC"
+    static final int VERSION = 1;
+    static final int SEGMENT_HEADER_BYTES = 16;
+    static final int RECORD_HEADER_BYTES = 13;
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long maxBytes;
+    private final long baseNanoTime;
+    private final long baseEpochNanos;
+
+    // 以下字段由 this 保护
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    // 已写满、尚未 force 的段
+    private final List<MappedByteBuffer> unsynced = new ArrayList<>();
+    private MappedByteBuffer current;
+    private int nextSegment;
+    private long mappedBytes;
+    private long writtenBytes;
+    private boolean dirty;
+    private boolean closed;
+
+    /**
+     * @param segmentBytes 每个段文件的大小
+     * @param maxBytes 所有段文件的总大小上限，超过后滚动删除最早的段
+     */
+    public SessionRecorder(Path directory, int segmentBytes, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        this.baseNanoTime = System.nanoTime();
+        this.baseEpochNanos = System.currentTimeMillis() * 1_000_000L;
+        Files.createDirectories(directory);
+        roll(0);
+    }
+
+    public void append(byte type, byte[] data) {
+        append(type, data, 0, data.length);
+    }
+
+    public synchronized void append(byte type, byte[] data, int offset, int length) {
+        if (closed) {
+            return;
+        }
+        long nanos = System.nanoTime() - baseNanoTime;
+        int size = RECORD_HEADER_BYTES + length;
+        if (current.remaining() < size) {
+            try {
+                roll(size);
+            } catch (IOException e) {
+                // 录制失败不影响会话本身，停止录制即可
+                log.warn("Failed to roll recording segment in {}, stopping recording: {}", directory, e.getMessage());
+                closed = true;
+                return;
+            }
+        }
+        int position = current.position();
+        current.position(position + 1);
+        current.putInt(length).putLong(nanos).put(data, offset, length);
+        current.put(position, type);
+        writtenBytes += size;
+        dirty = true;
+    }
+
+    /**
+     * 把已写入的数据刷到磁盘，由后台线程调用；force 在锁外执行，不阻塞写入
+     */
+    public void sync() {
+        List<MappedByteBuffer> pending;
+        synchronized (this) {
+            if (unsynced.isEmpty() && !dirty) {
+                return;
+            }
+            pending = new ArrayList<>(unsynced);
+            unsynced.clear();
+            if (dirty && current != null) {
+                pending.add(current);
+            }
+            dirty = false;
+        }
+        for (MappedByteBuffer buffer : pending) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * 停止录制并落盘；段文件保持映射时的大小，尾部未使用的空间为 0
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed && current == null) {
+                return;
+            }
+            closed = true;
+            if (current != null) {
+                unsynced.add(current);
+                current = null;
+            }
+        }
+        sync();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public synchronized long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    // 映射下一个段文件；单条记录超过段大小时该段按记录大小映射
+    private void roll(int needed) throws IOException {
+        int capacity = Math.max(segmentBytes, SEGMENT_HEADER_BYTES + needed);
+        Path path = directory.resolve(String.format("%06d%s", nextSegment++, SEGMENT_SUFFIX));
+        MappedByteBuffer buffer;
+        // 映射在通道关闭后仍然有效
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(baseEpochNanos);
+        if (current != null) {
+            unsynced.add(current);
+        }
+        current = buffer;
+        segments.addLast(new Segment(path, capacity));
+        mappedBytes += capacity;
+        while (mappedBytes > maxBytes && segments.size() > 1) {
+            Segment oldest = segments.pollFirst();
+            mappedBytes -= oldest.capacity;
+            Files.deleteIfExists(oldest.path);
+        }
+    }
+
+    private static final class Segment {
+        final Path path;
+        final long capacity;
+
+        Segment(Path path, long capacity) {
+            this.path = path;
+            this.capacity = capacity;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.asr.recording;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 读取 SessionRecorder 写出的录制目录
+ * 按段文件序号顺序读出所有记录；已被滚动删除的段不可恢复，进程崩溃时未写完的记录被忽略。
+ * 也可作为命令行工具打印时间线：
+ * java -cp target/classes com.example.asr.recording.SessionRecordingReader data/recordings/<会话目录>
+ */
+public final class SessionRecordingReader {
+
+    private SessionRecordingReader() {
+    }
+
+    /**
+     * 录制目录下的段文件，按序号排序
+     */
+    public static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(SessionRecorder.SEGMENT_SUFFIX))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    public static void read(Path directory, Consumer<SessionRecord> consumer) throws IOException {
+        for (Path segment : segments(directory)) {
+            readSegment(segment, consumer);
+        }
+    }
+
+    public static List<SessionRecord> readAll(Path directory) throws IOException {
+        List<SessionRecord> records = new ArrayList<>();
+        read(directory, records::add);
+        return records;
+    }
+
+    private static void readSegment(Path segment, Consumer<SessionRecord> consumer) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < SessionRecorder.SEGMENT_HEADER_BYTES || buffer.getInt() != SessionRecorder.MAGIC) {
+            throw new IOException("Not a session recording segment: " + segment);
+        }
+        int version = buffer.getInt();
+        if (version != SessionRecorder.VERSION) {
+            throw new IOException("Unsupported recording version " + version + ": " + segment);
+        }
+        long baseEpochNanos = buffer.getLong();
+        while (buffer.remaining() >= SessionRecorder.RECORD_HEADER_BYTES) {
+            byte type = buffer.get();
+            if (type == 0) {
+                break;
+            }
+            int length = buffer.getInt();
+            long nanos = buffer.getLong();
+            if (length < 0 || length > buffer.remaining()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            consumer.accept(new SessionRecord(type, baseEpochNanos + nanos, payload));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("用法：SessionRecordingReader <录制目录>");
+            System.exit(1);
+        }
+        long[] first = {-1};
+        read(Paths.get(args[0]), record -> {
+            if (first[0] < 0) {
+                first[0] = record.getEpochNanos();
+            }
+            double offsetMs = (record.getEpochNanos() - first[0]) / 1_000_000.0;
+            String detail;
+            if (record.isText()) {
+                String text = record.getText();
+                detail = text.length() > 200 ? text.substring(0, 200) + "…" : text;
+            } else {
+                detail = record.getPayload().length + " bytes";
+            }
+            System.out.printf("%10.3f ms  %-15s %s%n", offsetMs, SessionRecord.typeName(record.getType()), detail);
+        });
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.asr.recording;
+
+import com.example.asr.metrics.PipelineMetrics;
+import io.micrometer.core.instrument.Counter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话录制（可选，按比例抽样）
+ * 被抽中的会话把上行音频、下行音频和所有文本帧连同纳秒时间戳写入 recording.dir 下的独立目录，
+ * 用于排查线上慢请求 / 识别错误时还原客户端实际发送的内容。写入路径只有一次 Map 查找和内存拷贝，
+ * 落盘由后台线程每 fsync-interval-ms 批量完成。未被抽中的会话不产生任何开销。
+ */
+@Slf4j
+@Component
+public class SessionRecordingService {
+
+    @Value("${recording.enabled:false}")
+    private boolean enabled;
+
+    // 录制的会话比例（0 ~ 1）
+    @Value("${recording.sample-ratio:0.01}")
+    private double sampleRatio;
+
+    @Value("${recording.dir:./data/recordings}")
+    private String directory;
+
+    @Value("${recording.segment-bytes:4194304}")
+    private int segmentBytes;
+
+    // 单个会话所有段文件的总大小上限，超过后删除最早的段，保留最近的内容
+    @Value("${recording.max-bytes-per-session:33554432}")
+    private long maxBytesPerSession;
+
+    @Value("${recording.fsync-interval-ms:1000}")
+    private long fsyncIntervalMs;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    private final Map<String, SessionRecorder> recorders = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "session-recorder-fsync");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Counter sessionsRecorded;
+    private Counter bytesRecorded;
+
+    @PostConstruct
+    public void init() {
+        metrics.gauge("voice.recording.sessions.active", "正在录制的会话数", recorders, Map::size);
+        sessionsRecorded = metrics.counter("voice.recording.sessions", "开始录制的会话数");
+        bytesRecorded = metrics.counter("voice.recording.bytes", "已结束录制的会话写入的字节数");
+        if (enabled) {
+            log.info("Session recording enabled: ratio={}, dir={}", sampleRatio, directory);
+            flusher.scheduleWithFixedDelay(this::syncAll, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 按抽样比例决定是否录制该会话
+     *
+     * @param meta 会话元数据（JSON），作为第一条记录写入
+     * @return 录制器；未抽中或创建失败时返回 null
+     */
+    public SessionRecorder start(String sessionId, String meta) {
+        if (!enabled || ThreadLocalRandom.current().nextDouble() >= sampleRatio) {
+            return null;
+        }
+        // 会话 ID 来自容器或客户端（多路复用流），只保留安全字符
+        Path sessionDir = Paths.get(directory).resolve(
+            sessionId.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + System.currentTimeMillis());
+        try {
+            SessionRecorder recorder = new SessionRecorder(sessionDir, segmentBytes, maxBytesPerSession);
+            recorder.append(SessionRecord.META, meta.getBytes(StandardCharsets.UTF_8));
+            SessionRecorder previous = recorders.put(sessionId, recorder);
+            if (previous != null) {
+                stopAsync(previous);
+            }
+            sessionsRecorded.increment();
+            log.info("Recording session {} to {}", sessionId, sessionDir);
+            return recorder;
+        } catch (IOException e) {
+            log.warn("Failed to start recording for session {}: {}", sessionId, e.getMessage());
+            return null;
+        }
+    }
+
+    public void record(String sessionId, byte type, byte[] data) {
+        SessionRecorder recorder = recorders.get(sessionId);
+        if (recorder != null) {
+            recorder.append(type, data);
+        }
+    }
+
+    // 文本只在会话被录制时才编码
+    public void recordText(String sessionId, byte type, String text) {
+        SessionRecorder recorder = recorders.get(sessionId);
+        if (recorder != null) {
+            recorder.append(type, text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 会话结束，关闭录制；关闭时的 force 在后台线程执行
+     */
+    public void stop(String sessionId) {
+        SessionRecorder recorder = recorders.remove(sessionId);
+        if (recorder != null) {
+            stopAsync(recorder);
+        }
+    }
+
+    private void stopAsync(SessionRecorder recorder) {
+        flusher.execute(() -> {
+            recorder.close();
+            bytesRecorded.increment(recorder.getWrittenBytes());
+            log.info("Recording finished: {} ({} bytes)", recorder.getDirectory(), recorder.getWrittenBytes());
+        });
+    }
+
+    private void syncAll() {
+        for (SessionRecorder recorder : recorders.values()) {
+            try {
+                recorder.sync();
+            } catch (RuntimeException e) {
+                log.warn("Failed to sync recording {}: {}", recorder.getDirectory(), e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        recorders.values().forEach(SessionRecorder::close);
+        recorders.clear();
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.asr.resilience;
+
+/**
+ * 熔断器
+ * - CLOSED：正常放行，连续失败达到 failureThreshold 次后转为 OPEN
+ * - OPEN：直接拒绝，openDurationMs 后转为 HALF_OPEN
+ * - HALF_OPEN：只放行一个探测请求，成功则 CLOSED，失败则重新 OPEN
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openDurationMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    public CircuitBreaker(String name, int failureThreshold, long openDurationMs) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDurationMs = openDurationMs;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 是否允许本次调用；返回 true 时调用方必须随后调用 onSuccess 或 onFailure
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt < openDurationMs) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            case HALF_OPEN:
+            default:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        state = State.CLOSED;
+    }
+
+    public synchronized void onFailure() {
+        probeInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 放弃本次调用结果（如被准入控制拒绝），不计入成功或失败
+     */
+    public synchronized void onIgnore() {
+        probeInFlight = false;
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 用于 Gauge 的数值状态：0 = CLOSED，1 = OPEN，2 = HALF_OPEN
+     */
+    public double stateValue() {
+        return getState().ordinal();
+    }
+}
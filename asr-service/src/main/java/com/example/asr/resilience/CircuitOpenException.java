@@ -0,0 +1,15 @@
+package com.example.asr.resilience;
+
+import com.example.asr.admission.OverloadException;
+
+/**
+ * 熔断器处于打开状态，调用被快速拒绝
+ * 继承 OverloadException，由调用方统一转换为 busy 消息
+ */
+public class CircuitOpenException extends OverloadException {
+    public static final String REASON_CIRCUIT_OPEN = "circuit_open";
+
+    public CircuitOpenException(String provider) {
+        super(provider, REASON_CIRCUIT_OPEN);
+    }
+}
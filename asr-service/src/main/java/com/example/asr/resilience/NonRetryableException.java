@@ -0,0 +1,10 @@
+package com.example.asr.resilience;
+
+/**
+ * 不可重试的失败（如已向客户端输出了部分结果），计入熔断失败但不再重试
+ */
+public class NonRetryableException extends RuntimeException {
+    public NonRetryableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.asr.resilience;
+
+import com.example.asr.admission.OverloadException;
+import com.example.asr.metrics.PipelineMetrics;
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 上游调用的统一弹性封装：截止时间、带抖动的重试和熔断
+ * 每轮对话开始时登记一个总延迟预算，单次调用的截止时间取“调用上限”和“本轮剩余预算”中的较小值；
+ * 只有幂等调用（意图识别、TTS）才会传入大于 1 的重试次数。
+ */
+@Slf4j
+@Component
+public class ResilienceExecutor {
+    public static final String ASR = "asr";
+    public static final String LLM = "llm";
+    public static final String TTS = "tts";
+    public static final String MCP = "mcp";
+
+    @Value("${resilience.turn-budget-ms:15000}")
+    private long turnBudgetMs;
+
+    // 预算耗尽后单次调用仍保留的最短时间，避免截止时间为 0 导致必然超时
+    @Value("${resilience.min-call-timeout-ms:500}")
+    private long minCallTimeoutMs;
+
+    @Value("${resilience.retry.base-backoff-ms:100}")
+    private long baseBackoffMs;
+
+    @Value("${resilience.retry.max-backoff-ms:1000}")
+    private long maxBackoffMs;
+
+    @Value("${resilience.breaker.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${resilience.breaker.open-duration-ms:10000}")
+    private long openDurationMs;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    private final Map<String, Long> turnDeadlines = new ConcurrentHashMap<>();
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * 带截止时间的调用，timeoutMs 由被调用方自行施加（HTTP 超时、latch 等待等）
+     */
+    @FunctionalInterface
+    public interface TimedCall<T> {
+        T call(long timeoutMs) throws Exception;
+    }
+
+    /**
+     * 登记一轮对话的延迟预算
+     */
+    public void startTurn(String sessionId) {
+        turnDeadlines.put(sessionId, System.currentTimeMillis() + turnBudgetMs);
+    }
+
+    public void endTurn(String sessionId) {
+        turnDeadlines.remove(sessionId);
+    }
+
+    /**
+     * 计算单次调用的截止时间：本轮剩余预算与调用上限取较小值，且不低于 min-call-timeout-ms
+     */
+    public long deadlineMs(String sessionId, long capMs) {
+        Long turnDeadline = turnDeadlines.get(sessionId);
+        if (turnDeadline == null) {
+            return capMs;
+        }
+        long remaining = turnDeadline - System.currentTimeMillis();
+        return Math.max(minCallTimeoutMs, Math.min(capMs, remaining));
+    }
+
+    /**
+     * 在熔断器保护下执行调用，失败时按带抖动的指数退避重试
+     *
+     * @param name 上游名称（见常量），同名调用共用一个熔断器
+     * @param sessionId 所属会话，用于查找本轮预算
+     * @param capMs 单次调用的截止时间上限
+     * @param maxAttempts 最大尝试次数，非幂等调用必须为 1
+     * @throws CircuitOpenException 熔断器打开
+     */
+    public <T> T execute(String name, String sessionId, long capMs, int maxAttempts, TimedCall<T> call) throws Exception {
+        long deadlineAt = System.currentTimeMillis() + deadlineMs(sessionId, capMs);
+
+        for (int attempt = 1; ; attempt++) {
+            CircuitBreaker breaker = enter(name);
+            long remaining = Math.max(minCallTimeoutMs, deadlineAt - System.currentTimeMillis());
+            try {
+                T result = call.call(remaining);
+                breaker.onSuccess();
+                return result;
+            } catch (OverloadException e) {
+                // 本地准入拒绝或上游限流，交给准入控制处理，不计入熔断也不在此重试
+                breaker.onIgnore();
+                throw e;
+            } catch (Exception e) {
+                breaker.onFailure();
+                if (isTimeout(e)) {
+                    recordTimeout(name);
+                }
+                if (e instanceof NonRetryableException || attempt >= maxAttempts) {
+                    throw e;
+                }
+                // full jitter：在 [0, min(max, base * 2^attempt)] 中随机退避，避免重试同步放大压力
+                long backoff = ThreadLocalRandom.current().nextLong(Math.min(maxBackoffMs, baseBackoffMs << attempt) + 1);
+                if (System.currentTimeMillis() + backoff >= deadlineAt) {
+                    throw e;
+                }
+                counter("voice.resilience.retries", "重试次数", name).increment();
+                log.warn("{} call failed (attempt {}/{}), retrying in {}ms: {}", name, attempt, maxAttempts, backoff, e.getMessage());
+                Thread.sleep(backoff);
+            }
+        }
+    }
+
+    /**
+     * 进入熔断器保护区，供无法整体包装为 TimedCall 的流式调用使用；
+     * 调用方必须随后调用返回熔断器的 onSuccess / onFailure / onIgnore 之一
+     *
+     * @throws CircuitOpenException 熔断器打开
+     */
+    public CircuitBreaker enter(String name) {
+        CircuitBreaker breaker = breaker(name);
+        if (!breaker.tryAcquire()) {
+            counter("voice.resilience.short_circuited", "熔断器打开时被快速拒绝的调用数", name).increment();
+            throw new CircuitOpenException(name);
+        }
+        return breaker;
+    }
+
+    /**
+     * 获取上游的熔断器，首次使用时注册状态指标
+     */
+    public CircuitBreaker breaker(String name) {
+        return breakers.computeIfAbsent(name, n -> {
+            CircuitBreaker breaker = new CircuitBreaker(n, failureThreshold, openDurationMs);
+            metrics.gauge("voice.resilience.breaker.state", "熔断器状态：0 关闭，1 打开，2 半开",
+                breaker, CircuitBreaker::stateValue, "name", n);
+            return breaker;
+        });
+    }
+
+    public void recordTimeout(String name) {
+        counter("voice.resilience.timeouts", "超过截止时间的调用数", name).increment();
+    }
+
+    private static boolean isTimeout(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof TimeoutException || t instanceof InterruptedIOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Counter counter(String metric, String description, String name) {
+        return counters.computeIfAbsent(metric + "/" + name, k -> metrics.counter(metric, description, "name", name));
+    }
+}
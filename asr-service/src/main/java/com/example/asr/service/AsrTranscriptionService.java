@@ -4,8 +4,18 @@ import com.alibaba.dashscope.audio.asr.recognition.Recognition;
 import com.alibaba.dashscope.audio.asr.recognition.RecognitionParam;
 import com.alibaba.dashscope.audio.asr.recognition.RecognitionResult;
 import com.alibaba.dashscope.common.ResultCallback;
+import com.example.asr.admission.AdmissionController;
+import com.example.asr.admission.OverloadException;
+import com.example.asr.audio.FrameRechunker;
+import com.example.asr.metrics.PipelineMetrics;
+import com.example.asr.resilience.CircuitBreaker;
+import com.example.asr.resilience.ResilienceExecutor;
 import com.example.asr.ws.WebSocketPerformanceMeasure;
+import io.micrometer.core.instrument.DistributionSummary;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -13,6 +23,9 @@ import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
@@ -26,18 +39,87 @@ public class AsrTranscriptionService {
     @Value("${dashscope.asr.sample-rate}")
     private int sampleRate;
 
+    @Autowired
+    private AdmissionController admission;
+
+    @Autowired
+    private ResilienceExecutor resilience;
+
+    @Value("${resilience.asr.final-result-timeout-ms:5000}")
+    private long finalResultTimeoutMs;
+
+    // 发往 ASR 的固定帧长（毫秒）
+    @Value("${dashscope.asr.frame-ms:100}")
+    private int frameMs;
+
+    // 抖动缓冲最多积压的帧数，0 表示凑满一帧立即发送
+    @Value("${dashscope.asr.jitter-frames:2}")
+    private int jitterFrames;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
     private final Map<String, Recognition> sessions = new ConcurrentHashMap<>();
     private final Map<String, String> transcripts = new ConcurrentHashMap<>(); // 只保存最后一次的完整结果
     private final Map<String, CountDownLatch> completionLatches = new ConcurrentHashMap<>();
     private final Map<String, WebSocketPerformanceMeasure> performanceMeasureMap = new ConcurrentHashMap<>();
+    // 每个识别流在其生命周期内占用一个识别流名额（固定上限，不参与自适应调整）
+    private final Map<String, AdmissionController.Permit> streamPermits = new ConcurrentHashMap<>();
+    // 每个识别流的上行重新分帧 / 抖动缓冲，由 uplinkTicker 按帧长节奏发出
+    private final Map<String, FrameRechunker> rechunkers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService uplinkTicker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "asr-uplink");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private DistributionSummary framesIn;
+    private DistributionSummary framesOut;
+
+    @PostConstruct
+    public void init() {
+        framesIn = metrics.summary("voice.asr.uplink.frame.bytes", "上行音频帧大小（字节）", "direction", "in");
+        framesOut = metrics.summary("voice.asr.uplink.frame.bytes", "上行音频帧大小（字节）", "direction", "out");
+        metrics.gauge("voice.asr.uplink.buffered.bytes", "抖动缓冲中尚未发往 ASR 的字节数", rechunkers,
+            buffers -> buffers.values().stream().mapToLong(FrameRechunker::getBufferedBytes).sum());
+        uplinkTicker.scheduleAtFixedRate(this::tick, frameMs, frameMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uplinkTicker.shutdownNow();
+    }
 
     public void startStream(String sessionId) {
+        // 熔断打开时快速失败，不再占用准入名额
+        CircuitBreaker breaker = resilience.enter(ResilienceExecutor.ASR);
+        AdmissionController.Permit streamPermit;
+        AdmissionController.Permit permit;
+        try {
+            streamPermit = admission.acquireStream(sessionId);
+        } catch (OverloadException e) {
+            breaker.onIgnore();
+            throw e;
+        }
+        try {
+            // 自适应并发只覆盖建立识别流这一次调用，以建流耗时作为延迟样本
+            permit = admission.acquire(AdmissionController.PROVIDER_ASR, sessionId);
+        } catch (OverloadException e) {
+            streamPermit.close();
+            breaker.onIgnore();
+            throw e;
+        }
+        AdmissionController.Permit previous = streamPermits.put(sessionId, streamPermit);
+        if (previous != null) {
+            previous.close();
+        }
         try {
             log.info("Starting ASR stream for session: {}", sessionId);
             Recognition recognition = new Recognition();
             CountDownLatch latch = new CountDownLatch(1);
             
             sessions.put(sessionId, recognition);
+            // 16bit 单声道：每毫秒 sampleRate / 1000 个样本
+            rechunkers.put(sessionId, new FrameRechunker(sampleRate / 1000 * frameMs * 2, jitterFrames));
             transcripts.put(sessionId, ""); // 初始化为空字符串
             completionLatches.put(sessionId, latch);
             
@@ -55,7 +137,7 @@ public class AsrTranscriptionService {
                 public void onEvent(RecognitionResult result) {
                     if (result != null && result.getSentence() != null) {
                         String text = result.getSentence().getText();
-                        if (text != null && !text.isEmpty()) {
+                        if (text != null && !text.isEmpty() && sessions.get(sessionId) == recognition) {
                             // 直接替换为最新的完整结果，而不是累积追加
                             // 因为ASR返回的可能是累积的完整文本
                             transcripts.put(sessionId, text);
@@ -77,14 +159,27 @@ public class AsrTranscriptionService {
                 @Override
                 public void onError(Exception e) {
                     log.error("ASR error for session: {}", sessionId, e);
+                    // 建流完成后许可已归还，此时为空操作
+                    permit.failure(e);
                     latch.countDown();
                 }
             };
             
             recognition.call(param, callback);
+            permit.success();
+            breaker.onSuccess();
             log.info("ASR stream initialized for session: {}", sessionId);
             
         } catch (Exception e) {
+            if (streamPermits.remove(sessionId, streamPermit)) {
+                streamPermit.close();
+            }
+            permit.failure(e);
+            if (AdmissionController.isQuotaError(e)) {
+                breaker.onIgnore();
+                throw new OverloadException(AdmissionController.PROVIDER_ASR, OverloadException.REASON_QUOTA);
+            }
+            breaker.onFailure();
             log.error("Failed to start ASR stream for session: {}", sessionId, e);
             throw new RuntimeException("ASR initialization failed", e);
         }
@@ -105,15 +200,37 @@ public class AsrTranscriptionService {
                     log.error("Failed to create ASR session for: {}", sessionId);
                     return;
                 }
+            } catch (OverloadException e) {
+                throw e;
             } catch (Exception e) {
                 log.error("Failed to create ASR session for: {}", sessionId, e);
                 return;
             }
         }
+        framesIn.record(audioBytes.length);
+        FrameRechunker rechunker = rechunkers.get(sessionId);
+        Recognition target = recognition;
+        if (rechunker == null) {
+            sendFrame(sessionId, target, audioBytes);
+            return;
+        }
+        rechunker.offer(audioBytes, frame -> sendFrame(sessionId, target, frame));
+    }
+
+    // 每个帧长从每个会话的抖动缓冲中发出一帧
+    private void tick() {
+        rechunkers.forEach((sessionId, rechunker) -> {
+            Recognition recognition = sessions.get(sessionId);
+            if (recognition != null) {
+                rechunker.tick(frame -> sendFrame(sessionId, recognition, frame));
+            }
+        });
+    }
+
+    private void sendFrame(String sessionId, Recognition recognition, byte[] frame) {
         try {
-            ByteBuffer buffer = ByteBuffer.wrap(audioBytes);
-            recognition.sendAudioFrame(buffer);
-            log.debug("Appended {} bytes to ASR for session: {}", audioBytes.length, sessionId);
+            recognition.sendAudioFrame(ByteBuffer.wrap(frame));
+            framesOut.record(frame.length);
         } catch (Exception e) {
             log.error("Failed to append audio for session: {}", sessionId, e);
         }
@@ -130,12 +247,23 @@ public class AsrTranscriptionService {
 
         try {
             log.info("Ending ASR stream for session: {}", sessionId);
+
+            // 说话结束，抖动缓冲中的音频立即发出
+            FrameRechunker rechunker = rechunkers.remove(sessionId);
+            if (rechunker != null) {
+                rechunker.flush(frame -> sendFrame(sessionId, recognition, frame));
+            }
             
             // 结束音频流
             recognition.stop();
             
-            // 等待识别完成（最多等待 30 秒）
-            latch.await(30, java.util.concurrent.TimeUnit.SECONDS);
+            // 等待识别完成，截止时间取配置上限与本轮剩余预算中的较小值
+            long timeoutMs = resilience.deadlineMs(sessionId, finalResultTimeoutMs);
+            if (!latch.await(timeoutMs, java.util.concurrent.TimeUnit.MILLISECONDS)) {
+                log.warn("ASR final result timed out after {}ms for session: {}, using last partial result", timeoutMs, sessionId);
+                resilience.recordTimeout(ResilienceExecutor.ASR);
+                resilience.breaker(ResilienceExecutor.ASR).onFailure();
+            }
             
             // 获取最后一次的完整识别结果
             String finalText = transcripts.get(sessionId);
@@ -149,16 +277,43 @@ public class AsrTranscriptionService {
             transcripts.remove(sessionId);
             completionLatches.remove(sessionId);
             performanceMeasureMap.remove(sessionId);
+            releasePermit(sessionId);
             
             return finalText;
             
         } catch (Exception e) {
             log.error("Failed to end ASR stream for session: {}", sessionId, e);
+            releasePermit(sessionId);
             // 返回最后一次保存的结果
             String lastResult = transcripts.get(sessionId);
             return lastResult != null ? lastResult : "";
         }
     }
-}
 
+    /**
+     * 连接关闭时丢弃尚未结束的识别流：关闭上游连接，清理该会话的全部识别状态并释放名额
+     * 不等待最终结果（recognition.stop() 会阻塞到上游完成），恢复后的连接重新建立识别流。
+     */
+    public void releaseStream(String sessionId) {
+        rechunkers.remove(sessionId);
+        Recognition recognition = sessions.remove(sessionId);
+        transcripts.remove(sessionId);
+        completionLatches.remove(sessionId);
+        performanceMeasureMap.remove(sessionId);
+        if (recognition != null && recognition.getDuplexApi() != null) {
+            try {
+                recognition.getDuplexApi().close(1000, "bye");
+            } catch (Exception e) {
+                log.warn("Failed to close ASR stream for session: {}", sessionId, e);
+            }
+        }
+        releasePermit(sessionId);
+    }
 
+    private void releasePermit(String sessionId) {
+        AdmissionController.Permit permit = streamPermits.remove(sessionId);
+        if (permit != null) {
+            permit.close();
+        }
+    }
+}
@@ -1,32 +1,65 @@
 package com.example.asr.service;
 
+import com.example.asr.admission.AdmissionController;
+import com.example.asr.admission.OverloadException;
+import com.example.asr.logging.HotPathLogger;
+import com.example.asr.logging.SessionLogStats;
+import com.example.asr.metrics.PipelineMetrics;
+import com.example.asr.model.ContextMessage;
+import com.example.asr.model.ToolCall;
+import com.example.asr.model.ToolDescriptor;
+import com.example.asr.resilience.CircuitBreaker;
+import com.example.asr.resilience.ResilienceExecutor;
+import com.example.asr.session.SessionStateManager;
+import com.example.asr.ws.WebSocketPerformanceMeasure;
 import com.openai.client.OpenAIClient;
 import com.openai.client.okhttp.OpenAIOkHttpClient;
+import com.openai.core.JsonValue;
+import com.openai.errors.OpenAIServiceException;
+import com.openai.core.RequestOptions;
 import com.openai.core.http.StreamResponse;
 import com.openai.helpers.ChatCompletionAccumulator;
 import com.openai.models.ChatModel;
+import com.openai.models.FunctionDefinition;
+import com.openai.models.FunctionParameters;
 import com.openai.models.chat.completions.ChatCompletion;
+import com.openai.models.chat.completions.ChatCompletionAssistantMessageParam;
 import com.openai.models.chat.completions.ChatCompletionChunk;
 import com.openai.models.chat.completions.ChatCompletionCreateParams;
-import com.openai.models.chat.completions.ChatCompletionMessage;
+import com.openai.models.chat.completions.ChatCompletionFunctionTool;
 import com.openai.models.chat.completions.ChatCompletionMessageParam;
 import com.openai.models.chat.completions.ChatCompletionStreamOptions;
 import com.openai.models.chat.completions.ChatCompletionUserMessageParam;
+import com.openai.models.completions.CompletionUsage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class LlmService {
+    @Autowired
+    private Tracer tracer;
+
     @Value("${openai.api-key}")
     private String apiKey;
 
@@ -39,11 +72,66 @@ public class LlmService {
     @Autowired
     private TtsSynthesisService ttsService;
 
-    // OpenAI 客户端（延迟初始化）
-    private OpenAIClient openAIClient;
+    @Autowired
+    private PipelineMetrics metrics;
+
+    @Autowired
+    private HotPathLogger hotPathLogger;
+
+    @Autowired
+    private AdmissionController admission;
+
+    @Autowired
+    private ResilienceExecutor resilience;
+
+    @Autowired
+    private SessionStateManager sessionStates;
+
+    @Value("${resilience.llm.classify-timeout-ms:3000}")
+    private long classifyTimeoutMs;
+
+    @Value("${resilience.llm.classify-max-attempts:3}")
+    private int classifyMaxAttempts;
+
+    @Value("${resilience.llm.stream-timeout-ms:20000}")
+    private long streamTimeoutMs;
 
-    // 会话上下文管理：存储每个会话的历史消息（使用 ChatCompletionMessageParam 以便支持用户和助手消息）
-    private final Map<String, List<ChatCompletionMessageParam>> sessionContexts = new ConcurrentHashMap<>();
+    // 单次请求的提示词 token 上限（本地估算），超出时从最早的历史轮次开始裁剪
+    @Value("${openai.llm.max-prompt-tokens:3000}")
+    private int maxPromptTokens;
+
+    // 是否携带 prompt_cache_key，让服务端把前缀相同的请求路由到同一缓存
+    @Value("${openai.llm.prompt-cache-key.enabled:true}")
+    private boolean promptCacheKeyEnabled;
+
+    // 提示词模板：固定内容放在系统消息中作为稳定前缀，每轮变化的内容（用户输入）放在最后，便于服务端前缀缓存命中
+    private static final String INTENT_SYSTEM_PROMPT = "你是意图识别系统。判断用户输入是「闲聊」还是「下单」：" +
+            "想要购买、订购商品为「下单」，否则为「闲聊」。只回复「闲聊」或「下单」。";
+    private static final String CHAT_SYSTEM_PROMPT = "你是语音助手，回复会被朗读，请简短口语化。";
+    // 工具调用模式的系统提示：先输出工具调用，再输出确认回复，一次生成完成下单和回复
+    private static final String TOOL_SYSTEM_PROMPT = "你是语音点单助手，回复会被朗读，请简短口语化。" +
+            "如果用户想要购买、订购商品，先调用下单工具（每种商品调用一次），然后用一句话确认下单的商品和数量，" +
+            "不要编造订单号；否则不要调用工具，直接回答用户。";
+
+    // OpenAI 客户端（启动预热时创建，未开启预热时在第一次请求时创建）
+    private volatile OpenAIClient openAIClient;
+
+    // 会话上下文管理：存储每个会话的历史消息（只保留角色和文本，请求时再转换为 ChatCompletionMessageParam）
+    private final Map<String, List<ContextMessage>> sessionContexts = new ConcurrentHashMap<>();
+
+    private final PromptTokenCounter tokenCounter = new PromptTokenCounter();
+    private DistributionSummary promptTokensEstimated;
+    private Counter contextTrimmed;
+
+    @PostConstruct
+    public void registerMetrics() {
+        metrics.gauge("voice.llm.context.messages.stored", "所有会话保存的历史消息总数", sessionContexts,
+            contexts -> contexts.values().stream().mapToInt(List::size).sum());
+        promptTokensEstimated = metrics.summary("voice.llm.prompt.tokens.estimated", "本地估算的单次请求提示词 token 数");
+        contextTrimmed = metrics.counter("voice.llm.context.trimmed", "超出提示词 token 上限而裁剪的历史消息数");
+        metrics.gauge("voice.llm.prompt.tokens.calibration", "服务端 prompt_tokens 与本地估算值之比", tokenCounter,
+            PromptTokenCounter::getRatio);
+    }
 
     /**
      * 获取或创建 OpenAI 客户端
@@ -63,22 +151,51 @@ public class LlmService {
         return openAIClient;
     }
 
-    public String classifyIntent(String text) {
+    /**
+     * 预热：创建客户端并发起一次轻量请求（列出模型），提前完成 DNS 解析和 TLS 握手，连接留在客户端的连接池中
+     * 服务端不支持该接口时返回错误，连接同样已经建立，因此不视为失败。
+     */
+    public void warmUp() {
+        OpenAIClient client = getClient();
+        try {
+            client.models().list();
+        } catch (OpenAIServiceException e) {
+            log.debug("LLM warm-up request returned HTTP {}", e.statusCode());
+        }
+    }
+
+    public String classifyIntent(String sessionId, String text) {
         try {
             OpenAIClient client = getClient();
             
-            String intentPrompt = "你是一个意图识别助手。请判断用户的意图是「闲聊」还是「下单」。" +
-                    "如果用户想要购买、订购商品，请回复「下单」；否则回复「闲聊」。\n\n" +
-                    "用户输入：" + text + "\n\n请只回复「闲聊」或「下单」，不要有其他内容。";
-            
-            ChatCompletionCreateParams createParams = ChatCompletionCreateParams.builder()
+            // 所有会话共用同一个系统消息前缀，用户输入单独作为用户消息
+            ChatCompletionCreateParams.Builder paramsBuilder = ChatCompletionCreateParams.builder()
                     .model(model)  // 直接使用字符串，或者使用 ChatModel.of(model)
-                    .addSystemMessage("你是一个精准的意图识别系统。")
-                    .addUserMessage(intentPrompt)
-                    .maxCompletionTokens(50)
-                    .build();
+                    .addSystemMessage(INTENT_SYSTEM_PROMPT)
+                    .addUserMessage(text)
+                    .maxCompletionTokens(8);
+            if (promptCacheKeyEnabled) {
+                paramsBuilder.promptCacheKey("voice-intent");
+            }
+            ChatCompletionCreateParams createParams = paramsBuilder.build();
             
-            ChatCompletion result = client.chat().completions().create(createParams);
+            // 意图识别是幂等调用，超时或失败时带抖动重试
+            ChatCompletion result = resilience.execute(ResilienceExecutor.LLM, sessionId, classifyTimeoutMs,
+                classifyMaxAttempts, timeoutMs -> {
+                    AdmissionController.Permit permit = admission.acquire(AdmissionController.PROVIDER_LLM, sessionId);
+                    try {
+                        ChatCompletion completion = client.chat().completions().create(createParams,
+                            RequestOptions.builder().timeout(Duration.ofMillis(timeoutMs)).build());
+                        permit.success();
+                        return completion;
+                    } catch (Exception e) {
+                        permit.failure(e);
+                        if (AdmissionController.isQuotaError(e)) {
+                            throw new OverloadException(AdmissionController.PROVIDER_LLM, OverloadException.REASON_QUOTA);
+                        }
+                        throw e;
+                    }
+                });
             String intent = result.choices().stream()
                     .flatMap(choice -> choice.message().content().stream())
                     .collect(Collectors.joining())
@@ -92,32 +209,99 @@ public class LlmService {
             } else {
                 return "chitchat";
             }
+        } catch (OverloadException e) {
+            throw e;
         } catch (Exception e) {
-            log.error("Intent classification failed", e);
+            log.error("Intent classification failed after retries", e);
             return "chitchat"; // 默认闲聊
         }
     }
 
     public void streamGenerate(String sessionId, String prompt, Consumer<String> onTextChunk) {
+        generate(sessionId, prompt, List.of(), null, null, onTextChunk);
+    }
+
+    /**
+     * 带工具定义的流式生成：模型在同一次调用中先输出工具调用参数，再输出回复文本，
+     * 代替「意图识别 + 下单后再生成确认回复」的两次 LLM 往返。
+     *
+     * @param tools MCP 服务声明的工具
+     * @param onIntent 收到第一个工具调用增量（order）或第一段回复文本（chitchat）时回调一次
+     * @param onToolCalls 工具调用参数接收完整后回调一次（回复文本开始之前或流结束时），在生成线程上同步执行；
+     *                    返回工具执行结果的文字说明（如下单的商品和订单号），与回复文本一起作为本轮助手消息保存
+     */
+    public void streamGenerateWithTools(String sessionId, String userText, List<ToolDescriptor> tools,
+                                        Consumer<String> onIntent, Function<List<ToolCall>, String> onToolCalls,
+                                        Consumer<String> onTextChunk) {
+        generate(sessionId, userText, tools, onIntent, onToolCalls, onTextChunk);
+    }
+
+    private void generate(String sessionId, String prompt, List<ToolDescriptor> tools, Consumer<String> onIntent,
+                          Function<List<ToolCall>, String> onToolCalls, Consumer<String> onTextChunk) {
+        // 获取或初始化会话上下文
+        List<ContextMessage> messages = sessionContexts.computeIfAbsent(sessionId, k -> new ArrayList<>());
+        String systemPrompt = tools.isEmpty() ? CHAT_SYSTEM_PROMPT : TOOL_SYSTEM_PROMPT;
+        long estimatedRaw = trimContext(sessionId, messages, systemPrompt, tools, prompt);
+        int estimatedTokens = tokenCounter.calibrated(estimatedRaw);
+        promptTokensEstimated.record(estimatedTokens);
+        int contextMessages = messages.size();
+
+        Span generationSpan = tracer.spanBuilder("llm.generation")
+            .setAttribute("gen_ai.span.kind", "LLM")
+            .setAttribute("gen_ai.request.model", model)
+            .setAttribute("llm.session.id", sessionId)
+            .setAttribute("llm.context.messages", contextMessages)
+            .setAttribute("llm.tools", tools.size())
+            .setAttribute("llm.prompt.tokens.estimated", estimatedTokens)
+            .startSpan();
+        // 每个流式 chunk 视为一个输出 token，用于计算首 token 耗时和 token 间隔
+        WebSocketPerformanceMeasure measure = WebSocketPerformanceMeasure.create();
+        CompletionUsage usage = null;
+        AdmissionController.Permit permit;
+        CircuitBreaker breaker;
         try {
+            // 流式输出无法安全重试，只做熔断和截止时间控制
+            breaker = resilience.enter(ResilienceExecutor.LLM);
+            try {
+                permit = admission.acquire(AdmissionController.PROVIDER_LLM, sessionId);
+            } catch (OverloadException e) {
+                breaker.onIgnore();
+                throw e;
+            }
+        } catch (OverloadException e) {
+            generationSpan.setAttribute("llm.rejected", e.getReason());
+            generationSpan.end();
+            throw e;
+        }
+
+        try (Scope scope = generationSpan.makeCurrent()) {
             OpenAIClient client = getClient();
             
-            // 获取或初始化会话上下文
-            List<ChatCompletionMessageParam> messages = sessionContexts.computeIfAbsent(sessionId, k -> new ArrayList<>());
-            
             // 构建请求参数
             ChatCompletionCreateParams.Builder paramsBuilder = ChatCompletionCreateParams.builder()
                     .model(model)  // 直接使用字符串，或者使用 ChatModel.of(model)
                     .streamOptions(ChatCompletionStreamOptions.builder().includeUsage(true).build())
-                    .maxCompletionTokens(2048);
+                    .maxCompletionTokens(2048)
+                    .addSystemMessage(systemPrompt);
+            if (promptCacheKeyEnabled) {
+                // 前缀为系统消息 + 该会话的历史消息，按会话路由缓存
+                paramsBuilder.promptCacheKey(sessionId);
+            }
+
+            // 工具调用模式：工具定义和系统提示不写入会话上下文
+            Map<String, String> toolNames = new HashMap<>();
+            if (!tools.isEmpty()) {
+                for (ToolDescriptor tool : tools) {
+                    String functionName = functionName(tool.getName());
+                    toolNames.put(functionName, tool.getName());
+                    paramsBuilder.addTool(toFunctionTool(functionName, tool));
+                }
+            }
             
             // 添加历史消息
-            messages.forEach(paramsBuilder::addMessage);
+            messages.forEach(message -> paramsBuilder.addMessage(toParam(message)));
             
-            // 创建并添加新的用户消息
-            ChatCompletionUserMessageParam userMessage = ChatCompletionUserMessageParam.builder()
-                    .content(ChatCompletionUserMessageParam.Content.ofText(prompt))
-                    .build();
+            // 添加新的用户消息
             paramsBuilder.addUserMessage(prompt);
             
             ChatCompletionCreateParams createParams = paramsBuilder.build();
@@ -126,47 +310,265 @@ public class LlmService {
             
             // 使用 ChatCompletionAccumulator 来累积流式响应
             ChatCompletionAccumulator accumulator = ChatCompletionAccumulator.create();
+            SessionLogStats logStats = hotPathLogger.stats(sessionId);
+            StringBuilder assistantText = new StringBuilder();
+            ToolCallDeltas toolCalls = new ToolCallDeltas(toolNames, onToolCalls);
+            boolean[] intentSent = {onIntent == null};
             
             // 流式调用
+            RequestOptions requestOptions = RequestOptions.builder()
+                    .timeout(Duration.ofMillis(resilience.deadlineMs(sessionId, streamTimeoutMs)))
+                    .build();
             try (StreamResponse<ChatCompletionChunk> streamResponse = 
-                    client.chat().completions().createStreaming(createParams)) {
+                    client.chat().completions().createStreaming(createParams, requestOptions)) {
                 
                 streamResponse.stream()
                         .peek(accumulator::accumulate)  // 累积每个 chunk
                         .flatMap(completion -> completion.choices().stream())
-                        .flatMap(choice -> choice.delta().content().stream())
+                        .map(ChatCompletionChunk.Choice::delta)
+                        .peek(delta -> delta.toolCalls().ifPresent(deltas -> {
+                            if (!deltas.isEmpty()) {
+                                permit.firstResponse();
+                                if (!intentSent[0]) {
+                                    intentSent[0] = true;
+                                    onIntent.accept("order");
+                                }
+                            }
+                            toolCalls.accumulate(deltas);
+                        }))
+                        .flatMap(delta -> delta.content().stream())
                         .forEach(text -> {
                             if (text != null && !text.isEmpty()) {
+                                permit.firstResponse();
+                                if (!intentSent[0]) {
+                                    intentSent[0] = true;
+                                    onIntent.accept("chitchat");
+                                }
+                                // 回复文本开始时工具调用参数已完整，先执行工具再播报
+                                toolCalls.complete();
+                                measure.recordChunk();
+                                logStats.recordLlmChunk();
+                                assistantText.append(text);
                                 if (onTextChunk != null) {
                                     onTextChunk.accept(text);
                                 }
-                                log.debug("LLM chunk: {}", text);
+                                if (log.isDebugEnabled() && logStats.tryLog()) {
+                                    log.debug("LLM chunk: {}", text);
+                                }
                             }
                         });
             }
+            toolCalls.complete();
             
             // 获取完整的 ChatCompletion
             ChatCompletion chatCompletion = accumulator.chatCompletion();
+            if (chatCompletion != null) {
+                usage = chatCompletion.usage().orElse(null);
+            }
             
-            // 保存用户消息和助手消息到上下文
-            // 1. 保存用户消息
-            messages.add(ChatCompletionMessageParam.ofUser(userMessage));
+            if (usage != null) {
+                tokenCounter.calibrate(estimatedRaw, usage.promptTokens());
+            }
             
-            // 2. 保存助手消息（从 ChatCompletion 中获取）
-            if (chatCompletion != null && !chatCompletion.choices().isEmpty()) {
-                ChatCompletionMessage assistantMessage = chatCompletion.choices().get(0).message();
-                // 使用 toParam() 转换为 ChatCompletionAssistantMessageParam，然后包装为 ChatCompletionMessageParam
-                messages.add(ChatCompletionMessageParam.ofAssistant(assistantMessage.toParam()));
+            // 保存用户消息和助手消息到上下文
+            // 只保存文本：上下文中不保留 tool_calls / tool 结果消息（裁剪历史时无法保证成对），
+            // 工具调用模式下模型常常只输出 tool_calls，此时以工具执行结果的说明作为助手消息，避免保存空回复
+            String reply = toolCalls.describeResult(assistantText.toString());
+            if (reply.isEmpty()) {
+                log.warn("LLM returned neither text nor tool calls for session: {}, exchange not saved", sessionId);
+            } else {
+                messages.add(new ContextMessage(ContextMessage.ROLE_USER, prompt));
+                messages.add(new ContextMessage(ContextMessage.ROLE_ASSISTANT, reply));
+                // 写入会话状态存储，断线重连或切换节点后可恢复
+                sessionStates.appendExchange(sessionId, prompt, reply);
             }
             
+            permit.success();
+            breaker.onSuccess();
             log.info("LLM generation completed for session: {}", sessionId);
             
         } catch (Exception e) {
+            permit.failure(e);
+            if (AdmissionController.isQuotaError(e)) {
+                breaker.onIgnore();
+            } else {
+                breaker.onFailure();
+            }
             log.error("LLM stream generation failed for session: {}", sessionId, e);
+            generationSpan.recordException(e);
+            generationSpan.setStatus(StatusCode.ERROR);
+            if (AdmissionController.isQuotaError(e)) {
+                // 上游限流：交给调用方向客户端发送 busy，而不是生成兜底回复
+                throw new OverloadException(AdmissionController.PROVIDER_LLM, OverloadException.REASON_QUOTA);
+            }
             if (onTextChunk != null) {
                 onTextChunk.accept("抱歉，我遇到了一些问题，请稍后再试。");
             }
+        } finally {
+            permit.close();
+            recordGeneration(generationSpan, measure, usage, contextMessages);
+            generationSpan.end();
+        }
+    }
+
+    /**
+     * 估算本次请求的提示词 token 数（未校准），超出上限时从最早的历史消息开始按轮次裁剪。
+     * 裁剪到上限的 3/4，之后几轮请求的前缀保持不变，服务端前缀缓存仍可命中。
+     */
+    private long trimContext(String sessionId, List<ContextMessage> messages, String systemPrompt,
+                             List<ToolDescriptor> tools, String prompt) {
+        long fixed = PromptTokenCounter.countMessage(systemPrompt) + PromptTokenCounter.countMessage(prompt);
+        for (ToolDescriptor tool : tools) {
+            fixed += PromptTokenCounter.countRaw(tool.getName()) + PromptTokenCounter.countRaw(tool.getDescription())
+                + PromptTokenCounter.countRaw(String.valueOf(tool.getInputSchema()));
+        }
+        long history = 0;
+        for (ContextMessage message : messages) {
+            history += PromptTokenCounter.countMessage(message.getContent());
+        }
+        if (tokenCounter.calibrated(fixed + history) <= maxPromptTokens) {
+            return fixed + history;
+        }
+
+        int removed = 0;
+        long target = maxPromptTokens * 3L / 4;
+        // 成对移除，保证历史总是从用户消息开始
+        while (!messages.isEmpty() && (tokenCounter.calibrated(fixed + history) > target
+                || !ContextMessage.ROLE_USER.equals(messages.get(0).getRole()))) {
+            history -= PromptTokenCounter.countMessage(messages.remove(0).getContent());
+            removed++;
+        }
+        contextTrimmed.increment(removed);
+        log.info("Trimmed {} context messages for session {} to fit {} prompt tokens", removed, sessionId, maxPromptTokens);
+        return fixed + history;
+    }
+
+    private static ChatCompletionMessageParam toParam(ContextMessage message) {
+        if (ContextMessage.ROLE_ASSISTANT.equals(message.getRole())) {
+            return ChatCompletionMessageParam.ofAssistant(ChatCompletionAssistantMessageParam.builder()
+                    .content(message.getContent())
+                    .build());
+        }
+        return ChatCompletionMessageParam.ofUser(ChatCompletionUserMessageParam.builder()
+                .content(message.getContent())
+                .build());
+    }
+
+    // 函数名只允许字母、数字、下划线和连字符，MCP 方法名中的点号需要替换
+    private static String functionName(String toolName) {
+        return toolName.replaceAll("[^a-zA-Z0-9_-]", "_");
+    }
+
+    private static ChatCompletionFunctionTool toFunctionTool(String functionName, ToolDescriptor tool) {
+        FunctionParameters.Builder parameters = FunctionParameters.builder();
+        if (tool.getInputSchema() != null) {
+            tool.getInputSchema().forEach((key, value) -> parameters.putAdditionalProperty(key, JsonValue.from(value)));
+        }
+        FunctionDefinition.Builder function = FunctionDefinition.builder()
+                .name(functionName)
+                .parameters(parameters.build());
+        if (tool.getDescription() != null) {
+            function.description(tool.getDescription());
+        }
+        return ChatCompletionFunctionTool.builder().function(function.build()).build();
+    }
+
+    /**
+     * 按 index 拼接流式工具调用增量：id 和函数名只出现在第一个增量中，参数分多段到达
+     */
+    private static final class ToolCallDeltas {
+        private final Map<String, String> toolNames;
+        private final Function<List<ToolCall>, String> onComplete;
+        private final Map<Long, ToolCall> calls = new TreeMap<>();
+        private final Map<Long, StringBuilder> arguments = new HashMap<>();
+        private boolean completed;
+        // onComplete 返回的工具执行结果说明
+        private String result;
+
+        ToolCallDeltas(Map<String, String> toolNames, Function<List<ToolCall>, String> onComplete) {
+            this.toolNames = toolNames;
+            this.onComplete = onComplete;
+        }
+
+        void accumulate(List<ChatCompletionChunk.Choice.Delta.ToolCall> deltas) {
+            for (ChatCompletionChunk.Choice.Delta.ToolCall delta : deltas) {
+                ToolCall call = calls.computeIfAbsent(delta.index(), index -> new ToolCall());
+                delta.id().ifPresent(call::setId);
+                delta.function().ifPresent(function -> {
+                    function.name().ifPresent(name -> call.setName(toolNames.getOrDefault(name, name)));
+                    function.arguments().ifPresent(chunk ->
+                        arguments.computeIfAbsent(delta.index(), index -> new StringBuilder()).append(chunk));
+                });
+            }
+        }
+
+        // 只回调一次；之后到达的增量（模型在回复文本之后又发起调用）不再执行
+        void complete() {
+            if (completed || calls.isEmpty()) {
+                return;
+            }
+            completed = true;
+            calls.forEach((index, call) -> {
+                StringBuilder args = arguments.get(index);
+                call.setArguments(args != null ? args.toString() : "{}");
+            });
+            log.info("LLM tool calls: {}", calls.values());
+            if (onComplete != null) {
+                result = onComplete.apply(new ArrayList<>(calls.values()));
+            }
+        }
+
+        /**
+         * 本轮要保存的助手消息：回复文本之后接工具执行结果的说明，两者都没有时为空字符串
+         */
+        String describeResult(String text) {
+            String trimmed = text.trim();
+            if (result == null || result.isBlank()) {
+                return trimmed;
+            }
+            return trimmed.isEmpty() ? result : trimmed + result;
+        }
+    }
+
+    // 将首 token 耗时、输出速率和 token 用量写入 Span 与指标
+    private void recordGeneration(Span span, WebSocketPerformanceMeasure measure, CompletionUsage usage, int contextMessages) {
+        measure.applyToSpan(span, "llm");
+        metrics.recordStage(PipelineMetrics.STAGE_LLM, measure);
+
+        long promptTokens = -1;
+        long completionTokens = -1;
+        if (usage != null) {
+            promptTokens = usage.promptTokens();
+            completionTokens = usage.completionTokens();
+            span.setAttribute("gen_ai.usage.input_tokens", promptTokens);
+            span.setAttribute("gen_ai.usage.output_tokens", completionTokens);
+        }
+
+        // 输出速率只统计首 token 之后的解码阶段，避免把排队和 prefill 时间算进去
+        double tokensPerSecond = -1;
+        long decodeNanos = measure.getTimeToLastChunkNanos() - measure.getTimeToFirstChunkNanos();
+        long outputTokens = completionTokens >= 0 ? completionTokens : measure.getChunkCount();
+        if (measure.getChunkCount() > 1 && decodeNanos > 0) {
+            tokensPerSecond = (outputTokens - 1) * 1_000_000_000.0 / decodeNanos;
+            span.setAttribute("llm.tokens_per_second", tokensPerSecond);
+        }
+
+        metrics.recordLlmGeneration(measure.getTimeToFirstChunkNanos(), tokensPerSecond,
+            promptTokens, completionTokens, contextMessages);
+    }
+
+    /**
+     * 用会话状态存储中的历史消息恢复上下文（断线重连时调用）
+     */
+    public void restoreContext(String sessionId, List<ContextMessage> history) {
+        List<ContextMessage> messages = new ArrayList<>();
+        for (ContextMessage message : history) {
+            if (ContextMessage.ROLE_USER.equals(message.getRole()) || ContextMessage.ROLE_ASSISTANT.equals(message.getRole())) {
+                messages.add(message);
+            }
         }
+        sessionContexts.put(sessionId, messages);
+        log.info("Restored {} context messages for session: {}", messages.size(), sessionId);
     }
 
     public void clearContext(String sessionId) {
@@ -0,0 +1,257 @@
+package com.example.asr.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * 常驻 MCP 进程的 JSON-RPC 客户端
+ * 请求按行写入同一个进程的 stdin，读线程按 id 匹配响应，多个请求可以同时在途（连接级流水线）；
+ * linger 窗口内到达的请求（可来自不同会话）合并为一个 JSON-RPC 2.0 批量请求（数组）写出。
+ */
+@Slf4j
+final class McpProcessClient {
+    private final List<String> command;
+    private final long lingerMs;
+    private final int maxBatchSize;
+    private final ObjectMapper objectMapper;
+    private final IntConsumer batchSizeListener;
+
+    private final AtomicLong ids = new AtomicLong();
+    private final Map<Long, CompletableFuture<JsonNode>> pending = new ConcurrentHashMap<>();
+    // 最近一次读到进程输出的时间，用于区分进程卡死和个别请求慢
+    private volatile long lastOutputNanos = System.nanoTime();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "mcp-batch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 以下字段由 this 保护
+    private List<ObjectNode> batch = new ArrayList<>();
+    private Process process;
+    private BufferedWriter writer;
+    // 已写入当前进程、尚未收到响应的请求 id，进程退出时只让这些请求失败
+    private Set<Long> written;
+
+    /**
+     * @param lingerMs 批量窗口，0 表示每个请求立即单独写出
+     * @param batchSizeListener 每次写出时回调本批请求数，用于统计
+     */
+    McpProcessClient(List<String> command, long lingerMs, int maxBatchSize, ObjectMapper objectMapper,
+                     IntConsumer batchSizeListener) {
+        this.command = command;
+        this.lingerMs = lingerMs;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.objectMapper = objectMapper;
+        this.batchSizeListener = batchSizeListener;
+    }
+
+    /**
+     * 发起一次调用，返回完整的 JSON-RPC 响应（包含 result 或 error）
+     * 调用方负责在截止时间后取消返回的 future。
+     */
+    CompletableFuture<JsonNode> call(String method, Map<String, Object> params) {
+        return callAll(method, List.of(params)).get(0);
+    }
+
+    /**
+     * 同一方法的多次调用，保证在同一个批量请求中写出（不受 linger 窗口影响）
+     */
+    List<CompletableFuture<JsonNode>> callAll(String method, List<Map<String, Object>> paramsList) {
+        List<CompletableFuture<JsonNode>> futures = new ArrayList<>(paramsList.size());
+        synchronized (this) {
+            for (Map<String, Object> params : paramsList) {
+                long id = ids.incrementAndGet();
+                ObjectNode request = objectMapper.createObjectNode();
+                request.put("jsonrpc", "2.0");
+                request.put("id", id);
+                request.put("method", method);
+                request.set("params", objectMapper.valueToTree(params));
+
+                CompletableFuture<JsonNode> future = new CompletableFuture<>();
+                pending.put(id, future);
+                future.whenComplete((response, error) -> pending.remove(id));
+                futures.add(future);
+                batch.add(request);
+            }
+            if (lingerMs <= 0 || batch.size() >= maxBatchSize) {
+                flush();
+            } else if (batch.size() == paramsList.size()) {
+                // 窗口内第一批请求负责调度写出
+                flusher.schedule(this::flushQuietly, lingerMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * 结束当前进程（如疑似卡死），在途请求全部失败，下一次调用时重新启动
+     */
+    synchronized void recycle() {
+        if (process != null) {
+            log.warn("Recycling MCP process (pid {}), failing {} pending calls", process.pid(), pending.size());
+            process.destroyForcibly();
+            process = null;
+            writer = null;
+            written = null;
+        }
+    }
+
+    /**
+     * 进程自 sinceNanos 起没有任何输出时才结束它；期间仍有其他响应返回说明只是个别请求慢，
+     * 不应让共享进程上所有会话的在途请求一起失败
+     *
+     * @return 是否回收了进程
+     */
+    synchronized boolean recycleIfSilentSince(long sinceNanos) {
+        if (process == null || lastOutputNanos - sinceNanos > 0) {
+            return false;
+        }
+        recycle();
+        return true;
+    }
+
+    void close() {
+        flusher.shutdownNow();
+        recycle();
+    }
+
+    private void flushQuietly() {
+        synchronized (this) {
+            try {
+                flush();
+            } catch (Exception e) {
+                log.error("Failed to flush MCP batch", e);
+            }
+        }
+    }
+
+    // 写出当前批次：单个请求按对象写出，多个请求按 JSON-RPC 批量数组写出
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<ObjectNode> requests = batch;
+        batch = new ArrayList<>();
+        try {
+            String line;
+            if (requests.size() == 1) {
+                line = objectMapper.writeValueAsString(requests.get(0));
+            } else {
+                ArrayNode array = objectMapper.createArrayNode();
+                array.addAll(requests);
+                line = objectMapper.writeValueAsString(array);
+            }
+            BufferedWriter out = ensureProcess();
+            for (ObjectNode request : requests) {
+                written.add(request.get("id").asLong());
+            }
+            out.write(line);
+            out.newLine();
+            out.flush();
+            batchSizeListener.accept(requests.size());
+        } catch (Exception e) {
+            log.error("Failed to write {} MCP requests", requests.size(), e);
+            for (ObjectNode request : requests) {
+                CompletableFuture<JsonNode> future = pending.get(request.get("id").asLong());
+                if (future != null) {
+                    future.completeExceptionally(e);
+                }
+            }
+            recycle();
+        }
+    }
+
+    private BufferedWriter ensureProcess() throws IOException {
+        if (process != null && process.isAlive()) {
+            return writer;
+        }
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process started = pb.start();
+        Set<Long> startedIds = ConcurrentHashMap.newKeySet();
+        process = started;
+        writer = new BufferedWriter(new OutputStreamWriter(started.getOutputStream(), StandardCharsets.UTF_8));
+        written = startedIds;
+        Thread reader = new Thread(() -> readResponses(started, startedIds), "mcp-reader-" + started.pid());
+        reader.setDaemon(true);
+        reader.start();
+        log.info("Started MCP process {} (pid {})", command, started.pid());
+        return writer;
+    }
+
+    private void readResponses(Process source, Set<Long> sourceIds) {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(source.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lastOutputNanos = System.nanoTime();
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    JsonNode node = objectMapper.readTree(line);
+                    if (node.isArray()) {
+                        node.forEach(response -> complete(response, sourceIds));
+                    } else {
+                        complete(node, sourceIds);
+                    }
+                } catch (Exception e) {
+                    log.warn("Ignoring malformed MCP output: {}", line);
+                }
+            }
+        } catch (IOException e) {
+            log.debug("MCP process output closed", e);
+        }
+        // 进程退出：仍在等待的请求无法再收到响应
+        synchronized (this) {
+            if (process == source) {
+                process = null;
+                writer = null;
+                written = null;
+            }
+        }
+        IOException exited = new IOException("MCP process exited");
+        for (Long id : sourceIds) {
+            CompletableFuture<JsonNode> future = pending.get(id);
+            if (future != null) {
+                future.completeExceptionally(exited);
+            }
+        }
+        log.warn("MCP process (pid {}) exited", source.pid());
+    }
+
+    private void complete(JsonNode response, Set<Long> sourceIds) {
+        JsonNode id = response.get("id");
+        if (id == null || !id.canConvertToLong()) {
+            log.warn("MCP response without id: {}", response);
+            return;
+        }
+        sourceIds.remove(id.asLong());
+        CompletableFuture<JsonNode> future = pending.get(id.asLong());
+        if (future != null) {
+            future.complete(response);
+        }
+    }
+}
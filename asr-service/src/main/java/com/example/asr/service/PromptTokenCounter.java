@@ -0,0 +1,72 @@
+package com.example.asr.service;
+
+/**
+ * 本地提示词 token 估算
+ * 不依赖具体模型的分词器：汉字、假名、韩文和全角标点按 1 个 token 计，连续的字母数字按每 4 个字符 1 个 token 计，
+ * 其他半角符号按 1 个 token 计；再用服务端返回的实际 prompt_tokens 按指数滑动平均校准比例。
+ */
+final class PromptTokenCounter {
+    // 每条消息的角色和分隔符开销
+    static final int MESSAGE_OVERHEAD = 4;
+    private static final double CALIBRATION_WEIGHT = 0.1;
+    private static final double MIN_RATIO = 0.5;
+    private static final double MAX_RATIO = 2.0;
+
+    // 实际 token 数 / 估算值
+    private volatile double ratio = 1.0;
+
+    /**
+     * 单条消息的估算值（未校准，含消息开销）
+     */
+    static int countMessage(String content) {
+        return MESSAGE_OVERHEAD + countRaw(content);
+    }
+
+    /**
+     * 按校准比例换算为服务端口径的 token 数
+     */
+    int calibrated(long estimatedRaw) {
+        return (int) Math.ceil(estimatedRaw * ratio);
+    }
+
+    /**
+     * 用一次请求的估算值（未校准）和服务端返回的实际值更新校准比例
+     */
+    void calibrate(long estimatedRaw, long actual) {
+        if (estimatedRaw <= 0 || actual <= 0) {
+            return;
+        }
+        double observed = Math.max(MIN_RATIO, Math.min(MAX_RATIO, (double) actual / estimatedRaw));
+        ratio = ratio + CALIBRATION_WEIGHT * (observed - ratio);
+    }
+
+    double getRatio() {
+        return ratio;
+    }
+
+    /**
+     * 未校准的估算值，用于和服务端返回的 prompt_tokens 对比
+     */
+    static int countRaw(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int tokens = 0;
+        int wordChars = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (codePoint < 0x80 && Character.isLetterOrDigit(codePoint)) {
+                wordChars++;
+                continue;
+            }
+            tokens += (wordChars + 3) / 4;
+            wordChars = 0;
+            if (!Character.isWhitespace(codePoint)) {
+                // 汉字、全角标点和其他符号
+                tokens++;
+            }
+        }
+        return tokens + (wordChars + 3) / 4;
+    }
+}
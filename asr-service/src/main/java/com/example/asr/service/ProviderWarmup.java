@@ -0,0 +1,168 @@
+package com.example.asr.service;
+
+import com.alibaba.dashscope.protocol.okhttp.OkHttpClientFactory;
+import com.alibaba.dashscope.utils.Constants;
+import com.example.asr.metrics.PipelineMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 上游连接预热
+ * 启动时（ApplicationRunner 阶段，Spring Boot 在所有 Runner 结束后才把就绪状态切换为 ACCEPTING_TRAFFIC）
+ * 创建各上游客户端并建立连接：
+ * - DashScope（ASR / TTS）：SDK 的所有 Recognition / SpeechSynthesizer 共用一个 OkHttpClient，
+ *   并发发起若干次 HEAD 请求，在其连接池中留下已完成 TLS 握手的空闲连接，WebSocket 握手可直接复用
+ * - LLM（OpenAI 兼容接口）：创建客户端并发起一次列出模型的请求，HTTP/2 连接留在客户端连接池中
+ * 之后按固定间隔重复，避免空闲连接被回收。
+ */
+@Slf4j
+@Component
+public class ProviderWarmup implements ApplicationRunner {
+    public static final String PROVIDER_DASHSCOPE = "dashscope";
+    public static final String PROVIDER_LLM = "llm";
+
+    @Autowired
+    private LlmService llmService;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    @Value("${provider.warmup.enabled:true}")
+    private boolean enabled;
+
+    // 就绪前等待预热的最长时间，超时后照常就绪，首个请求再建立连接
+    @Value("${provider.warmup.timeout-ms:10000}")
+    private long timeoutMs;
+
+    // 每个上游保持的空闲连接数
+    @Value("${provider.warmup.connections:2}")
+    private int connections;
+
+    // 保活间隔，应小于上游和连接池的空闲超时，0 表示不保活
+    @Value("${provider.warmup.keepalive-interval-ms:60000}")
+    private long keepaliveIntervalMs;
+
+    // 各上游最近一次预热是否成功
+    private final Map<String, Boolean> warm = new ConcurrentHashMap<>();
+    private final ExecutorService warmupExecutor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "provider-warmup");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService keepalive = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "provider-keepalive");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Override
+    public void run(ApplicationArguments args) {
+        registerMetrics();
+        if (!enabled) {
+            log.info("Provider warm-up disabled");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            warmUpAll().get(timeoutMs, TimeUnit.MILLISECONDS);
+            log.info("Provider warm-up finished in {} ms: {}", System.currentTimeMillis() - start, warm);
+        } catch (TimeoutException e) {
+            log.warn("Provider warm-up did not finish within {} ms, accepting traffic anyway: {}", timeoutMs, warm);
+        } catch (Exception e) {
+            log.warn("Provider warm-up failed: {}", e.getMessage());
+        }
+        if (keepaliveIntervalMs > 0) {
+            keepalive.scheduleWithFixedDelay(this::keepAlive, keepaliveIntervalMs, keepaliveIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void registerMetrics() {
+        OkHttpClient dashscopeClient = OkHttpClientFactory.getOkHttpClient();
+        metrics.gauge("voice.provider.pool.connections", "上游 HTTP 连接池中的连接数", dashscopeClient,
+            client -> client.connectionPool().connectionCount(), "provider", PROVIDER_DASHSCOPE, "state", "total");
+        metrics.gauge("voice.provider.pool.connections", "上游 HTTP 连接池中的连接数", dashscopeClient,
+            client -> client.connectionPool().idleConnectionCount(), "provider", PROVIDER_DASHSCOPE, "state", "idle");
+        metrics.gauge("voice.provider.pool.running_calls", "上游 HTTP 客户端正在执行的请求数", dashscopeClient,
+            client -> client.dispatcher().runningCallsCount(), "provider", PROVIDER_DASHSCOPE);
+        for (String provider : List.of(PROVIDER_DASHSCOPE, PROVIDER_LLM)) {
+            metrics.gauge("voice.provider.warm", "上游最近一次预热 / 保活是否成功", warm,
+                states -> Boolean.TRUE.equals(states.get(provider)) ? 1 : 0, "provider", provider);
+        }
+    }
+
+    private CompletableFuture<Void> warmUpAll() {
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        tasks.add(CompletableFuture.runAsync(() -> track(PROVIDER_LLM, llmService::warmUp), warmupExecutor));
+        // 并发请求才能建立多条连接，顺序请求只会复用同一条
+        List<CompletableFuture<Void>> dashscope = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, connections); i++) {
+            dashscope.add(CompletableFuture.runAsync(this::touchDashscope, warmupExecutor));
+        }
+        tasks.add(CompletableFuture.allOf(dashscope.toArray(new CompletableFuture[0]))
+            .handle((ignored, e) -> {
+                markWarm(PROVIDER_DASHSCOPE, e);
+                return null;
+            }));
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0]));
+    }
+
+    private void keepAlive() {
+        try {
+            warmUpAll().get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.debug("Provider keepalive incomplete: {}", warm);
+        }
+    }
+
+    private void track(String provider, Runnable warmUp) {
+        try {
+            warmUp.run();
+            markWarm(provider, null);
+        } catch (RuntimeException e) {
+            markWarm(provider, e);
+        }
+    }
+
+    private void markWarm(String provider, Throwable error) {
+        warm.put(provider, error == null);
+        if (error != null) {
+            log.warn("Warm-up of {} failed: {}", provider, error.getMessage());
+        }
+    }
+
+    // 任意 HTTP 响应都说明连接已建立；只有网络错误视为失败
+    private void touchDashscope() {
+        Request request = new Request.Builder().url(Constants.baseHttpApiUrl).head().build();
+        try (Response response = OkHttpClientFactory.getOkHttpClient().newCall(request).execute()) {
+            log.debug("DashScope warm-up: HTTP {}", response.code());
+        } catch (IOException e) {
+            throw new IllegalStateException("DashScope unreachable: " + e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        keepalive.shutdownNow();
+        warmupExecutor.shutdownNow();
+    }
+}
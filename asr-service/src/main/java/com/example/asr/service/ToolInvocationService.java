@@ -1,83 +1,170 @@
 package com.example.asr.service;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.asr.admission.OverloadException;
+import com.example.asr.metrics.PipelineMetrics;
+import com.example.asr.model.OrderLine;
+import com.example.asr.model.ToolDescriptor;
+import com.example.asr.resilience.ResilienceExecutor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
-import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Slf4j
+@Lazy
 @Service
 public class ToolInvocationService {
+    public static final String ORDER_PLACE = "order.place";
+
     @Value("${mcp.order-service.command}")
     private String mcpCommand;
 
     @Value("${mcp.order-service.script-path}")
     private String mcpScriptPath;
 
+    // 跨会话合并下单请求的窗口，0 表示不合并
+    @Value("${mcp.order-service.batch.linger-ms:0}")
+    private long batchLingerMs;
+
+    @Value("${mcp.order-service.batch.max-size:32}")
+    private int batchMaxSize;
+
+    @Value("${resilience.mcp.timeout-ms:5000}")
+    private long timeoutMs;
+
+    @Autowired
+    private ResilienceExecutor resilience;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    public String placeOrder(String item, int quantity) {
+    // 常驻的 MCP 进程，替代每次调用启动一个 Python 进程
+    private McpProcessClient mcpClient;
+    private Counter ordersPlaced;
+
+    // MCP 声明的工具列表，首次成功获取后缓存
+    private volatile List<ToolDescriptor> tools;
+
+    @PostConstruct
+    public void init() {
+        DistributionSummary batchSize = metrics.summary("voice.mcp.batch_size", "每次写入 MCP 进程的 JSON-RPC 请求数");
+        ordersPlaced = metrics.counter("voice.mcp.orders", "下单成功的订单行数");
+        mcpClient = new McpProcessClient(List.of(mcpCommand, mcpScriptPath), batchLingerMs, batchMaxSize,
+            objectMapper, batchSize::record);
+        log.info("MCP order client: {} {}, batch linger {}ms, max batch {}", mcpCommand, mcpScriptPath,
+            batchLingerMs, batchMaxSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        mcpClient.close();
+    }
+
+    /**
+     * 获取 MCP 服务声明的工具（tools/list），用于生成 LLM 的函数定义
+     *
+     * @return 获取失败时返回空列表，调用方回退到意图识别流程
+     */
+    public List<ToolDescriptor> listTools() {
+        List<ToolDescriptor> cached = tools;
+        if (cached != null) {
+            return cached;
+        }
         try {
-            log.info("Placing order via MCP: item={}, quantity={}", item, quantity);
-            
-            // 构建 JSON-RPC 请求
-            Map<String, Object> request = new HashMap<>();
-            request.put("jsonrpc", "2.0");
-            request.put("id", System.currentTimeMillis());
-            request.put("method", "order.place");
-            
-            Map<String, Object> params = new HashMap<>();
-            params.put("item", item);
-            params.put("quantity", quantity);
-            request.put("params", params);
-            
-            String requestJson = objectMapper.writeValueAsString(request);
-            
-            // 启动 MCP 进程
-            ProcessBuilder pb = new ProcessBuilder(mcpCommand, mcpScriptPath);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-            
-            // 发送请求
-            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()))) {
-                writer.write(requestJson);
-                writer.newLine();
-                writer.flush();
+            JsonNode result = mcpClient.call("tools/list", Map.of()).get(timeoutMs, TimeUnit.MILLISECONDS).get("result");
+            if (result == null || !result.has("tools")) {
+                log.warn("MCP tools/list returned no tools");
+                return List.of();
             }
-            
-            // 读取响应
-            String response;
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                response = reader.readLine();
-            }
-            
-            process.waitFor(5, TimeUnit.SECONDS);
-            process.destroy();
-            
-            if (response != null) {
-                JsonNode responseNode = objectMapper.readTree(response);
-                JsonNode result = responseNode.get("result");
-                if (result != null) {
-                    String orderId = result.get("orderId").asText();
-                    log.info("Order placed successfully: {}", orderId);
-                    return orderId;
-                }
-            }
-            
-            log.warn("Failed to place order, no valid response");
-            return "ORDER-FAILED";
-            
+            cached = objectMapper.convertValue(result.get("tools"), new TypeReference<List<ToolDescriptor>>() {});
+            tools = cached;
+            log.info("Loaded {} MCP tools: {}", cached.size(),
+                cached.stream().map(ToolDescriptor::getName).toList());
+            return cached;
+        } catch (Exception e) {
+            log.warn("Failed to list MCP tools: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    public String placeOrder(String sessionId, String item, int quantity) {
+        return placeOrders(sessionId, List.of(new OrderLine(item, quantity))).get(0);
+    }
+
+    /**
+     * 一次下多个订单行，所有行在同一个批量请求中发出（也可能与其他会话的请求合并）
+     *
+     * @return 与 lines 一一对应的订单号，失败的行为 ORDER-ERROR / ORDER-FAILED
+     */
+    public List<String> placeOrders(String sessionId, List<OrderLine> lines) {
+        try {
+            // 下单不是幂等操作，只做熔断和截止时间控制，不重试
+            return resilience.execute(ResilienceExecutor.MCP, sessionId, timeoutMs, 1,
+                deadlineMs -> invokePlaceOrders(lines, deadlineMs));
+        } catch (OverloadException e) {
+            log.warn("MCP order service unavailable: {}", e.getMessage());
+            return Collections.nCopies(lines.size(), "ORDER-ERROR");
         } catch (Exception e) {
             log.error("Failed to invoke MCP order service", e);
-            return "ORDER-ERROR";
+            return Collections.nCopies(lines.size(), "ORDER-ERROR");
         }
     }
-}
 
+    private List<String> invokePlaceOrders(List<OrderLine> lines, long deadlineMs) throws Exception {
+        log.info("Placing order via MCP: {}", lines);
+        long startNanos = System.nanoTime();
+        long deadlineAt = System.currentTimeMillis() + deadlineMs;
 
+        List<Map<String, Object>> paramsList = new ArrayList<>(lines.size());
+        for (OrderLine line : lines) {
+            Map<String, Object> params = new HashMap<>();
+            params.put("item", line.getItem());
+            params.put("quantity", line.getQuantity());
+            paramsList.add(params);
+        }
+        List<CompletableFuture<JsonNode>> calls = mcpClient.callAll(ORDER_PLACE, paramsList);
+
+        List<String> orderIds = new ArrayList<>(lines.size());
+        try {
+            for (CompletableFuture<JsonNode> call : calls) {
+                long remaining = Math.max(1, deadlineAt - System.currentTimeMillis());
+                JsonNode result = call.get(remaining, TimeUnit.MILLISECONDS).get("result");
+                if (result != null && result.hasNonNull("orderId")) {
+                    orderIds.add(result.get("orderId").asText());
+                    ordersPlaced.increment();
+                } else {
+                    log.warn("Failed to place order, no valid response");
+                    orderIds.add("ORDER-FAILED");
+                }
+            }
+        } catch (TimeoutException e) {
+            // 只让本次超时的调用失败；整个截止时间内进程都没有输出才视为卡死，重启后再服务后续请求
+            calls.forEach(call -> call.cancel(false));
+            if (mcpClient.recycleIfSilentSince(startNanos)) {
+                log.warn("MCP process produced no output for {}ms, recycled", deadlineMs);
+            }
+            throw new TimeoutException("MCP order.place timed out after " + deadlineMs + "ms");
+        }
+        log.info("Orders placed successfully: {}", orderIds);
+        return orderIds;
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.asr.service;
+
+import com.alibaba.dashscope.audio.tts.SpeechSynthesisResult;
+import com.alibaba.dashscope.audio.ttsv2.SpeechSynthesisParam;
+import com.alibaba.dashscope.audio.ttsv2.SpeechSynthesizer;
+import com.alibaba.dashscope.exception.ApiException;
+import com.alibaba.dashscope.exception.NoApiKeyException;
+import com.example.asr.admission.AdmissionController;
+import io.reactivex.disposables.Disposable;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 同一句话的主请求与对冲请求之间的竞速
+ * 先产出音频帧的一方获胜，其音频才会交给 onAudioChunk，另一方立即取消订阅并释放准入名额。
+ */
+final class TtsHedgeRace {
+    static final int PRIMARY = 0;
+    static final int HEDGE = 1;
+    private static final int NONE = -1;
+
+    private final SpeechSynthesisParam param;
+    private final String text;
+    private final Consumer<byte[]> onAudioChunk;
+
+    private final AtomicInteger winner = new AtomicInteger(NONE);
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final long startNanos = System.nanoTime();
+
+    // 以下字段由 this 保护
+    private final Disposable[] subscriptions = new Disposable[2];
+    private final AdmissionController.Permit[] permits = new AdmissionController.Permit[2];
+    private int launched;
+    private int failed;
+    private Throwable error;
+
+    private volatile long firstAudioNanos = -1;
+    // 最近一次有进展（发起主请求或交付获胜方音频帧）的时间
+    private volatile long lastProgressNanos = startNanos;
+
+    TtsHedgeRace(SpeechSynthesisParam param, String text, Consumer<byte[]> onAudioChunk) {
+        this.param = param;
+        this.text = text;
+        this.onAudioChunk = onAudioChunk;
+    }
+
+    /**
+     * 发起一路合成请求；竞速已结束时直接释放许可
+     */
+    synchronized void launch(int index, AdmissionController.Permit permit) throws ApiException, NoApiKeyException {
+        if (isDone() || winner.get() != NONE) {
+            permit.close();
+            return;
+        }
+        launched++;
+        permits[index] = permit;
+        SpeechSynthesizer synthesizer = new SpeechSynthesizer(param, null);
+        subscriptions[index] = synthesizer.callAsFlowable(text).subscribe(
+            result -> onResult(index, result),
+            e -> onError(index, e),
+            () -> onComplete(index));
+    }
+
+    private void onResult(int index, SpeechSynthesisResult result) {
+        if (result == null || result.getAudioFrame() == null) {
+            return;
+        }
+        ByteBuffer audioFrame = result.getAudioFrame();
+        int remaining = audioFrame.remaining();
+        if (remaining <= 0) {
+            return;
+        }
+        if (winner.get() != index) {
+            if (!winner.compareAndSet(NONE, index)) {
+                // 对方已获胜，本路的音频丢弃
+                return;
+            }
+            firstAudioNanos = System.nanoTime() - startNanos;
+            synchronized (this) {
+                permits[index].firstResponse();
+            }
+            cancel(1 - index);
+        }
+        byte[] audioBytes = new byte[remaining];
+        audioFrame.get(audioBytes);
+        lastProgressNanos = System.nanoTime();
+        onAudioChunk.accept(audioBytes);
+    }
+
+    private synchronized void onError(int index, Throwable e) {
+        AdmissionController.Permit permit = permits[index];
+        if (permit != null) {
+            permit.failure(e);
+        }
+        failed++;
+        // 获胜方出错，或尚无获胜方且所有已发起的请求都失败时，竞速以失败结束
+        if (winner.get() == index || (winner.get() == NONE && failed == launched)) {
+            error = e;
+            done.countDown();
+        }
+    }
+
+    private synchronized void onComplete(int index) {
+        if (winner.get() == index || winner.compareAndSet(NONE, index)) {
+            permits[index].success();
+            cancel(1 - index);
+            done.countDown();
+        } else {
+            permits[index].close();
+        }
+    }
+
+    private synchronized void cancel(int index) {
+        if (subscriptions[index] != null) {
+            subscriptions[index].dispose();
+        }
+        if (permits[index] != null) {
+            permits[index].close();
+        }
+    }
+
+    synchronized void cancelAll() {
+        cancel(PRIMARY);
+        cancel(HEDGE);
+        done.countDown();
+    }
+
+    /**
+     * 等待竞速结束：首个音频帧最多等待 frameTimeoutMs（从主请求发起算起），此后相邻音频帧的间隔也不能超过 frameTimeoutMs
+     *
+     * @return false 表示等待音频帧超时
+     */
+    boolean await(long frameTimeoutMs) throws InterruptedException {
+        long frameTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(frameTimeoutMs);
+        while (true) {
+            long remainingNanos = lastProgressNanos + frameTimeoutNanos - System.nanoTime();
+            if (remainingNanos <= 0) {
+                return isDone();
+            }
+            if (done.await(remainingNanos, TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+        }
+    }
+
+    boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    boolean hasWinner() {
+        return winner.get() != NONE;
+    }
+
+    /**
+     * 获胜方（PRIMARY / HEDGE），没有获胜方时为 -1
+     */
+    int getWinner() {
+        return winner.get();
+    }
+
+    synchronized int getLaunched() {
+        return launched;
+    }
+
+    synchronized Throwable getError() {
+        return error;
+    }
+
+    /**
+     * 从主请求发起到第一个被采用的音频帧的耗时，尚未收到时为 -1
+     */
+    long getFirstAudioNanos() {
+        return firstAudioNanos;
+    }
+
+    long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+}
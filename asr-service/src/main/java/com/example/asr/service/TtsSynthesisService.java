@@ -1,15 +1,34 @@
 package com.example.asr.service;
 
-import com.alibaba.dashscope.audio.ttsv2.SpeechSynthesisAudioFormat;
 import com.alibaba.dashscope.audio.ttsv2.SpeechSynthesisParam;
 import com.alibaba.dashscope.audio.ttsv2.SpeechSynthesizer;
 import com.alibaba.dashscope.exception.ApiException;
 import com.alibaba.dashscope.exception.NoApiKeyException;
+import com.example.asr.admission.AdmissionController;
+import com.example.asr.admission.OverloadException;
+import com.example.asr.logging.HotPathLogger;
+import com.example.asr.logging.SessionLogStats;
+import com.example.asr.metrics.PipelineMetrics;
+import com.example.asr.model.TtsAudioFormat;
+import com.example.asr.resilience.NonRetryableException;
+import com.example.asr.resilience.ResilienceExecutor;
+import com.example.asr.ws.LatencyHistogram;
+import io.micrometer.core.instrument.Counter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 @Slf4j
@@ -27,26 +46,143 @@ public class TtsSynthesisService {
     @Value("${dashscope.tts.format}")
     private String format;
 
+    @Autowired
+    private HotPathLogger hotPathLogger;
+
+    @Autowired
+    private AdmissionController admission;
+
+    @Autowired
+    private ResilienceExecutor resilience;
+
+    @Value("${resilience.tts.timeout-ms:5000}")
+    private long synthesisTimeoutMs;
+
+    @Value("${resilience.tts.max-attempts:2}")
+    private int maxAttempts;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    // 对冲请求：首句在对冲延迟内未收到音频时再发起一路合成，先出音频者胜出
+    @Value("${dashscope.tts.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    // 对冲延迟取历史首帧耗时的该分位数
+    @Value("${dashscope.tts.hedge.percentile:0.95}")
+    private double hedgePercentile;
+
+    @Value("${dashscope.tts.hedge.min-delay-ms:200}")
+    private long hedgeMinDelayMs;
+
+    // 样本数不足 min-samples 时使用的对冲延迟
+    @Value("${dashscope.tts.hedge.default-delay-ms:1500}")
+    private long hedgeDefaultDelayMs;
+
+    @Value("${dashscope.tts.hedge.min-samples:20}")
+    private int hedgeMinSamples;
+
+    // 所有合成请求的首帧耗时分布，用于计算对冲延迟
+    private final LatencyHistogram firstAudioLatency = new LatencyHistogram();
+
+    private final ScheduledExecutorService hedgeScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "tts-hedge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Counter hedgeEligible;
+    private Counter hedgeLaunched;
+    private Counter hedgeSkipped;
+    private Counter hedgeWins;
+    private Counter primaryWins;
+    private Counter hedgeExtraCharacters;
+
+    @PostConstruct
+    public void registerMetrics() {
+        hedgeEligible = metrics.counter("voice.tts.hedge.eligible", "可对冲的首句合成数");
+        hedgeLaunched = metrics.counter("voice.tts.hedge.launched", "实际发起对冲请求的次数");
+        hedgeSkipped = metrics.counter("voice.tts.hedge.skipped", "因准入已满而放弃对冲的次数");
+        hedgeWins = metrics.counter("voice.tts.hedge.wins", "对冲竞速的获胜方", "winner", "hedge");
+        primaryWins = metrics.counter("voice.tts.hedge.wins", "对冲竞速的获胜方", "winner", "primary");
+        hedgeExtraCharacters = metrics.counter("voice.tts.hedge.extra_characters", "对冲请求额外提交的合成字符数（上游计费成本）");
+        metrics.gauge("voice.tts.hedge.delay_ms", "当前的对冲延迟", this, TtsSynthesisService::currentHedgeDelayMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hedgeScheduler.shutdownNow();
+    }
+
+    /**
+     * 未协商时使用的默认格式（dashscope.tts.format），无法识别时回退到 mp3
+     */
+    public TtsAudioFormat getDefaultFormat() {
+        TtsAudioFormat defaultFormat = TtsAudioFormat.fromKey(format);
+        return defaultFormat != null ? defaultFormat : TtsAudioFormat.MP3;
+    }
+
     public void synthesizeStream(String sessionId, String text, Consumer<byte[]> onAudioChunk) {
+        synthesizeStream(sessionId, text, getDefaultFormat(), onAudioChunk);
+    }
+
+    public void synthesizeStream(String sessionId, String text, TtsAudioFormat audioFormat, Consumer<byte[]> onAudioChunk) {
+        synthesizeStream(sessionId, text, audioFormat, false, onAudioChunk);
+    }
+
+    /**
+     * @param hedge 是否允许对冲（通常只对每轮的第一句开启），需同时开启 dashscope.tts.hedge.enabled
+     */
+    public void synthesizeStream(String sessionId, String text, TtsAudioFormat audioFormat, boolean hedge,
+                                 Consumer<byte[]> onAudioChunk) {
         if (text == null || text.trim().isEmpty()) {
             log.warn("Empty text for TTS synthesis, session: {}", sessionId);
             return;
         }
-        
+
+        log.info("Starting TTS synthesis for session: {}, text length: {}, format: {}", sessionId, text.length(), audioFormat.getKey());
+        // 逐帧只计数，由 HotPathLogger 定期汇总
+        SessionLogStats logStats = hotPathLogger.stats(sessionId);
+        // 已输出过音频后不能再重试，否则客户端会收到重复的音频
+        AtomicBoolean audioEmitted = new AtomicBoolean();
         try {
-            log.info("Starting TTS synthesis for session: {}, text length: {}", sessionId, text.length());
-            
-            SpeechSynthesisParam param = SpeechSynthesisParam.builder()
-                    .model(model)
-                    .voice(voice)
-                    .apiKey(apiKey)
-                    .format(SpeechSynthesisAudioFormat.MP3_22050HZ_MONO_256KBPS)
-                    .build();
-            
-            SpeechSynthesizer synthesizer = new SpeechSynthesizer(param, null);
+            resilience.execute(ResilienceExecutor.TTS, sessionId, synthesisTimeoutMs, maxAttempts, timeoutMs -> {
+                if (hedge && hedgeEnabled) {
+                    synthesizeHedged(sessionId, text, audioFormat, onAudioChunk, logStats, audioEmitted, timeoutMs);
+                } else {
+                    synthesizeOnce(sessionId, text, audioFormat, onAudioChunk, logStats, audioEmitted, timeoutMs);
+                }
+                return null;
+            });
+            log.info("TTS synthesis completed for session: {}", sessionId);
+        } catch (OverloadException e) {
+            // 准入拒绝、上游限流或熔断打开，交给调用方向客户端发送 busy
+            throw e;
+        } catch (ApiException | NoApiKeyException e) {
+            log.error("Failed to synthesize speech for session: {}, text: {}", sessionId, 
+                text.substring(0, Math.min(50, text.length())), e);
+        } catch (Exception e) {
+            log.error("TTS synthesis failed for session: {}", sessionId, e);
+        }
+    }
+
+    /**
+     * 单次合成尝试
+     *
+     * @param timeoutMs 首个音频帧（以及相邻音频帧之间）的最长等待时间
+     */
+    private void synthesizeOnce(String sessionId, String text, TtsAudioFormat audioFormat, Consumer<byte[]> onAudioChunk,
+                                SessionLogStats logStats, AtomicBoolean audioEmitted, long timeoutMs) throws Exception {
+        // 准入控制：排队超时时抛出 OverloadException，由调用方通知客户端
+        AdmissionController.Permit permit = admission.acquire(AdmissionController.PROVIDER_TTS, sessionId);
+        AtomicReference<Throwable> synthesisError = new AtomicReference<>();
+        long startNanos = System.nanoTime();
+        try {
+            SpeechSynthesizer synthesizer = new SpeechSynthesizer(buildParam(audioFormat), null);
             
             // 使用Flowable方式调用，直接订阅Flowable来获取结果
             synthesizer.callAsFlowable(text)
+                .timeout(timeoutMs, TimeUnit.MILLISECONDS)
                 .blockingSubscribe(
                     result -> {
                         if (result != null && result.getAudioFrame() != null) {
@@ -54,47 +190,167 @@ public class TtsSynthesisService {
                             // 确保读取所有数据
                             int remaining = audioFrame.remaining();
                             if (remaining > 0) {
+                                permit.firstResponse();
                                 byte[] audioBytes = new byte[remaining];
                                 audioFrame.get(audioBytes);
                                 
-                                log.info("TTS audio chunk generated: {} bytes for session: {}", audioBytes.length, sessionId);
+                                logStats.recordTtsChunk(audioBytes.length);
                                 
                                 if (onAudioChunk != null) {
                                     // 立即发送，不延迟
+                                    if (audioEmitted.compareAndSet(false, true)) {
+                                        firstAudioLatency.recordNanos(System.nanoTime() - startNanos);
+                                    }
                                     onAudioChunk.accept(audioBytes);
-                                    log.debug("TTS audio chunk sent to callback for session: {} bytes", audioBytes.length);
                                 } else {
                                     log.warn("TTS onAudioChunk callback is null for session: {}", sessionId);
                                 }
-                            } else {
-                                log.debug("TTS audio frame has no remaining data for session: {}", sessionId);
                             }
-                        } else {
-                            log.debug("TTS result has no audio frame for session: {}", sessionId);
                         }
                     },
                     error -> {
+                        synthesisError.set(error);
                         String errorMsg = error != null ? error.getMessage() : "Unknown error";
                         if (errorMsg != null && errorMsg.contains("AccessDenied")) {
                             log.error("TTS AccessDenied for session: {} - Check API key permissions and model: {}", sessionId, model);
                         } else if (errorMsg != null && errorMsg.contains("RateQuota")) {
                             log.error("TTS rate limit exceeded for session: {} - Please wait before retrying", sessionId);
                         } else {
-                            log.error("TTS synthesis error for session: {}", sessionId, error);
+                            log.warn("TTS synthesis error for session: {}: {}", sessionId, errorMsg);
                         }
-                    },
-                    () -> {
-                        log.info("TTS synthesis completed for session: {}", sessionId);
                     }
                 );
-            
-        } catch (ApiException | NoApiKeyException e) {
-            log.error("Failed to synthesize speech for session: {}, text: {}", sessionId, 
-                text.substring(0, Math.min(50, text.length())), e);
         } catch (Exception e) {
-            log.error("Unexpected error during TTS synthesis for session: {}", sessionId, e);
+            synthesisError.set(e);
         }
+
+        Throwable error = synthesisError.get();
+        if (error == null) {
+            permit.success();
+            return;
+        }
+        permit.failure(error);
+        if (AdmissionController.isQuotaError(error)) {
+            // 上游限流不再静默吞掉，交给调用方向客户端发送 busy
+            throw new OverloadException(AdmissionController.PROVIDER_TTS, OverloadException.REASON_QUOTA);
+        }
+        if (audioEmitted.get()) {
+            throw new NonRetryableException("TTS failed after audio was sent for session: " + sessionId, error);
+        }
+        if (error instanceof Exception) {
+            throw (Exception) error;
+        }
+        throw new RuntimeException(error);
     }
-}
 
+    /**
+     * 对冲合成：主请求在对冲延迟内没有音频时再发起一路，先产出音频的一方胜出，另一方取消
+     *
+     * @param timeoutMs 首个音频帧（以及相邻音频帧之间）的最长等待时间，与 synthesizeOnce 相同
+     */
+    private void synthesizeHedged(String sessionId, String text, TtsAudioFormat audioFormat, Consumer<byte[]> onAudioChunk,
+                                  SessionLogStats logStats, AtomicBoolean audioEmitted, long timeoutMs) throws Exception {
+        long hedgeDelayMs = currentHedgeDelayMs();
+        TtsHedgeRace race = new TtsHedgeRace(buildParam(audioFormat), text, audioBytes -> {
+            logStats.recordTtsChunk(audioBytes.length);
+            audioEmitted.set(true);
+            if (onAudioChunk != null) {
+                onAudioChunk.accept(audioBytes);
+            }
+        });
+        hedgeEligible.increment();
+
+        AdmissionController.Permit primaryPermit = admission.acquire(AdmissionController.PROVIDER_TTS, sessionId);
+        try {
+            race.launch(TtsHedgeRace.PRIMARY, primaryPermit);
+        } catch (Exception e) {
+            primaryPermit.failure(e);
+            throw e;
+        }
+
+        ScheduledFuture<?> hedgeTask = hedgeScheduler.schedule(() -> {
+            if (race.isDone() || race.hasWinner()) {
+                return;
+            }
+            AdmissionController.Permit hedgePermit;
+            try {
+                // 对冲请求不排队，准入已满时放弃对冲，避免过载时放大压力
+                hedgePermit = admission.acquire(AdmissionController.PROVIDER_TTS, sessionId, 0);
+            } catch (OverloadException e) {
+                hedgeSkipped.increment();
+                return;
+            }
+            try {
+                race.launch(TtsHedgeRace.HEDGE, hedgePermit);
+                hedgeLaunched.increment();
+                hedgeExtraCharacters.increment(text.length());
+                log.info("TTS hedge launched after {}ms for session: {}", hedgeDelayMs, sessionId);
+            } catch (Exception e) {
+                hedgePermit.failure(e);
+                log.warn("Failed to launch TTS hedge for session: {}", sessionId, e);
+            }
+        }, hedgeDelayMs, TimeUnit.MILLISECONDS);
+
+        try {
+            if (!race.await(timeoutMs)) {
+                race.cancelAll();
+                if (!audioEmitted.get()) {
+                    throw new TimeoutException("TTS hedged synthesis got no audio within " + timeoutMs + "ms");
+                }
+                throw new NonRetryableException("TTS timed out after audio was sent for session: " + sessionId,
+                    new TimeoutException("no audio frame within " + timeoutMs + "ms"));
+            }
+        } finally {
+            hedgeTask.cancel(false);
+        }
 
+        // 对冲获胜时主请求的真实首帧耗时未知，以对冲获胜时刻作为其下界样本
+        long firstAudioNanos = race.getFirstAudioNanos();
+        if (firstAudioNanos >= 0) {
+            firstAudioLatency.recordNanos(firstAudioNanos);
+        }
+        if (race.getLaunched() > 1) {
+            if (race.getWinner() == TtsHedgeRace.HEDGE) {
+                hedgeWins.increment();
+            } else {
+                primaryWins.increment();
+            }
+        }
+
+        Throwable error = race.getError();
+        if (error != null) {
+            if (AdmissionController.isQuotaError(error)) {
+                throw new OverloadException(AdmissionController.PROVIDER_TTS, OverloadException.REASON_QUOTA);
+            }
+            if (audioEmitted.get()) {
+                throw new NonRetryableException("TTS failed after audio was sent for session: " + sessionId, error);
+            }
+            throw error instanceof Exception ? (Exception) error : new RuntimeException(error);
+        }
+    }
+
+    /**
+     * 当前的对冲延迟：历史首帧耗时的 hedge.percentile 分位数，样本不足时使用默认值
+     */
+    long currentHedgeDelayMs() {
+        if (firstAudioLatency.count() < hedgeMinSamples) {
+            return hedgeDefaultDelayMs;
+        }
+        long percentileNanos = firstAudioLatency.percentileNanos(hedgePercentile);
+        return Math.max(hedgeMinDelayMs, TimeUnit.NANOSECONDS.toMillis(percentileNanos));
+    }
+
+    private SpeechSynthesisParam buildParam(TtsAudioFormat audioFormat) {
+        SpeechSynthesisParam.SpeechSynthesisParamBuilder<?, ?> paramBuilder = SpeechSynthesisParam.builder()
+                .model(model)
+                .voice(voice)
+                .apiKey(apiKey)
+                .format(audioFormat.getSdkFormat());
+        if (audioFormat.overridesSdkCodec()) {
+            // SDK 枚举不包含的编码（如 opus），通过请求参数覆盖 format 和码率
+            paramBuilder.parameter("format", audioFormat.getCodec())
+                    .parameter("bit_rate", audioFormat.getBitRateKbps());
+        }
+        return paramBuilder.build();
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.asr.session;
+
+import com.example.asr.model.SessionState;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * 基于文件的存储：每个会话一个 JSON 文件，先写临时文件再原子替换
+ * 多个节点挂载同一目录（或本地启动多个实例）即可共享会话状态
+ */
+@Slf4j
+public class FileSessionStateStore implements SessionStateStore {
+    // 令牌直接用作文件名，只允许安全字符，防止路径穿越
+    private static final Pattern TOKEN_PATTERN = Pattern.compile("[A-Za-z0-9._-]{1,128}");
+    private static final String SUFFIX = ".json";
+
+    private final Path directory;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public FileSessionStateStore(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create session store directory: " + directory, e);
+        }
+    }
+
+    @Override
+    public Optional<SessionState> load(String token) {
+        Path file = fileFor(token);
+        if (file == null || !Files.exists(file)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(objectMapper.readValue(file.toFile(), SessionState.class));
+        } catch (IOException e) {
+            log.warn("Failed to read session state {}: {}", token, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void save(SessionState state) {
+        Path file = fileFor(state.getToken());
+        if (file == null) {
+            throw new IllegalArgumentException("Invalid session token: " + state.getToken());
+        }
+        try {
+            Path temp = Files.createTempFile(directory, state.getToken(), ".tmp");
+            objectMapper.writeValue(temp.toFile(), state);
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to save session state " + state.getToken(), e);
+        }
+    }
+
+    @Override
+    public void delete(String token) {
+        Path file = fileFor(token);
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete session state {}: {}", token, e.getMessage());
+        }
+    }
+
+    @Override
+    public int evictOlderThan(long cutoffMillis) {
+        int evicted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toMillis() < cutoffMillis) {
+                    Files.deleteIfExists(file);
+                    evicted++;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to evict session states: {}", e.getMessage());
+        }
+        return evicted;
+    }
+
+    private Path fileFor(String token) {
+        if (token == null || !TOKEN_PATTERN.matcher(token).matches()) {
+            return null;
+        }
+        return directory.resolve(token + SUFFIX);
+    }
+}
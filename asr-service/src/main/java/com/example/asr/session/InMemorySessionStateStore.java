@@ -0,0 +1,36 @@
+package com.example.asr.session;
+
+import com.example.asr.model.SessionState;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内存储（默认），只支持同一节点上的重连恢复
+ */
+public class InMemorySessionStateStore implements SessionStateStore {
+    private final Map<String, SessionState> states = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<SessionState> load(String token) {
+        return Optional.ofNullable(states.get(token));
+    }
+
+    @Override
+    public void save(SessionState state) {
+        states.put(state.getToken(), state);
+    }
+
+    @Override
+    public void delete(String token) {
+        states.remove(token);
+    }
+
+    @Override
+    public int evictOlderThan(long cutoffMillis) {
+        int before = states.size();
+        states.values().removeIf(state -> state.getUpdatedAt() < cutoffMillis);
+        return before - states.size();
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.asr.session;
+
+import com.example.asr.model.ContextMessage;
+import com.example.asr.model.SessionState;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话状态管理
+ * 连接建立时按恢复令牌加载（或新建）会话状态，每轮对话结束后写回存储；
+ * 令牌以节点 ID 为前缀，负载均衡可据此做粘性路由，路由到其他节点时也能从共享存储恢复。
+ */
+@Slf4j
+@Component
+public class SessionStateManager {
+    @Value("${session.node-id:node-1}")
+    private String nodeId;
+
+    // 会话最后一次更新后保留的时间
+    @Value("${session.ttl-ms:1800000}")
+    private long ttlMs;
+
+    // 持久化的上下文消息上限，超出时丢弃最早的消息
+    @Value("${session.max-context-messages:40}")
+    private int maxContextMessages;
+
+    @Autowired
+    private SessionStateStore store;
+
+    // 当前节点上已连接的会话：WebSocket sessionId -> 会话状态
+    private final Map<String, SessionState> activeStates = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService evictionScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "session-state-eviction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void startEviction() {
+        long intervalMs = Math.max(60_000, ttlMs / 10);
+        evictionScheduler.scheduleAtFixedRate(() -> {
+            try {
+                int evicted = store.evictOlderThan(System.currentTimeMillis() - ttlMs);
+                if (evicted > 0) {
+                    log.info("Evicted {} expired session states", evicted);
+                }
+            } catch (Exception e) {
+                log.error("Failed to evict session states", e);
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        evictionScheduler.shutdownNow();
+    }
+
+    /**
+     * 打开会话：令牌有效时恢复已保存的状态，否则新建
+     *
+     * @param resumeToken 客户端携带的恢复令牌，可为空
+     */
+    public SessionState open(String sessionId, String resumeToken, String tenant) {
+        SessionState state = null;
+        if (resumeToken != null && !resumeToken.isEmpty()) {
+            state = store.load(resumeToken)
+                .filter(s -> s.getUpdatedAt() >= System.currentTimeMillis() - ttlMs)
+                .orElse(null);
+            if (state != null) {
+                log.info("Resumed session state {} for session {} ({} turns, {} messages)",
+                    resumeToken, sessionId, state.getTurnCount(), state.getMessages().size());
+            } else {
+                log.info("Resume token {} not found or expired for session {}, starting new state", resumeToken, sessionId);
+            }
+        }
+        if (state == null) {
+            state = new SessionState();
+            state.setToken(nodeId + "." + UUID.randomUUID().toString().replace("-", ""));
+            state.setTenant(tenant);
+            state.setUpdatedAt(System.currentTimeMillis());
+            store.save(state);
+        }
+        activeStates.put(sessionId, state);
+        return state;
+    }
+
+    public SessionState get(String sessionId) {
+        return activeStates.get(sessionId);
+    }
+
+    /**
+     * 记录一轮对话的元数据
+     */
+    public void recordTurn(String sessionId, String transcript, String intent) {
+        SessionState state = activeStates.get(sessionId);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            state.setTurnCount(state.getTurnCount() + 1);
+            state.setLastTranscript(transcript);
+            state.setLastIntent(intent);
+            persist(state);
+        }
+    }
+
+    /**
+     * 追加一问一答到持久化的 LLM 上下文
+     */
+    public void appendExchange(String sessionId, String userText, String assistantText) {
+        SessionState state = activeStates.get(sessionId);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            List<ContextMessage> messages = state.getMessages();
+            messages.add(new ContextMessage(ContextMessage.ROLE_USER, userText));
+            messages.add(new ContextMessage(ContextMessage.ROLE_ASSISTANT, assistantText));
+            while (messages.size() > maxContextMessages) {
+                messages.remove(0);
+            }
+            persist(state);
+        }
+    }
+
+    /**
+     * 更新协商后的下行 TTS 格式，恢复时沿用
+     */
+    public void updateTtsFormat(String sessionId, String ttsFormat) {
+        SessionState state = activeStates.get(sessionId);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            state.setTtsFormat(ttsFormat);
+            persist(state);
+        }
+    }
+
+    /**
+     * 连接关闭：状态保留在存储中，直到过期或被恢复
+     */
+    public void close(String sessionId) {
+        activeStates.remove(sessionId);
+    }
+
+    private void persist(SessionState state) {
+        state.setUpdatedAt(System.currentTimeMillis());
+        try {
+            store.save(state);
+        } catch (Exception e) {
+            log.error("Failed to save session state {}", state.getToken(), e);
+        }
+    }
+}
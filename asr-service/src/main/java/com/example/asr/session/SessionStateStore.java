@@ -0,0 +1,25 @@
+package com.example.asr.session;
+
+import com.example.asr.model.SessionState;
+
+import java.util.Optional;
+
+/**
+ * 会话状态存储
+ * 以恢复令牌为键保存 SessionState，使断线重连（包括连到另一个节点）后能恢复对话上下文
+ */
+public interface SessionStateStore {
+
+    Optional<SessionState> load(String token);
+
+    void save(SessionState state);
+
+    void delete(String token);
+
+    /**
+     * 删除 updatedAt 早于 cutoffMillis 的会话
+     *
+     * @return 删除的会话数
+     */
+    int evictOlderThan(long cutoffMillis);
+}
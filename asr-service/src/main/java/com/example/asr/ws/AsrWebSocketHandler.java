@@ -1,43 +1,66 @@
 package com.example.asr.ws;
 
+import com.example.asr.admission.AdmissionController;
+import com.example.asr.admission.OverloadException;
+import com.example.asr.audio.UplinkAudioNormalizer;
+import com.example.asr.logging.HotPathLogger;
+import com.example.asr.logging.SessionLogStats;
+import com.example.asr.metrics.PipelineMetrics;
+import com.example.asr.model.OrderLine;
+import com.example.asr.model.SessionState;
+import com.example.asr.model.ToolCall;
+import com.example.asr.model.ToolDescriptor;
+import com.example.asr.recording.SessionRecord;
+import com.example.asr.recording.SessionRecordingService;
+import com.example.asr.resilience.ResilienceExecutor;
+import com.example.asr.session.SessionStateManager;
+import com.example.asr.model.TtsAudioFormat;
 import com.example.asr.service.AsrTranscriptionService;
 import com.example.asr.service.LlmService;
 import com.example.asr.service.TtsSynthesisService;
 import com.example.asr.service.ToolInvocationService;
-import io.opentelemetry.api.GlobalOpenTelemetry;
-import io.opentelemetry.api.OpenTelemetry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.Tracer;
 import io.opentelemetry.context.Context;
 import io.opentelemetry.context.Scope;
+import io.micrometer.core.instrument.Counter;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.BinaryWebSocketHandler;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class AsrWebSocketHandler extends BinaryWebSocketHandler {
     private static final Logger log = LoggerFactory.getLogger(AsrWebSocketHandler.class);
 
-    // OpenTelemetry Tracer
-    private static final Tracer tracer;
-    private static final OpenTelemetry openTelemetry;
-    
-    static {
-        openTelemetry = GlobalOpenTelemetry.get();
-        tracer = openTelemetry.getTracer("asr-service", "1.0.0");
-        log.info("OpenTelemetry Tracer 初始化完成");
-    }
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    // OpenTelemetry Tracer，由 TracingConfig 按 tracing.mode 提供
+    @Autowired
+    private Tracer tracer;
 
     @Autowired
     private AsrTranscriptionService asrService;
@@ -48,36 +71,185 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
     @Autowired
     private TtsSynthesisService ttsService;
 
+    // 只有下单轮次用到，注入延迟解析的代理，MCP 客户端在第一次使用时才创建
+    @Lazy
     @Autowired
     private ToolInvocationService toolService;
 
+    @Autowired
+    private PipelineMetrics metrics;
+
+    @Autowired
+    private HotPathLogger hotPathLogger;
+
+    @Autowired
+    private AdmissionController admission;
+
+    @Autowired
+    private ResilienceExecutor resilience;
+
+    @Autowired
+    private SessionStateManager sessionStates;
+
+    @Autowired
+    private SessionRecordingService recordings;
+
+    // 非正常断开后保留会话的时间，期间生成中的回复写入重放缓冲区，客户端可携带恢复令牌接回
+    @Value("${ws.resume.enabled:true}")
+    private boolean resumeEnabled;
+
+    @Value("${ws.resume.grace-ms:30000}")
+    private long resumeGraceMs;
+
+    @Value("${ws.resume.replay-max-frames:2000}")
+    private int replayMaxFrames;
+
+    @Value("${ws.resume.replay-max-bytes:2097152}")
+    private long replayMaxBytes;
+
+    // 多路复用：握手带 mux=1 的连接可承载多个逻辑会话（流），供网关类客户端使用
+    @Value("${ws.mux.enabled:true}")
+    private boolean muxEnabled;
+
+    @Value("${ws.mux.max-streams:64}")
+    private int muxMaxStreams;
+
+    // 多路复用连接的发送缓冲上限，超出时关闭连接，避免一个慢消费者占满内存
+    @Value("${ws.mux.send-time-limit-ms:10000}")
+    private int muxSendTimeLimitMs;
+
+    @Value("${ws.mux.send-buffer-limit:8388608}")
+    private int muxSendBufferLimit;
+
+    // 启用 permessage-deflate 的连接上，每 N 个下行文本帧抽样估算一次压缩率和 CPU 耗时，0 表示不抽样
+    @Value("${ws.compression.sample-every:50}")
+    private int compressionSampleEvery;
+
+    // ASR 需要的上行采样率，客户端声明的格式不同时在服务端转换
+    @Value("${dashscope.asr.sample-rate}")
+    private int asrSampleRate;
+
+    // 下单通过 LLM 工具调用完成（意图、下单参数和确认回复一次生成），MCP 未声明工具时回退到意图识别
+    @Value("${openai.llm.tool-calling.enabled:true}")
+    private boolean toolCallingEnabled;
+
     // 会话状态管理
     private final Map<String, ByteArrayOutputStream> audioBuffers = new ConcurrentHashMap<>();
     private final Map<String, Long> lastAudioTimestamp = new ConcurrentHashMap<>();
     private final Map<String, AtomicBoolean> processingFlags = new ConcurrentHashMap<>();
+    // 上次发送 busy 消息的时间，避免过载时逐帧刷屏
+    private final Map<String, Long> lastBusySent = new ConcurrentHashMap<>();
+    private static final long BUSY_NOTIFY_INTERVAL_MS = 1000;
+
+    // 下行 TTS 格式协商结果
+    private final Map<String, TtsAudioFormat> ttsFormats = new ConcurrentHashMap<>();
+    // 上行音频格式转换（客户端声明的格式与 ASR 需要的单声道 16bit PCM 不一致时才存在）
+    private final Map<String, UplinkAudioNormalizer> uplinkNormalizers = new ConcurrentHashMap<>();
+
+    // 下行通道（带序号和重放缓冲区），按逻辑会话 ID 存放；逻辑会话 ID 即首次连接的 WebSocket sessionId
+    private final Map<String, OutboundChannel> channels = new ConcurrentHashMap<>();
+    // 恢复后的 WebSocket sessionId -> 逻辑会话 ID
+    private final Map<String, String> logicalIds = new ConcurrentHashMap<>();
+    // 恢复令牌 -> 逻辑会话 ID，会话彻底结束前都可以接回
+    private final Map<String, String> resumableSessions = new ConcurrentHashMap<>();
+    // 宽限期到期后释放会话的任务
+    private final Map<String, ScheduledFuture<?>> graceTasks = new ConcurrentHashMap<>();
+    // 宽限期任务使用独立的调度线程：ttsScheduler 上执行阻塞的合成调用，共用时到期释放（及其占用的许可和流）会被无关的 TTS 拖延
+    private final ScheduledExecutorService graceScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "session-grace");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Counter streamResumes;
+    private Counter deflateConnections;
+    private Counter plainConnections;
+    private CompressionSampler compressionSampler;
+    // JVM 启动到接受第一个 WebSocket 连接的耗时（毫秒），尚未有连接时为 -1
+    private final AtomicLong firstConnectionMs = new AtomicLong(-1);
+
+    // 多路复用连接：WebSocket sessionId -> 线程安全的发送包装（多个流并发写同一连接）
+    private final Map<String, WebSocketSession> muxSockets = new ConcurrentHashMap<>();
+    // 多路复用连接上的流：WebSocket sessionId -> (流 ID -> 逻辑会话 ID)
+    private final Map<String, Map<Integer, String>> muxStreams = new ConcurrentHashMap<>();
+    // 反向索引：逻辑会话 ID -> 所在的多路复用连接和流，会话恢复到其他流上时移除旧的流
+    private final Map<String, MuxRoute> muxRoutes = new ConcurrentHashMap<>();
 
     // *************** Tracing ***************
     // Tracing 相关：存储每个会话的 Span
     private final Map<String, Span> connectionSpans = new ConcurrentHashMap<>();
     
-    // ASR Span 相关
-    private final Map<String, Span> asrSpans = new ConcurrentHashMap<>();
-    private final Map<String, WebSocketPerformanceMeasure> asrMeasures = new ConcurrentHashMap<>();
-
-    // TTS Span 相关
-    private final Map<String, Span> ttsSpans = new ConcurrentHashMap<>();
-    private final Map<String, WebSocketPerformanceMeasure> ttsMeasures = new ConcurrentHashMap<>();
-    
-    // 前端写入 Span 相关
-    private final Map<String, Span> writeSpans = new ConcurrentHashMap<>();
-    private final Map<String, WebSocketPerformanceMeasure> writeMeasures = new ConcurrentHashMap<>();
+    // 各阶段的 Span、性能测量和计数器（ASR / TTS / 前端写入）
+    private final Map<String, StageTrace> asrTraces = new ConcurrentHashMap<>();
+    private final Map<String, StageTrace> ttsTraces = new ConcurrentHashMap<>();
+    private final Map<String, StageTrace> writeTraces = new ConcurrentHashMap<>();
     // *************** Tracing ***************
 
+    @PostConstruct
+    public void registerMetrics() {
+        metrics.gauge("voice.sessions.active", "当前活跃的 WebSocket 会话数", processingFlags, Map::size);
+        metrics.gauge("voice.turns.active", "正在处理中的对话轮次数", processingFlags,
+            flags -> flags.values().stream().filter(AtomicBoolean::get).count());
+        metrics.gauge("voice.tts.queue.depth", "所有会话待合成的句子总数", ttsQueues,
+            queues -> queues.values().stream().mapToInt(Queue::size).sum());
+        metrics.monitorExecutor(ttsScheduler, "tts.scheduler");
+        metrics.monitorExecutor(graceScheduler, "session.grace.scheduler");
+        metrics.gauge("voice.sessions.detached", "连接已断开、处于恢复宽限期内的会话数", channels,
+            chs -> chs.values().stream().filter(ch -> !ch.isAttached()).count());
+        metrics.gauge("voice.ws.replay.bytes", "所有会话重放缓冲区中未确认的字节数", channels,
+            chs -> chs.values().stream().mapToLong(OutboundChannel::getReplayBytes).sum());
+        metrics.gauge("voice.ws.mux.connections", "多路复用连接数", muxSockets, Map::size);
+        metrics.gauge("voice.ws.mux.streams", "多路复用连接上打开的流总数", muxStreams,
+            streams -> streams.values().stream().mapToInt(Map::size).sum());
+        streamResumes = metrics.counter("voice.sessions.stream_resumed", "宽限期内重连并继续输出的次数");
+        deflateConnections = metrics.counter("voice.ws.connections", "新建 WebSocket 连接数", "compression", "deflate");
+        plainConnections = metrics.counter("voice.ws.connections", "新建 WebSocket 连接数", "compression", "none");
+        metrics.gauge("voice.startup.first_connection.seconds", "JVM 启动到接受第一个 WebSocket 连接的耗时", firstConnectionMs,
+            ms -> ms.get() < 0 ? Double.NaN : ms.get() / 1000.0);
+        compressionSampler = new CompressionSampler(compressionSampleEvery,
+            metrics.summary("voice.ws.compression.ratio", "抽样估算的下行文本帧压缩后与压缩前的字节数之比"),
+            metrics.summary("voice.ws.compression.cpu.nanos", "抽样估算的单个下行文本帧压缩耗时（纳秒）"));
+    }
+
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         String sessionId = session.getId();
-        log.info("WS connected: {}", sessionId);
+        boolean deflate = OutboundChannel.isDeflate(session);
+        log.info("WS connected: {} (permessage-deflate: {})", sessionId, deflate);
+        (deflate ? deflateConnections : plainConnections).increment();
+        if (firstConnectionMs.get() < 0
+                && firstConnectionMs.compareAndSet(-1, ManagementFactory.getRuntimeMXBean().getUptime())) {
+            log.info("First WebSocket connection accepted {} ms after JVM start", firstConnectionMs.get());
+        }
+
+        if (muxEnabled && "1".equals(getQueryParam(session, "mux"))) {
+            // 多路复用连接本身不对应会话，由 open 控制帧逐个建立流
+            WebSocketSession muxSocket = new ConcurrentWebSocketSessionDecorator(session, muxSendTimeLimitMs, muxSendBufferLimit);
+            muxSockets.put(sessionId, muxSocket);
+            muxStreams.put(sessionId, new ConcurrentHashMap<>());
+            muxSocket.sendMessage(new TextMessage("{\"type\":\"mux_ready\",\"maxStreams\":" + muxMaxStreams + "}"));
+            return;
+        }
+
+        // 宽限期内携带恢复令牌重连：接回原逻辑会话，从客户端确认的序号之后继续输出
+        Function<String, String> params = name -> getQueryParam(session, name);
+        if (resumeEnabled) {
+            String resumedId = resumeStream(session, OutboundChannel.NO_STREAM, params);
+            if (resumedId != null) {
+                logicalIds.put(sessionId, resumedId);
+                return;
+            }
+        }
+        openSession(session, sessionId, OutboundChannel.NO_STREAM, params);
+    }
 
+    /**
+     * 建立逻辑会话：独占连接在握手时建立，多路复用连接在收到 open 控制帧时建立
+     *
+     * @param streamId 多路复用连接上的流 ID，独占连接为 NO_STREAM
+     * @param params 会话参数（resume / resumable / tenant / tts_format / sample_rate / channels / sample_format），来自握手查询参数或 open 帧
+     */
+    private void openSession(WebSocketSession socket, String sessionId, int streamId,
+                             Function<String, String> params) throws Exception {
         // *************** Tracing ***************
         // 1. 创建 WebSocket 连接 Span（root span）
         Span connectionSpan = tracer.spanBuilder("Server WebSocket Connection")
@@ -85,6 +257,7 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
             .setAttribute("websocket.session.id", sessionId)
             .setAttribute("websocket.endpoint", "/ws/asr")
             .setAttribute("websocket.connection.type", "server")
+            .setAttribute("websocket.stream.id", streamId)
             .startSpan();
 
         try (Scope scope = connectionSpan.makeCurrent()) {
@@ -94,9 +267,45 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
             log.info("Created connection span for session: {}", sessionId);
         
             // 初始化会话状态
+            hotPathLogger.open(sessionId);
+
+            // 加载（或新建）可跨连接恢复的会话状态：携带 resume 令牌时恢复 LLM 上下文
+            String resumeToken = params.apply("resume");
+            SessionState sessionState = sessionStates.open(sessionId, resumeToken,
+                admission.resolveTenant(params.apply("tenant")));
+            boolean resumed = sessionState.getToken().equals(resumeToken);
+            if (resumed) {
+                llmService.restoreContext(sessionId, sessionState.getMessages());
+            }
+            connectionSpan.setAttribute("session.resumed", resumed);
+            admission.registerSession(sessionId, sessionState.getTenant());
             audioBuffers.put(sessionId, new ByteArrayOutputStream());
             lastAudioTimestamp.put(sessionId, System.currentTimeMillis());
             processingFlags.put(sessionId, new AtomicBoolean(false));
+
+            // 协商下行 TTS 格式：握手查询参数优先，其次沿用恢复的会话格式，否则使用默认配置
+            TtsAudioFormat ttsFormat = ttsService.getDefaultFormat();
+            String requestedFormat = params.apply("tts_format");
+            if (requestedFormat == null) {
+                requestedFormat = sessionState.getTtsFormat();
+            }
+            if (requestedFormat != null) {
+                TtsAudioFormat negotiated = TtsAudioFormat.fromKey(requestedFormat);
+                if (negotiated != null) {
+                    ttsFormat = negotiated;
+                } else {
+                    log.warn("Unsupported tts_format '{}' for session {}, falling back to {}", requestedFormat, sessionId, ttsFormat.getKey());
+                }
+            }
+            ttsFormats.put(sessionId, ttsFormat);
+            sessionStates.updateTtsFormat(sessionId, ttsFormat.getKey());
+            connectionSpan.setAttribute("tts.format", ttsFormat.getKey());
+            String uplinkError = configureUplink(sessionId, params.apply("sample_rate"), params.apply("channels"),
+                params.apply("sample_format"));
+            if (uplinkError != null) {
+                log.warn("Invalid uplink audio format for session {}: {}, assuming {}Hz mono s16le",
+                    sessionId, uplinkError, asrSampleRate);
+            }
             
             // 初始化 ASR 流
             log.info("Initializing ASR stream for session: {}", sessionId);
@@ -104,13 +313,40 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
             asrService.startStream(sessionId);
             log.info("ASR stream initialized successfully for session: {}", sessionId);
             
-            session.sendMessage(new TextMessage("{\"type\":\"connected\",\"sessionId\":\"" + sessionId + "\"}"));
+            // 此后所有下行帧都经过通道分配序号
+            OutboundChannel channel = new OutboundChannel(sessionId, replayMaxFrames, replayMaxBytes, compressionSampler);
+            if (resumeToken != null || "true".equals(params.apply("resumable")) || "1".equals(params.apply("resumable"))) {
+                // 声明支持断线恢复的客户端从第一帧开始保留重放缓冲，其他客户端在第一个 ack 之后才开始
+                channel.enableReplay();
+            }
+            channels.put(sessionId, channel);
+            channel.setRecorder(recordings.start(sessionId, "{\"sessionId\":\"" + sessionId + "\"," +
+                "\"tenant\":\"" + escapeJson(sessionState.getTenant()) + "\",\"sampleRate\":" + asrSampleRate + "," +
+                "\"ttsFormat\":\"" + ttsFormat.getKey() + "\",\"resumed\":" + resumed + "}"));
+            resumableSessions.put(sessionState.getToken(), sessionId);
+            String connected = connectedFrame(sessionId, ttsFormat, sessionState.getToken(), resumed) + "}";
+            channel.attach(socket, streamId, 0, replayFrom -> connected);
+        } catch (OverloadException e) {
+            // 过载时告知客户端稍后重试，而不是返回初始化失败
+            socket.sendMessage(new TextMessage(OutboundChannel.withStream(busyFrame(e), streamId)));
+            connectionSpan.setAttribute("websocket.rejected", e.getReason());
+            if (streamId != OutboundChannel.NO_STREAM) {
+                // 单个流被拒绝不影响同一连接上的其他流
+                releaseSession(sessionId, CloseStatus.SERVICE_OVERLOAD);
+                return;
+            }
+            socket.close(CloseStatus.SERVICE_OVERLOAD);
         } catch (Exception e) {
             log.error("Failed to initialize session {}: {}", sessionId, e.getMessage(), e);
-            session.sendMessage(new TextMessage("{\"type\":\"error\",\"message\":\"初始化失败: " + e.getMessage() + "\"}"));
+            socket.sendMessage(new TextMessage(OutboundChannel.withStream(
+                "{\"type\":\"error\",\"message\":\"初始化失败: " + e.getMessage() + "\"}", streamId)));
 
             // *************** Tracing ***************
             connectionSpan.recordException(e);
+            if (streamId != OutboundChannel.NO_STREAM) {
+                releaseSession(sessionId, CloseStatus.SERVER_ERROR);
+                return;
+            }
             connectionSpan.end();
             // *************** Tracing ***************
             throw e;
@@ -119,70 +355,332 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
 
     @Override
     protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws Exception {
-        String sessionId = session.getId();
+        String sessionId = sessionId(session);
         ByteBuffer payload = message.getPayload();
-        byte[] audioData = new byte[payload.remaining()];
-        payload.get(audioData);
+        if (muxSockets.containsKey(session.getId())) {
+            // 多路复用：音频帧前 2 字节（大端）为流 ID
+            if (payload.remaining() < OutboundChannel.STREAM_HEADER_BYTES) {
+                return;
+            }
+            int streamId = payload.getShort() & 0xFFFF;
+            sessionId = muxStreams.getOrDefault(session.getId(), Map.of()).get(streamId);
+            if (sessionId == null) {
+                log.debug("Audio for unknown stream {} on multiplexed socket {}", streamId, session.getId());
+                return;
+            }
+        }
+        // 客户端声明了其他格式时转换为 ASR 需要的单声道 16bit PCM
+        UplinkAudioNormalizer normalizer = uplinkNormalizers.get(sessionId);
+        byte[] audioData;
+        if (normalizer != null) {
+            audioData = normalizer.process(payload);
+        } else {
+            audioData = new byte[payload.remaining()];
+            payload.get(audioData);
+        }
+        recordings.record(sessionId, SessionRecord.UPLINK_AUDIO, audioData);
         
-        log.debug("Received {} audio bytes for session: {}", audioData.length, sessionId);
+        // 逐帧只计数，由 HotPathLogger 定期汇总；逐条日志按会话限流
+        SessionLogStats logStats = hotPathLogger.stats(sessionId);
+        logStats.recordAudioFrame(audioData.length);
+        if (log.isDebugEnabled() && logStats.tryLog()) {
+            log.debug("Received {} audio bytes for session: {}", audioData.length, sessionId);
+        }
 
         // *************** Tracing ***************
-        // 确保在 Connection Span 的上下文中执行
-        Span connectionSpan = connectionSpans.get(sessionId);
-        if (connectionSpan == null) {
-            log.warn("No connection span found for session: {}", sessionId);
-            return;
-        }
-        
-        try (Scope scope = connectionSpan.makeCurrent()) {
-            // 2. 如果是第一个音频消息，创建 ASR Span
-            if (!asrSpans.containsKey(sessionId)) {
-                Span asrSpan = tracer.spanBuilder("asr.transcription")
-                    .setParent(Context.current())
-                    .setAttribute("gen_ai.span.kind", "WEBSOCKET")
-                    .setAttribute("websocket.session.id", sessionId)
-                    .setAttribute("asr.format", "pcm")
-                    .startSpan();
-                
-                asrSpans.put(sessionId, asrSpan);
-                // 创建指标并注册到 asr 服务中
-                WebSocketPerformanceMeasure measure = WebSocketPerformanceMeasure.create();
-                measure.start();
-                asrService.registerMeasure(sessionId, measure);
-                
-                log.info("Created ASR span for session: {}", sessionId);
+        // 每帧只更新计数器，ASR Span 在第一帧时以连接 Span 为父级创建，结束时再汇总帧数和字节数
+        StageTrace asrTrace = asrTraces.get(sessionId);
+        if (asrTrace == null) {
+            Span connectionSpan = connectionSpans.get(sessionId);
+            if (connectionSpan == null) {
+                log.warn("No connection span found for session: {}", sessionId);
+                return;
             }
+            // 2. 如果是第一个音频消息，创建 ASR Span
+            Span asrSpan = tracer.spanBuilder("asr.transcription")
+                .setParent(Context.current().with(connectionSpan))
+                .setAttribute("gen_ai.span.kind", "WEBSOCKET")
+                .setAttribute("websocket.session.id", sessionId)
+                .setAttribute("asr.format", "pcm")
+                .startSpan();
+
+            asrTrace = new StageTrace(asrSpan, PipelineMetrics.STAGE_ASR);
+            asrTraces.put(sessionId, asrTrace);
+            // 将指标注册到 asr 服务中
+            asrService.registerMeasure(sessionId, asrTrace.measure());
+
+            log.info("Created ASR span for session: {}", sessionId);
+        }
+        asrTrace.recordFrame(audioData.length);
         // *************** Tracing ***************
-        
-            // 更新最后接收时间
-            lastAudioTimestamp.put(sessionId, System.currentTimeMillis());
-        
-            // 累积音频数据
-            ByteArrayOutputStream buffer = audioBuffers.get(sessionId);
-            if (buffer != null) {
-                buffer.write(audioData);
-            }
 
-            // 追加到 ASR 流
+        // 更新最后接收时间
+        lastAudioTimestamp.put(sessionId, System.currentTimeMillis());
+
+        // 累积音频数据
+        ByteArrayOutputStream buffer = audioBuffers.get(sessionId);
+        if (buffer != null) {
+            buffer.write(audioData);
+        }
+
+        // 追加到 ASR 流
+        try {
             asrService.appendAudio(sessionId, audioData);
+        } catch (OverloadException e) {
+            sendBusy(sessionId, e);
         }
     }
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) {
-        String sessionId = session.getId();
         String payload = message.getPayload();
+        if (muxSockets.containsKey(session.getId())) {
+            handleMuxFrame(session, payload);
+            return;
+        }
+        String sessionId = sessionId(session);
         
-        log.info("Received text message for session {}: {}", sessionId, payload);
+        log.debug("Received text message for session {}: {}", sessionId, payload);
+        recordings.recordText(sessionId, SessionRecord.INBOUND_TEXT, payload);
         
         // 处理控制消息
         if ("END".equals(payload)) {
-            processAudioComplete(session);
+            processAudioComplete(sessionId);
+        } else if (payload.startsWith("{")) {
+            handleControlFrame(sessionId, payload);
         }
     }
 
-    private void processAudioComplete(WebSocketSession session) {
-        String sessionId = session.getId();
+    // 处理 JSON 控制帧：{"type":"config","ttsFormat":"mp3_16k"} 和 {"type":"ack","seq":42}
+    private void handleControlFrame(String sessionId, String payload) {
+        try {
+            handleControlFrame(sessionId, objectMapper.readTree(payload));
+        } catch (Exception e) {
+            log.error("Failed to handle control frame for session {}: {}", sessionId, payload, e);
+        }
+    }
+
+    private void handleControlFrame(String sessionId, JsonNode control) {
+        String type = control.path("type").asText();
+        if ("ack".equals(type)) {
+            // 客户端确认已收到的下行序号，释放重放缓冲
+            OutboundChannel channel = channels.get(sessionId);
+            if (channel != null) {
+                channel.ack(control.path("seq").asLong());
+            }
+            return;
+        }
+        if (!"config".equals(type)) {
+            log.warn("Unknown control frame for session {}: {}", sessionId, control);
+            return;
+        }
+        if (control.has("sampleRate") || control.has("channels") || control.has("sampleFormat")) {
+            String uplinkError = configureUplink(sessionId, control.path("sampleRate").asText(null),
+                control.path("channels").asText(null), control.path("sampleFormat").asText(null));
+            if (uplinkError != null) {
+                send(sessionId, "{\"type\":\"error\",\"message\":\"不支持的上行音频格式: " + uplinkError + "\"}");
+            } else {
+                UplinkAudioNormalizer normalizer = uplinkNormalizers.get(sessionId);
+                send(sessionId, "{\"type\":\"config_ack\",\"sampleRate\":" +
+                    (normalizer != null ? normalizer.getSampleRate() : asrSampleRate) + ",\"channels\":" +
+                    (normalizer != null ? normalizer.getChannels() : 1) + ",\"sampleFormat\":\"" +
+                    (normalizer != null ? normalizer.getSampleFormat() : UplinkAudioNormalizer.FORMAT_S16LE) + "\"}");
+            }
+        }
+        String requestedFormat = control.path("ttsFormat").asText(null);
+        if (requestedFormat == null) {
+            return;
+        }
+        AtomicBoolean processing = processingFlags.get(sessionId);
+        if (processing != null && processing.get()) {
+            // 一轮回复中途切换格式会导致客户端无法拼接音频
+            send(sessionId, "{\"type\":\"error\",\"message\":\"回复进行中，无法切换音频格式\"}");
+            return;
+        }
+        TtsAudioFormat ttsFormat = TtsAudioFormat.fromKey(requestedFormat);
+        if (ttsFormat == null) {
+            send(sessionId, "{\"type\":\"error\",\"message\":\"不支持的音频格式: " + escapeJson(requestedFormat) + "\"}");
+            return;
+        }
+        ttsFormats.put(sessionId, ttsFormat);
+        sessionStates.updateTtsFormat(sessionId, ttsFormat.getKey());
+        log.info("TTS format for session {} set to {}", sessionId, ttsFormat.getKey());
+        send(sessionId, "{\"type\":\"config_ack\",\"ttsFormat\":\"" + ttsFormat.getKey() +
+            "\",\"ttsMime\":\"" + ttsFormat.getMimeType() + "\"}");
+    }
+
+    /**
+     * 多路复用连接上的控制帧，均带 stream 字段：
+     * open（可带 resume / last_seq / tenant / tts_format）、end（等同独占连接的 END）、close，其余按单个会话的控制帧处理
+     */
+    private void handleMuxFrame(WebSocketSession session, String payload) {
+        WebSocketSession muxSocket = muxSockets.get(session.getId());
+        Map<Integer, String> streams = muxStreams.get(session.getId());
+        if (muxSocket == null || streams == null) {
+            return;
+        }
+        try {
+            JsonNode control = objectMapper.readTree(payload);
+            String type = control.path("type").asText();
+            int streamId = control.path("stream").asInt(-1);
+            if (streamId < 0 || streamId > 0xFFFF) {
+                muxSocket.sendMessage(new TextMessage("{\"type\":\"error\",\"message\":\"缺少或无效的 stream\"}"));
+                return;
+            }
+            if ("open".equals(type)) {
+                openMuxStream(muxSocket, streams, streamId, control);
+                return;
+            }
+            String sessionId = streams.get(streamId);
+            if (sessionId == null) {
+                muxSocket.sendMessage(new TextMessage(OutboundChannel.withStream(
+                    "{\"type\":\"error\",\"message\":\"流未打开\"}", streamId)));
+                return;
+            }
+            recordings.recordText(sessionId, SessionRecord.INBOUND_TEXT, payload);
+            if ("end".equals(type)) {
+                processAudioComplete(sessionId);
+            } else if ("close".equals(type)) {
+                streams.remove(streamId);
+                releaseSession(sessionId, CloseStatus.NORMAL);
+            } else {
+                handleControlFrame(sessionId, control);
+            }
+        } catch (Exception e) {
+            log.error("Failed to handle multiplexed frame on socket {}: {}", session.getId(), payload, e);
+        }
+    }
+
+    // 在多路复用连接上打开一个流：带恢复令牌时优先接回本节点上的会话，否则新建
+    private void openMuxStream(WebSocketSession muxSocket, Map<Integer, String> streams, int streamId,
+                               JsonNode control) throws Exception {
+        if (streams.containsKey(streamId)) {
+            muxSocket.sendMessage(new TextMessage(OutboundChannel.withStream(
+                "{\"type\":\"error\",\"message\":\"流已打开\"}", streamId)));
+            return;
+        }
+        if (streams.size() >= muxMaxStreams) {
+            muxSocket.sendMessage(new TextMessage(OutboundChannel.withStream(
+                "{\"type\":\"error\",\"message\":\"超过单个连接的最大流数 " + muxMaxStreams + "\"}", streamId)));
+            return;
+        }
+        Function<String, String> params = name -> control.hasNonNull(name) ? control.get(name).asText() : null;
+        String sessionId = resumeEnabled ? resumeStream(muxSocket, streamId, params) : null;
+        if (sessionId == null) {
+            sessionId = muxSocket.getId() + "-" + streamId;
+            openSession(muxSocket, sessionId, streamId, params);
+            if (!channels.containsKey(sessionId)) {
+                // 初始化失败，已向客户端发送 busy / error
+                return;
+            }
+        }
+        streams.put(streamId, sessionId);
+        muxRoutes.put(sessionId, new MuxRoute(muxSocket.getId(), streamId));
+        log.info("Opened stream {} on multiplexed socket {} as session {}", streamId, muxSocket.getId(), sessionId);
+    }
+
+    private String getQueryParam(WebSocketSession session, String name) {
+        if (session.getUri() == null) {
+            return null;
+        }
+        return UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams().getFirst(name);
+    }
+
+    /**
+     * 携带恢复令牌的连接尝试接回仍在本节点上的逻辑会话（已连接或处于宽限期）
+     *
+     * @return 接回的逻辑会话 ID；null 表示会话不在本节点或已释放，按新连接处理（仍会从存储恢复上下文）
+     */
+    private String resumeStream(WebSocketSession socket, int streamId, Function<String, String> params) {
+        String resumeToken = params.apply("resume");
+        String sessionId = resumeToken != null ? resumableSessions.get(resumeToken) : null;
+        OutboundChannel channel = sessionId != null ? channels.get(sessionId) : null;
+        if (channel == null) {
+            return null;
+        }
+        ScheduledFuture<?> expiry = graceTasks.remove(sessionId);
+        if ((expiry != null && !expiry.cancel(false)) || channel.isClosed()) {
+            // 宽限期已到，释放正在进行
+            return null;
+        }
+        long lastSeq = 0;
+        String lastSeqParam = params.apply("last_seq");
+        if (lastSeqParam != null) {
+            try {
+                lastSeq = Long.parseLong(lastSeqParam);
+            } catch (NumberFormatException e) {
+                log.warn("Invalid last_seq '{}' for session {}", lastSeqParam, sessionId);
+            }
+        }
+        TtsAudioFormat ttsFormat = ttsFormats.getOrDefault(sessionId, ttsService.getDefaultFormat());
+        int replayed = channel.attach(socket, streamId, lastSeq, replayFrom ->
+            connectedFrame(sessionId, ttsFormat, resumeToken, true) +
+                ",\"streamResumed\":true,\"replayFrom\":" + replayFrom + "}");
+        // 旧的流不再属于该会话：之后旧流上的音频和 close 不能再作用到恢复后的会话
+        unbindStream(sessionId);
+        Span connectionSpan = connectionSpans.get(sessionId);
+        if (connectionSpan != null) {
+            connectionSpan.addEvent("websocket.resumed");
+        }
+        streamResumes.increment();
+        log.info("Socket {} resumed session {} after seq {}, replayed {} frames", socket.getId(), sessionId, lastSeq, replayed);
+        return sessionId;
+    }
+
+    /**
+     * 设置会话的上行音频格式，未声明的参数取默认值（ASR 采样率、单声道、s16le）
+     *
+     * @return 参数无效时返回原因，会话保持原有设置
+     */
+    private String configureUplink(String sessionId, String sampleRate, String channels, String sampleFormat) {
+        try {
+            UplinkAudioNormalizer normalizer = UplinkAudioNormalizer.create(
+                sampleRate != null ? Integer.parseInt(sampleRate) : asrSampleRate,
+                channels != null ? Integer.parseInt(channels) : 1,
+                sampleFormat != null ? sampleFormat : UplinkAudioNormalizer.FORMAT_S16LE,
+                asrSampleRate);
+            if (normalizer == null) {
+                uplinkNormalizers.remove(sessionId);
+            } else {
+                uplinkNormalizers.put(sessionId, normalizer);
+                log.info("Uplink audio for session {}: {}Hz x{} {}, converting to {}Hz mono s16le", sessionId,
+                    normalizer.getSampleRate(), normalizer.getChannels(), normalizer.getSampleFormat(), asrSampleRate);
+            }
+            return null;
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    // connected 握手帧，末尾不闭合以便追加字段
+    private String connectedFrame(String sessionId, TtsAudioFormat ttsFormat, String resumeToken, boolean resumed) {
+        return "{\"type\":\"connected\",\"sessionId\":\"" + sessionId + "\"," +
+            "\"ttsFormat\":\"" + ttsFormat.getKey() + "\",\"ttsMime\":\"" + ttsFormat.getMimeType() + "\"," +
+            "\"resumeToken\":\"" + resumeToken + "\",\"resumed\":" + resumed;
+    }
+
+    /**
+     * 解析 WebSocket 连接所属的逻辑会话 ID
+     */
+    private String sessionId(WebSocketSession session) {
+        return logicalIds.getOrDefault(session.getId(), session.getId());
+    }
+
+    // 经下行通道发送 JSON 帧；连接断开期间帧进入重放缓冲区
+    private void send(String sessionId, String json) {
+        OutboundChannel channel = channels.get(sessionId);
+        if (channel != null) {
+            channel.sendText(json);
+        }
+    }
+
+    // 逻辑会话仍然存在（已连接或处于宽限期）
+    private boolean isActive(String sessionId) {
+        OutboundChannel channel = channels.get(sessionId);
+        return channel != null && !channel.isClosed();
+    }
+
+    private void processAudioComplete(String sessionId) {
         AtomicBoolean processing = processingFlags.get(sessionId);
         
         if (processing != null && processing.compareAndSet(false, true)) {
@@ -197,53 +695,61 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
                 try (Scope scope = connectionSpan.makeCurrent()) {
                 // *************** Tracing ***************
                     log.info("Processing audio completion for session: {}", sessionId);
+                    // 登记本轮延迟预算，后续 ASR / LLM / MCP 调用的截止时间由剩余预算决定
+                    resilience.startTurn(sessionId);
                     
                     // 结束 ASR 流并获取转录文本
                     String transcript = asrService.endStream(sessionId);
 
                     // *************** Tracing ***************
                     // 结束 ASR Span
-                    Span asrSpan = asrSpans.remove(sessionId);
-                    WebSocketPerformanceMeasure asrMeasure = asrMeasures.remove(sessionId);
-                    if (asrSpan != null) {
-                        if (asrMeasure != null) {
-                            asrMeasure.applyToSpan(asrSpan, "asr");
-                        }
-                        asrSpan.setAttribute("asr.transcript.length", transcript != null ? transcript.length() : 0);
-                        asrSpan.end();
+                    StageTrace asrTrace = asrTraces.remove(sessionId);
+                    if (asrTrace != null) {
+                        asrTrace.span().setAttribute("asr.transcript.length", transcript != null ? transcript.length() : 0);
+                        asrTrace.end(metrics);
                         log.info("Ended ASR span for session: {}", sessionId);
                     }
                     // *************** Tracing ***************
                     
                     if (transcript == null || transcript.trim().isEmpty()) {
                         log.warn("No transcript received for session: {}", sessionId);
-                        session.sendMessage(new TextMessage("{\"type\":\"error\",\"message\":\"未能识别语音内容\"}"));
+                        send(sessionId, "{\"type\":\"error\",\"message\":\"未能识别语音内容\"}");
                         return;
                     }
                     
                     log.info("Transcript for session {}: {}", sessionId, transcript);
-                    session.sendMessage(new TextMessage("{\"type\":\"transcript\",\"text\":\"" + transcript + "\"}"));
+                    send(sessionId, "{\"type\":\"transcript\",\"text\":\"" + transcript + "\"}");
+
+                    List<ToolDescriptor> tools = toolCallingEnabled ? toolService.listTools() : List.of();
+                    if (!tools.isEmpty()) {
+                        handleTurnWithTools(sessionId, transcript, tools);
+                        return;
+                    }
                     
                     // 意图识别
-                    String intent = llmService.classifyIntent(transcript);
+                    String intent = llmService.classifyIntent(sessionId, transcript);
                     log.info("Intent for session {}: {}", sessionId, intent);
-                    session.sendMessage(new TextMessage("{\"type\":\"intent\",\"value\":\"" + intent + "\"}"));
+                    send(sessionId, "{\"type\":\"intent\",\"value\":\"" + intent + "\"}");
+                    sessionStates.recordTurn(sessionId, transcript, intent);
                     
                     // 根据意图处理
                     if ("order".equals(intent)) {
-                        handleOrderIntent(session, transcript);
+                        handleOrderIntent(sessionId, transcript);
                     } else {
-                        handleChitchatIntent(session, transcript);
+                        handleChitchatIntent(sessionId, transcript);
                     }
                     
+                } catch (OverloadException e) {
+                    sendBusy(sessionId, e);
                 } catch (Exception e) {
                     log.error("Error processing audio for session: {}", sessionId, e);
                     try {
-                        session.sendMessage(new TextMessage("{\"type\":\"error\",\"message\":\"处理出错: " + e.getMessage() + "\"}"));
+                        send(sessionId, "{\"type\":\"error\",\"message\":\"处理出错: " + e.getMessage() + "\"}");
                     } catch (Exception ex) {
                         log.error("Failed to send error message", ex);
                     }
                 } finally {
+                    resilience.endTurn(sessionId);
                     processing.set(false);
                 }
             }).start();
@@ -259,27 +765,110 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
     private final Map<String, ScheduledFuture<?>> ttsScheduledTasks = new ConcurrentHashMap<>();
     private static final long TTS_INTERVAL_MS = 2000; // 2秒间隔
 
-    private void handleOrderIntent(WebSocketSession session, String transcript) throws Exception {
-        String sessionId = session.getId();
+    // 意图识别流程下单后生成确认回复的提示词模板
+    private static final String ORDER_CONFIRM_PROMPT = "用户说：%s\n系统已下单成功，订单号：%s。请生成一个友好的确认回复。";
+
+    /**
+     * 一次流式 LLM 调用完成整轮对话：模型先发起 order.place 工具调用，下单后继续输出确认回复，
+     * 订单号由服务端在回复末尾补充，不再单独调用意图识别和确认回复生成。
+     */
+    private void handleTurnWithTools(String sessionId, String transcript, List<ToolDescriptor> tools) {
+        log.info("Handling turn with {} tools for session: {}", tools.size(), sessionId);
+        textBuffers.put(sessionId, new StringBuilder());
+        List<String> orderIds = new ArrayList<>();
+        // 下单失败后不再播报模型的确认回复
+        AtomicBoolean orderFailed = new AtomicBoolean();
+
+        llmService.streamGenerateWithTools(sessionId, transcript, tools,
+            intent -> {
+                log.info("Intent for session {}: {}", sessionId, intent);
+                send(sessionId, "{\"type\":\"intent\",\"value\":\"" + intent + "\"}");
+                sessionStates.recordTurn(sessionId, transcript, intent);
+            },
+            toolCalls -> {
+                // 返回值作为本轮助手消息的一部分写入上下文，使后续轮次知道下了什么单
+                try {
+                    List<OrderLine> lines = toOrderLines(toolCalls);
+                    if (lines.isEmpty()) {
+                        return null;
+                    }
+                    orderIds.addAll(toolService.placeOrders(sessionId, lines));
+                    log.info("Order placed via tool calls: {}", orderIds);
+                    send(sessionId, "{\"type\":\"order\",\"orderIds\":[" + orderIds.stream()
+                        .map(id -> "\"" + id + "\"").collect(Collectors.joining(",")) + "]}");
+                    return "（已下单：" + lines.stream()
+                        .map(line -> line.getItem() + "×" + line.getQuantity())
+                        .collect(Collectors.joining("、")) + "，订单号：" + String.join("、", orderIds) + "）";
+                } catch (OverloadException e) {
+                    orderFailed.set(true);
+                    sendBusy(sessionId, e);
+                } catch (Exception e) {
+                    orderFailed.set(true);
+                    log.error("Tool call order failed for session: {}", sessionId, e);
+                }
+                return "（下单没有成功，已请用户稍后再试）";
+            },
+            textChunk -> {
+                if (!orderFailed.get()) {
+                    accumulateAndSynthesize(sessionId, textChunk);
+                }
+            });
+
+        if (orderFailed.get()) {
+            accumulateAndSynthesize(sessionId, "抱歉，下单没有成功，请稍后再试。");
+        } else if (!orderIds.isEmpty()) {
+            accumulateAndSynthesize(sessionId, "订单号：" + String.join("、", orderIds) + "。");
+        }
+
+        StringBuilder remainingBuffer = textBuffers.remove(sessionId);
+        if (remainingBuffer != null && remainingBuffer.length() > 0) {
+            String remainingText = remainingBuffer.toString().trim();
+            if (!remainingText.isEmpty()) {
+                synthesizeSentence(sessionId, remainingText);
+            }
+        }
+
+        send(sessionId, "{\"type\":\"complete\"}");
+    }
+
+    // 解析 order.place 工具调用的参数，其他工具忽略
+    private List<OrderLine> toOrderLines(List<ToolCall> toolCalls) throws Exception {
+        List<OrderLine> lines = new ArrayList<>();
+        for (ToolCall call : toolCalls) {
+            if (!ToolInvocationService.ORDER_PLACE.equals(call.getName())) {
+                log.warn("Ignoring unsupported tool call: {}", call);
+                continue;
+            }
+            JsonNode args = objectMapper.readTree(call.getArguments());
+            String item = args.path("item").asText("").trim();
+            if (item.isEmpty()) {
+                log.warn("Ignoring tool call without item: {}", call);
+                continue;
+            }
+            lines.add(new OrderLine(item, Math.max(1, args.path("quantity").asInt(1))));
+        }
+        return lines;
+    }
+
+    private void handleOrderIntent(String sessionId, String transcript) throws Exception {
         log.info("Handling order intent for session: {}", sessionId);
         
         // 简单提取商品和数量（真实场景应使用 LLM 工具调用）
-        // 这里模拟提取
-        String item = extractItem(transcript);
-        int quantity = extractQuantity(transcript);
+        // 这里模拟提取，一句话中的多个商品作为多个订单行
+        List<OrderLine> lines = extractOrderLines(transcript);
         
-        // 调用 MCP 下单工具
-        String orderId = toolService.placeOrder(item, quantity);
-        log.info("Order placed: {}", orderId);
+        // 调用 MCP 下单工具，多个订单行在一次批量请求中完成
+        List<String> orderIds = toolService.placeOrders(sessionId, lines);
+        log.info("Order placed: {}", orderIds);
+        String orderId = String.join("、", orderIds);
         
         // 初始化文本缓冲区
         textBuffers.put(sessionId, new StringBuilder());
         
         // 通过 LLM 生成更自然的回复并 TTS
-        llmService.streamGenerate(sessionId, 
-            "用户说：" + transcript + "\n系统已下单成功，订单号：" + orderId + "。请生成一个友好的确认回复。",
+        llmService.streamGenerate(sessionId, ORDER_CONFIRM_PROMPT.formatted(transcript, orderId),
             textChunk -> {
-                accumulateAndSynthesize(sessionId, textChunk, session);
+                accumulateAndSynthesize(sessionId, textChunk);
             });
         
         // 处理剩余的文本
@@ -287,15 +876,14 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
         if (remainingBuffer != null && remainingBuffer.length() > 0) {
             String remainingText = remainingBuffer.toString().trim();
             if (!remainingText.isEmpty()) {
-                synthesizeSentence(sessionId, remainingText, session);
+                synthesizeSentence(sessionId, remainingText);
             }
         }
         
-        session.sendMessage(new TextMessage("{\"type\":\"complete\"}"));
+        send(sessionId, "{\"type\":\"complete\"}");
     }
 
-    private void handleChitchatIntent(WebSocketSession session, String transcript) throws Exception {
-        String sessionId = session.getId();
+    private void handleChitchatIntent(String sessionId, String transcript) throws Exception {
         log.info("Handling chitchat intent for session: {}", sessionId);
         
         // 初始化文本缓冲区
@@ -303,7 +891,7 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
         
         // LLM 流式生成闲聊内容
         llmService.streamGenerate(sessionId, transcript, textChunk -> {
-            accumulateAndSynthesize(sessionId, textChunk, session);
+            accumulateAndSynthesize(sessionId, textChunk);
         });
         
         // 处理剩余的文本
@@ -311,15 +899,15 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
         if (remainingBuffer != null && remainingBuffer.length() > 0) {
             String remainingText = remainingBuffer.toString().trim();
             if (!remainingText.isEmpty()) {
-                synthesizeSentence(sessionId, remainingText, session);
+                synthesizeSentence(sessionId, remainingText);
             }
         }
         
-        session.sendMessage(new TextMessage("{\"type\":\"complete\"}"));
+        send(sessionId, "{\"type\":\"complete\"}");
     }
     
     // 累积文本并按句子分割进行TTS
-    private void accumulateAndSynthesize(String sessionId, String textChunk, WebSocketSession session) {
+    private void accumulateAndSynthesize(String sessionId, String textChunk) {
         StringBuilder buffer = textBuffers.get(sessionId);
         if (buffer == null) {
             buffer = new StringBuilder();
@@ -328,15 +916,9 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
         
         // 发送文本块到前端用于流式显示
         try {
-            if (textChunk != null && !textChunk.isEmpty() && session.isOpen()) {
-                // 使用简单的 JSON 转义
-                String escapedText = textChunk
-                    .replace("\\", "\\\\")
-                    .replace("\"", "\\\"")
-                    .replace("\n", "\\n")
-                    .replace("\r", "\\r")
-                    .replace("\t", "\\t");
-                session.sendMessage(new TextMessage("{\"type\":\"text_chunk\",\"text\":\"" + escapedText + "\"}"));
+            if (textChunk != null && !textChunk.isEmpty()) {
+                String escapedText = escapeJson(textChunk);
+                send(sessionId, "{\"type\":\"text_chunk\",\"text\":\"" + escapedText + "\"}");
                 log.debug("Sent text chunk to frontend for session {}: {}", sessionId, textChunk);
             }
         } catch (Exception e) {
@@ -355,7 +937,7 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
             for (int i = 0; i < sentences.length - 1; i++) {
                 String sentence = sentences[i].trim();
                 if (!sentence.isEmpty()) {
-                    synthesizeSentence(sessionId, sentence, session);
+                    synthesizeSentence(sessionId, sentence);
                 }
             }
             
@@ -366,7 +948,7 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
                 accumulated.endsWith("\n")) {
                 // 如果最后一个句子也完整，处理它
                 if (!lastSentence.isEmpty()) {
-                    synthesizeSentence(sessionId, lastSentence, session);
+                    synthesizeSentence(sessionId, lastSentence);
                 }
                 buffer.setLength(0);
             } else {
@@ -378,7 +960,7 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
     }
     
     // 将句子加入TTS队列
-    private void synthesizeSentence(String sessionId, String sentence, WebSocketSession session) {
+    private void synthesizeSentence(String sessionId, String sentence) {
         if (sentence == null || sentence.trim().isEmpty()) {
             return;
         }
@@ -391,12 +973,12 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
         
         // 如果还没有调度任务，启动一个
         if (!ttsScheduledTasks.containsKey(sessionId) || ttsScheduledTasks.get(sessionId).isDone()) {
-            startTtsProcessor(sessionId, session);
+            startTtsProcessor(sessionId);
         }
     }
     
     // 启动TTS处理器，每2秒处理一个句子
-    private void startTtsProcessor(String sessionId, WebSocketSession session) {
+    private void startTtsProcessor(String sessionId) {
         // 取消之前的任务（如果存在）
         ScheduledFuture<?> existingTask = ttsScheduledTasks.get(sessionId);
         if (existingTask != null && !existingTask.isDone()) {
@@ -404,11 +986,11 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
         }
         
         // 立即处理第一个句子
-        processNextTtsSentence(sessionId, session);
+        processNextTtsSentence(sessionId);
         
         // 调度后续处理：延迟2秒后开始，然后每2秒执行一次
         ScheduledFuture<?> task = ttsScheduler.scheduleAtFixedRate(
-            () -> processNextTtsSentence(sessionId, session),
+            () -> processNextTtsSentence(sessionId),
             TTS_INTERVAL_MS,
             TTS_INTERVAL_MS,
             TimeUnit.MILLISECONDS
@@ -419,7 +1001,7 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
     }
     
     // 处理下一个TTS句子
-    private void processNextTtsSentence(String sessionId, WebSocketSession session) {
+    private void processNextTtsSentence(String sessionId) {
         // *************** Tracing ***************
         Span connectionSpan = connectionSpans.get(sessionId);
         if (connectionSpan == null) {
@@ -429,9 +1011,9 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
         
         try (Scope scope = connectionSpan.makeCurrent()) {
         // *************** Tracing ***************
-            // 检查session是否仍然打开
-            if (session == null || !session.isOpen()) {
-                log.debug("Session {} is closed, stopping TTS processor", sessionId);
+            // 检查会话是否仍然存在（宽限期内继续合成，音频进入重放缓冲区）
+            if (!isActive(sessionId)) {
+                log.debug("Session {} is released, stopping TTS processor", sessionId);
                 Queue<String> queue = ttsQueues.remove(sessionId);
                 if (queue != null) {
                     queue.clear();
@@ -466,72 +1048,50 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
 
                 // *************** Tracing ***************
                 // 3. 如果是第一个 TTS 请求，创建 TTS Span
-                if (!ttsSpans.containsKey(sessionId)) {
+                TtsAudioFormat ttsFormat = ttsFormats.getOrDefault(sessionId, ttsService.getDefaultFormat());
+                // 没有进行中的 TTS Span 说明这是本次回复的第一句，其首帧延迟决定用户感知的响应速度，允许对冲
+                boolean firstSentence = !ttsTraces.containsKey(sessionId);
+                StageTrace ttsTrace = ttsTraces.computeIfAbsent(sessionId, k -> {
                     Span ttsSpan = tracer.spanBuilder("tts.synthesis")
                         .setParent(Context.current())
                         .setAttribute("gen_ai.span.kind", "WEBSOCKET")
                         .setAttribute("tts.session.id", sessionId)
-                        .setAttribute("tts.format", "mp3")
+                        .setAttribute("tts.format", ttsFormat.getKey())
                         .startSpan();
-                    
-                    ttsSpans.put(sessionId, ttsSpan);
-                    WebSocketPerformanceMeasure measure = WebSocketPerformanceMeasure.create();
-                    measure.start();
-                // *************** Tracing ***************
-                    ttsMeasures.put(sessionId, measure);
-                    
                     log.info("Created TTS span for session: {}", sessionId);
-                }
+                    return new StageTrace(ttsSpan, PipelineMetrics.STAGE_TTS);
+                });
+                // *************** Tracing ***************
                 
+                SessionLogStats logStats = hotPathLogger.stats(sessionId);
                 try {
                     log.debug("Calling TTS synthesizeStream for session: {}, sentence: {}", sessionId, sentence);
-                    ttsService.synthesizeStream(sessionId, sentence, audioChunk -> {
+                    ttsService.synthesizeStream(sessionId, sentence, ttsFormat, firstSentence, audioChunk -> {
                         try {
-                            // 记录 TTS chunk 时间
-                            WebSocketPerformanceMeasure ttsMeasure = ttsMeasures.get(sessionId);
-                            if (ttsMeasure != null) {
-                                ttsMeasure.recordChunk();
-                            }
+                            int chunkSize = audioChunk != null ? audioChunk.length : 0;
+                            // 记录 TTS chunk 时间及字节数
+                            ttsTrace.recordChunk(chunkSize);
                             
-                            // 4. 开始向前端写入数据 Span
-                            if (!writeSpans.containsKey(sessionId)) {
-                                Span writeSpan = tracer.spanBuilder("websocket.write")
-                                    .setParent(Context.current())
-                                    .setAttribute("gen_ai.span.kind", "WEBSOCKET")
-                                    .setAttribute("websocket.write.session.id", sessionId)
-                                    .setAttribute("websocket.write.type", "binary")
-                                    .startSpan();
-                                
-                                writeSpans.put(sessionId, writeSpan);
-                                WebSocketPerformanceMeasure writeMeasure = WebSocketPerformanceMeasure.create();
-                                writeMeasure.start();
-                                writeMeasures.put(sessionId, writeMeasure);
-                                
-                                log.info("Created write span for session: {}", sessionId);
+                            // 4. 开始向前端写入数据 Span，记录写入 chunk 时间
+                            StageTrace writeTrace = writeTraces.computeIfAbsent(sessionId, k -> startWriteTrace(sessionId));
+                            long timeToFirstChunk = writeTrace.recordChunk(chunkSize);
+                            if (timeToFirstChunk >= 0) {
+                                writeTrace.span().setAttribute("websocket.write.time_to_first_chunk_ms", timeToFirstChunk);
+                                log.debug("Write first chunk sent for session {}: {}ms", sessionId, timeToFirstChunk);
                             }
                             
-                            // 记录写入 chunk 时间
-                            Span writeSpan = writeSpans.get(sessionId);
-                            WebSocketPerformanceMeasure writeMeasure = writeMeasures.get(sessionId);
-                            if (writeSpan != null && writeMeasure != null) {
-                                Long timeToFirstChunk = writeMeasure.recordChunk();
-                                if (timeToFirstChunk != null) {
-                                    writeSpan.setAttribute("websocket.write.time_to_first_chunk_ms", timeToFirstChunk);
-                                    log.debug("Write first chunk sent for session {}: {}ms", sessionId, timeToFirstChunk);
+                            OutboundChannel channel = channels.get(sessionId);
+                            if (chunkSize > 0 && channel != null) {
+                                channel.sendBinary(audioChunk);
+                                if (log.isDebugEnabled() && logStats.tryLog()) {
+                                    log.debug("Sent audio chunk: {} bytes for session: {}", chunkSize, sessionId);
                                 }
-                            }
-                            
-                            log.debug("TTS callback received audio chunk: {} bytes, session open: {}", 
-                                audioChunk != null ? audioChunk.length : 0, session.isOpen());
-                            if (audioChunk != null && audioChunk.length > 0 && session.isOpen()) {
-                        session.sendMessage(new BinaryMessage(audioChunk));
-                                log.info("Sent audio chunk: {} bytes for session: {}", audioChunk.length, sessionId);
                             } else {
                                 if (audioChunk == null || audioChunk.length == 0) {
                                     log.warn("Audio chunk is null or empty for session: {}", sessionId);
                                 }
-                                if (!session.isOpen()) {
-                                    log.warn("Session is closed for session: {}", sessionId);
+                                if (channel == null) {
+                                    log.warn("Session is released for session: {}", sessionId);
                                 }
                             }
                         } catch (Exception e) {
@@ -539,6 +1099,11 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
                         }
                     });
                     log.debug("TTS synthesizeStream call completed for session: {}", sessionId);
+                } catch (OverloadException e) {
+                    // TTS 过载时丢弃本轮剩余句子，客户端仍可看到流式文本
+                    log.warn("TTS overloaded for session {}, dropping {} queued sentences", sessionId, queue.size());
+                    queue.clear();
+                    sendBusy(sessionId, e);
                 } catch (Exception e) {
                     log.error("Failed to synthesize sentence for session {}: {}", sessionId, sentence, e);
                 }
@@ -546,15 +1111,53 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
         }
     }
     
+    /**
+     * 通知客户端服务繁忙，同一会话每秒最多发送一次
+     */
+    private void sendBusy(String sessionId, OverloadException e) {
+        long now = System.currentTimeMillis();
+        Long last = lastBusySent.get(sessionId);
+        if (last != null && now - last < BUSY_NOTIFY_INTERVAL_MS) {
+            return;
+        }
+        lastBusySent.put(sessionId, now);
+        send(sessionId, busyFrame(e));
+    }
+
+    private static String busyFrame(OverloadException e) {
+        return "{\"type\":\"busy\",\"provider\":\"" + e.getProvider() + "\",\"reason\":\"" + e.getReason() + "\"}";
+    }
+
+    // 使用简单的 JSON 转义，客户端提供的字符串拼进 JSON 前都要经过这里
+    private static String escapeJson(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value
+            .replace("\\", "\\\\")
+            .replace("\"", "\\\"")
+            .replace("\n", "\\n")
+            .replace("\r", "\\r")
+            .replace("\t", "\\t");
+    }
+
+    private StageTrace startWriteTrace(String sessionId) {
+        Span writeSpan = tracer.spanBuilder("websocket.write")
+            .setParent(Context.current())
+            .setAttribute("gen_ai.span.kind", "WEBSOCKET")
+            .setAttribute("websocket.write.session.id", sessionId)
+            .setAttribute("websocket.write.type", "binary")
+            .startSpan();
+        log.info("Created write span for session: {}", sessionId);
+        return new StageTrace(writeSpan, PipelineMetrics.STAGE_WRITE);
+    }
+
     // 结束 TTS Span
     private void endTtsSpan(String sessionId) {
-        Span ttsSpan = ttsSpans.remove(sessionId);
-        WebSocketPerformanceMeasure measure = ttsMeasures.remove(sessionId);
-        if (ttsSpan != null) {
-            if (measure != null) {
-                measure.applyToSpan(ttsSpan, "tts");
-            }
-            ttsSpan.end();
+        StageTrace ttsTrace = ttsTraces.remove(sessionId);
+        if (ttsTrace != null) {
+            applyEgressStats(sessionId, ttsTrace.span(), ttsTrace.bytes());
+            ttsTrace.end(metrics);
             log.info("Ended TTS span for session: {}", sessionId);
         }
         
@@ -562,19 +1165,44 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
         endWriteSpan(sessionId);
     }
     
+    // 下行音频流量统计：已发送字节数、对应语音时长以及每秒语音的字节数
+    private void applyEgressStats(String sessionId, Span ttsSpan, long bytes) {
+        TtsAudioFormat ttsFormat = ttsFormats.getOrDefault(sessionId, ttsService.getDefaultFormat());
+        long audioDurationMs = ttsFormat.estimateDurationMs(bytes);
+        ttsSpan.setAttribute("tts.bytes_sent", bytes);
+        ttsSpan.setAttribute("tts.audio_duration_ms", audioDurationMs);
+        if (audioDurationMs > 0) {
+            long bytesPerAudioSecond = bytes * 1000 / audioDurationMs;
+            ttsSpan.setAttribute("tts.bytes_per_audio_second", bytesPerAudioSecond);
+            log.info("TTS egress for session {}: format={}, bytes={}, audio={}ms, {} bytes/s of speech",
+                sessionId, ttsFormat.getKey(), bytes, audioDurationMs, bytesPerAudioSecond);
+        }
+    }
+    
     // 结束写入 Span
     private void endWriteSpan(String sessionId) {
-        Span writeSpan = writeSpans.remove(sessionId);
-        WebSocketPerformanceMeasure measure = writeMeasures.remove(sessionId);
-        if (writeSpan != null) {
-            if (measure != null) {
-                measure.applyToSpan(writeSpan, "websocket.write");
-            }
-            writeSpan.end();
+        StageTrace writeTrace = writeTraces.remove(sessionId);
+        if (writeTrace != null) {
+            writeTrace.end(metrics);
             log.info("Ended write span for session: {}", sessionId);
         }
     }
 
+    // 按分隔词拆分出多个商品，每段分别提取商品和数量；一个都没识别到时按整句下单
+    private List<OrderLine> extractOrderLines(String text) {
+        List<OrderLine> lines = new ArrayList<>();
+        for (String segment : text.split("[，,、；;]|和|还有|以及")) {
+            String item = extractItem(segment);
+            if (!"商品".equals(item)) {
+                lines.add(new OrderLine(item, extractQuantity(segment)));
+            }
+        }
+        if (lines.isEmpty()) {
+            lines.add(new OrderLine(extractItem(text), extractQuantity(text)));
+        }
+        return lines;
+    }
+
     private String extractItem(String text) {
         // 简单提取逻辑（真实场景应使用 NLP 或 LLM）
         if (text.contains("苹果")) return "苹果";
@@ -595,20 +1223,81 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        String sessionId = session.getId();
-        log.info("WS closed: {} status={}", sessionId, status);
-        
+        WebSocketSession muxSocket = muxSockets.remove(session.getId());
+        if (muxSocket != null) {
+            // 多路复用连接断开：其上的每个流按独占连接断开处理，可分别恢复
+            Map<Integer, String> streams = muxStreams.remove(session.getId());
+            log.info("Multiplexed WS closed: {} with {} streams, status={}", session.getId(), streams.size(), status);
+            for (Map.Entry<Integer, String> stream : streams.entrySet()) {
+                muxRoutes.remove(stream.getValue(), new MuxRoute(session.getId(), stream.getKey()));
+                detachSession(stream.getValue(), muxSocket, status);
+            }
+            return;
+        }
+        String sessionId = sessionId(session);
+        logicalIds.remove(session.getId());
+        log.info("WS closed: {} (session {}) status={}", session.getId(), sessionId, status);
+        detachSession(sessionId, session, status);
+    }
+
+    // 连接断开后的会话处理：非正常断开进入宽限期，否则立即释放
+    private void detachSession(String sessionId, WebSocketSession socket, CloseStatus status) {
+        OutboundChannel channel = channels.get(sessionId);
+        if (channel != null && !channel.detach(socket)) {
+            // 旧连接已被恢复的新连接取代，会话继续
+            return;
+        }
+        if (channel != null && resumeEnabled && resumeGraceMs > 0 && channel.isReplayEnabled()
+            && status.getCode() != CloseStatus.NORMAL.getCode()) {
+            // 非正常断开（如移动网络切换）：保留会话和进行中的回复，宽限期内未重连再释放
+            StageTrace asrTrace = asrTraces.remove(sessionId);
+            if (asrTrace != null) {
+                asrTrace.end(metrics);
+            }
+            asrService.releaseStream(sessionId);
+            audioBuffers.put(sessionId, new ByteArrayOutputStream());
+            graceTasks.put(sessionId, graceScheduler.schedule(() -> releaseSession(sessionId, status),
+                resumeGraceMs, TimeUnit.MILLISECONDS));
+            log.info("Session {} detached, keeping it for {}ms", sessionId, resumeGraceMs);
+            return;
+        }
+        releaseSession(sessionId, status);
+    }
+
+    // 移除会话在多路复用连接上的流映射（会话已恢复到其他连接或流上，或已释放）
+    private void unbindStream(String sessionId) {
+        MuxRoute route = muxRoutes.remove(sessionId);
+        if (route == null) {
+            return;
+        }
+        Map<Integer, String> streams = muxStreams.get(route.socketId());
+        if (streams != null) {
+            streams.remove(route.streamId(), sessionId);
+        }
+    }
+
+    // 彻底释放逻辑会话
+    private void releaseSession(String sessionId, CloseStatus status) {
+        OutboundChannel channel = channels.remove(sessionId);
+        if (channel != null) {
+            channel.close();
+        }
+        SessionState sessionState = sessionStates.get(sessionId);
+        if (sessionState != null) {
+            resumableSessions.remove(sessionState.getToken(), sessionId);
+        }
+        graceTasks.remove(sessionId);
+        unbindStream(sessionId);
+        recordings.stop(sessionId);
+        log.info("Releasing session {}", sessionId);
+
         // 结束所有未完成的 Span
         endTtsSpan(sessionId);
         endWriteSpan(sessionId);
         
-        Span asrSpan = asrSpans.remove(sessionId);
-        WebSocketPerformanceMeasure asrMeasure = asrMeasures.remove(sessionId);
-        if (asrSpan != null) {
-            if (asrMeasure != null) {
-                asrMeasure.applyToSpan(asrSpan, "asr");
-            }
-            asrSpan.end();
+        StageTrace asrTrace = asrTraces.remove(sessionId);
+        if (asrTrace != null) {
+            asrTrace.end(metrics);
         }
         
         // 结束连接 Span
@@ -621,10 +1310,18 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
         }
         
         // 清理会话状态
+        hotPathLogger.close(sessionId);
+        asrService.releaseStream(sessionId);
+        admission.unregisterSession(sessionId);
+        sessionStates.close(sessionId);
+        resilience.endTurn(sessionId);
+        lastBusySent.remove(sessionId);
         audioBuffers.remove(sessionId);
         lastAudioTimestamp.remove(sessionId);
         processingFlags.remove(sessionId);
         textBuffers.remove(sessionId);
+        ttsFormats.remove(sessionId);
+        uplinkNormalizers.remove(sessionId);
         
         // 清理TTS队列和调度任务
         Queue<String> queue = ttsQueues.remove(sessionId);
@@ -638,6 +1335,7 @@ public class AsrWebSocketHandler extends BinaryWebSocketHandler {
         
         llmService.clearContext(sessionId);
     }
-}
-
 
+    private record MuxRoute(String socketId, int streamId) {
+    }
+}
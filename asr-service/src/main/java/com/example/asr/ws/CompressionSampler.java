@@ -0,0 +1,49 @@
+package com.example.asr.ws;
+
+import io.micrometer.core.instrument.DistributionSummary;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * 估算 permessage-deflate 对下行文本帧的压缩效果
+ * 容器内部的压缩过程无法观测，这里对启用压缩的连接按 1/N 抽样，用同样的 raw deflate 压缩一次，
+ * 记录压缩率和 CPU 耗时。抽样不保留字典（相当于 no_context_takeover），开启上下文接管时实际压缩率会更好。
+ */
+final class CompressionSampler {
+    // permessage-deflate 去掉每条消息末尾的 00 00 ff ff
+    private static final int SYNC_FLUSH_TAIL = 4;
+
+    private final int sampleEvery;
+    private final DistributionSummary ratio;
+    private final DistributionSummary cpuNanos;
+    private final AtomicLong frames = new AtomicLong();
+
+    /**
+     * @param sampleEvery 每 N 个文本帧抽样一次，0 表示不抽样
+     */
+    CompressionSampler(int sampleEvery, DistributionSummary ratio, DistributionSummary cpuNanos) {
+        this.sampleEvery = sampleEvery;
+        this.ratio = ratio;
+        this.cpuNanos = cpuNanos;
+    }
+
+    void record(String text) {
+        if (sampleEvery <= 0 || frames.incrementAndGet() % sampleEvery != 0) {
+            return;
+        }
+        byte[] input = text.getBytes(StandardCharsets.UTF_8);
+        byte[] output = new byte[input.length + 64];
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            long start = System.nanoTime();
+            deflater.setInput(input);
+            int compressed = deflater.deflate(output, 0, output.length, Deflater.SYNC_FLUSH);
+            cpuNanos.record(System.nanoTime() - start);
+            ratio.record((double) Math.max(1, compressed - SYNC_FLUSH_TAIL) / input.length);
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.asr.ws;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 紧凑的无锁对数-线性直方图（微秒精度）
+ * 每个 2 的幂区间划分为 8 个子桶，相对误差约 12.5%，覆盖 1us ~ 约 9.5 小时，
+ * 共 264 个 int 计数（约 1KB）。记录时只做一次原子自增，不产生任何对象分配。
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 34;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(BUCKET_COUNT);
+
+    /**
+     * 记录一个纳秒耗时（负值按 0 处理）
+     */
+    public void recordNanos(long nanos) {
+        counts.incrementAndGet(bucketIndex(Math.max(0, nanos) / 1_000));
+    }
+
+    /**
+     * 已记录的样本总数
+     */
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * 获取分位数（纳秒），取所在桶的上界；没有样本时返回 -1
+     *
+     * @param percentile 0 ~ 1 之间的分位，如 0.99
+     */
+    public long percentileNanos(double percentile) {
+        long total = count();
+        if (total == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return bucketUpperBoundMicros(i) * 1_000;
+            }
+        }
+        return bucketUpperBoundMicros(BUCKET_COUNT - 1) * 1_000;
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBoundMicros(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
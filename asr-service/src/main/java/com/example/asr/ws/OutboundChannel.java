@@ -0,0 +1,281 @@
+package com.example.asr.ws;
+
+import com.example.asr.config.CompressionNegotiationFilter;
+import com.example.asr.recording.SessionRecord;
+import com.example.asr.recording.SessionRecorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.function.LongFunction;
+
+/**
+ * 一个逻辑会话的下行通道
+ * 每个下行帧（JSON 文本和音频）分配递增序号；客户端声明支持恢复（握手参数 resumable）或发送第一个 ack 之后，
+ * 下行帧才保留在有界的重放缓冲区中直到客户端确认，从不确认的客户端不占用缓冲。
+ * 连接断开后通道仍然存在，生成中的回复继续写入缓冲区，重连时从客户端确认的序号之后重放。
+ * 文本帧在 JSON 中携带 seq 字段，音频帧不带帧头，其序号为前一帧序号加一。
+ * 多路复用连接上，文本帧另带 stream 字段，音频帧前加 2 字节（大端）流 ID。
+ */
+final class OutboundChannel {
+    private static final Logger log = LoggerFactory.getLogger(OutboundChannel.class);
+
+    // 非多路复用连接
+    static final int NO_STREAM = -1;
+    // 多路复用音频帧的流 ID 头长度
+    static final int STREAM_HEADER_BYTES = 2;
+
+    private final String sessionId;
+    private final int maxFrames;
+    private final long maxBytes;
+    private final CompressionSampler compressionSampler;
+
+    // 以下字段由 this 保护，发送也在锁内完成，保证序号顺序与写出顺序一致
+    private final ArrayDeque<Frame> replay = new ArrayDeque<>();
+    private long replayBytes;
+    private long nextSeq = 1;
+    private WebSocketSession socket;
+    private int streamId = NO_STREAM;
+    // 当前连接是否协商了 permessage-deflate
+    private boolean deflate;
+    private long detachedAt;
+    private boolean closed;
+    // 客户端是否参与断线恢复，未参与时不保留重放缓冲
+    private boolean replayEnabled;
+    // 会话被抽中录制时非空，按序号顺序记录每个下行帧
+    private SessionRecorder recorder;
+
+    OutboundChannel(String sessionId, int maxFrames, long maxBytes, CompressionSampler compressionSampler) {
+        this.sessionId = sessionId;
+        this.maxFrames = maxFrames;
+        this.maxBytes = maxBytes;
+        this.compressionSampler = compressionSampler;
+    }
+
+    /**
+     * 发送 JSON 文本帧，自动在对象开头插入 seq 字段
+     */
+    synchronized void sendText(String json) {
+        long seq = nextSeq++;
+        Frame frame = new Frame(seq, "{\"seq\":" + seq + "," + json.substring(1), null);
+        buffer(frame);
+        write(frame);
+        if (recorder != null) {
+            recorder.append(SessionRecord.OUTBOUND_TEXT, frame.text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    synchronized void sendBinary(byte[] data) {
+        Frame frame = new Frame(nextSeq++, null, data);
+        buffer(frame);
+        write(frame);
+        if (recorder != null) {
+            recorder.append(SessionRecord.DOWNLINK_AUDIO, data);
+        }
+    }
+
+    synchronized void setRecorder(SessionRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * 客户端声明支持断线恢复，此后的下行帧进入重放缓冲区
+     */
+    synchronized void enableReplay() {
+        replayEnabled = true;
+    }
+
+    synchronized boolean isReplayEnabled() {
+        return replayEnabled;
+    }
+
+    /**
+     * 客户端确认已收到 seq 及之前的所有帧，释放对应的缓冲；第一个 ack 同时视为声明支持断线恢复
+     */
+    synchronized void ack(long seq) {
+        replayEnabled = true;
+        while (!replay.isEmpty() && replay.peekFirst().seq <= seq) {
+            replayBytes -= replay.pollFirst().size;
+        }
+    }
+
+    /**
+     * 挂接（新的）WebSocket 连接：先发送 hello 帧，再重放 lastAckedSeq 之后仍在缓冲区中的帧
+     *
+     * @param newStreamId 多路复用连接上的流 ID，独占连接时为 NO_STREAM
+     * @param helloFrame 根据重放起始序号生成的握手帧（不分配序号）
+     * @return 重放的帧数
+     */
+    synchronized int attach(WebSocketSession newSocket, int newStreamId, long lastAckedSeq, LongFunction<String> helloFrame) {
+        WebSocketSession previous = socket;
+        boolean previousShared = streamId != NO_STREAM;
+        socket = newSocket;
+        streamId = newStreamId;
+        deflate = isDeflate(newSocket);
+        detachedAt = 0;
+        // 多路复用连接由其他流共享，不能关闭
+        if (previous != null && previous != newSocket && !previousShared && previous.isOpen()) {
+            // 客户端在服务端察觉旧连接断开之前就重连了，关闭旧连接
+            try {
+                previous.close(CloseStatus.NORMAL.withReason("superseded by resumed connection"));
+            } catch (Exception e) {
+                log.debug("Failed to close superseded socket for session {}", sessionId, e);
+            }
+        }
+        if (lastAckedSeq > 0) {
+            ack(lastAckedSeq);
+        }
+        long replayFrom = replay.isEmpty() ? nextSeq : replay.peekFirst().seq;
+        write(new Frame(0, helloFrame.apply(replayFrom), null));
+        int replayed = 0;
+        for (Iterator<Frame> it = replay.iterator(); it.hasNext() && socket == newSocket; replayed++) {
+            write(it.next());
+        }
+        return replayed;
+    }
+
+    /**
+     * 连接断开，之后的帧只进入缓冲区
+     *
+     * @return false 表示该连接已被新连接取代，调用方不应再处理断开
+     */
+    synchronized boolean detach(WebSocketSession oldSocket) {
+        if (socket != oldSocket) {
+            return false;
+        }
+        socket = null;
+        detachedAt = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * 会话彻底结束，丢弃缓冲区
+     */
+    synchronized void close() {
+        closed = true;
+        socket = null;
+        recorder = null;
+        replay.clear();
+        replayBytes = 0;
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    synchronized boolean isAttached() {
+        return socket != null;
+    }
+
+    /**
+     * 连接断开的时间，已连接时为 0
+     */
+    synchronized long getDetachedAt() {
+        return detachedAt;
+    }
+
+    synchronized long getReplayBytes() {
+        return replayBytes;
+    }
+
+    private void buffer(Frame frame) {
+        if (closed || !replayEnabled) {
+            return;
+        }
+        replay.addLast(frame);
+        replayBytes += frame.size;
+        // 超出上限时丢弃最早的帧，重连时客户端可从 hello 帧的 replayFrom 得知缺口
+        while (replay.size() > maxFrames || (replayBytes > maxBytes && replay.size() > 1)) {
+            replayBytes -= replay.pollFirst().size;
+        }
+    }
+
+    private void write(Frame frame) {
+        if (socket == null) {
+            return;
+        }
+        try {
+            if (socket.isOpen()) {
+                socket.sendMessage(frame.toMessage(streamId));
+                if (deflate && frame.text != null) {
+                    compressionSampler.record(frame.text);
+                }
+            }
+        } catch (Exception e) {
+            // 写失败的帧仍在缓冲区中，等待重连后重放
+            log.warn("Failed to write frame for session {}, keeping it for replay: {}", sessionId, e.getMessage());
+        }
+    }
+
+    static boolean isDeflate(WebSocketSession socket) {
+        for (WebSocketExtension extension : socket.getExtensions()) {
+            if (CompressionNegotiationFilter.PERMESSAGE_DEFLATE.equalsIgnoreCase(extension.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 在 JSON 对象开头插入 stream 字段，非多路复用时原样返回
+     */
+    static String withStream(String json, int streamId) {
+        return streamId == NO_STREAM ? json : "{\"stream\":" + streamId + "," + json.substring(1);
+    }
+
+    // 缓冲区中保存未加流 ID 的原始帧，写出时按当前挂接的连接加帧头，恢复到其他流上时仍可重放
+    private static final class Frame {
+        final long seq;
+        final String text;
+        final byte[] data;
+        final long size;
+
+        Frame(long seq, String text, byte[] data) {
+            this.seq = seq;
+            this.text = text;
+            this.data = data;
+            this.size = text != null ? utf8Length(text) : data.length;
+        }
+
+        // 按 UTF-8 编码后的字节数计算，不生成临时数组
+        private static long utf8Length(String text) {
+            long length = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    length++;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else {
+                    length += 3;
+                }
+            }
+            return length;
+        }
+
+        WebSocketMessage<?> toMessage(int streamId) {
+            if (text != null) {
+                return new TextMessage(withStream(text, streamId));
+            }
+            if (streamId == NO_STREAM) {
+                return new BinaryMessage(data);
+            }
+            ByteBuffer framed = ByteBuffer.allocate(STREAM_HEADER_BYTES + data.length);
+            framed.putShort((short) streamId).put(data).flip();
+            return new BinaryMessage(framed);
+        }
+    }
+}
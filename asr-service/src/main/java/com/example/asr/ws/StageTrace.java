@@ -0,0 +1,71 @@
+package com.example.asr.ws;
+
+import com.example.asr.metrics.PipelineMetrics;
+import io.opentelemetry.api.trace.Span;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个阶段（asr / tts / websocket.write）的追踪状态
+ * 热路径上只更新测量和计数器，阶段结束时再一次性汇总到 Span 属性和聚合指标中，
+ * 避免每帧都去查找 Span、切换上下文。
+ */
+final class StageTrace {
+    private final Span span;
+    private final String stage;
+    private final WebSocketPerformanceMeasure measure;
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    StageTrace(Span span, String stage) {
+        this.span = span;
+        this.stage = stage;
+        this.measure = WebSocketPerformanceMeasure.create();
+    }
+
+    Span span() {
+        return span;
+    }
+
+    WebSocketPerformanceMeasure measure() {
+        return measure;
+    }
+
+    /**
+     * 记录一个输出 chunk 及其字节数
+     *
+     * @return 如果是第一个 chunk，返回 time_to_first_chunk（毫秒），否则返回 -1
+     */
+    long recordChunk(int size) {
+        bytes.addAndGet(size);
+        return measure.recordChunk();
+    }
+
+    /**
+     * 记录一个输入帧（不参与 chunk 间隔统计）
+     */
+    void recordFrame(int size) {
+        frames.incrementAndGet();
+        bytes.addAndGet(size);
+    }
+
+    long bytes() {
+        return bytes.get();
+    }
+
+    /**
+     * 汇总测量结果并结束 Span
+     */
+    void end(PipelineMetrics metrics) {
+        measure.applyToSpan(span, stage);
+        metrics.recordStage(stage, measure);
+        if (span.isRecording()) {
+            long frameCount = frames.get();
+            if (frameCount > 0) {
+                span.setAttribute(stage + ".frames", frameCount);
+            }
+            span.setAttribute(stage + ".bytes", bytes.get());
+        }
+        span.end();
+    }
+}
@@ -4,34 +4,60 @@ import io.opentelemetry.api.trace.Span;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
 /**
  * WebSocket 性能指标测量工具类
  * 用于统一管理 time_to_first_chunk 和 time_per_output_chunk 等性能指标
+ *
+ * recordChunk 会在 DashScope / OkHttp 的回调线程上并发调用，因此所有状态都是基本类型字段，
+ * 通过 VarHandle 做原子更新；计时使用 System.nanoTime()，记录过程不加锁、不分配对象。
  */
 public class WebSocketPerformanceMeasure {
     private static final Logger log = LoggerFactory.getLogger(WebSocketPerformanceMeasure.class);
-    
+
     private static final long UNINITIALIZED = -1L;
-    
-    private Long startTime;
-    private Long firstChunkTime;
-    private AtomicInteger chunkCounts;
-    private AtomicLong totalInterval;
-    private Long lastChunkTime;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private static final VarHandle START_NANOS;
+    private static final VarHandle FIRST_CHUNK_NANOS;
+    private static final VarHandle LAST_CHUNK_NANOS;
+    private static final VarHandle CHUNK_COUNT;
+    private static final VarHandle TOTAL_INTERVAL_NANOS;
+    private static final VarHandle MIN_INTERVAL_NANOS;
+    private static final VarHandle MAX_INTERVAL_NANOS;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            START_NANOS = lookup.findVarHandle(WebSocketPerformanceMeasure.class, "startNanos", long.class);
+            FIRST_CHUNK_NANOS = lookup.findVarHandle(WebSocketPerformanceMeasure.class, "firstChunkNanos", long.class);
+            LAST_CHUNK_NANOS = lookup.findVarHandle(WebSocketPerformanceMeasure.class, "lastChunkNanos", long.class);
+            CHUNK_COUNT = lookup.findVarHandle(WebSocketPerformanceMeasure.class, "chunkCount", int.class);
+            TOTAL_INTERVAL_NANOS = lookup.findVarHandle(WebSocketPerformanceMeasure.class, "totalIntervalNanos", long.class);
+            MIN_INTERVAL_NANOS = lookup.findVarHandle(WebSocketPerformanceMeasure.class, "minIntervalNanos", long.class);
+            MAX_INTERVAL_NANOS = lookup.findVarHandle(WebSocketPerformanceMeasure.class, "maxIntervalNanos", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile long startNanos = UNINITIALIZED;
+    private volatile long firstChunkNanos = UNINITIALIZED;
+    private volatile long lastChunkNanos = UNINITIALIZED;
+    private volatile int chunkCount;
+    private volatile long totalIntervalNanos;
+    private volatile long minIntervalNanos = Long.MAX_VALUE;
+    private volatile long maxIntervalNanos = UNINITIALIZED;
+    private final LatencyHistogram intervalHistogram = new LatencyHistogram();
 
     /**
      * 创建新的性能测量实例
      */
     public static WebSocketPerformanceMeasure create() {
         WebSocketPerformanceMeasure measure = new WebSocketPerformanceMeasure();
-        measure.startTime = System.currentTimeMillis();
-        measure.firstChunkTime = UNINITIALIZED;
-        measure.chunkCounts = new AtomicInteger(0);
-        measure.totalInterval = new AtomicLong(0);
-        measure.lastChunkTime = UNINITIALIZED;
+        measure.startNanos = System.nanoTime();
         return measure;
     }
 
@@ -39,57 +65,91 @@ public class WebSocketPerformanceMeasure {
      * 开始测量（如果尚未开始）
      */
     public void start() {
-        if (startTime == null) {
-            startTime = System.currentTimeMillis();
-            firstChunkTime = UNINITIALIZED;
-            chunkCounts = new AtomicInteger(0);
-            totalInterval = new AtomicLong(0);
-            lastChunkTime = UNINITIALIZED;
-        }
+        START_NANOS.compareAndSet(this, UNINITIALIZED, System.nanoTime());
     }
 
     /**
      * 记录一个 chunk 的到达
-     * 自动计算 time_to_first_chunk 和更新间隔统计
-     * 
-     * @return 如果是第一个 chunk，返回 time_to_first_chunk（毫秒），否则返回 null
+     * 自动计算 time_to_first_chunk 和更新间隔统计，可在多个线程上并发调用
+     *
+     * @return 如果是第一个 chunk，返回 time_to_first_chunk（毫秒），否则返回 -1
      */
-    public Long recordChunk() {
-        if (startTime == null) {
+    public long recordChunk() {
+        long now = System.nanoTime();
+        if (startNanos == UNINITIALIZED) {
             log.warn("Performance measure not started, calling start() automatically");
-            start();
+            START_NANOS.compareAndSet(this, UNINITIALIZED, now);
         }
-        
-        long currentTime = System.currentTimeMillis();
-        chunkCounts.incrementAndGet();
-        
-        // 记录第一个 chunk 的时间
-        Long timeToFirstChunk = null;
-        if (firstChunkTime == UNINITIALIZED) {
-            timeToFirstChunk = currentTime - startTime;
-            firstChunkTime = currentTime;
-            log.debug("First chunk recorded, time_to_first_chunk: {}ms", timeToFirstChunk);
+        CHUNK_COUNT.getAndAdd(this, 1);
+
+        // 记录第一个 chunk 的时间，只有 CAS 成功的线程负责返回首包耗时
+        long timeToFirstChunk = UNINITIALIZED;
+        if (FIRST_CHUNK_NANOS.compareAndSet(this, UNINITIALIZED, now)) {
+            timeToFirstChunk = (now - startNanos) / NANOS_PER_MILLI;
+            if (log.isDebugEnabled()) {
+                log.debug("First chunk recorded, time_to_first_chunk: {}ms", timeToFirstChunk);
+            }
         }
-        
+
         // 计算 chunk 间隔（从第二个 chunk 开始）
-        if (lastChunkTime != UNINITIALIZED) {
-            long interval = currentTime - lastChunkTime;
-            totalInterval.addAndGet(interval);
+        long previous = (long) LAST_CHUNK_NANOS.getAndSet(this, now);
+        if (previous != UNINITIALIZED) {
+            // 并发到达时交换顺序可能与取时顺序相反，此时间隔按 0 计
+            long interval = Math.max(0, now - previous);
+            TOTAL_INTERVAL_NANOS.getAndAdd(this, interval);
+            updateMin(interval);
+            updateMax(interval);
+            intervalHistogram.recordNanos(interval);
         }
-        lastChunkTime = currentTime;
-        
+
         return timeToFirstChunk;
     }
 
+    private void updateMin(long interval) {
+        long current = minIntervalNanos;
+        while (interval < current && !MIN_INTERVAL_NANOS.weakCompareAndSet(this, current, interval)) {
+            current = minIntervalNanos;
+        }
+    }
+
+    private void updateMax(long interval) {
+        long current = maxIntervalNanos;
+        while (interval > current && !MAX_INTERVAL_NANOS.weakCompareAndSet(this, current, interval)) {
+            current = maxIntervalNanos;
+        }
+    }
+
+    /**
+     * 获取 time_to_first_chunk（纳秒），第一个 chunk 尚未到达时返回 -1
+     */
+    public long getTimeToFirstChunkNanos() {
+        long first = firstChunkNanos;
+        long start = startNanos;
+        if (first == UNINITIALIZED || start == UNINITIALIZED) {
+            return UNINITIALIZED;
+        }
+        return first - start;
+    }
+
     /**
      * 获取 time_to_first_chunk（毫秒）
      * 如果第一个 chunk 尚未到达，返回 null
      */
     public Long getTimeToFirstChunk() {
-        if (firstChunkTime == UNINITIALIZED || startTime == null) {
-            return null;
+        long nanos = getTimeToFirstChunkNanos();
+        return nanos == UNINITIALIZED ? null : nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * 获取 time_to_last_chunk（纳秒），第一个 chunk 尚未到达时返回 -1
+     */
+    public long getTimeToLastChunkNanos() {
+        long last = lastChunkNanos;
+        long start = startNanos;
+        if (last == UNINITIALIZED || start == UNINITIALIZED) {
+            return UNINITIALIZED;
         }
-        return firstChunkTime - startTime;
+        return last - start;
     }
 
     /**
@@ -98,10 +158,19 @@ public class WebSocketPerformanceMeasure {
      * 如果第一个 chunk 尚未到达，返回 null
      */
     public Long getTimeToLastChunk() {
-        if (lastChunkTime == UNINITIALIZED || startTime == null) {
-            return null;
+        long nanos = getTimeToLastChunkNanos();
+        return nanos == UNINITIALIZED ? null : nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * 获取平均 chunk 间隔（纳秒），chunk 数量少于 2 时返回 -1
+     */
+    public long getAverageIntervalNanos() {
+        int count = chunkCount;
+        if (count < 2) {
+            return UNINITIALIZED;
         }
-        return lastChunkTime - startTime;
+        return totalIntervalNanos / (count - 1);
     }
 
     /**
@@ -109,23 +178,57 @@ public class WebSocketPerformanceMeasure {
      * 如果 chunk 数量少于 2，返回 null
      */
     public Long getAverageInterval() {
-        int count = chunkCounts.get();
-        if (count < 2 || totalInterval == null) {
+        long nanos = getAverageIntervalNanos();
+        return nanos == UNINITIALIZED ? null : nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * 获取最小 chunk 间隔（毫秒），没有间隔样本时返回 null
+     */
+    public Long getMinInterval() {
+        long nanos = minIntervalNanos;
+        return nanos == Long.MAX_VALUE ? null : nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * 获取最大 chunk 间隔（毫秒），没有间隔样本时返回 null
+     */
+    public Long getMaxInterval() {
+        long nanos = maxIntervalNanos;
+        return nanos == UNINITIALIZED ? null : nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * 获取 chunk 间隔的分位数（毫秒，直方图桶上界，不超过最大值），没有间隔样本时返回 null
+     *
+     * @param percentile 0 ~ 1 之间的分位，如 0.99
+     */
+    public Long getIntervalPercentile(double percentile) {
+        long nanos = intervalHistogram.percentileNanos(percentile);
+        long max = maxIntervalNanos;
+        if (nanos < 0 || max == UNINITIALIZED) {
             return null;
         }
-        return totalInterval.get() / (count - 1);
+        return Math.min(nanos, max) / NANOS_PER_MILLI;
     }
 
     /**
      * 获取 chunk 总数
      */
     public int getChunkCount() {
-        return chunkCounts != null ? chunkCounts.get() : 0;
+        return chunkCount;
+    }
+
+    /**
+     * 间隔直方图中的样本数，chunk 全部记录完成后应为 chunk 总数减一
+     */
+    long getIntervalCount() {
+        return intervalHistogram.count();
     }
 
     /**
      * 将性能指标应用到 OpenTelemetry Span
-     * 
+     *
      * @param span 要应用指标的 Span
      * @param prefix 指标名称前缀（如 "asr", "tts", "websocket.write"）
      */
@@ -133,25 +236,36 @@ public class WebSocketPerformanceMeasure {
         if (span == null) {
             return;
         }
-        
+
         Long timeToFirstChunk = getTimeToFirstChunk();
         if (timeToFirstChunk != null) {
             String attributeName = prefix + ".time_to_first_chunk_ms";
             span.setAttribute(attributeName, timeToFirstChunk);
             log.debug("Applied {} to span: {}ms", attributeName, timeToFirstChunk);
         }
-        
+
         Long avgInterval = getAverageInterval();
         if (avgInterval != null) {
             String attributeName = prefix + ".time_per_output_chunk_ms";
             span.setAttribute(attributeName, avgInterval);
             log.debug("Applied {} to span: {}ms", attributeName, avgInterval);
+
+            setIfPresent(span, prefix + ".chunk_interval_min_ms", getMinInterval());
+            setIfPresent(span, prefix + ".chunk_interval_max_ms", getMaxInterval());
+            setIfPresent(span, prefix + ".chunk_interval_p50_ms", getIntervalPercentile(0.5));
+            setIfPresent(span, prefix + ".chunk_interval_p99_ms", getIntervalPercentile(0.99));
         }
-        
+
         int chunkCount = getChunkCount();
         if (chunkCount > 0) {
             String attributeName = prefix + ".chunk_count";
             span.setAttribute(attributeName, chunkCount);
         }
     }
+
+    private static void setIfPresent(Span span, String attributeName, Long value) {
+        if (value != null) {
+            span.setAttribute(attributeName, value);
+        }
+    }
 }
@@ -0,0 +1,88 @@
+package com.example.asr.admission;
+
+import com.example.asr.metrics.PipelineMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 租户配额：只有配置过的租户拥有独立配额，客户端自报的其他租户名共享 default 配额，配额表不随租户名增长
+ */
+class AdmissionControllerTenantTest {
+    private AdmissionController admission;
+
+    @BeforeEach
+    void setUp() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        ReflectionTestUtils.setField(metrics, "registry", new SimpleMeterRegistry());
+        admission = new AdmissionController();
+        ReflectionTestUtils.setField(admission, "metrics", metrics);
+        ReflectionTestUtils.setField(admission, "enabled", true);
+        ReflectionTestUtils.setField(admission, "initialLimit", 20);
+        ReflectionTestUtils.setField(admission, "minLimit", 2);
+        ReflectionTestUtils.setField(admission, "maxLimit", 200);
+        ReflectionTestUtils.setField(admission, "latencyTolerance", 2.0);
+        ReflectionTestUtils.setField(admission, "backoffRatio", 0.9);
+        ReflectionTestUtils.setField(admission, "maxQueueWaitMs", 0L);
+        ReflectionTestUtils.setField(admission, "tenantDefaultQuota", 2);
+        ReflectionTestUtils.setField(admission, "tenantQuotaConfig", "gold=3");
+        ReflectionTestUtils.setField(admission, "asrMaxStreams", 10);
+        admission.init();
+    }
+
+    @Test
+    void unknownTenantsResolveToDefault() {
+        assertThat(admission.resolveTenant("gold")).isEqualTo("gold");
+        assertThat(admission.resolveTenant("made-up")).isEqualTo(AdmissionController.DEFAULT_TENANT);
+        assertThat(admission.resolveTenant("")).isEqualTo(AdmissionController.DEFAULT_TENANT);
+        assertThat(admission.resolveTenant(null)).isEqualTo(AdmissionController.DEFAULT_TENANT);
+    }
+
+    @Test
+    void freshTenantNamesShareTheDefaultQuota() {
+        // 每个会话换一个新租户名，仍然只能拿到 default 的 2 个许可
+        for (int i = 0; i < 3; i++) {
+            admission.registerSession("s-" + i, "tenant-" + i);
+        }
+        admission.acquire(AdmissionController.PROVIDER_LLM, "s-0");
+        admission.acquire(AdmissionController.PROVIDER_LLM, "s-1");
+        assertThatThrownBy(() -> admission.acquire(AdmissionController.PROVIDER_LLM, "s-2"))
+            .isInstanceOf(OverloadException.class)
+            .extracting(e -> ((OverloadException) e).getReason())
+            .isEqualTo(OverloadException.REASON_TENANT);
+
+        // 配置过的租户有独立配额，不受 default 已满影响
+        admission.registerSession("g-1", "gold");
+        admission.acquire(AdmissionController.PROVIDER_LLM, "g-1").success();
+    }
+
+    @Test
+    void tenantTableDoesNotGrowWithClientNames() {
+        for (int i = 0; i < 1000; i++) {
+            admission.registerSession("s-" + i, "tenant-" + i);
+            admission.acquire(AdmissionController.PROVIDER_TTS, "s-" + i).close();
+            admission.unregisterSession("s-" + i);
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, ?> tenantPermits = (Map<String, ?>) ReflectionTestUtils.getField(admission, "tenantPermits");
+        assertThat(tenantPermits).containsOnlyKeys("gold", AdmissionController.DEFAULT_TENANT);
+    }
+
+    @Test
+    void permitReturnsToTheResolvedTenant() {
+        admission.registerSession("s-1", "made-up");
+        AdmissionController.Permit first = admission.acquire(AdmissionController.PROVIDER_ASR, "s-1");
+        AdmissionController.Permit second = admission.acquire(AdmissionController.PROVIDER_ASR, "s-1");
+        first.success();
+        second.failure(new RuntimeException("boom"));
+        // 归还后 default 配额恢复
+        admission.acquire(AdmissionController.PROVIDER_ASR, "s-1").close();
+        admission.acquire(AdmissionController.PROVIDER_ASR, "s-1").close();
+    }
+}
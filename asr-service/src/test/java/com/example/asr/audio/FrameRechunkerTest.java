@@ -0,0 +1,118 @@
+package com.example.asr.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 上行重新分帧：任意输入块大小下的固定帧长、抖动缓冲的 maxQueued 上限、定时发出顺序，以及 flush 发出不足一帧的尾部
+ */
+class FrameRechunkerTest {
+    private static final int FRAME = 320;
+
+    @Test
+    void cutsArbitraryChunksIntoFixedFrames() {
+        Random random = new Random(42);
+        byte[] audio = new byte[FRAME * 50 + 123];
+        random.nextBytes(audio);
+        FrameRechunker rechunker = new FrameRechunker(FRAME, 0);
+        List<byte[]> sent = new ArrayList<>();
+
+        // 包括 1 字节、正好一帧和跨越多帧的块
+        for (int offset = 0; offset < audio.length; ) {
+            int size = Math.min(1 + random.nextInt(FRAME * 3), audio.length - offset);
+            rechunker.offer(Arrays.copyOfRange(audio, offset, offset + size), sent::add);
+            offset += size;
+        }
+
+        assertThat(sent).hasSize(50).allSatisfy(frame -> assertThat(frame).hasSize(FRAME));
+        assertThat(concat(sent)).isEqualTo(Arrays.copyOf(audio, FRAME * 50));
+        assertThat(rechunker.getBufferedBytes()).isEqualTo(123);
+    }
+
+    @Test
+    void queuesUpToMaxQueuedAndSendsTheExcessImmediately() {
+        FrameRechunker rechunker = new FrameRechunker(FRAME, 2);
+        List<byte[]> sent = new ArrayList<>();
+
+        rechunker.offer(frames(0, 2), sent::add);
+        assertThat(sent).isEmpty();
+        assertThat(rechunker.getBufferedBytes()).isEqualTo(FRAME * 2);
+
+        // 一次到达 3 帧：队列只保留最新的 2 帧，最早的 3 帧立即发出
+        rechunker.offer(frames(2, 3), sent::add);
+        assertThat(sent).extracting(frame -> frame[0]).containsExactly((byte) 0, (byte) 1, (byte) 2);
+        assertThat(rechunker.getBufferedBytes()).isEqualTo(FRAME * 2);
+    }
+
+    @Test
+    void tickSendsOneFrameInOrder() {
+        FrameRechunker rechunker = new FrameRechunker(FRAME, 5);
+        List<byte[]> sent = new ArrayList<>();
+        rechunker.offer(frames(0, 3), sent::add);
+
+        rechunker.tick(sent::add);
+        rechunker.tick(sent::add);
+        assertThat(sent).extracting(frame -> frame[0]).containsExactly((byte) 0, (byte) 1);
+        rechunker.tick(sent::add);
+        rechunker.tick(sent::add);
+        assertThat(sent).hasSize(3);
+        assertThat(rechunker.getBufferedBytes()).isZero();
+    }
+
+    @Test
+    void flushSendsQueuedFramesThenThePartialTail() {
+        FrameRechunker rechunker = new FrameRechunker(FRAME, 5);
+        List<byte[]> sent = new ArrayList<>();
+        byte[] audio = frames(0, 2);
+        byte[] withTail = Arrays.copyOf(audio, audio.length + 100);
+        Arrays.fill(withTail, audio.length, withTail.length, (byte) 9);
+        rechunker.offer(withTail, sent::add);
+        assertThat(sent).isEmpty();
+
+        rechunker.flush(sent::add);
+        assertThat(sent).extracting(frame -> frame.length).containsExactly(FRAME, FRAME, 100);
+        assertThat(concat(sent)).isEqualTo(withTail);
+        assertThat(rechunker.getBufferedBytes()).isZero();
+
+        // 尾部只发一次，之后从新的一帧开始
+        sent.clear();
+        rechunker.flush(sent::add);
+        assertThat(sent).isEmpty();
+        rechunker.offer(new byte[FRAME], sent::add);
+        rechunker.flush(sent::add);
+        assertThat(sent).singleElement().satisfies(frame -> assertThat(frame).isEqualTo(new byte[FRAME]));
+    }
+
+    @Test
+    void framesDoNotAliasTheInput() {
+        FrameRechunker rechunker = new FrameRechunker(FRAME, 0);
+        List<byte[]> sent = new ArrayList<>();
+        byte[] input = frames(7, 1);
+        rechunker.offer(input, sent::add);
+        Arrays.fill(input, (byte) 0);
+
+        assertThat(sent).singleElement().satisfies(frame -> assertThat(frame[0]).isEqualTo((byte) 7));
+    }
+
+    // count 个帧，第 i 帧的每个字节都是 first + i
+    private static byte[] frames(int first, int count) {
+        byte[] data = new byte[FRAME * count];
+        for (int i = 0; i < count; i++) {
+            Arrays.fill(data, i * FRAME, (i + 1) * FRAME, (byte) (first + i));
+        }
+        return data;
+    }
+
+    private static byte[] concat(List<byte[]> frames) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        frames.forEach(out::writeBytes);
+        return out.toByteArray();
+    }
+}
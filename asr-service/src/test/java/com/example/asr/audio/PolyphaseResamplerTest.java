@@ -0,0 +1,119 @@
+package com.example.asr.audio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * 多相重采样：各比例的输出长度、分块与整段输入一致、直流增益、通带增益和阻带（混叠）抑制
+ * 系数个数与 UplinkAudioNormalizer 一致
+ */
+class PolyphaseResamplerTest {
+    private static final int TAPS = UplinkAudioNormalizer.RESAMPLER_TAPS;
+    private static final int TARGET_RATE = 16000;
+
+    @ParameterizedTest
+    @CsvSource({"48000", "44100", "32000", "22050", "8000"})
+    void outputLengthFollowsRatio(int inputRate) {
+        PolyphaseResampler resampler = new PolyphaseResampler(inputRate, TARGET_RATE, TAPS);
+        int block = inputRate / 50;
+        float[] input = new float[block];
+        float[] output = new float[resampler.maxOutput(block)];
+        long produced = 0;
+        for (int i = 0; i < 50 * 3; i++) {
+            int n = resampler.process(input, block, output);
+            assertThat(n).isLessThanOrEqualTo(resampler.maxOutput(block));
+            produced += n;
+        }
+        // 3 秒输入对应 3 秒输出，误差不超过一个样本
+        assertThat(produced).isCloseTo(3L * TARGET_RATE, within(1L));
+    }
+
+    @Test
+    void chunkedInputMatchesWholeInput() {
+        Random random = new Random(7);
+        float[] signal = new float[48000];
+        for (int i = 0; i < signal.length; i++) {
+            signal[i] = random.nextFloat() * 2 - 1;
+        }
+        float[] whole = resample(new PolyphaseResampler(48000, TARGET_RATE, TAPS), signal, signal.length);
+
+        // 任意块大小（包括 1 个样本和比滤波器短的块）
+        PolyphaseResampler resampler = new PolyphaseResampler(48000, TARGET_RATE, TAPS);
+        float[] chunked = new float[whole.length];
+        int produced = 0;
+        for (int offset = 0; offset < signal.length; ) {
+            int size = Math.min(1 + random.nextInt(2000), signal.length - offset);
+            float[] block = Arrays.copyOfRange(signal, offset, offset + size);
+            float[] out = new float[resampler.maxOutput(size)];
+            int n = resampler.process(block, size, out);
+            System.arraycopy(out, 0, chunked, produced, n);
+            produced += n;
+            offset += size;
+        }
+        assertThat(produced).isEqualTo(whole.length);
+        assertThat(chunked).containsExactly(whole);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"48000", "44100", "8000"})
+    void dcGainIsUnity(int inputRate) {
+        float[] input = new float[inputRate];
+        Arrays.fill(input, 0.5f);
+        float[] output = resample(new PolyphaseResampler(inputRate, TARGET_RATE, TAPS), input, input.length);
+        // 跳过滤波器暖机段，每个相位的直流增益都应为 0 dB
+        for (int i = TARGET_RATE / 10; i < output.length; i++) {
+            assertThat(decibels(output[i] / 0.5)).isCloseTo(0, within(0.05));
+        }
+    }
+
+    @Test
+    void passbandIsFlatAndStopbandIsAttenuated() {
+        // 48k → 16k：通带（截止频率 7.2 kHz 以下）增益接近 0 dB
+        assertThat(sineGain(48000, 1000)).isCloseTo(0, within(0.1));
+        assertThat(sineGain(48000, 5000)).isCloseTo(0, within(0.1));
+        // 高于输出奈奎斯特频率（8 kHz）的正弦会折叠回通带，必须被滤除
+        assertThat(sineGain(48000, 12000)).isLessThan(-60);
+        assertThat(sineGain(48000, 20000)).isLessThan(-60);
+        assertThat(sineGain(44100, 11000)).isLessThan(-60);
+    }
+
+    // 单位正弦分块处理后的输出 RMS 增益（dB），跳过暖机段
+    private static double sineGain(int inputRate, double frequency) {
+        float[] input = new float[inputRate];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (float) Math.sin(2 * Math.PI * frequency * i / inputRate);
+        }
+        float[] output = resample(new PolyphaseResampler(inputRate, TARGET_RATE, TAPS), input, inputRate / 50);
+        double sum = 0;
+        int from = TARGET_RATE / 10;
+        for (int i = from; i < output.length; i++) {
+            sum += (double) output[i] * output[i];
+        }
+        double rms = Math.sqrt(sum / (output.length - from));
+        return decibels(rms / Math.sqrt(0.5));
+    }
+
+    private static float[] resample(PolyphaseResampler resampler, float[] input, int block) {
+        float[] output = new float[resampler.maxOutput(input.length) + input.length];
+        float[] out = new float[resampler.maxOutput(block)];
+        int produced = 0;
+        for (int offset = 0; offset < input.length; offset += block) {
+            int size = Math.min(block, input.length - offset);
+            int n = resampler.process(Arrays.copyOfRange(input, offset, offset + size), size, out);
+            System.arraycopy(out, 0, output, produced, n);
+            produced += n;
+        }
+        return Arrays.copyOf(output, produced);
+    }
+
+    private static double decibels(double ratio) {
+        return 20 * Math.log10(Math.abs(ratio));
+    }
+}
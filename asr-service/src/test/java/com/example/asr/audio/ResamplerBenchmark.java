@@ -0,0 +1,126 @@
+package com.example.asr.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 上行重采样的吞吐和频率响应压测（单线程，即每核）
+ *
+ * - 吞吐：PolyphaseResampler 按 20ms 一块连续处理 48k / 44.1k / 22.05k / 8k → 16k，输出输入样本数/秒；
+ *   另外测 UplinkAudioNormalizer 整条链路（48k 双声道 f32le 和 44.1k 双声道 s16le → 16k 单声道 s16le）
+ * - 频率响应：48k → 16k 时对各频率的单位正弦分块处理，跳过滤波器暖机段，按输出 RMS 计算增益（dB）；
+ *   高于输出奈奎斯特频率的正弦折叠回通带的能量同样计入，即混叠抑制
+ *
+ * 系数个数与 UplinkAudioNormalizer 一致。参数：[每种转换的输入秒数=600]
+ */
+public final class ResamplerBenchmark {
+    private static final int TARGET_RATE = 16000;
+    private static final int BLOCK_MS = 20;
+
+    private ResamplerBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+
+        System.out.printf("重采样吞吐（单线程，%d ms 一块，每个相位 %d 个系数）：%n", BLOCK_MS,
+            UplinkAudioNormalizer.RESAMPLER_TAPS);
+        for (int rate : new int[]{48000, 44100, 22050, 8000}) {
+            // 预热一次再计时
+            resamplerThroughput(rate, Math.max(1, seconds / 10));
+            System.out.printf("  %6d → %d  %6.1f M 输入样本/秒%n", rate, TARGET_RATE,
+                resamplerThroughput(rate, seconds) / 1e6);
+        }
+        System.out.println("归一化整条链路（解码 + 混音 + 重采样 + 量化）：");
+        for (Object[] format : new Object[][]{{48000, 2, UplinkAudioNormalizer.FORMAT_F32LE},
+            {44100, 2, UplinkAudioNormalizer.FORMAT_S16LE}}) {
+            int rate = (int) format[0];
+            int channels = (int) format[1];
+            String sampleFormat = (String) format[2];
+            normalizerThroughput(rate, channels, sampleFormat, Math.max(1, seconds / 10));
+            System.out.printf("  %6d Hz × %d %s → %d s16le  %6.1f M 输入样本帧/秒%n", rate, channels, sampleFormat,
+                TARGET_RATE, normalizerThroughput(rate, channels, sampleFormat, seconds) / 1e6);
+        }
+
+        System.out.printf("48000 → %d 频率响应：%n", TARGET_RATE);
+        for (int frequency : new int[]{100, 1000, 3000, 5000, 6000, 7000, 7500, 8000, 9000, 10000, 12000, 16000, 20000}) {
+            System.out.printf("  %6d Hz  %7.1f dB%n", frequency, gainDb(48000, frequency));
+        }
+    }
+
+    private static double resamplerThroughput(int inputRate, int seconds) {
+        PolyphaseResampler resampler = new PolyphaseResampler(inputRate, TARGET_RATE, UplinkAudioNormalizer.RESAMPLER_TAPS);
+        int block = inputRate * BLOCK_MS / 1000;
+        float[] input = new float[block];
+        for (int i = 0; i < block; i++) {
+            input[i] = (float) (0.5 * Math.sin(2 * Math.PI * 440 * i / inputRate));
+        }
+        float[] output = new float[resampler.maxOutput(block)];
+        int blocks = seconds * 1000 / BLOCK_MS;
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int b = 0; b < blocks; b++) {
+            sink += resampler.process(input, block, output);
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink == 0) {
+            throw new IllegalStateException("no output");
+        }
+        return (double) blocks * block * 1e9 / elapsed;
+    }
+
+    private static double normalizerThroughput(int inputRate, int channels, String sampleFormat, int seconds) {
+        UplinkAudioNormalizer normalizer = UplinkAudioNormalizer.create(inputRate, channels, sampleFormat, TARGET_RATE);
+        boolean float32 = UplinkAudioNormalizer.FORMAT_F32LE.equals(sampleFormat);
+        int frames = inputRate * BLOCK_MS / 1000;
+        ByteBuffer input = ByteBuffer.allocate(frames * channels * (float32 ? 4 : 2)).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames; i++) {
+            double value = 0.5 * Math.sin(2 * Math.PI * 440 * i / inputRate);
+            for (int c = 0; c < channels; c++) {
+                if (float32) {
+                    input.putFloat((float) value);
+                } else {
+                    input.putShort((short) (value * 32767));
+                }
+            }
+        }
+        input.flip();
+        int blocks = seconds * 1000 / BLOCK_MS;
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int b = 0; b < blocks; b++) {
+            sink += normalizer.process(input).length;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink == 0) {
+            throw new IllegalStateException("no output");
+        }
+        return (double) blocks * frames * 1e9 / elapsed;
+    }
+
+    // 1 秒单位正弦分块送入，跳过前 100ms 的输出后按 RMS 计算增益
+    private static double gainDb(int inputRate, int frequency) {
+        PolyphaseResampler resampler = new PolyphaseResampler(inputRate, TARGET_RATE, UplinkAudioNormalizer.RESAMPLER_TAPS);
+        int block = inputRate * BLOCK_MS / 1000;
+        float[] input = new float[block];
+        float[] output = new float[resampler.maxOutput(block)];
+        int skip = TARGET_RATE / 10;
+        int produced = 0;
+        double energy = 0;
+        int counted = 0;
+        for (int offset = 0; offset < inputRate; offset += block) {
+            for (int i = 0; i < block; i++) {
+                input[i] = (float) Math.sin(2 * Math.PI * frequency * (offset + i) / inputRate);
+            }
+            int count = resampler.process(input, block, output);
+            for (int i = 0; i < count; i++, produced++) {
+                if (produced >= skip) {
+                    energy += output[i] * output[i];
+                    counted++;
+                }
+            }
+        }
+        double rms = Math.sqrt(energy / counted);
+        return 20 * Math.log10(Math.max(rms, 1e-12) / Math.sqrt(0.5));
+    }
+}
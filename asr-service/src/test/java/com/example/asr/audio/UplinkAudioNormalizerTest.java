@@ -0,0 +1,103 @@
+package com.example.asr.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * 上行音频归一化：s16le / f32le 解码、多声道取平均、量化，以及带重采样时的输出长度
+ */
+class UplinkAudioNormalizerTest {
+    private static final int TARGET_RATE = 16000;
+
+    @Test
+    void targetFormatNeedsNoConversion() {
+        assertThat(UplinkAudioNormalizer.create(16000, 1, UplinkAudioNormalizer.FORMAT_S16LE, TARGET_RATE)).isNull();
+        assertThat(UplinkAudioNormalizer.create(16000, 1, UplinkAudioNormalizer.FORMAT_F32LE, TARGET_RATE)).isNotNull();
+        assertThat(UplinkAudioNormalizer.create(16000, 2, UplinkAudioNormalizer.FORMAT_S16LE, TARGET_RATE)).isNotNull();
+    }
+
+    @Test
+    void rejectsUnsupportedParameters() {
+        assertThatThrownBy(() -> UplinkAudioNormalizer.create(4000, 1, UplinkAudioNormalizer.FORMAT_S16LE, TARGET_RATE))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> UplinkAudioNormalizer.create(48000, 9, UplinkAudioNormalizer.FORMAT_S16LE, TARGET_RATE))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> UplinkAudioNormalizer.create(48000, 1, "u8", TARGET_RATE))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void s16StereoIsAveragedToMono() {
+        UplinkAudioNormalizer normalizer = UplinkAudioNormalizer.create(16000, 2, UplinkAudioNormalizer.FORMAT_S16LE, TARGET_RATE);
+        ByteBuffer input = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN)
+            .putShort((short) 1000).putShort((short) 3000)
+            .putShort((short) -32768).putShort((short) -32768)
+            .flip();
+
+        assertThat(samples(normalizer.process(input))).containsExactly((short) 2000, (short) -32767);
+    }
+
+    @Test
+    void f32IsClampedAndQuantized() {
+        UplinkAudioNormalizer normalizer = UplinkAudioNormalizer.create(16000, 2, UplinkAudioNormalizer.FORMAT_F32LE, TARGET_RATE);
+        ByteBuffer input = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN)
+            .putFloat(0.5f).putFloat(-0.25f)
+            .putFloat(1.5f).putFloat(1.5f)
+            .putFloat(-2f).putFloat(0f)
+            .flip();
+
+        assertThat(samples(normalizer.process(input))).containsExactly((short) 4096, (short) 32767, (short) -32767);
+    }
+
+    @Test
+    void trailingPartialFrameIsDroppedAndPositionIsRespected() {
+        UplinkAudioNormalizer normalizer = UplinkAudioNormalizer.create(16000, 2, UplinkAudioNormalizer.FORMAT_S16LE, TARGET_RATE);
+        // 前 2 字节不属于音频，末尾 2 字节不足一个双声道样本帧
+        ByteBuffer input = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN)
+            .putShort((short) 9999)
+            .putShort((short) 100).putShort((short) 300)
+            .putShort((short) 500).putShort((short) 700)
+            .putShort((short) 9999)
+            .flip();
+        input.position(2);
+
+        assertThat(samples(normalizer.process(input))).containsExactly((short) 200, (short) 600);
+        assertThat(input.position()).isEqualTo(2);
+    }
+
+    @Test
+    void resampledFramesHaveTargetLength() {
+        // 48k 双声道 f32le，每帧 100ms
+        UplinkAudioNormalizer normalizer = UplinkAudioNormalizer.create(48000, 2, UplinkAudioNormalizer.FORMAT_F32LE, TARGET_RATE);
+        int frames = 4800;
+        long total = 0;
+        short last = 0;
+        for (int f = 0; f < 10; f++) {
+            ByteBuffer input = ByteBuffer.allocate(frames * 8).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < frames; i++) {
+                input.putFloat(0.25f).putFloat(0.25f);
+            }
+            short[] out = samples(normalizer.process(input.flip()));
+            total += out.length;
+            last = out[out.length - 1];
+        }
+        assertThat(total).isCloseTo(10L * 1600, within(1L));
+        // 直流经过重采样后幅度不变
+        assertThat((int) last).isCloseTo(Math.round(0.25f * 32767f), within(8));
+    }
+
+    private static short[] samples(byte[] pcm) {
+        ByteBuffer buffer = ByteBuffer.wrap(pcm).order(ByteOrder.LITTLE_ENDIAN);
+        short[] samples = new short[pcm.length / 2];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = buffer.getShort();
+        }
+        return samples;
+    }
+}
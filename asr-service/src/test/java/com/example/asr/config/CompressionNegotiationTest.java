@@ -0,0 +1,163 @@
+package com.example.asr.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.websocket.servlet.WebSocketServletAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 真实握手（内嵌 Tomcat）：客户端请求 permessage-deflate，按服务端会话实际协商到的扩展校验各模式
+ */
+@SpringBootTest(classes = CompressionNegotiationTest.TestConfig.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class CompressionNegotiationTest {
+
+    @LocalServerPort
+    int port;
+
+    @Test
+    void offModeNeverNegotiatesDeflate() throws Exception {
+        assertThat(negotiate("/off")).isEmpty();
+        assertThat(negotiate("/off?compress=1")).isEmpty();
+        assertThat(negotiate("/off?tts_format=pcm_16k")).isEmpty();
+    }
+
+    @Test
+    void autoModeCompressesOnlyPcmConnections() throws Exception {
+        assertThat(negotiate("/auto")).isEmpty();
+        assertThat(negotiate("/auto?tts_format=opus_16k")).isEmpty();
+        assertThat(names(negotiate("/auto?tts_format=pcm_16k"))).containsExactly("permessage-deflate");
+        assertThat(names(negotiate("/auto?tts_format=pcm_8k"))).containsExactly("permessage-deflate");
+    }
+
+    @Test
+    void autoModeFollowsDefaultFormat() throws Exception {
+        assertThat(names(negotiate("/auto-pcm"))).containsExactly("permessage-deflate");
+        assertThat(negotiate("/auto-pcm?tts_format=mp3")).isEmpty();
+    }
+
+    @Test
+    void clientOverridesMode() throws Exception {
+        assertThat(names(negotiate("/auto?compress=1"))).containsExactly("permessage-deflate");
+        assertThat(negotiate("/auto?tts_format=pcm_16k&compress=0")).isEmpty();
+        assertThat(negotiate("/always?compress=0")).isEmpty();
+    }
+
+    @Test
+    void alwaysModeAddsContextTakeoverParameters() throws Exception {
+        List<WebSocketExtension> extensions = negotiate("/always?tts_format=mp3");
+        assertThat(names(extensions)).containsExactly("permessage-deflate");
+        assertThat(extensions.get(0).getParameters())
+            .containsKey("client_no_context_takeover")
+            .doesNotContainKey("server_no_context_takeover");
+
+        List<WebSocketExtension> tuned = negotiate("/always-no-takeover");
+        assertThat(tuned.get(0).getParameters())
+            .containsKeys("client_no_context_takeover", "server_no_context_takeover");
+    }
+
+    @Test
+    void keepsParametersAlreadyOffered() {
+        CompressionNegotiationFilter filter = new CompressionNegotiationFilter("always", "mp3", true, true);
+        assertThat(filter.rewriteOffers(List.of("permessage-deflate; client_no_context_takeover, x-webkit-deflate-frame"), true))
+            .containsExactly("permessage-deflate; client_no_context_takeover; server_no_context_takeover",
+                "x-webkit-deflate-frame");
+        assertThat(filter.rewriteOffers(List.of("permessage-deflate; client_max_window_bits", "permessage-deflate"), false))
+            .isEmpty();
+    }
+
+    private List<WebSocketExtension> negotiate(String path) throws Exception {
+        TestConfig.negotiated.clear();
+        WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+        headers.setSecWebSocketExtensions(List.of(new WebSocketExtension("permessage-deflate")));
+        WebSocketSession client = new StandardWebSocketClient()
+            .execute(new AbstractWebSocketHandler() {
+            }, headers, URI.create("ws://localhost:" + port + path))
+            .get(10, TimeUnit.SECONDS);
+        try {
+            List<WebSocketExtension> extensions = TestConfig.negotiated.poll(10, TimeUnit.SECONDS);
+            assertThat(extensions).as("server session for %s", path).isNotNull();
+            // 客户端看到的协商结果与服务端一致
+            assertThat(names(client.getExtensions())).isEqualTo(names(extensions));
+            return extensions;
+        } finally {
+            client.close();
+        }
+    }
+
+    private static List<String> names(List<WebSocketExtension> extensions) {
+        return extensions.stream().map(WebSocketExtension::getName).toList();
+    }
+
+    @Configuration
+    @EnableWebSocket
+    @ImportAutoConfiguration({ServletWebServerFactoryAutoConfiguration.class, DispatcherServletAutoConfiguration.class,
+        WebSocketServletAutoConfiguration.class})
+    static class TestConfig implements WebSocketConfigurer {
+        static final BlockingQueue<List<WebSocketExtension>> negotiated = new LinkedBlockingQueue<>();
+
+        @Override
+        public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+            registry.addHandler(new AbstractWebSocketHandler() {
+                @Override
+                public void afterConnectionEstablished(WebSocketSession session) {
+                    negotiated.add(session.getExtensions());
+                }
+            }, "/off", "/auto", "/auto-pcm", "/always", "/always-no-takeover");
+        }
+
+        @Bean
+        FilterRegistrationBean<CompressionNegotiationFilter> off() {
+            return filter("/off", new CompressionNegotiationFilter("off", "pcm_16k", false, true));
+        }
+
+        @Bean
+        FilterRegistrationBean<CompressionNegotiationFilter> auto() {
+            return filter("/auto", new CompressionNegotiationFilter("auto", "mp3", false, true));
+        }
+
+        @Bean
+        FilterRegistrationBean<CompressionNegotiationFilter> autoPcm() {
+            return filter("/auto-pcm", new CompressionNegotiationFilter("auto", "pcm_16k", false, true));
+        }
+
+        @Bean
+        FilterRegistrationBean<CompressionNegotiationFilter> always() {
+            return filter("/always", new CompressionNegotiationFilter("always", "mp3", false, true));
+        }
+
+        @Bean
+        FilterRegistrationBean<CompressionNegotiationFilter> alwaysNoTakeover() {
+            return filter("/always-no-takeover", new CompressionNegotiationFilter("always", "mp3", true, true));
+        }
+
+        private static FilterRegistrationBean<CompressionNegotiationFilter> filter(String path,
+                                                                                   CompressionNegotiationFilter filter) {
+            FilterRegistrationBean<CompressionNegotiationFilter> registration = new FilterRegistrationBean<>(filter);
+            registration.addUrlPatterns(path);
+            return registration;
+        }
+    }
+}
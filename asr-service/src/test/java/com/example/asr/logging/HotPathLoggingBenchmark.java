@@ -0,0 +1,137 @@
+package com.example.asr.logging;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+/**
+ * 热路径日志吞吐压测
+ * 多个线程各模拟一个会话，逐帧执行与处理器相同的日志语句，输出到临时文件（与控制台同样的格式），对比三种方式的帧/秒：
+ *
+ * - 同步逐帧：每帧一条 info（"Sent audio chunk: {} bytes"），直接写文件（改造前的写法）
+ * - 异步逐帧：同样每帧一条 info，经 logback-spring.xml 中同样配置的 AsyncAppender（队列满时丢弃）
+ * - 计数汇总：每帧只累加 SessionLogStats，debug 日志经 tryLog() 按会话限流，再经 AsyncAppender（当前写法）
+ *
+ * 参数：[会话线程数=4] [每线程帧数=200000] [每秒限流行数=5] [异步队列=8192]
+ */
+public final class HotPathLoggingBenchmark {
+    private static final String PATTERN =
+        "%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5p --- [%15.15t] %-40.40logger{39} : %m%n";
+    private static final int FRAME_BYTES = 3200;
+
+    private HotPathLoggingBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        int maxLinesPerSecond = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int queueSize = args.length > 3 ? Integer.parseInt(args[3]) : 8192;
+
+        System.out.printf("会话线程 %d，每线程 %d 帧，限流 %d 行/秒/会话，异步队列 %d%n",
+            sessions, frames, maxLinesPerSecond, queueSize);
+        for (String mode : new String[]{"sync", "async", "counters"}) {
+            // 预热一次再计时
+            run(mode, sessions, frames / 10, maxLinesPerSecond, queueSize);
+            Result result = run(mode, sessions, frames, maxLinesPerSecond, queueSize);
+            System.out.printf("%-8s %8.2f M 帧/秒，写入日志 %d 行（%.1f MB）%n", mode,
+                result.framesPerSecond / 1e6, result.lines, result.bytes / 1e6);
+        }
+    }
+
+    private static Result run(String mode, int sessions, int frames, int maxLinesPerSecond, int queueSize)
+        throws Exception {
+        Path file = Files.createTempFile("hot-path-log", ".log");
+        // 独立的 LoggerContext，不受应用日志配置影响
+        LoggerContext context = new LoggerContext();
+        context.setMDCAdapter(new LogbackMDCAdapter());
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern(PATTERN);
+        encoder.start();
+        FileAppender<ILoggingEvent> fileAppender = new FileAppender<>();
+        fileAppender.setContext(context);
+        fileAppender.setFile(file.toString());
+        fileAppender.setEncoder(encoder);
+        fileAppender.start();
+
+        Appender<ILoggingEvent> appender = fileAppender;
+        if (!"sync".equals(mode)) {
+            // 与 logback-spring.xml 一致
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(context);
+            async.setQueueSize(queueSize);
+            async.setNeverBlock(true);
+            async.setIncludeCallerData(false);
+            async.addAppender(fileAppender);
+            async.start();
+            appender = async;
+        }
+        Logger log = context.getLogger("com.example.asr.ws.AsrWebSocketHandler");
+        log.setLevel(Level.DEBUG);
+        log.setAdditive(false);
+        log.addAppender(appender);
+
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int s = 0; s < sessions; s++) {
+            String sessionId = "session-" + s;
+            SessionLogStats stats = new SessionLogStats(sessionId, maxLinesPerSecond);
+            Thread thread = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < frames; i++) {
+                    if ("counters".equals(mode)) {
+                        stats.recordAudioFrame(FRAME_BYTES);
+                        if (log.isDebugEnabled() && stats.tryLog()) {
+                            log.debug("Received {} audio bytes for session: {}", FRAME_BYTES, sessionId);
+                        }
+                    } else {
+                        log.info("Sent audio chunk: {} bytes", FRAME_BYTES);
+                    }
+                }
+                if ("counters".equals(mode)) {
+                    log.info("Session {} hot path totals: {}", sessionId, stats.summary());
+                }
+            }, "bench-" + sessionId);
+            threads.add(thread);
+            thread.start();
+        }
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        // 停止时异步队列中剩余的事件会写完
+        context.stop();
+
+        long lines;
+        try (Stream<String> stream = Files.lines(file)) {
+            lines = stream.count();
+        }
+        long bytes = Files.size(file);
+        Files.delete(file);
+        return new Result((double) sessions * frames * 1e9 / elapsed, lines, bytes);
+    }
+
+    private record Result(double framesPerSecond, long lines, long bytes) {
+    }
+}
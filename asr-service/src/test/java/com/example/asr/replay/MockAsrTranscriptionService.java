@@ -0,0 +1,57 @@
+package com.example.asr.replay;
+
+import com.example.asr.service.AsrTranscriptionService;
+import com.example.asr.ws.WebSocketPerformanceMeasure;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+/**
+ * 回放用的 ASR：丢弃上行音频，END 后经过固定延迟返回录制中该轮的识别结果
+ */
+@Primary
+@Service
+@Profile("replay")
+public class MockAsrTranscriptionService extends AsrTranscriptionService {
+
+    @Autowired
+    private ReplayScripts scripts;
+
+    // END 到返回最终识别结果的耗时
+    @Value("${replay.mock.asr-final-delay-ms:150}")
+    private long finalDelayMs;
+
+    @Override
+    public void init() {
+        // 不需要上行分帧定时器
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public void startStream(String sessionId) {
+    }
+
+    @Override
+    public void registerMeasure(String sessionId, WebSocketPerformanceMeasure measure) {
+    }
+
+    @Override
+    public void appendAudio(String sessionId, byte[] audioBytes) {
+    }
+
+    @Override
+    public String endStream(String sessionId) {
+        MockLatency.pause(finalDelayMs);
+        return scripts.nextTurn(sessionId).getTranscript();
+    }
+
+    @Override
+    public void releaseStream(String sessionId) {
+        scripts.remove(sessionId);
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.asr.replay;
+
+/**
+ * 模拟上游的固定延迟；不使用随机数，同一份录制每次回放的上游耗时相同
+ */
+final class MockLatency {
+
+    private MockLatency() {
+    }
+
+    static void pause(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
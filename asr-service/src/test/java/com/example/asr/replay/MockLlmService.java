@@ -0,0 +1,74 @@
+package com.example.asr.replay;
+
+import com.example.asr.model.ToolCall;
+import com.example.asr.model.ToolDescriptor;
+import com.example.asr.service.LlmService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 回放用的 LLM：按录制中该轮的意图和文本块输出，首 token 和 token 间隔为固定值
+ */
+@Primary
+@Service
+@Profile("replay")
+public class MockLlmService extends LlmService {
+
+    @Autowired
+    private ReplayScripts scripts;
+
+    @Value("${replay.mock.llm-intent-delay-ms:80}")
+    private long intentDelayMs;
+
+    @Value("${replay.mock.llm-first-token-ms:250}")
+    private long firstTokenMs;
+
+    @Value("${replay.mock.llm-token-interval-ms:20}")
+    private long tokenIntervalMs;
+
+    @Override
+    public void warmUp() {
+    }
+
+    @Override
+    public String classifyIntent(String sessionId, String text) {
+        MockLatency.pause(intentDelayMs);
+        return scripts.currentTurn(sessionId).getIntent();
+    }
+
+    @Override
+    public void streamGenerate(String sessionId, String prompt, Consumer<String> onTextChunk) {
+        stream(scripts.currentTurn(sessionId).getTextChunks(), onTextChunk);
+    }
+
+    @Override
+    public void streamGenerateWithTools(String sessionId, String userText, List<ToolDescriptor> tools,
+                                        Consumer<String> onIntent, Function<List<ToolCall>, String> onToolCalls,
+                                        Consumer<String> onTextChunk) {
+        RecordedSession.Turn turn = scripts.currentTurn(sessionId);
+        MockLatency.pause(firstTokenMs);
+        onIntent.accept(turn.getIntent());
+        emit(turn.getTextChunks(), onTextChunk);
+    }
+
+    private void stream(List<String> chunks, Consumer<String> onTextChunk) {
+        MockLatency.pause(firstTokenMs);
+        emit(chunks, onTextChunk);
+    }
+
+    private void emit(List<String> chunks, Consumer<String> onTextChunk) {
+        for (int i = 0; i < chunks.size(); i++) {
+            if (i > 0) {
+                MockLatency.pause(tokenIntervalMs);
+            }
+            onTextChunk.accept(chunks.get(i));
+        }
+    }
+}
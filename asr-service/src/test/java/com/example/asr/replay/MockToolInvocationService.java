@@ -0,0 +1,49 @@
+package com.example.asr.replay;
+
+import com.example.asr.model.OrderLine;
+import com.example.asr.model.ToolDescriptor;
+import com.example.asr.service.ToolInvocationService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 回放用的下单服务：不启动 MCP 进程，订单号按行号生成（REPLAY-1、REPLAY-2…）
+ */
+@Lazy
+@Primary
+@Service
+@Profile("replay")
+public class MockToolInvocationService extends ToolInvocationService {
+
+    @Value("${replay.mock.tool-delay-ms:50}")
+    private long toolDelayMs;
+
+    @Override
+    public void init() {
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public List<ToolDescriptor> listTools() {
+        return List.of();
+    }
+
+    @Override
+    public List<String> placeOrders(String sessionId, List<OrderLine> lines) {
+        MockLatency.pause(toolDelayMs);
+        List<String> orderIds = new ArrayList<>();
+        for (int i = 1; i <= lines.size(); i++) {
+            orderIds.add("REPLAY-" + i);
+        }
+        return orderIds;
+    }
+}
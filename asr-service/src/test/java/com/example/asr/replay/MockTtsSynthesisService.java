@@ -0,0 +1,47 @@
+package com.example.asr.replay;
+
+import com.example.asr.model.TtsAudioFormat;
+import com.example.asr.service.TtsSynthesisService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.util.function.Consumer;
+
+/**
+ * 回放用的 TTS：每 chars-per-chunk 个字符输出一个固定大小的静音帧，首帧和帧间隔为固定值
+ */
+@Primary
+@Service
+@Profile("replay")
+public class MockTtsSynthesisService extends TtsSynthesisService {
+
+    @Value("${replay.mock.tts-first-chunk-ms:120}")
+    private long firstChunkMs;
+
+    @Value("${replay.mock.tts-chunk-interval-ms:40}")
+    private long chunkIntervalMs;
+
+    @Value("${replay.mock.tts-chunk-bytes:1600}")
+    private int chunkBytes;
+
+    @Value("${replay.mock.tts-chars-per-chunk:4}")
+    private int charsPerChunk;
+
+    @Override
+    public void synthesizeStream(String sessionId, String text, TtsAudioFormat audioFormat, boolean hedge,
+                                 Consumer<byte[]> onAudioChunk) {
+        if (text == null || text.trim().isEmpty()) {
+            return;
+        }
+        int chunks = Math.max(1, (text.length() + charsPerChunk - 1) / charsPerChunk);
+        MockLatency.pause(firstChunkMs);
+        for (int i = 0; i < chunks; i++) {
+            if (i > 0) {
+                MockLatency.pause(chunkIntervalMs);
+            }
+            onAudioChunk.accept(new byte[chunkBytes]);
+        }
+    }
+}
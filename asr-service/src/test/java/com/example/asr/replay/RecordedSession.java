@@ -0,0 +1,151 @@
+package com.example.asr.replay;
+
+import com.example.asr.recording.SessionRecord;
+import com.example.asr.recording.SessionRecordingReader;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 从会话录制中提取的回放脚本
+ * - 上行时间线：音频帧和 END，时间为相对第一条记录的纳秒数
+ * - 每轮的上游输出：识别结果、意图、LLM 文本块，供模拟的 ASR / LLM 按原样返回
+ * 每个 END（或多路复用的 end 帧）开始新的一轮，之后收到的 transcript / intent / text_chunk 帧归入该轮。
+ */
+public class RecordedSession {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final String name;
+    private final List<UplinkEvent> uplink;
+    private final List<Turn> turns;
+
+    public RecordedSession(String name, List<UplinkEvent> uplink, List<Turn> turns) {
+        this.name = name;
+        this.uplink = uplink;
+        this.turns = turns;
+    }
+
+    public static RecordedSession load(Path directory) throws IOException {
+        List<UplinkEvent> uplink = new ArrayList<>();
+        List<Turn> turns = new ArrayList<>();
+        long first = -1;
+        for (SessionRecord record : SessionRecordingReader.readAll(directory)) {
+            if (first < 0) {
+                first = record.getEpochNanos();
+            }
+            long offset = record.getEpochNanos() - first;
+            switch (record.getType()) {
+                case SessionRecord.UPLINK_AUDIO:
+                    uplink.add(new UplinkEvent(offset, record.getPayload()));
+                    break;
+                case SessionRecord.INBOUND_TEXT:
+                    if (isEnd(record.getText())) {
+                        uplink.add(new UplinkEvent(offset, null));
+                        turns.add(new Turn());
+                    }
+                    break;
+                case SessionRecord.OUTBOUND_TEXT:
+                    if (!turns.isEmpty()) {
+                        collect(turns.get(turns.size() - 1), record.getText());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new RecordedSession(directory.getFileName().toString(), uplink, turns);
+    }
+
+    private static boolean isEnd(String text) {
+        if ("END".equals(text)) {
+            return true;
+        }
+        if (!text.startsWith("{")) {
+            return false;
+        }
+        try {
+            return "end".equals(objectMapper.readTree(text).path("type").asText());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void collect(Turn turn, String frame) throws IOException {
+        JsonNode json = objectMapper.readTree(frame);
+        switch (json.path("type").asText()) {
+            case "transcript":
+                turn.transcript = json.path("text").asText();
+                break;
+            case "intent":
+                turn.intent = json.path("value").asText();
+                break;
+            case "text_chunk":
+                turn.textChunks.add(json.path("text").asText());
+                break;
+            default:
+                break;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<UplinkEvent> getUplink() {
+        return uplink;
+    }
+
+    public List<Turn> getTurns() {
+        return turns;
+    }
+
+    /**
+     * 上行事件：audio 为 null 时表示 END
+     */
+    public static class UplinkEvent {
+        private final long offsetNanos;
+        private final byte[] audio;
+
+        public UplinkEvent(long offsetNanos, byte[] audio) {
+            this.offsetNanos = offsetNanos;
+            this.audio = audio;
+        }
+
+        public long getOffsetNanos() {
+            return offsetNanos;
+        }
+
+        public byte[] getAudio() {
+            return audio;
+        }
+
+        public boolean isEnd() {
+            return audio == null;
+        }
+    }
+
+    /**
+     * 一轮对话中上游返回的内容；录制中缺失的部分为空，模拟服务按空结果处理
+     */
+    public static class Turn {
+        private String transcript = "";
+        private String intent = "chitchat";
+        private final List<String> textChunks = new ArrayList<>();
+
+        public String getTranscript() {
+            return transcript;
+        }
+
+        public String getIntent() {
+            return intent;
+        }
+
+        public List<String> getTextChunks() {
+            return textChunks;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.asr.replay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 回放一个录制会话的 WebSocket 客户端
+ * 按录制时间线（除以 speed）发送上行音频和 END，记录每轮 END、transcript、第一个 text_chunk、第一个音频帧的到达时间。
+ * 下一轮的 END 在上一轮结束（complete / error / busy）之后才发送，否则服务端会因为上一轮仍在处理而忽略它。
+ */
+final class ReplayClient implements WebSocket.Listener {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final RecordedSession session;
+    private final ReplayScripts scripts;
+    private final ReplayReport report;
+    private final double speed;
+    private final long turnTimeoutMs;
+
+    private final CompletableFuture<String> connected = new CompletableFuture<>();
+    private final StringBuilder partialText = new StringBuilder();
+    private volatile TurnTiming turn;
+
+    ReplayClient(RecordedSession session, ReplayScripts scripts, ReplayReport report, double speed, long turnTimeoutMs) {
+        this.session = session;
+        this.scripts = scripts;
+        this.report = report;
+        this.speed = speed;
+        this.turnTimeoutMs = turnTimeoutMs;
+    }
+
+    void run(HttpClient httpClient, URI uri) throws Exception {
+        WebSocket socket = httpClient.newWebSocketBuilder().buildAsync(uri, this).get(10, TimeUnit.SECONDS);
+        String sessionId = connected.get(10, TimeUnit.SECONDS);
+        scripts.register(sessionId, session);
+        report.recordSession();
+
+        long start = System.nanoTime();
+        for (RecordedSession.UplinkEvent event : session.getUplink()) {
+            long due = start + (long) (event.getOffsetNanos() / speed);
+            if (event.isEnd()) {
+                finishTurn();
+                LockSupport.parkNanos(due - System.nanoTime());
+                TurnTiming next = new TurnTiming();
+                turn = next;
+                next.endSent = System.nanoTime();
+                socket.sendText("END", true).join();
+            } else {
+                LockSupport.parkNanos(due - System.nanoTime());
+                socket.sendBinary(ByteBuffer.wrap(event.getAudio()), true).join();
+            }
+        }
+        finishTurn();
+        socket.sendClose(WebSocket.NORMAL_CLOSURE, "replay finished").join();
+    }
+
+    // 等待当前轮结束并记录各阶段耗时；有回复文本时再等待第一个音频帧
+    private void finishTurn() throws InterruptedException {
+        TurnTiming current = turn;
+        if (current == null) {
+            return;
+        }
+        boolean complete = await(current.done, turnTimeoutMs);
+        if (current.firstText > 0) {
+            await(current.audio, turnTimeoutMs);
+        }
+        turn = null;
+        report.recordTurn(complete);
+        stage(ReplayReport.END_TO_TRANSCRIPT, current.endSent, current.transcript);
+        stage(ReplayReport.TRANSCRIPT_TO_FIRST_TEXT, current.transcript, current.firstText);
+        stage(ReplayReport.FIRST_TEXT_TO_FIRST_AUDIO, current.firstText, current.firstAudio);
+    }
+
+    private void stage(String name, long from, long to) {
+        if (from > 0 && to >= from) {
+            report.record(name, (to - from) / 1_000_000.0);
+        }
+    }
+
+    private static boolean await(CompletableFuture<Void> future, long timeoutMs) throws InterruptedException {
+        try {
+            future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        long now = System.nanoTime();
+        partialText.append(data);
+        if (last) {
+            String frame = partialText.toString();
+            partialText.setLength(0);
+            handleFrame(frame, now);
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+        TurnTiming current = turn;
+        if (current != null && current.firstAudio == 0) {
+            current.firstAudio = System.nanoTime();
+            current.audio.complete(null);
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        connected.completeExceptionally(error);
+        TurnTiming current = turn;
+        if (current != null) {
+            current.done.completeExceptionally(error);
+        }
+    }
+
+    private void handleFrame(String frame, long now) {
+        JsonNode json;
+        try {
+            json = objectMapper.readTree(frame);
+        } catch (Exception e) {
+            return;
+        }
+        String type = json.path("type").asText();
+        if ("connected".equals(type)) {
+            connected.complete(json.path("sessionId").asText());
+            return;
+        }
+        TurnTiming current = turn;
+        if (current == null) {
+            return;
+        }
+        switch (type) {
+            case "transcript":
+                if (current.transcript == 0) {
+                    current.transcript = now;
+                }
+                break;
+            case "text_chunk":
+                if (current.firstText == 0) {
+                    current.firstText = now;
+                }
+                break;
+            case "complete":
+            case "error":
+            case "busy":
+                current.done.complete(null);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // 一轮对话的时间点（System.nanoTime），0 表示尚未发生
+    private static final class TurnTiming {
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        final CompletableFuture<Void> audio = new CompletableFuture<>();
+        volatile long endSent;
+        volatile long transcript;
+        volatile long firstText;
+        volatile long firstAudio;
+    }
+}
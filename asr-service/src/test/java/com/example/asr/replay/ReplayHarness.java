@@ -0,0 +1,170 @@
+package com.example.asr.replay;
+
+import com.example.asr.AsrServiceApplication;
+import com.example.asr.recording.SessionRecordingReader;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 录制会话回放工具
+ * 以 replay profile 在本进程内启动服务（随机端口，ASR / LLM / TTS / 下单均为确定性的模拟实现），
+ * 用 WebSocket 客户端按录制时间线回放上行音频，输出分阶段延迟报告，并可与基线对比，超出容差时退出码为 1。
+ * 模拟实现和 application-replay.yaml 都在测试源码中，不会打进服务的 jar，通过 replay.sh 以测试 classpath 运行。
+ *
+ * 参数：
+ *   --recordings <目录>   单个录制目录，或包含多个录制目录的父目录（必填）
+ *   --speed <倍数>        上行回放速度，默认 1（原速）
+ *   --concurrency <n>     同时回放的会话数，默认 1
+ *   --report <文件>       报告输出路径，默认 target/replay-report.json
+ *   --baseline <文件>     基线报告，存在时进行对比
+ *   --write-baseline      把本次报告写为基线
+ *   --tolerance <比例>    允许相对基线变慢的比例，默认 0.2
+ *   --tolerance-ms <毫秒> 额外允许的绝对误差，默认 20
+ * 其余参数（如 --replay.mock.llm-first-token-ms=300）传给 Spring。
+ */
+public final class ReplayHarness {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final long TURN_TIMEOUT_MS = 30000;
+
+    private ReplayHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> springArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--recordings":
+                case "--speed":
+                case "--concurrency":
+                case "--report":
+                case "--baseline":
+                case "--tolerance":
+                case "--tolerance-ms":
+                    options.put(args[i].substring(2), args[++i]);
+                    break;
+                case "--write-baseline":
+                    options.put("write-baseline", "true");
+                    break;
+                default:
+                    springArgs.add(args[i]);
+            }
+        }
+        if (!options.containsKey("recordings")) {
+            System.err.println("用法：ReplayHarness --recordings <目录> [--speed 1] [--concurrency 1] [--baseline <文件>] "
+                + "[--write-baseline] [--tolerance 0.2] [--tolerance-ms 20] [--report <文件>]");
+            System.exit(2);
+        }
+        double speed = Double.parseDouble(options.getOrDefault("speed", "1"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "1"));
+        double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "0.2"));
+        double toleranceMs = Double.parseDouble(options.getOrDefault("tolerance-ms", "20"));
+        Path reportPath = Paths.get(options.getOrDefault("report", "target/replay-report.json"));
+        Path baselinePath = options.containsKey("baseline") ? Paths.get(options.get("baseline")) : null;
+
+        List<RecordedSession> sessions = new ArrayList<>();
+        for (Path directory : recordingDirectories(Paths.get(options.get("recordings")))) {
+            sessions.add(RecordedSession.load(directory));
+        }
+        if (sessions.isEmpty()) {
+            System.err.println("未找到录制：" + options.get("recordings"));
+            System.exit(2);
+        }
+
+        ReplayReport report = new ReplayReport();
+        // 命令行参数优先级高于 application.yaml，随机端口不会与正在运行的服务冲突
+        springArgs.add(0, "--server.port=0");
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(AsrServiceApplication.class)
+            .profiles("replay")
+            .run(springArgs.toArray(new String[0]));
+        int exitCode = 0;
+        try {
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            URI uri = URI.create("ws://localhost:" + port + "/ws/asr");
+            ReplayScripts scripts = context.getBean(ReplayScripts.class);
+            HttpClient httpClient = HttpClient.newHttpClient();
+            ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+            List<Future<?>> runs = new ArrayList<>();
+            for (RecordedSession session : sessions) {
+                runs.add(executor.submit(() -> {
+                    new ReplayClient(session, scripts, report, speed, TURN_TIMEOUT_MS).run(httpClient, uri);
+                    return null;
+                }));
+            }
+            for (int i = 0; i < runs.size(); i++) {
+                try {
+                    runs.get(i).get();
+                } catch (Exception e) {
+                    System.err.println("回放失败 " + sessions.get(i).getName() + ": " + e);
+                    exitCode = 1;
+                }
+            }
+            executor.shutdown();
+
+            ObjectNode current = report.toJson(objectMapper, speed);
+            writeJson(reportPath, current);
+            JsonNode baseline = baselinePath != null && Files.exists(baselinePath) && !options.containsKey("write-baseline")
+                ? objectMapper.readTree(baselinePath.toFile()) : null;
+            System.out.print(ReplayReport.format(current, baseline));
+            System.out.println("报告：" + reportPath.toAbsolutePath());
+            if (baseline != null) {
+                List<String> regressions = ReplayReport.regressions(current, baseline, tolerance, toleranceMs);
+                if (regressions.isEmpty()) {
+                    System.out.println("与基线相比没有超出容差的回退");
+                } else {
+                    regressions.forEach(line -> System.out.println("回退：" + line));
+                    exitCode = 1;
+                }
+            }
+            if (baselinePath != null && options.containsKey("write-baseline")) {
+                writeJson(baselinePath, current);
+                System.out.println("已写入基线：" + baselinePath.toAbsolutePath());
+            }
+        } finally {
+            context.close();
+        }
+        System.exit(exitCode);
+    }
+
+    // 目录本身含段文件时为单个录制，否则取其下含段文件的子目录
+    private static List<Path> recordingDirectories(Path root) throws IOException {
+        if (!SessionRecordingReader.segments(root).isEmpty()) {
+            return List.of(root);
+        }
+        List<Path> directories = new ArrayList<>();
+        try (Stream<Path> children = Files.list(root)) {
+            for (Path child : children.filter(Files::isDirectory).sorted().collect(Collectors.toList())) {
+                if (!SessionRecordingReader.segments(child).isEmpty()) {
+                    directories.add(child);
+                }
+            }
+        }
+        return directories;
+    }
+
+    private static void writeJson(Path path, JsonNode json) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(path.toFile(), json);
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.asr.replay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 回放的分阶段延迟报告（毫秒），以及与基线的对比
+ */
+public class ReplayReport {
+    public static final String END_TO_TRANSCRIPT = "end_to_transcript";
+    public static final String TRANSCRIPT_TO_FIRST_TEXT = "transcript_to_first_text";
+    public static final String FIRST_TEXT_TO_FIRST_AUDIO = "first_text_to_first_audio";
+    public static final List<String> STAGES = List.of(END_TO_TRANSCRIPT, TRANSCRIPT_TO_FIRST_TEXT, FIRST_TEXT_TO_FIRST_AUDIO);
+    // 与基线对比的分位数
+    private static final List<String> COMPARED = List.of("p50", "p95");
+
+    private final Map<String, List<Double>> samples = new LinkedHashMap<>();
+    private int sessions;
+    private int turns;
+    private int incompleteTurns;
+
+    public ReplayReport() {
+        STAGES.forEach(stage -> samples.put(stage, new ArrayList<>()));
+    }
+
+    public synchronized void recordSession() {
+        sessions++;
+    }
+
+    /**
+     * @param complete 该轮是否在超时前收到了 complete 帧
+     */
+    public synchronized void recordTurn(boolean complete) {
+        turns++;
+        if (!complete) {
+            incompleteTurns++;
+        }
+    }
+
+    public synchronized void record(String stage, double millis) {
+        samples.get(stage).add(millis);
+    }
+
+    public synchronized ObjectNode toJson(ObjectMapper objectMapper, double speed) {
+        ObjectNode root = objectMapper.createObjectNode();
+        root.put("sessions", sessions);
+        root.put("turns", turns);
+        root.put("incompleteTurns", incompleteTurns);
+        root.put("speed", speed);
+        ObjectNode stages = root.putObject("stages");
+        samples.forEach((stage, values) -> {
+            List<Double> sorted = new ArrayList<>(values);
+            Collections.sort(sorted);
+            ObjectNode node = stages.putObject(stage);
+            node.put("count", sorted.size());
+            if (!sorted.isEmpty()) {
+                node.put("p50", round(percentile(sorted, 0.50)));
+                node.put("p95", round(percentile(sorted, 0.95)));
+                node.put("max", round(sorted.get(sorted.size() - 1)));
+            }
+        });
+        return root;
+    }
+
+    /**
+     * 与基线对比：current > baseline × (1 + tolerance) + toleranceMs 视为回退
+     *
+     * @return 回退项的描述，为空表示通过
+     */
+    public static List<String> regressions(JsonNode current, JsonNode baseline, double tolerance, double toleranceMs) {
+        List<String> regressions = new ArrayList<>();
+        for (String stage : STAGES) {
+            for (String percentile : COMPARED) {
+                JsonNode now = current.path("stages").path(stage).path(percentile);
+                JsonNode before = baseline.path("stages").path(stage).path(percentile);
+                if (now.isMissingNode() || before.isMissingNode()) {
+                    continue;
+                }
+                double limit = before.asDouble() * (1 + tolerance) + toleranceMs;
+                if (now.asDouble() > limit) {
+                    regressions.add(String.format("%s %s: %.1f ms > %.1f ms (baseline %.1f ms)",
+                        stage, percentile, now.asDouble(), limit, before.asDouble()));
+                }
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * 文本表格，有基线时附带基线值和变化比例
+     */
+    public static String format(JsonNode current, JsonNode baseline) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("sessions=%d turns=%d incomplete=%d speed=%.1fx%n", current.path("sessions").asInt(),
+            current.path("turns").asInt(), current.path("incompleteTurns").asInt(), current.path("speed").asDouble()));
+        out.append(String.format("%-28s %6s %14s %14s %14s%n", "stage", "count", "p50(ms)", "p95(ms)", "max(ms)"));
+        for (String stage : STAGES) {
+            JsonNode node = current.path("stages").path(stage);
+            out.append(String.format("%-28s %6d %14s %14s %14s%n", stage, node.path("count").asInt(),
+                cell(node, baseline, stage, "p50"), cell(node, baseline, stage, "p95"), cell(node, baseline, stage, "max")));
+        }
+        return out.toString();
+    }
+
+    private static String cell(JsonNode node, JsonNode baseline, String stage, String field) {
+        if (!node.has(field)) {
+            return "-";
+        }
+        double value = node.get(field).asDouble();
+        JsonNode before = baseline != null ? baseline.path("stages").path(stage).path(field) : null;
+        if (before == null || before.isMissingNode() || before.asDouble() == 0) {
+            return String.format("%.1f", value);
+        }
+        return String.format("%.1f(%+.0f%%)", value, (value / before.asDouble() - 1) * 100);
+    }
+
+    // 最近秩法
+    private static double percentile(List<Double> sorted, double quantile) {
+        int rank = (int) Math.ceil(quantile * sorted.size());
+        return sorted.get(Math.max(0, rank - 1));
+    }
+
+    private static double round(double millis) {
+        return Math.round(millis * 10) / 10.0;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.asr.replay;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 回放会话与服务端会话的对应关系
+ * 回放客户端收到 connected 帧后按服务端分配的 sessionId 登记脚本，模拟的 ASR 在每次 endStream 时前进一轮，
+ * LLM 读取当前轮的意图和文本块。
+ */
+@Component
+@Profile("replay")
+public class ReplayScripts {
+    private static final RecordedSession.Turn EMPTY_TURN = new RecordedSession.Turn();
+
+    private final Map<String, Cursor> cursors = new ConcurrentHashMap<>();
+
+    public void register(String sessionId, RecordedSession session) {
+        cursors.put(sessionId, new Cursor(session));
+    }
+
+    public void remove(String sessionId) {
+        cursors.remove(sessionId);
+    }
+
+    /**
+     * 开始新的一轮（ASR 收到 END）
+     */
+    public RecordedSession.Turn nextTurn(String sessionId) {
+        Cursor cursor = cursors.get(sessionId);
+        return cursor != null ? cursor.next() : EMPTY_TURN;
+    }
+
+    public RecordedSession.Turn currentTurn(String sessionId) {
+        Cursor cursor = cursors.get(sessionId);
+        return cursor != null ? cursor.current() : EMPTY_TURN;
+    }
+
+    private static final class Cursor {
+        private final RecordedSession session;
+        private int turn = -1;
+
+        Cursor(RecordedSession session) {
+            this.session = session;
+        }
+
+        synchronized RecordedSession.Turn next() {
+            turn++;
+            return current();
+        }
+
+        synchronized RecordedSession.Turn current() {
+            return turn >= 0 && turn < session.getTurns().size() ? session.getTurns().get(turn) : EMPTY_TURN;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.asr.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * order-mcp 下单吞吐压测（订单/秒）
+ * 多个调用方线程并发下单，对比：
+ *
+ * - 每次调用启动一个进程（改造前的写法）
+ * - 常驻进程，每个订单单独写出（linger 0，默认配置）
+ * - 常驻进程，linger 窗口内跨调用方合并为批量请求
+ * - 常驻进程，每句话 3 个订单行经 callAll 一次批量写出
+ *
+ * 需要本机可运行 python3。参数：[server.py 路径=../order-mcp/server.py] [调用方线程数=16] [订单数=2000]
+ * [逐次启动进程的订单数=200] [linger 毫秒=5]
+ */
+public final class McpOrderThroughputBenchmark {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String ORDER_PLACE = "order.place";
+
+    private McpOrderThroughputBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String script = args.length > 0 ? args[0] : "../order-mcp/server.py";
+        int callers = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int orders = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        int spawnOrders = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+        long lingerMs = args.length > 4 ? Long.parseLong(args[4]) : 5;
+        List<String> command = List.of("python3", script);
+
+        System.out.printf("%d 个调用方线程，常驻进程 %d 个订单，逐次启动进程 %d 个订单%n", callers, orders, spawnOrders);
+        print("逐次启动进程", spawnOrders, run(callers, spawnOrders, 1, lines -> spawnPerCall(command)), null);
+        for (Object[] mode : new Object[][]{{"常驻 linger 0", 0L, 1}, {"常驻 linger " + lingerMs + "ms", lingerMs, 1},
+            {"常驻 3 行/批", 0L, 3}}) {
+            long linger = (long) mode[1];
+            int linesPerCall = (int) mode[2];
+            AtomicInteger batches = new AtomicInteger();
+            McpProcessClient client = new McpProcessClient(command, linger, 32, objectMapper, size -> batches.incrementAndGet());
+            try {
+                // 预热：启动进程
+                client.call("tools/list", Map.of()).get(10, TimeUnit.SECONDS);
+                batches.set(0);
+                long nanos = run(callers, orders, linesPerCall, lines -> persistent(client, lines));
+                print((String) mode[0], orders, nanos, batches.get());
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    private interface Caller {
+        void place(int lines) throws Exception;
+    }
+
+    // 每个调用方线程循环下单，直到总订单数用完，返回总耗时
+    private static long run(int callers, int orders, int linesPerCall, Caller caller) throws Exception {
+        AtomicInteger remaining = new AtomicInteger(orders);
+        AtomicLong failures = new AtomicLong();
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < callers; c++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                int taken;
+                while ((taken = take(remaining, linesPerCall)) > 0) {
+                    try {
+                        caller.place(taken);
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            }, "mcp-caller-" + c);
+            threads.add(thread);
+            thread.start();
+        }
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (failures.get() > 0) {
+            throw new IllegalStateException(failures.get() + " 次下单失败");
+        }
+        return elapsed;
+    }
+
+    private static int take(AtomicInteger remaining, int lines) {
+        while (true) {
+            int left = remaining.get();
+            int taken = Math.min(left, lines);
+            if (taken <= 0 || remaining.compareAndSet(left, left - taken)) {
+                return taken;
+            }
+        }
+    }
+
+    private static void persistent(McpProcessClient client, int lines) throws Exception {
+        List<Map<String, Object>> paramsList = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            paramsList.add(Map.of("item", "苹果", "quantity", i + 1));
+        }
+        for (CompletableFuture<JsonNode> call : client.callAll(ORDER_PLACE, paramsList)) {
+            if (!call.get(10, TimeUnit.SECONDS).has("result")) {
+                throw new IllegalStateException("下单失败");
+            }
+        }
+    }
+
+    // 改造前：每个订单启动一个进程，写入一行请求后读取一行响应
+    private static void spawnPerCall(List<String> command) throws Exception {
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            writer.write("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"" + ORDER_PLACE +
+                "\",\"params\":{\"item\":\"苹果\",\"quantity\":1}}");
+            writer.newLine();
+            writer.flush();
+            String line = reader.readLine();
+            if (line == null || !objectMapper.readTree(line).has("result")) {
+                throw new IllegalStateException("下单失败");
+            }
+        } finally {
+            process.destroy();
+        }
+    }
+
+    private static void print(String label, int orders, long nanos, Integer batches) {
+        System.out.printf("%-16s %8.0f 订单/秒%s%n", label, orders * 1e9 / nanos,
+            batches != null ? "，写出 " + batches + " 次" : "");
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.asr.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * McpProcessClient 对接一个模拟 MCP 进程（同一 classpath 下的 FakeMcpServer）：
+ * 跨批次乱序返回时按 id 匹配响应、批量写出，以及只在进程静默时回收
+ */
+class McpProcessClientTest {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private McpProcessClient client;
+
+    @AfterEach
+    void close() {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @Test
+    void matchesResponsesByIdAcrossBatches() throws Exception {
+        // 模拟进程收到第二行后才应答，先答第二批再答第一批，且每批内倒序
+        client = client("swap", 0);
+        List<CompletableFuture<JsonNode>> first = client.callAll("echo",
+            List.of(Map.of("item", "苹果"), Map.of("item", "香蕉"), Map.of("item", "橙子")));
+        List<CompletableFuture<JsonNode>> second = client.callAll("echo",
+            List.of(Map.of("item", "手机"), Map.of("item", "电脑")));
+
+        assertThat(items(first)).containsExactly("苹果", "香蕉", "橙子");
+        assertThat(items(second)).containsExactly("手机", "电脑");
+        assertThat(batchSizes).containsExactly(3, 2);
+    }
+
+    @Test
+    void lingerCoalescesConcurrentCallsIntoOneBatch() throws Exception {
+        client = client("echo", 200);
+        List<CompletableFuture<JsonNode>> calls = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            calls.add(client.call("echo", Map.of("item", "item-" + i)));
+        }
+        assertThat(items(calls)).containsExactly("item-0", "item-1", "item-2", "item-3", "item-4");
+        assertThat(batchSizes).containsExactly(5);
+    }
+
+    @Test
+    void maxBatchSizeFlushesBeforeLinger() throws Exception {
+        client = new McpProcessClient(command("echo"), 60_000, 2, objectMapper, batchSizes::add);
+        List<CompletableFuture<JsonNode>> calls = List.of(
+            client.call("echo", Map.of("item", "a")), client.call("echo", Map.of("item", "b")));
+        assertThat(items(calls)).containsExactly("a", "b");
+        assertThat(batchSizes).containsExactly(2);
+    }
+
+    @Test
+    void doesNotRecycleWhileOtherResponsesArrive() throws Exception {
+        client = client("echo", 0);
+        long since = System.nanoTime();
+        CompletableFuture<JsonNode> slow = client.call("hang", Map.of());
+        assertThat(items(List.of(client.call("echo", Map.of("item", "a"))))).containsExactly("a");
+
+        assertThat(client.recycleIfSilentSince(since)).isFalse();
+        assertThat(slow).isNotDone();
+        // 同一进程继续应答
+        assertThat(items(List.of(client.call("echo", Map.of("item", "b"))))).containsExactly("b");
+    }
+
+    @Test
+    void recyclesSilentProcessAndFailsPendingCalls() throws Exception {
+        client = client("echo", 0);
+        assertThat(items(List.of(client.call("echo", Map.of("item", "warm"))))).containsExactly("warm");
+        long since = System.nanoTime();
+        CompletableFuture<JsonNode> stuck = client.call("hang", Map.of());
+        Thread.sleep(50);
+
+        assertThat(client.recycleIfSilentSince(since)).isTrue();
+        assertThatThrownBy(() -> stuck.get(10, TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .hasMessageContaining("MCP process exited");
+        // 回收后不再有进程，下一次调用重新启动
+        assertThat(client.recycleIfSilentSince(System.nanoTime())).isFalse();
+        assertThat(items(List.of(client.call("echo", Map.of("item", "again"))))).containsExactly("again");
+    }
+
+    private McpProcessClient client(String mode, long lingerMs) {
+        return new McpProcessClient(command(mode), lingerMs, 32, objectMapper, batchSizes::add);
+    }
+
+    private static List<String> command(String mode) {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        return List.of(java, "-cp", System.getProperty("java.class.path"), FakeMcpServer.class.getName(), mode);
+    }
+
+    private static List<String> items(List<CompletableFuture<JsonNode>> calls) throws Exception {
+        List<String> items = new ArrayList<>();
+        for (CompletableFuture<JsonNode> call : calls) {
+            items.add(call.get(20, TimeUnit.SECONDS).path("result").path("item").asText());
+        }
+        return items;
+    }
+
+    /**
+     * 模拟 MCP 进程：echo 方法把 params 作为 result 返回，hang 方法不应答；
+     * swap 模式下每两行为一组，收到第二行后先答第二行再答第一行，批量响应内倒序
+     */
+    public static final class FakeMcpServer {
+        public static void main(String[] args) throws Exception {
+            boolean swap = args.length > 0 && "swap".equals(args[0]);
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            PrintStream out = new PrintStream(new FileOutputStream(FileDescriptor.out), true, StandardCharsets.UTF_8);
+            String held = null;
+            String line;
+            while ((line = in.readLine()) != null) {
+                String response = respond(objectMapper.readTree(line));
+                if (!swap) {
+                    write(out, response);
+                } else if (held == null) {
+                    held = response;
+                } else {
+                    write(out, response);
+                    write(out, held);
+                    held = null;
+                }
+            }
+        }
+
+        private static String respond(JsonNode request) throws Exception {
+            if (!request.isArray()) {
+                JsonNode response = respondOne(request);
+                return response != null ? objectMapper.writeValueAsString(response) : null;
+            }
+            ArrayNode responses = objectMapper.createArrayNode();
+            for (int i = request.size() - 1; i >= 0; i--) {
+                JsonNode response = respondOne(request.get(i));
+                if (response != null) {
+                    responses.add(response);
+                }
+            }
+            return responses.isEmpty() ? null : objectMapper.writeValueAsString(responses);
+        }
+
+        private static JsonNode respondOne(JsonNode request) {
+            if ("hang".equals(request.path("method").asText())) {
+                return null;
+            }
+            ObjectNode response = objectMapper.createObjectNode().put("jsonrpc", "2.0");
+            response.set("id", request.get("id"));
+            response.set("result", request.get("params"));
+            return response;
+        }
+
+        private static void write(PrintStream out, String response) {
+            if (response != null) {
+                out.println(response);
+            }
+        }
+    }
+}
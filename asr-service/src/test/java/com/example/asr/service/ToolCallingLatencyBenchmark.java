@@ -0,0 +1,220 @@
+package com.example.asr.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+
+/**
+ * 下单轮次的延迟对比：意图识别 + 确认回复（两次 LLM 调用）与一次带工具定义的流式调用
+ * 进程内启动一个 OpenAI 兼容的模拟 LLM（/v1/chat/completions，固定的首 token 耗时和 token 间隔），
+ * 客户端按 LlmService 两条路径的请求顺序通过本机 HTTP 调用，下单用固定耗时模拟 MCP。
+ *
+ * - 改造前：非流式 classifyIntent（max 8 token）→ 下单 → 流式生成确认回复
+ * - 改造后：一次流式调用，先收到 order_place 的 tool_calls 增量，第一段回复文本到达时下单，再继续输出回复
+ *
+ * 每种路径输出：首段回复文本（可开始 TTS）的耗时和整轮耗时。
+ * 参数：[轮数=20] [首 token 毫秒=300] [token 间隔毫秒=20] [回复 token 数=20] [下单毫秒=30]
+ */
+public final class ToolCallingLatencyBenchmark {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private ToolCallingLatencyBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int turns = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        long firstTokenMs = args.length > 1 ? Long.parseLong(args[1]) : 300;
+        long tokenIntervalMs = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        int replyTokens = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        long orderMs = args.length > 4 ? Long.parseLong(args[4]) : 30;
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v1/chat/completions",
+            exchange -> mockCompletion(exchange, firstTokenMs, tokenIntervalMs, replyTokens));
+        server.start();
+        URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/v1/chat/completions");
+        HttpClient client = HttpClient.newHttpClient();
+        try {
+            // 预热连接和 JIT
+            classifyThenConfirm(client, uri, orderMs);
+            singleToolCallingStream(client, uri, orderMs);
+
+            long[][] before = new long[2][turns];
+            long[][] after = new long[2][turns];
+            for (int i = 0; i < turns; i++) {
+                long[] b = classifyThenConfirm(client, uri, orderMs);
+                long[] a = singleToolCallingStream(client, uri, orderMs);
+                before[0][i] = b[0];
+                before[1][i] = b[1];
+                after[0][i] = a[0];
+                after[1][i] = a[1];
+            }
+            System.out.printf("模拟 LLM：首 token %d ms，token 间隔 %d ms，回复 %d token；下单 %d ms；%d 轮%n",
+                firstTokenMs, tokenIntervalMs, replyTokens, orderMs, turns);
+            print("意图识别 + 确认回复", before);
+            print("单次工具调用流", after);
+        } finally {
+            server.stop(0);
+            System.exit(0);
+        }
+    }
+
+    private static void print(String label, long[][] samples) {
+        System.out.printf("%-12s 首段回复 p50=%.1f ms mean=%.1f ms，整轮 p50=%.1f ms mean=%.1f ms%n", label,
+            p50(samples[0]), mean(samples[0]), p50(samples[1]), mean(samples[1]));
+    }
+
+    /**
+     * 改造前的下单轮次
+     *
+     * @return {首段回复耗时, 整轮耗时}（纳秒）
+     */
+    private static long[] classifyThenConfirm(HttpClient client, URI uri, long orderMs) throws Exception {
+        long start = System.nanoTime();
+        HttpResponse<String> classify = client.send(post(uri, "{\"stream\":false,\"max_completion_tokens\":8}"),
+            HttpResponse.BodyHandlers.ofString());
+        String intent = objectMapper.readTree(classify.body()).path("choices").path(0).path("message").path("content").asText();
+        if (!"order".equals(intent)) {
+            throw new IllegalStateException("unexpected intent: " + intent);
+        }
+        Thread.sleep(orderMs);
+        long firstText = -1;
+        Iterator<String> lines = client.send(post(uri, "{\"stream\":true}"), HttpResponse.BodyHandlers.ofLines())
+            .body().iterator();
+        while (lines.hasNext()) {
+            JsonNode delta = delta(lines.next());
+            if (delta != null && firstText < 0 && delta.hasNonNull("content")) {
+                firstText = System.nanoTime() - start;
+            }
+        }
+        return new long[]{firstText, System.nanoTime() - start};
+    }
+
+    /**
+     * 改造后的下单轮次：与 LlmService 一致，工具调用在第一段回复文本之前同步执行
+     *
+     * @return {首段回复耗时, 整轮耗时}（纳秒）
+     */
+    private static long[] singleToolCallingStream(HttpClient client, URI uri, long orderMs) throws Exception {
+        long start = System.nanoTime();
+        long firstText = -1;
+        boolean toolCalls = false;
+        boolean ordered = false;
+        Iterator<String> lines = client.send(post(uri, "{\"stream\":true,\"tools\":[{\"type\":\"function\"}]}"),
+            HttpResponse.BodyHandlers.ofLines()).body().iterator();
+        while (lines.hasNext()) {
+            JsonNode delta = delta(lines.next());
+            if (delta == null) {
+                continue;
+            }
+            if (delta.has("tool_calls")) {
+                toolCalls = true;
+            }
+            if (delta.hasNonNull("content")) {
+                if (toolCalls && !ordered) {
+                    ordered = true;
+                    Thread.sleep(orderMs);
+                }
+                if (firstText < 0) {
+                    firstText = System.nanoTime() - start;
+                }
+            }
+        }
+        if (!ordered) {
+            throw new IllegalStateException("no tool call before reply text");
+        }
+        return new long[]{firstText, System.nanoTime() - start};
+    }
+
+    private static HttpRequest post(URI uri, String body) {
+        return HttpRequest.newBuilder(uri)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+    }
+
+    // SSE 的 data 行中第一个 choice 的 delta，其他行返回 null
+    private static JsonNode delta(String line) throws IOException {
+        if (!line.startsWith("data: ") || line.equals("data: [DONE]")) {
+            return null;
+        }
+        return objectMapper.readTree(line.substring(6)).path("choices").path(0).path("delta");
+    }
+
+    // 模拟 LLM：非流式请求在首 token 耗时后返回 order；流式请求带 tools 时先输出工具调用参数再输出回复
+    private static void mockCompletion(HttpExchange exchange, long firstTokenMs, long tokenIntervalMs, int replyTokens)
+        throws IOException {
+        try (exchange) {
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            pause(firstTokenMs);
+            if (!request.path("stream").asBoolean()) {
+                byte[] body = "{\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"order\"}}]}"
+                    .getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            if (request.has("tools")) {
+                String[] arguments = {"{\\\"item\\\":", "\\\"苹果\\\",", "\\\"quantity\\\":2}"};
+                for (int i = 0; i < arguments.length; i++) {
+                    if (i > 0) {
+                        pause(tokenIntervalMs);
+                    }
+                    String function = (i == 0 ? "\"name\":\"order_place\"," : "") + "\"arguments\":\"" + arguments[i] + "\"";
+                    event(out, "{\"tool_calls\":[{\"index\":0," + (i == 0 ? "\"id\":\"call_1\"," : "")
+                        + "\"function\":{" + function + "}}]}");
+                }
+                pause(tokenIntervalMs);
+            }
+            for (int i = 0; i < replyTokens; i++) {
+                if (i > 0) {
+                    pause(tokenIntervalMs);
+                }
+                event(out, "{\"content\":\"好\"}");
+            }
+            out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+    }
+
+    private static void event(OutputStream out, String delta) throws IOException {
+        out.write(("data: {\"choices\":[{\"index\":0,\"delta\":" + delta + "}]}\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static double p50(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[(sorted.length - 1) / 2] / 1_000_000.0;
+    }
+
+    private static double mean(long[] nanos) {
+        return Arrays.stream(nanos).average().orElse(0) / 1_000_000.0;
+    }
+}
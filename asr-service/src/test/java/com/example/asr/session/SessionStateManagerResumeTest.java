@@ -0,0 +1,108 @@
+package com.example.asr.session;
+
+import com.example.asr.model.ContextMessage;
+import com.example.asr.model.SessionState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * 跨节点恢复：一个节点写入共享目录的会话状态，由另一个节点（独立的 SessionStateManager 和存储实例）按令牌恢复
+ */
+class SessionStateManagerResumeTest {
+
+    @TempDir
+    Path sharedDirectory;
+
+    private final List<SessionStateManager> managers = new ArrayList<>();
+
+    @AfterEach
+    void shutdown() {
+        managers.forEach(SessionStateManager::shutdown);
+    }
+
+    @Test
+    void resumesStateSavedByAnotherNode() {
+        SessionStateManager first = manager("node-1", 1_800_000);
+        SessionState created = first.open("ws-1", null, "tenantA");
+        first.recordTurn("ws-1", "来两个苹果", "order");
+        first.appendExchange("ws-1", "来两个苹果", "好的，两个苹果已下单。");
+        first.updateTtsFormat("ws-1", "opus_16k");
+        first.close("ws-1");
+
+        SessionStateManager second = manager("node-2", 1_800_000);
+        SessionState resumed = second.open("ws-2", created.getToken(), "ignored");
+
+        assertThat(resumed.getToken()).isEqualTo(created.getToken()).startsWith("node-1.");
+        assertThat(resumed.getTenant()).isEqualTo("tenantA");
+        assertThat(resumed.getTurnCount()).isEqualTo(1);
+        assertThat(resumed.getLastTranscript()).isEqualTo("来两个苹果");
+        assertThat(resumed.getLastIntent()).isEqualTo("order");
+        assertThat(resumed.getTtsFormat()).isEqualTo("opus_16k");
+        assertThat(resumed.getMessages())
+            .extracting(ContextMessage::getRole, ContextMessage::getContent)
+            .containsExactly(
+                tuple(ContextMessage.ROLE_USER, "来两个苹果"),
+                tuple(ContextMessage.ROLE_ASSISTANT, "好的，两个苹果已下单。"));
+        assertThat(second.get("ws-2")).isSameAs(resumed);
+    }
+
+    @Test
+    void resumedStateKeepsAccumulatingOnTheNewNode() {
+        SessionStateManager first = manager("node-1", 1_800_000);
+        String token = first.open("ws-1", null, "tenantA").getToken();
+        first.appendExchange("ws-1", "你好", "你好，想喝点什么？");
+        first.close("ws-1");
+
+        SessionStateManager second = manager("node-2", 1_800_000);
+        second.open("ws-2", token, null);
+        second.appendExchange("ws-2", "一杯拿铁", "好的，一杯拿铁。");
+        second.close("ws-2");
+
+        SessionState resumedAgain = manager("node-1", 1_800_000).open("ws-3", token, null);
+        assertThat(resumedAgain.getMessages()).extracting(ContextMessage::getContent)
+            .containsExactly("你好", "你好，想喝点什么？", "一杯拿铁", "好的，一杯拿铁。");
+    }
+
+    @Test
+    void unknownTokenStartsNewStateOnCurrentNode() {
+        SessionState state = manager("node-2", 1_800_000).open("ws-1", "node-1.doesnotexist", "tenantB");
+
+        assertThat(state.getToken()).startsWith("node-2.").isNotEqualTo("node-1.doesnotexist");
+        assertThat(state.getTenant()).isEqualTo("tenantB");
+        assertThat(state.getMessages()).isEmpty();
+    }
+
+    @Test
+    void expiredStateIsNotResumed() throws InterruptedException {
+        SessionStateManager first = manager("node-1", 1_800_000);
+        String token = first.open("ws-1", null, "tenantA").getToken();
+        first.appendExchange("ws-1", "你好", "你好！");
+        first.close("ws-1");
+        Thread.sleep(20);
+
+        SessionState state = manager("node-2", 10).open("ws-2", token, "tenantA");
+
+        assertThat(state.getToken()).isNotEqualTo(token).startsWith("node-2.");
+        assertThat(state.getMessages()).isEmpty();
+    }
+
+    // 每个节点使用独立的存储实例，只共享目录
+    private SessionStateManager manager(String nodeId, long ttlMs) {
+        SessionStateManager manager = new SessionStateManager();
+        ReflectionTestUtils.setField(manager, "nodeId", nodeId);
+        ReflectionTestUtils.setField(manager, "ttlMs", ttlMs);
+        ReflectionTestUtils.setField(manager, "maxContextMessages", 40);
+        ReflectionTestUtils.setField(manager, "store", new FileSessionStateStore(sharedDirectory));
+        managers.add(manager);
+        return manager;
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.asr.ws;
+
+import com.example.asr.admission.AdmissionController;
+import com.example.asr.logging.HotPathLogger;
+import com.example.asr.metrics.PipelineMetrics;
+import com.example.asr.model.TtsAudioFormat;
+import com.example.asr.recording.SessionRecordingService;
+import com.example.asr.resilience.ResilienceExecutor;
+import com.example.asr.service.AsrTranscriptionService;
+import com.example.asr.service.LlmService;
+import com.example.asr.service.TtsSynthesisService;
+import com.example.asr.session.FileSessionStateStore;
+import com.example.asr.session.SessionStateManager;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.opentelemetry.api.OpenTelemetry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 多路复用连接上的流路由：按流 ID 分发音频、打开 / 关闭流，以及会话恢复到其他流之后旧流不再作用于该会话
+ */
+class AsrWebSocketHandlerMuxTest {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path stateDirectory;
+
+    private final AsrTranscriptionService asrService = mock(AsrTranscriptionService.class);
+    private final LlmService llmService = mock(LlmService.class);
+    private final AdmissionController admission = mock(AdmissionController.class);
+    private final Map<String, List<JsonNode>> sent = new ConcurrentHashMap<>();
+    private SessionStateManager sessionStates;
+    private AsrWebSocketHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        sessionStates = new SessionStateManager();
+        ReflectionTestUtils.setField(sessionStates, "nodeId", "node-1");
+        ReflectionTestUtils.setField(sessionStates, "ttlMs", 1_800_000L);
+        ReflectionTestUtils.setField(sessionStates, "maxContextMessages", 40);
+        ReflectionTestUtils.setField(sessionStates, "store", new FileSessionStateStore(stateDirectory));
+
+        PipelineMetrics metrics = new PipelineMetrics();
+        ReflectionTestUtils.setField(metrics, "registry", new SimpleMeterRegistry());
+        HotPathLogger hotPathLogger = new HotPathLogger();
+        ReflectionTestUtils.setField(hotPathLogger, "maxLinesPerSecond", 5);
+        TtsSynthesisService ttsService = mock(TtsSynthesisService.class);
+        when(ttsService.getDefaultFormat()).thenReturn(TtsAudioFormat.MP3);
+
+        handler = new AsrWebSocketHandler();
+        ReflectionTestUtils.setField(handler, "tracer", OpenTelemetry.noop().getTracer("test"));
+        ReflectionTestUtils.setField(handler, "asrService", asrService);
+        ReflectionTestUtils.setField(handler, "llmService", llmService);
+        ReflectionTestUtils.setField(handler, "ttsService", ttsService);
+        ReflectionTestUtils.setField(handler, "metrics", metrics);
+        ReflectionTestUtils.setField(handler, "hotPathLogger", hotPathLogger);
+        ReflectionTestUtils.setField(handler, "admission", admission);
+        ReflectionTestUtils.setField(handler, "resilience", mock(ResilienceExecutor.class));
+        ReflectionTestUtils.setField(handler, "sessionStates", sessionStates);
+        ReflectionTestUtils.setField(handler, "recordings", mock(SessionRecordingService.class));
+        ReflectionTestUtils.setField(handler, "resumeEnabled", true);
+        ReflectionTestUtils.setField(handler, "resumeGraceMs", 30_000L);
+        ReflectionTestUtils.setField(handler, "replayMaxFrames", 2000);
+        ReflectionTestUtils.setField(handler, "replayMaxBytes", 2_097_152L);
+        ReflectionTestUtils.setField(handler, "muxEnabled", true);
+        ReflectionTestUtils.setField(handler, "muxMaxStreams", 64);
+        ReflectionTestUtils.setField(handler, "muxSendTimeLimitMs", 10_000);
+        ReflectionTestUtils.setField(handler, "muxSendBufferLimit", 8_388_608);
+        ReflectionTestUtils.setField(handler, "asrSampleRate", 16000);
+        handler.registerMetrics();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionStates.shutdown();
+    }
+
+    @Test
+    void routesAudioByStreamAndClosesSingleStream() throws Exception {
+        WebSocketSession mux = connectMux("mux-a");
+        open(mux, 1, null);
+        open(mux, 2, null);
+
+        audio(mux, 1, (byte) 1);
+        audio(mux, 2, (byte) 2);
+        audio(mux, 9, (byte) 9);
+        verify(asrService).appendAudio("mux-a-1", new byte[]{1});
+        verify(asrService).appendAudio("mux-a-2", new byte[]{2});
+        verify(asrService, times(2)).appendAudio(anyString(), any());
+
+        text(mux, "{\"type\":\"close\",\"stream\":1}");
+        verify(llmService).clearContext("mux-a-1");
+        verify(admission).unregisterSession("mux-a-1");
+
+        clearInvocations(asrService);
+        audio(mux, 1, (byte) 1);
+        audio(mux, 2, (byte) 2);
+        verify(asrService, never()).appendAudio(eq("mux-a-1"), any());
+        verify(asrService).appendAudio("mux-a-2", new byte[]{2});
+        text(mux, "{\"type\":\"end\",\"stream\":1}");
+        assertThat(lastFrame("mux-a", 1).path("message").asText()).isEqualTo("流未打开");
+    }
+
+    @Test
+    void resumeOntoAnotherStreamOfSameSocketDropsOldStream() throws Exception {
+        WebSocketSession mux = connectMux("mux-a");
+        String token = open(mux, 1, null).path("resumeToken").asText();
+
+        JsonNode resumed = open(mux, 2, token);
+        assertThat(resumed.path("sessionId").asText()).isEqualTo("mux-a-1");
+        assertThat(resumed.path("streamResumed").asBoolean()).isTrue();
+
+        clearInvocations(asrService);
+        audio(mux, 1, (byte) 1);
+        audio(mux, 2, (byte) 2);
+        verify(asrService, times(1)).appendAudio(anyString(), any());
+        verify(asrService).appendAudio("mux-a-1", new byte[]{2});
+
+        // 旧流上的 close 不能结束已经恢复到新流上的会话
+        text(mux, "{\"type\":\"close\",\"stream\":1}");
+        assertThat(lastFrame("mux-a", 1).path("message").asText()).isEqualTo("流未打开");
+        verify(llmService, never()).clearContext("mux-a-1");
+
+        text(mux, "{\"type\":\"close\",\"stream\":2}");
+        verify(llmService).clearContext("mux-a-1");
+    }
+
+    @Test
+    void resumeOntoOtherSocketDropsStreamOnStillOpenSocket() throws Exception {
+        WebSocketSession first = connectMux("mux-a");
+        WebSocketSession second = connectMux("mux-b");
+        String token = open(first, 1, null).path("resumeToken").asText();
+
+        assertThat(open(second, 5, token).path("sessionId").asText()).isEqualTo("mux-a-1");
+
+        clearInvocations(asrService);
+        audio(first, 1, (byte) 1);
+        audio(second, 5, (byte) 5);
+        verify(asrService, times(1)).appendAudio(anyString(), any());
+        verify(asrService).appendAudio("mux-a-1", new byte[]{5});
+
+        text(first, "{\"type\":\"close\",\"stream\":1}");
+        assertThat(lastFrame("mux-a", 1).path("message").asText()).isEqualTo("流未打开");
+        verify(llmService, never()).clearContext("mux-a-1");
+
+        // 旧连接随后断开也不影响会话
+        handler.afterConnectionClosed(first, CloseStatus.GOING_AWAY);
+        verify(llmService, never()).clearContext("mux-a-1");
+        audio(second, 5, (byte) 6);
+        verify(asrService).appendAudio("mux-a-1", new byte[]{6});
+
+        // 旧流 ID 可以重新打开为新的会话
+        WebSocketSession third = connectMux("mux-c");
+        open(third, 1, null);
+        text(second, "{\"type\":\"close\",\"stream\":5}");
+        verify(llmService).clearContext("mux-a-1");
+        verify(llmService, never()).clearContext("mux-c-1");
+    }
+
+    private WebSocketSession connectMux(String id) throws Exception {
+        List<JsonNode> frames = new ArrayList<>();
+        sent.put(id, frames);
+        WebSocketSession socket = mock(WebSocketSession.class);
+        when(socket.getId()).thenReturn(id);
+        when(socket.getUri()).thenReturn(URI.create("ws://localhost/ws/asr?mux=1"));
+        when(socket.isOpen()).thenReturn(true);
+        when(socket.getExtensions()).thenReturn(List.of());
+        doAnswer(invocation -> {
+            WebSocketMessage<?> message = invocation.getArgument(0);
+            if (message instanceof TextMessage textMessage) {
+                synchronized (frames) {
+                    frames.add(objectMapper.readTree(textMessage.getPayload()));
+                }
+            }
+            return null;
+        }).when(socket).sendMessage(any());
+        handler.afterConnectionEstablished(socket);
+        return socket;
+    }
+
+    // 打开流并返回该流上的 connected 帧
+    private JsonNode open(WebSocketSession mux, int stream, String resumeToken) {
+        text(mux, "{\"type\":\"open\",\"stream\":" + stream + ",\"resumable\":\"1\"" +
+            (resumeToken != null ? ",\"resume\":\"" + resumeToken + "\"" : "") + "}");
+        JsonNode connected = lastFrame(mux.getId(), stream);
+        assertThat(connected.path("type").asText()).isEqualTo("connected");
+        return connected;
+    }
+
+    private void text(WebSocketSession mux, String payload) {
+        handler.handleTextMessage(mux, new TextMessage(payload));
+    }
+
+    private void audio(WebSocketSession mux, int stream, byte sample) throws Exception {
+        ByteBuffer frame = ByteBuffer.allocate(OutboundChannel.STREAM_HEADER_BYTES + 1);
+        frame.putShort((short) stream).put(sample).flip();
+        handler.handleBinaryMessage(mux, new BinaryMessage(frame));
+    }
+
+    private JsonNode lastFrame(String socketId, int stream) {
+        List<JsonNode> frames = sent.get(socketId);
+        synchronized (frames) {
+            for (int i = frames.size() - 1; i >= 0; i--) {
+                if (frames.get(i).path("stream").asInt(-1) == stream) {
+                    return frames.get(i);
+                }
+            }
+        }
+        throw new AssertionError("no frame on stream " + stream + " of " + socketId);
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.asr.ws;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * 下行帧的 permessage-deflate 效果压测
+ * 按闲聊轮次生成 /ws/asr 的下行帧（transcript / intent / 逐 token 的 text_chunk / complete，带 seq 字段，
+ * 以及 100ms 一帧的音频），与 CompressionSampler 一样用 raw deflate + SYNC_FLUSH 压缩，统计每类帧的压缩率和 CPU 耗时：
+ *
+ * - 文本帧：分别按 no_context_takeover（每条消息重置字典）和保留字典（每个连接一个 Deflater）压缩
+ * - PCM 音频帧：16kHz 16bit 单声道，谐波 + 包络 + 噪声的合成语音
+ * - 已压缩音频帧：用随机字节代替 MP3 / Opus 帧（本地没有编码器，熵接近）
+ *
+ * 参数：[轮数=2000] [每轮音频帧数=30] [压缩音频帧字节数=600] [压缩级别=-1]
+ */
+public final class CompressionBenchmark {
+    // permessage-deflate 去掉每条消息末尾的 00 00 ff ff
+    private static final int SYNC_FLUSH_TAIL = 4;
+    private static final int PCM_FRAME_BYTES = 3200;
+    private static final int AUDIO_POOL_FRAMES = 600;
+
+    private static final String[] TRANSCRIPTS = {
+        "今天天气怎么样", "给我讲个笑话吧", "你们这儿有什么推荐的", "周末去哪儿玩比较好", "我有点累了"
+    };
+    private static final String[] REPLIES = {
+        "今天天气晴朗，最高气温二十六度，很适合出门散步，记得带上水哦。",
+        "好呀！有一只企鹅走进咖啡店，店员问它要什么，它说：来杯冰的就行，我不怕冷。",
+        "我们的招牌是桂花拿铁和抹茶蛋糕，很多客人都会一起点，要不要试试？",
+        "周末可以去植物园看看，最近樱花开了，人不算太多，拍照也很好看。",
+        "辛苦啦，要不要来一杯热巧克力放松一下？我可以帮你下单。"
+    };
+
+    private CompressionBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int turns = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int audioFramesPerTurn = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int compressedFrameBytes = args.length > 2 ? Integer.parseInt(args[2]) : 600;
+        int level = args.length > 3 ? Integer.parseInt(args[3]) : Deflater.DEFAULT_COMPRESSION;
+
+        List<byte[]> textFrames = new ArrayList<>();
+        long seq = 0;
+        for (int turn = 0; turn < turns; turn++) {
+            String reply = REPLIES[turn % REPLIES.length];
+            textFrames.add(frame(seq++, "{\"type\":\"transcript\",\"text\":\"" + TRANSCRIPTS[turn % TRANSCRIPTS.length] + "\"}"));
+            textFrames.add(frame(seq++, "{\"type\":\"intent\",\"value\":\"chitchat\"}"));
+            // LLM 流式输出约 1 ~ 3 个字一个 chunk
+            for (int i = 0; i < reply.length(); ) {
+                int end = Math.min(reply.length(), i + 1 + (i + turn) % 3);
+                textFrames.add(frame(seq++, "{\"type\":\"text_chunk\",\"text\":\"" + reply.substring(i, end) + "\"}"));
+                i = end;
+            }
+            textFrames.add(frame(seq++, "{\"type\":\"complete\"}"));
+            seq += audioFramesPerTurn;
+        }
+
+        Random random = new Random(42);
+        List<byte[]> pcmFrames = new ArrayList<>();
+        List<byte[]> compressedFrames = new ArrayList<>();
+        // 合成语音较慢，生成一段后循环使用
+        for (int i = 0; i < turns * audioFramesPerTurn; i++) {
+            pcmFrames.add(i < AUDIO_POOL_FRAMES ? speechLikePcm(i, random) : pcmFrames.get(i % AUDIO_POOL_FRAMES));
+            byte[] encoded = new byte[compressedFrameBytes];
+            random.nextBytes(encoded);
+            compressedFrames.add(encoded);
+        }
+
+        System.out.printf("%d 轮闲聊：文本帧 %d 条，音频帧 %d 条；压缩级别 %d%n", turns, textFrames.size(), pcmFrames.size(), level);
+        // 预热
+        measure(textFrames, level, true);
+        measure(pcmFrames, level, false);
+        print("文本帧（no_context_takeover）", measure(textFrames, level, false));
+        print("文本帧（保留字典）", measure(textFrames, level, true));
+        print("PCM 音频帧", measure(pcmFrames, level, false));
+        print("已压缩音频帧", measure(compressedFrames, level, false));
+    }
+
+    private static byte[] frame(long seq, String json) {
+        return ("{\"seq\":" + seq + "," + json.substring(1)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 基频在 100 ~ 250Hz 间缓慢变化的谐波叠加，按音节包络调制，并加入少量噪声
+    private static byte[] speechLikePcm(int frameIndex, Random random) {
+        byte[] pcm = new byte[PCM_FRAME_BYTES];
+        int samples = PCM_FRAME_BYTES / 2;
+        double f0 = 100 + 150 * (0.5 + 0.5 * Math.sin(frameIndex * 0.3));
+        for (int n = 0; n < samples; n++) {
+            double t = (frameIndex * samples + n) / 16000.0;
+            double envelope = 0.5 + 0.5 * Math.sin(2 * Math.PI * 4 * t);
+            double value = 0;
+            for (int h = 1; h <= 8; h++) {
+                value += Math.sin(2 * Math.PI * f0 * h * t) / h;
+            }
+            int sample = (int) (envelope * value * 6000 + random.nextGaussian() * 200);
+            sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+            pcm[2 * n] = (byte) sample;
+            pcm[2 * n + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+
+    /**
+     * @return {压缩前字节数, 压缩后字节数, CPU 纳秒, 帧数}
+     */
+    private static long[] measure(List<byte[]> frames, int level, boolean contextTakeover) {
+        Deflater deflater = new Deflater(level, true);
+        byte[] output = new byte[PCM_FRAME_BYTES * 2];
+        long in = 0;
+        long out = 0;
+        long nanos = 0;
+        try {
+            for (byte[] input : frames) {
+                long start = System.nanoTime();
+                if (!contextTakeover) {
+                    deflater.reset();
+                }
+                deflater.setInput(input);
+                int compressed = 0;
+                int n;
+                do {
+                    n = deflater.deflate(output, 0, output.length, Deflater.SYNC_FLUSH);
+                    compressed += n;
+                } while (n == output.length);
+                nanos += System.nanoTime() - start;
+                in += input.length;
+                out += Math.max(1, compressed - SYNC_FLUSH_TAIL);
+            }
+        } finally {
+            deflater.end();
+        }
+        return new long[]{in, out, nanos, frames.size()};
+    }
+
+    private static void print(String label, long[] result) {
+        System.out.printf("%-28s 平均 %6.1f → %6.1f 字节，压缩率 %.3f，%.2f us/帧，%.0f MB/s%n", label,
+            (double) result[0] / result[3], (double) result[1] / result[3], (double) result[1] / result[0],
+            result[2] / 1e3 / result[3], result[0] * 1e3 / result[2]);
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.asr.ws;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 下行通道：序号分配、确认与重放缓冲的裁剪、帧数 / 字节上限、挂接时的重放顺序，以及在多路复用流上的重新加帧头
+ */
+class OutboundChannelTest {
+
+    @Test
+    void insertsSeqAndCountsAudioFrames() {
+        List<String> sent = new ArrayList<>();
+        OutboundChannel channel = attached(sent, 100, 1 << 20);
+
+        channel.sendText("{\"type\":\"transcript\",\"text\":\"你好\"}");
+        channel.sendBinary(new byte[]{1, 2});
+        channel.sendText("{\"type\":\"complete\"}");
+
+        assertThat(sent).containsExactly(hello(1),
+            "{\"seq\":1,\"type\":\"transcript\",\"text\":\"你好\"}", "bin:0102", "{\"seq\":3,\"type\":\"complete\"}");
+    }
+
+    @Test
+    void keepsNoReplayBufferUntilClientOptsIn() {
+        OutboundChannel channel = attached(new ArrayList<>(), 100, 1 << 20);
+        channel.sendText("{\"type\":\"a\"}");
+        assertThat(channel.getReplayBytes()).isZero();
+
+        // 第一个 ack 视为声明支持断线恢复
+        channel.ack(1);
+        assertThat(channel.isReplayEnabled()).isTrue();
+        channel.sendText("{\"type\":\"b\"}");
+        assertThat(channel.getReplayBytes()).isEqualTo(utf8("{\"seq\":2,\"type\":\"b\"}"));
+    }
+
+    @Test
+    void ackTrimsReplayBufferByUtf8Bytes() {
+        OutboundChannel channel = attached(new ArrayList<>(), 100, 1 << 20);
+        channel.enableReplay();
+        channel.sendText("{\"type\":\"a\"}");
+        channel.sendBinary(new byte[10]);
+        channel.sendText("{\"type\":\"text_chunk\",\"text\":\"苹果🍎\"}");
+        long last = utf8("{\"seq\":3,\"type\":\"text_chunk\",\"text\":\"苹果🍎\"}");
+        assertThat(channel.getReplayBytes()).isEqualTo(utf8("{\"seq\":1,\"type\":\"a\"}") + 10 + last);
+
+        channel.ack(2);
+        assertThat(channel.getReplayBytes()).isEqualTo(last);
+        channel.ack(3);
+        assertThat(channel.getReplayBytes()).isZero();
+    }
+
+    @Test
+    void frameCapDropsOldestAndReportsGap() {
+        OutboundChannel channel = attached(new ArrayList<>(), 2, 1 << 20);
+        channel.enableReplay();
+        for (int i = 0; i < 4; i++) {
+            channel.sendText("{\"type\":\"chunk\"}");
+        }
+        channel.detach(currentSocket);
+
+        List<String> resumed = new ArrayList<>();
+        int replayed = channel.attach(socket(resumed), OutboundChannel.NO_STREAM, 0, OutboundChannelTest::hello);
+
+        assertThat(replayed).isEqualTo(2);
+        assertThat(resumed).containsExactly(hello(3),
+            "{\"seq\":3,\"type\":\"chunk\"}", "{\"seq\":4,\"type\":\"chunk\"}");
+    }
+
+    @Test
+    void byteCapDropsOldestButKeepsNewestFrame() {
+        OutboundChannel channel = attached(new ArrayList<>(), 100, 25);
+        channel.enableReplay();
+        channel.sendBinary(new byte[10]);
+        channel.sendBinary(new byte[10]);
+        assertThat(channel.getReplayBytes()).isEqualTo(20);
+        channel.sendBinary(new byte[10]);
+        assertThat(channel.getReplayBytes()).isEqualTo(20);
+        // 单帧超过上限时仍保留，避免重连后完全丢失
+        channel.sendBinary(new byte[100]);
+        assertThat(channel.getReplayBytes()).isEqualTo(100);
+    }
+
+    @Test
+    void bufferedFramesReplayAfterHelloThenNewFramesFollow() {
+        OutboundChannel channel = attached(new ArrayList<>(), 100, 1 << 20);
+        channel.enableReplay();
+        channel.sendText("{\"type\":\"a\"}");
+        channel.detach(currentSocket);
+        // 断开期间的帧只进入缓冲区
+        channel.sendText("{\"type\":\"b\"}");
+        channel.sendBinary(new byte[]{7});
+        assertThat(channel.isAttached()).isFalse();
+        assertThat(channel.getDetachedAt()).isPositive();
+
+        List<String> resumed = new ArrayList<>();
+        int replayed = channel.attach(socket(resumed), OutboundChannel.NO_STREAM, 1, OutboundChannelTest::hello);
+        channel.sendText("{\"type\":\"c\"}");
+
+        assertThat(replayed).isEqualTo(2);
+        assertThat(resumed).containsExactly(hello(2),
+            "{\"seq\":2,\"type\":\"b\"}", "bin:07", "{\"seq\":4,\"type\":\"c\"}");
+        assertThat(channel.getDetachedAt()).isZero();
+    }
+
+    @Test
+    void reframesForStreamOnResumeAndBack() {
+        OutboundChannel channel = attached(new ArrayList<>(), 100, 1 << 20);
+        channel.enableReplay();
+        channel.sendText("{\"type\":\"a\"}");
+        channel.sendBinary(new byte[]{5});
+
+        List<String> mux = new ArrayList<>();
+        channel.attach(socket(mux), 7, 0, OutboundChannelTest::hello);
+        channel.sendText("{\"type\":\"b\"}");
+        assertThat(mux).containsExactly("{\"stream\":7,\"type\":\"connected\",\"replayFrom\":1}",
+            "{\"stream\":7,\"seq\":1,\"type\":\"a\"}", "bin:000705", "{\"stream\":7,\"seq\":3,\"type\":\"b\"}");
+
+        // 恢复到独占连接：缓冲区中保存的是未加帧头的原始帧
+        List<String> plain = new ArrayList<>();
+        channel.attach(socket(plain), OutboundChannel.NO_STREAM, 1, OutboundChannelTest::hello);
+        assertThat(plain).containsExactly(hello(2), "bin:05", "{\"seq\":3,\"type\":\"b\"}");
+    }
+
+    @Test
+    void supersededSocketIsClosedUnlessShared() throws Exception {
+        OutboundChannel channel = attached(new ArrayList<>(), 100, 1 << 20);
+        WebSocketSession exclusive = currentSocket;
+        WebSocketSession mux = socket(new ArrayList<>());
+        channel.attach(mux, 3, 0, OutboundChannelTest::hello);
+        verify(exclusive).close(any(CloseStatus.class));
+
+        // 多路复用连接由其他流共享，不能关闭
+        channel.attach(socket(new ArrayList<>()), OutboundChannel.NO_STREAM, 0, OutboundChannelTest::hello);
+        verify(mux, never()).close(any(CloseStatus.class));
+    }
+
+    @Test
+    void detachFromSupersededSocketIsIgnored() {
+        OutboundChannel channel = attached(new ArrayList<>(), 100, 1 << 20);
+        WebSocketSession old = currentSocket;
+        channel.attach(socket(new ArrayList<>()), OutboundChannel.NO_STREAM, 0, OutboundChannelTest::hello);
+
+        assertThat(channel.detach(old)).isFalse();
+        assertThat(channel.isAttached()).isTrue();
+    }
+
+    @Test
+    void closeDropsBufferAndStopsWriting() {
+        List<String> sent = new ArrayList<>();
+        OutboundChannel channel = attached(sent, 100, 1 << 20);
+        channel.enableReplay();
+        channel.sendText("{\"type\":\"a\"}");
+        channel.close();
+        channel.sendText("{\"type\":\"b\"}");
+
+        assertThat(channel.isClosed()).isTrue();
+        assertThat(channel.getReplayBytes()).isZero();
+        assertThat(sent).containsExactly(hello(1), "{\"seq\":1,\"type\":\"a\"}");
+    }
+
+    @Test
+    void withStreamPrefixesOnlyMultiplexedFrames() {
+        assertThat(OutboundChannel.withStream("{\"type\":\"a\"}", OutboundChannel.NO_STREAM)).isEqualTo("{\"type\":\"a\"}");
+        assertThat(OutboundChannel.withStream("{\"type\":\"a\"}", 0)).isEqualTo("{\"stream\":0,\"type\":\"a\"}");
+    }
+
+    private WebSocketSession currentSocket;
+
+    private OutboundChannel attached(List<String> sent, int maxFrames, long maxBytes) {
+        OutboundChannel channel = new OutboundChannel("s-1", maxFrames, maxBytes, null);
+        currentSocket = socket(sent);
+        channel.attach(currentSocket, OutboundChannel.NO_STREAM, 0, OutboundChannelTest::hello);
+        return channel;
+    }
+
+    // 文本帧按原文记录，音频帧记为 bin: 加十六进制字节
+    private static WebSocketSession socket(List<String> sent) {
+        WebSocketSession socket = mock(WebSocketSession.class);
+        when(socket.isOpen()).thenReturn(true);
+        when(socket.getExtensions()).thenReturn(List.of());
+        try {
+            doAnswer(invocation -> {
+                WebSocketMessage<?> message = invocation.getArgument(0);
+                if (message instanceof TextMessage text) {
+                    sent.add(text.getPayload());
+                } else if (message instanceof BinaryMessage binary) {
+                    ByteBuffer payload = binary.getPayload();
+                    StringBuilder hex = new StringBuilder("bin:");
+                    for (int i = payload.position(); i < payload.limit(); i++) {
+                        hex.append(String.format("%02x", payload.get(i)));
+                    }
+                    sent.add(hex.toString());
+                }
+                return null;
+            }).when(socket).sendMessage(any());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return socket;
+    }
+
+    // 握手帧不分配序号，多路复用时同样加 stream 字段
+    private static String hello(long replayFrom) {
+        return "{\"type\":\"connected\",\"replayFrom\":" + replayFrom + "}";
+    }
+
+    private static long utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.asr.ws;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * WebSocketPerformanceMeasure.recordChunk 的并发吞吐压测
+ * 多个线程同时对同一个实例调用 recordChunk（模拟 DashScope / OkHttp 回调线程），另一个线程持续读取快照，
+ * 输出每次调用的耗时和合计吞吐。计数的正确性由 WebSocketPerformanceMeasureConcurrencyTest 校验。
+ *
+ * 参数：[线程数=8] [每线程次数=100000] [轮数=5]
+ */
+public final class PerformanceMeasureBenchmark {
+
+    private PerformanceMeasureBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        long total = (long) threads * iterations;
+
+        for (int round = 1; round <= rounds; round++) {
+            WebSocketPerformanceMeasure measure = WebSocketPerformanceMeasure.create();
+            AtomicBoolean recording = new AtomicBoolean(true);
+            long[] snapshots = new long[1];
+            Thread reader = new Thread(() -> {
+                while (recording.get()) {
+                    measure.getIntervalCount();
+                    measure.getChunkCount();
+                    measure.getIntervalPercentile(0.99);
+                    snapshots[0]++;
+                }
+            }, "measure-reader");
+
+            CountDownLatch ready = new CountDownLatch(threads);
+            CountDownLatch go = new CountDownLatch(1);
+            List<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread writer = new Thread(() -> {
+                    ready.countDown();
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int i = 0; i < iterations; i++) {
+                        measure.recordChunk();
+                    }
+                }, "measure-writer-" + t);
+                writers.add(writer);
+                writer.start();
+            }
+            ready.await();
+            reader.start();
+            long start = System.nanoTime();
+            go.countDown();
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            long elapsed = System.nanoTime() - start;
+            recording.set(false);
+            reader.join();
+
+            System.out.printf("第 %d 轮：%d 线程 × %d 次，%.1f ns/次（合计 %.1f M 次/秒），读取快照 %d 次%n",
+                round, threads, iterations, (double) elapsed / total * threads, total * 1e3 / elapsed, snapshots[0]);
+        }
+    }
+}
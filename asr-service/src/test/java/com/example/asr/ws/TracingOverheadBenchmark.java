@@ -0,0 +1,221 @@
+package com.example.asr.ws;
+
+import com.example.asr.config.TailSamplingSpanProcessor;
+import com.example.asr.metrics.PipelineMetrics;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 上行音频热路径的 Tracing 开销压测（帧/秒）
+ * 多个线程各模拟一个会话：连接 Span 常驻，每轮以连接 Span 为父级创建 ASR Span，连续处理若干音频帧后结束。
+ * 每种 tracing.mode（off / sampled / tail / full，Span 构建方式与 TracingConfig 一致，
+ * 经 BatchSpanProcessor 导出到只计数的 exporter）下对比两种逐帧写法：
+ *
+ * - 逐帧切换上下文：每帧查找连接 Span 并 makeCurrent()，再检查 ASR Span 是否已创建（改造前的写法）
+ * - StageTrace 计数：每帧只查找 StageTrace 并累加帧数和字节数，阶段结束时一次性写入 Span 属性（当前写法）
+ *
+ * 参数：[会话线程数=4] [每线程轮数=2000] [每轮帧数=100] [采样比例=0.1] [计时次数=5]
+ */
+public final class TracingOverheadBenchmark {
+    private static final int FRAME_BYTES = 3200;
+
+    private TracingOverheadBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int turns = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int framesPerTurn = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        double ratio = args.length > 3 ? Double.parseDouble(args[3]) : 0.1;
+        int repeats = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+
+        // 两种写法的聚合指标记录相同，压测中不计入
+        PipelineMetrics metrics = new PipelineMetrics() {
+            @Override
+            public void recordStage(String stage, WebSocketPerformanceMeasure measure) {
+            }
+        };
+
+        System.out.printf("会话线程 %d，每线程 %d 轮 × %d 帧（%d 字节/帧），采样比例 %.2f%n",
+            sessions, turns, framesPerTurn, FRAME_BYTES, ratio);
+        for (String mode : new String[]{"off", "sampled", "tail", "full"}) {
+            for (boolean stageTrace : new boolean[]{false, true}) {
+                // 预热一次，再计时 repeats 次取中位数
+                run(mode, ratio, stageTrace, sessions, Math.max(1, turns / 4), framesPerTurn, metrics);
+                Result[] results = new Result[repeats];
+                for (int i = 0; i < repeats; i++) {
+                    results[i] = run(mode, ratio, stageTrace, sessions, turns, framesPerTurn, metrics);
+                }
+                Arrays.sort(results, Comparator.comparingDouble(Result::framesPerSecond));
+                Result median = results[repeats / 2];
+                System.out.printf("%-8s %-10s %8.2f M 帧/秒，导出 Span %d%n", mode,
+                    stageTrace ? "StageTrace" : "逐帧上下文", median.framesPerSecond / 1e6, median.exported);
+            }
+        }
+    }
+
+    private static Result run(String mode, double ratio, boolean stageTrace, int sessions, int turns,
+                              int framesPerTurn, PipelineMetrics metrics) throws Exception {
+        CountingExporter exporter = new CountingExporter();
+        SdkTracerProvider tracerProvider = null;
+        OpenTelemetry openTelemetry;
+        if ("off".equals(mode)) {
+            openTelemetry = OpenTelemetry.noop();
+        } else {
+            SpanProcessor processor = BatchSpanProcessor.builder(exporter)
+                .setMaxQueueSize(2048)
+                .setMaxExportBatchSize(512)
+                .setScheduleDelay(Duration.ofMillis(5000))
+                .build();
+            Sampler sampler = Sampler.alwaysOn();
+            if ("sampled".equals(mode)) {
+                sampler = Sampler.parentBased(Sampler.traceIdRatioBased(ratio));
+            } else if ("tail".equals(mode)) {
+                processor = new TailSamplingSpanProcessor(processor, ratio, 10_000, 1000, 256);
+            }
+            tracerProvider = SdkTracerProvider.builder().setSampler(sampler).addSpanProcessor(processor).build();
+            openTelemetry = OpenTelemetrySdk.builder().setTracerProvider(tracerProvider).build();
+        }
+        Tracer tracer = openTelemetry.getTracer("asr-service", "1.0.0");
+
+        // 与处理器一样按会话 ID 保存状态
+        Map<String, Span> connectionSpans = new ConcurrentHashMap<>();
+        Map<String, Span> asrSpans = new ConcurrentHashMap<>();
+        Map<String, WebSocketPerformanceMeasure> asrMeasures = new ConcurrentHashMap<>();
+        Map<String, StageTrace> asrTraces = new ConcurrentHashMap<>();
+
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int s = 0; s < sessions; s++) {
+            String sessionId = "session-" + s;
+            Thread thread = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int turn = 0; turn < turns; turn++) {
+                    // 每 20 轮换一个连接，使采样按会话生效
+                    if (turn % 20 == 0) {
+                        Span previous = connectionSpans.remove(sessionId);
+                        if (previous != null) {
+                            previous.end();
+                        }
+                        connectionSpans.put(sessionId, tracer.spanBuilder("websocket.connection").startSpan());
+                    }
+                    for (int frame = 0; frame < framesPerTurn; frame++) {
+                        if (stageTrace) {
+                            stageTraceFrame(sessionId, tracer, connectionSpans, asrTraces);
+                        } else {
+                            contextPerFrame(sessionId, tracer, connectionSpans, asrSpans, asrMeasures);
+                        }
+                    }
+                    if (stageTrace) {
+                        asrTraces.remove(sessionId).end(metrics);
+                    } else {
+                        Span asrSpan = asrSpans.remove(sessionId);
+                        WebSocketPerformanceMeasure measure = asrMeasures.remove(sessionId);
+                        measure.applyToSpan(asrSpan, "asr");
+                        metrics.recordStage(PipelineMetrics.STAGE_ASR, measure);
+                        asrSpan.end();
+                    }
+                }
+                Span connectionSpan = connectionSpans.remove(sessionId);
+                if (connectionSpan != null) {
+                    connectionSpan.end();
+                }
+            }, "bench-" + sessionId);
+            threads.add(thread);
+            thread.start();
+        }
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (tracerProvider != null) {
+            tracerProvider.shutdown().join(10, TimeUnit.SECONDS);
+        }
+        long frames = (long) sessions * turns * framesPerTurn;
+        return new Result(frames * 1e9 / elapsed, exporter.exported.get());
+    }
+
+    // 改造前：每帧都在连接 Span 的上下文中执行，并逐帧检查 ASR Span 是否已创建
+    private static void contextPerFrame(String sessionId, Tracer tracer, Map<String, Span> connectionSpans,
+                                        Map<String, Span> asrSpans, Map<String, WebSocketPerformanceMeasure> asrMeasures) {
+        Span connectionSpan = connectionSpans.get(sessionId);
+        try (Scope scope = connectionSpan.makeCurrent()) {
+            if (!asrSpans.containsKey(sessionId)) {
+                Span asrSpan = tracer.spanBuilder("asr.transcription")
+                    .setParent(Context.current())
+                    .setAttribute("websocket.session.id", sessionId)
+                    .startSpan();
+                asrSpans.put(sessionId, asrSpan);
+                asrMeasures.put(sessionId, WebSocketPerformanceMeasure.create());
+            }
+        }
+    }
+
+    // 当前写法：与 AsrWebSocketHandler 一致，每帧只累加 StageTrace 计数
+    private static void stageTraceFrame(String sessionId, Tracer tracer, Map<String, Span> connectionSpans,
+                                        Map<String, StageTrace> asrTraces) {
+        StageTrace asrTrace = asrTraces.get(sessionId);
+        if (asrTrace == null) {
+            Span asrSpan = tracer.spanBuilder("asr.transcription")
+                .setParent(Context.current().with(connectionSpans.get(sessionId)))
+                .setAttribute("websocket.session.id", sessionId)
+                .startSpan();
+            asrTrace = new StageTrace(asrSpan, PipelineMetrics.STAGE_ASR);
+            asrTraces.put(sessionId, asrTrace);
+        }
+        asrTrace.recordFrame(FRAME_BYTES);
+    }
+
+    private record Result(double framesPerSecond, long exported) {
+    }
+
+    private static final class CountingExporter implements SpanExporter {
+        private final AtomicLong exported = new AtomicLong();
+
+        @Override
+        public CompletableResultCode export(Collection<SpanData> spans) {
+            exported.addAndGet(spans.size());
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.asr.ws;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * WebSocketPerformanceMeasure / LatencyHistogram 的并发正确性
+ * 多个线程同时对同一个实例调用 recordChunk（模拟 DashScope / OkHttp 回调线程），另一个线程持续读取快照，
+ * 校验计数没有丢失、读取过程中的快照自洽
+ */
+class WebSocketPerformanceMeasureConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 20_000;
+    private static final long EXPECTED = (long) THREADS * ITERATIONS;
+
+    @RepeatedTest(3)
+    void keepsExactCountsUnderContention() throws Exception {
+        WebSocketPerformanceMeasure measure = WebSocketPerformanceMeasure.create();
+        AtomicBoolean recording = new AtomicBoolean(true);
+        AtomicReference<String> snapshotError = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            int lastCount = 0;
+            while (recording.get()) {
+                // 先读间隔样本数再读 chunk 总数：每次间隔都在计数自增之后记录
+                long intervals = measure.getIntervalCount();
+                int count = measure.getChunkCount();
+                if (count < lastCount) {
+                    snapshotError.compareAndSet(null, "chunkCount 回退: " + lastCount + " -> " + count);
+                }
+                if (intervals > count) {
+                    snapshotError.compareAndSet(null, "间隔样本数 " + intervals + " 超过 chunkCount " + count);
+                }
+                Long p99 = measure.getIntervalPercentile(0.99);
+                Long max = measure.getMaxInterval();
+                if (p99 != null && max != null && p99 > max) {
+                    snapshotError.compareAndSet(null, "p99 " + p99 + " ms 超过 max " + max + " ms");
+                }
+                lastCount = count;
+            }
+        }, "measure-reader");
+
+        AtomicLong firstChunkReturns = new AtomicLong();
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Thread writer = new Thread(() -> {
+                awaitQuietly(go);
+                for (int i = 0; i < ITERATIONS; i++) {
+                    if (measure.recordChunk() >= 0) {
+                        firstChunkReturns.incrementAndGet();
+                    }
+                }
+            }, "measure-writer-" + t);
+            writers.add(writer);
+            writer.start();
+        }
+        reader.start();
+        go.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        recording.set(false);
+        reader.join();
+
+        assertThat(snapshotError.get()).isNull();
+        assertThat((long) measure.getChunkCount()).isEqualTo(EXPECTED);
+        // 第一个 chunk 之后每个 chunk 记录一个间隔样本
+        assertThat(measure.getIntervalCount()).isEqualTo(EXPECTED - 1);
+        assertThat(firstChunkReturns.get()).as("返回首包耗时的调用数").isEqualTo(1);
+
+        Long min = measure.getMinInterval();
+        Long p50 = measure.getIntervalPercentile(0.5);
+        Long p99 = measure.getIntervalPercentile(0.99);
+        Long max = measure.getMaxInterval();
+        assertThat(min).isNotNull().isLessThanOrEqualTo(p50);
+        assertThat(p50).isLessThanOrEqualTo(p99);
+        assertThat(p99).isLessThanOrEqualTo(max);
+    }
+
+    @Test
+    void histogramCountsEverySampleUnderContention() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            long seed = t;
+            Thread writer = new Thread(() -> {
+                awaitQuietly(go);
+                // 覆盖多个数量级的耗时，包括负值和超出上限的值
+                long value = seed;
+                for (int i = 0; i < ITERATIONS; i++) {
+                    value = value * 6364136223846793005L + 1442695040888963407L;
+                    histogram.recordNanos((value >>> 20) - (1L << 30));
+                }
+            }, "histogram-writer-" + t);
+            writers.add(writer);
+            writer.start();
+        }
+        go.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertThat(histogram.count()).isEqualTo(EXPECTED);
+        assertThat(histogram.percentileNanos(0.5)).isLessThanOrEqualTo(histogram.percentileNanos(0.99));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+#!/bin/bash
+
+# 启动耗时基准：从启动 JVM 到第一个 /ws/asr 连接握手成功（HTTP 101）的耗时
+# 用法：./startup-bench.sh [jar|fast] [次数]
+#   jar  ：mvn package 生成的 fat jar
+#   fast ：mvn package -Pfast-start 生成的解压目录 + CDS 归档 + AOT
+# 探测连接使用 mux=1，握手成功即可，不会建立 ASR 会话，也不访问上游服务。
+
+MODE=${1:-jar}
+RUNS=${2:-5}
+PORT=${SERVER_PORT:-8080}
+JAR_NAME="asr-service-0.1.0-SNAPSHOT.jar"
+
+cd "$(dirname "$0")"
+
+case "$MODE" in
+    jar)
+        WORK_DIR="target"
+        JAVA_ARGS=(-jar "$JAR_NAME")
+        ;;
+    fast)
+        WORK_DIR="target/application"
+        JAVA_ARGS=(-XX:SharedArchiveFile=application.jsa -Dspring.aot.enabled=true -jar "$JAR_NAME")
+        ;;
+    *)
+        echo "未知模式：$MODE（可选 jar / fast）"
+        exit 1
+        ;;
+esac
+
+if [ ! -f "$WORK_DIR/$JAR_NAME" ]; then
+    echo "❌ 未找到 $WORK_DIR/$JAR_NAME，请先构建（fast 模式需要 -Pfast-start）"
+    exit 1
+fi
+
+# 握手成功返回 0
+probe() {
+    python3 - "$PORT" <<'EOF'
+import base64, os, socket, sys
+try:
+    s = socket.create_connection(("127.0.0.1", int(sys.argv[1])), timeout=1)
+    key = base64.b64encode(os.urandom(16)).decode()
+    s.sendall(("GET /ws/asr?mux=1 HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\n"
+               "Connection: Upgrade\r\nSec-WebSocket-Key: %s\r\nSec-WebSocket-Version: 13\r\n\r\n" % key).encode())
+    status = s.recv(64).decode(errors="ignore")
+    s.close()
+    sys.exit(0 if " 101 " in status else 1)
+except OSError:
+    sys.exit(1)
+EOF
+}
+
+RESULTS=()
+for i in $(seq 1 "$RUNS"); do
+    START=$(date +%s%N)
+    (cd "$WORK_DIR" && DASHSCOPE_API_KEY=${DASHSCOPE_API_KEY:-startup-bench} \
+        exec java "${JAVA_ARGS[@]}" --server.port="$PORT" > /dev/null 2>&1) &
+    PID=$!
+    until probe; do
+        if ! kill -0 "$PID" 2> /dev/null; then
+            echo "❌ 服务启动失败"
+            exit 1
+        fi
+        sleep 0.02
+    done
+    END=$(date +%s%N)
+    ELAPSED=$(( (END - START) / 1000000 ))
+    RESULTS+=("$ELAPSED")
+    echo "第 $i 次：${ELAPSED} ms"
+    kill "$PID"
+    wait "$PID" 2> /dev/null
+done
+
+SORTED=($(printf '%s\n' "${RESULTS[@]}" | sort -n))
+echo "模式 $MODE，$RUNS 次，中位数 ${SORTED[$(( RUNS / 2 ))]} ms，最小 ${SORTED[0]} ms"
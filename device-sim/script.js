@@ -35,6 +35,12 @@ let isAudioComplete = false; // 音频是否接收完成
 let audioCompleteTimer = null; // 音频完成检测定时器
 let lastAudioChunkTime = 0; // 最后一次收到音频的时间
 let isSessionActive = false; // 会话是否激活
+let ttsMime = 'audio/mpeg'; // 服务端协商的下行音频格式
+let lastSeq = 0; // 已收到的最后一个下行帧序号（文本帧携带 seq，音频帧依次加一）
+let lastAckedSeq = 0; // 已向服务端确认的序号
+let ackTimer = null; // 定期确认定时器
+let resumeAttempts = 0; // 非正常断开后的自动重连次数
+const MAX_RESUME_ATTEMPTS = 5;
 
 // 初始化阈值线位置
 volumeThresholdLine.style.left = volumeThreshold + '%';
@@ -473,7 +479,19 @@ function getAudioVolume(dataArray) {
 async function connect() {
   try {
     log('正在连接服务器...');
-    ws = new WebSocket('ws://localhost:8080/ws/asr');
+    // 页面查询参数（如 ?tts_format=mp3_16k）透传给服务端用于协商下行音频格式
+    // 携带上次会话的恢复令牌，断线重连后服务端可恢复对话上下文
+    const wsParams = new URLSearchParams(window.location.search);
+    const savedResumeToken = sessionStorage.getItem('resumeToken');
+    if (savedResumeToken && !wsParams.has('resume')) {
+      wsParams.set('resume', savedResumeToken);
+      // 断线重连时告知服务端已收到的序号，服务端从其后重放未收到的帧
+      if (resumeAttempts > 0) {
+        wsParams.set('last_seq', String(lastSeq));
+      }
+    }
+    const wsQuery = wsParams.toString();
+    ws = new WebSocket('ws://localhost:8080/ws/asr' + (wsQuery ? '?' + wsQuery : ''));
     ws.binaryType = 'arraybuffer';
     
     ws.onopen = () => {
@@ -482,6 +500,23 @@ async function connect() {
       connectBtn.disabled = true;
       disconnectBtn.disabled = false;
       speakBtn.disabled = false;
+      // 每秒确认一次已收到的下行帧，服务端据此释放重放缓冲
+      if (ackTimer) {
+        clearInterval(ackTimer);
+      }
+      ackTimer = setInterval(() => {
+        if (lastSeq > lastAckedSeq && ws && ws.readyState === WebSocket.OPEN) {
+          ws.send(JSON.stringify({ type: 'ack', seq: lastSeq }));
+          lastAckedSeq = lastSeq;
+        }
+      }, 1000);
+      if (resumeAttempts > 0) {
+        // 断线重连：保留正在接收的回复，由服务端重放缺失的帧
+        isSessionActive = true;
+        return;
+      }
+      lastSeq = 0;
+      lastAckedSeq = 0;
       audioChunks = [];
       assistantAudioChunks = [];
       assistantAudioBlob = null;
@@ -496,11 +531,38 @@ async function connect() {
       if (typeof ev.data === 'string') {
         try {
           const msg = JSON.parse(ev.data);
+          if (typeof msg.seq === 'number') {
+            lastSeq = msg.seq;
+          }
           log(`📨 ${msg.type}: ${JSON.stringify(msg).substring(0, 100)}`);
           
           switch(msg.type) {
             case 'connected':
               log(`✓ 会话ID: ${msg.sessionId}`);
+              if (msg.resumeToken) {
+                sessionStorage.setItem('resumeToken', msg.resumeToken);
+                if (msg.streamResumed) {
+                  // 重放从 replayFrom 开始，之后的音频帧按顺序递增
+                  if (msg.replayFrom - 1 > lastSeq) {
+                    log(`⚠️ 重放缓冲区已溢出，丢失序号 ${lastSeq + 1} - ${msg.replayFrom - 1}`);
+                  }
+                  lastSeq = msg.replayFrom - 1;
+                  lastAckedSeq = Math.min(lastAckedSeq, lastSeq);
+                  log(`↻ 已接回会话，从序号 ${msg.replayFrom} 继续接收`);
+                } else {
+                  // 新的下行通道，序号从 1 开始
+                  lastSeq = 0;
+                  lastAckedSeq = 0;
+                  if (msg.resumed) {
+                    log('↻ 已恢复上次会话的对话上下文');
+                  }
+                }
+              }
+              resumeAttempts = 0;
+              if (msg.ttsMime) {
+                ttsMime = msg.ttsMime;
+                log(`🎧 下行音频格式: ${msg.ttsFormat} (${msg.ttsMime})`);
+              }
               isSessionActive = true;
               break;
             case 'transcript':
@@ -530,6 +592,10 @@ async function connect() {
               // 显示助手正在响应
               showAssistantLoading();
               break;
+            case 'order':
+              log(`🛒 已下单: ${msg.orderIds.join(', ')}`);
+              showStatus(`已下单: ${msg.orderIds.join(', ')}`, 'success');
+              break;
             case 'text_chunk':
               // 流式接收文字内容（但不立即显示，等音频完成后用户点击才显示）
               if (msg.text) {
@@ -549,7 +615,7 @@ async function connect() {
               }
               // 最终确认音频消息（如果还有音频数据）
               if (assistantAudioChunks.length > 0) {
-                assistantAudioBlob = new Blob([...assistantAudioChunks], { type: 'audio/mpeg' });
+                assistantAudioBlob = new Blob([...assistantAudioChunks], { type: ttsMime });
                 createOrUpdateAssistantAudioMessage(assistantAudioBlob, false);
                 // 如果complete后3秒内没有新音频，自动标记为完成
                 if (audioCompleteTimer) {
@@ -580,11 +646,23 @@ async function connect() {
                 loadingMsg.remove();
               }
               break;
+            case 'busy':
+              // 服务端过载（上游并发已满或被限流），提示稍后重试
+              log(`⏳ 服务繁忙: provider=${msg.provider}, reason=${msg.reason}`);
+              showStatus('服务繁忙，请稍后再试', 'error');
+              speakBtn.disabled = false;
+              const loadingMsg3 = chatMessages.querySelector('.message.loading');
+              if (loadingMsg3) {
+                loadingMsg3.remove();
+              }
+              break;
           }
         } catch (e) {
           log('WS 文本: ' + ev.data);
         }
       } else {
+        // 音频帧不带序号，紧跟在前一帧之后
+        lastSeq++;
         // 接收音频数据（TTS生成的音频）
         try {
           const audioData = new Uint8Array(ev.data);
@@ -616,7 +694,7 @@ async function connect() {
             // 实时更新音频Blob并显示
             // 使用数组的副本创建Blob，确保所有数据都被包含
             // 注意：不要在这里清空 assistantAudioChunks，它会持续累积直到下一轮 intent
-            assistantAudioBlob = new Blob([...assistantAudioChunks], { type: 'audio/mpeg' });
+            assistantAudioBlob = new Blob([...assistantAudioChunks], { type: ttsMime });
             createOrUpdateAssistantAudioMessage(assistantAudioBlob, false); // false表示音频还在接收中
             
             // 验证Blob大小
@@ -646,14 +724,29 @@ async function connect() {
       }
     };
     
-    ws.onclose = () => {
+    ws.onclose = (ev) => {
+      if (ackTimer) {
+        clearInterval(ackTimer);
+        ackTimer = null;
+      }
+      // 非正常断开（网络切换等）：服务端会在宽限期内保留会话，携带恢复令牌和已收到的序号重连
+      if (ev.code !== 1000 && ev.code !== 1013 && isSessionActive && resumeAttempts < MAX_RESUME_ATTEMPTS
+          && sessionStorage.getItem('resumeToken')) {
+        resumeAttempts++;
+        const delay = Math.min(1000 * resumeAttempts, 5000);
+        log(`⚠️ 连接中断 (code=${ev.code})，${delay}ms 后第 ${resumeAttempts} 次重连`);
+        showStatus('连接中断，正在重连...', 'info');
+        setTimeout(connect, delay);
+        return;
+      }
+      resumeAttempts = 0;
       log('WebSocket 已关闭');
       showStatus('连接已关闭', 'info');
       isSessionActive = false;
       resetButtons();
       // 处理剩余的音频数据
       if (assistantAudioChunks.length > 0 && !currentAssistantAudioMessageId) {
-        assistantAudioBlob = new Blob(assistantAudioChunks, { type: 'audio/mpeg' });
+        assistantAudioBlob = new Blob(assistantAudioChunks, { type: ttsMime });
         createOrUpdateAssistantAudioMessage(assistantAudioBlob);
       }
       assistantAudioChunks = [];
@@ -679,6 +772,11 @@ async function connect() {
     });
     
   } catch (err) {
+    if (resumeAttempts > 0 && resumeAttempts < MAX_RESUME_ATTEMPTS) {
+      // 自动重连失败，由 onclose 继续重试
+      log('❌ 重连失败: ' + err.message);
+      return;
+    }
     log('❌ 连接失败: ' + err.message);
     showStatus('连接失败: ' + err.message, 'error');
     resetButtons();
@@ -715,9 +813,12 @@ async function startSpeaking() {
       sampleRate: 16000
     });
     
-    // 如果实际采样率不是16k，需要重采样
+    // 浏览器不支持 16k 时告知服务端实际采样率，由服务端重采样
     if (audioContext.sampleRate !== 16000) {
-      log(`⚠️ 实际采样率: ${audioContext.sampleRate}Hz，期望16kHz`);
+      log(`⚠️ 实际采样率: ${audioContext.sampleRate}Hz，由服务端重采样到16kHz`);
+      if (ws && ws.readyState === WebSocket.OPEN) {
+        ws.send(JSON.stringify({ type: 'config', sampleRate: audioContext.sampleRate, channels: 1, sampleFormat: 's16le' }));
+      }
     }
     
     analyser = audioContext.createAnalyser();
@@ -2,12 +2,33 @@ import json
 import sys
 import uuid
 
-# 最小 MCP/JSON-RPC(模拟)：从 stdin 读入 JSON-RPC 请求，stdout 写回响应
+# 最小 MCP/JSON-RPC(模拟)：从 stdin 逐行读入 JSON-RPC 请求，stdout 逐行写回响应
 # 方法：order.place {"item": str, "quantity": int}
+#      tools/list 返回可供 LLM 调用的工具及其参数的 JSON Schema
+# 支持 JSON-RPC 2.0 批量请求：一行一个请求数组，返回对应的响应数组（通知不返回响应）
+# 进程常驻，调用方可以连续写入多行请求，无需等待上一行的响应
+
+TOOLS = [
+    {
+        "name": "order.place",
+        "description": "为用户下单购买一种商品。用户一次购买多种商品时，每种商品调用一次。",
+        "inputSchema": {
+            "type": "object",
+            "properties": {
+                "item": {"type": "string", "description": "商品名称，如 苹果、手机"},
+                "quantity": {"type": "integer", "minimum": 1, "description": "购买数量，用户未说明时为 1"},
+            },
+            "required": ["item", "quantity"],
+        },
+    },
+]
+
 
 def handle_request(req):
     method = req.get("method")
     req_id = req.get("id")
+    if method == "tools/list":
+        return {"jsonrpc": "2.0", "id": req_id, "result": {"tools": TOOLS}}
     if method == "order.place":
         params = req.get("params", {})
         item = params.get("item", "unknown")
@@ -18,16 +39,42 @@ def handle_request(req):
     return {"jsonrpc": "2.0", "id": req_id, "error": {"code": -32601, "message": "Method not found"}}
 
 
+def invalid_request(req_id=None):
+    return {"jsonrpc": "2.0", "id": req_id, "error": {"code": -32600, "message": "Invalid Request"}}
+
+
+def handle_single(req):
+    if not isinstance(req, dict):
+        return invalid_request()
+    try:
+        resp = handle_request(req)
+    except Exception as e:
+        resp = {"jsonrpc": "2.0", "id": req.get("id"), "error": {"code": -32603, "message": str(e)}}
+    # 没有 id 的请求是通知，不返回响应
+    return resp if "id" in req else None
+
+
+def handle_line(line):
+    try:
+        payload = json.loads(line)
+    except Exception as e:
+        return {"jsonrpc": "2.0", "id": None, "error": {"code": -32700, "message": str(e)}}
+    if isinstance(payload, list):
+        if not payload:
+            return invalid_request()
+        responses = [r for r in (handle_single(req) for req in payload) if r is not None]
+        return responses or None
+    return handle_single(payload)
+
+
 def main():
     for line in sys.stdin:
         line = line.strip()
         if not line:
             continue
-        try:
-            req = json.loads(line)
-            resp = handle_request(req)
-        except Exception as e:
-            resp = {"jsonrpc": "2.0", "id": None, "error": {"code": -32603, "message": str(e)}}
+        resp = handle_line(line)
+        if resp is None:
+            continue
         sys.stdout.write(json.dumps(resp) + "\n")
         sys.stdout.flush()
 
@@ -0,0 +1,72 @@
+import json
+import unittest
+
+from server import handle_line
+
+# handle_line 的 JSON-RPC 2.0 单个 / 批量请求处理，运行：python -m unittest test_server
+
+
+def order(req_id, item="苹果", quantity=2):
+    return {"jsonrpc": "2.0", "id": req_id, "method": "order.place", "params": {"item": item, "quantity": quantity}}
+
+
+class HandleLineTest(unittest.TestCase):
+
+    def test_single_request(self):
+        resp = handle_line(json.dumps(order(1)))
+        self.assertEqual(resp["id"], 1)
+        self.assertEqual(resp["result"]["item"], "苹果")
+        self.assertEqual(resp["result"]["quantity"], 2)
+        self.assertTrue(resp["result"]["orderId"].startswith("ORD-"))
+
+    def test_batch_answers_every_request_by_id(self):
+        batch = [order(1, "苹果", 1), order(2, "香蕉", 3), {"jsonrpc": "2.0", "id": 3, "method": "tools/list"}]
+        resp = handle_line(json.dumps(batch))
+        self.assertIsInstance(resp, list)
+        by_id = {r["id"]: r for r in resp}
+        self.assertEqual(set(by_id), {1, 2, 3})
+        self.assertEqual(by_id[1]["result"]["item"], "苹果")
+        self.assertEqual(by_id[2]["result"]["quantity"], 3)
+        self.assertEqual(by_id[3]["result"]["tools"][0]["name"], "order.place")
+        self.assertNotEqual(by_id[1]["result"]["orderId"], by_id[2]["result"]["orderId"])
+
+    def test_notifications_get_no_response(self):
+        notification = {"jsonrpc": "2.0", "method": "order.place", "params": {"item": "橙子", "quantity": 1}}
+        self.assertIsNone(handle_line(json.dumps(notification)))
+        resp = handle_line(json.dumps([notification, order(7), notification]))
+        self.assertEqual([r["id"] for r in resp], [7])
+
+    def test_batch_of_only_notifications_returns_nothing(self):
+        notification = {"jsonrpc": "2.0", "method": "order.place", "params": {}}
+        self.assertIsNone(handle_line(json.dumps([notification, notification])))
+
+    def test_empty_batch_is_invalid_request(self):
+        resp = handle_line("[]")
+        self.assertNotIsInstance(resp, list)
+        self.assertEqual(resp["error"]["code"], -32600)
+        self.assertIsNone(resp["id"])
+
+    def test_invalid_entries_are_answered_individually(self):
+        resp = handle_line(json.dumps([1, order(2), "x"]))
+        self.assertEqual(len(resp), 3)
+        self.assertEqual([r["error"]["code"] for r in (resp[0], resp[2])], [-32600, -32600])
+        self.assertEqual([r["id"] for r in (resp[0], resp[2])], [None, None])
+        self.assertEqual(resp[1]["id"], 2)
+        self.assertIn("result", resp[1])
+
+    def test_errors_inside_batch_keep_their_ids(self):
+        batch = [{"jsonrpc": "2.0", "id": 1, "method": "order.cancel"},
+                 {"jsonrpc": "2.0", "id": 2, "method": "order.place", "params": {"quantity": "many"}}]
+        resp = handle_line(json.dumps(batch))
+        by_id = {r["id"]: r for r in resp}
+        self.assertEqual(by_id[1]["error"]["code"], -32601)
+        self.assertEqual(by_id[2]["error"]["code"], -32603)
+
+    def test_parse_error(self):
+        resp = handle_line("[{\"id\": 1,")
+        self.assertEqual(resp["error"]["code"], -32700)
+        self.assertIsNone(resp["id"])
+
+
+if __name__ == "__main__":
+    unittest.main()
@@ -45,7 +45,12 @@ echo "======================================"
 echo "  步骤 1: 编译 Java 后端服务"
 echo "======================================"
 cd asr-service
-mvn clean package -DskipTests
+# FAST_START=1 时使用 fast-start profile（Spring AOT + CDS 归档）
+if [ "$FAST_START" = "1" ]; then
+    mvn clean package -DskipTests -Pfast-start
+else
+    mvn clean package -DskipTests
+fi
 if [ $? -ne 0 ]; then
     echo "❌ Maven 编译失败"
     exit 1
@@ -89,4 +94,9 @@ echo "按 Ctrl+C 停止服务"
 echo ""
 
 cd asr-service
-java $JAVA_AGENT_OPTIONS -jar target/asr-service-0.1.0-SNAPSHOT.jar
+if [ "$FAST_START" = "1" ]; then
+    cd target/application
+    java $JAVA_AGENT_OPTIONS -XX:SharedArchiveFile=application.jsa -Dspring.aot.enabled=true -jar asr-service-0.1.0-SNAPSHOT.jar
+else
+    java $JAVA_AGENT_OPTIONS -jar target/asr-service-0.1.0-SNAPSHOT.jar
+fi
@@ -0,0 +1,165 @@
+package com.example.websocket.common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * MessageWithHeaders 的紧凑二进制信封
+ * 通过 WebSocket 子协议 {@link #SUBPROTOCOL} 协商，未协商的连接继续使用 JSON 文本格式。
+ *
+ * 帧格式（整数均为大端无符号数，字符串为 UTF-8）：
+ * <pre>
+ * version(1) | headerCount(2) | headerCount × [keyLength(2) key valueLength(2) value] | body（帧内剩余字节）
+ * </pre>
+ * body 不带长度前缀，WebSocket 消息边界即为 body 的结尾。
+ *
+ * 解析时只读取 headers，body 以原帧的只读切片暴露，不复制也不解码；需要文本时再调用 {@link #getBodyAsString()}。
+ */
+public final class BinaryEnvelope {
+    public static final String SUBPROTOCOL = "envelope-v1";
+    public static final int VERSION = 1;
+    private static final int MAX_FIELD_LENGTH = 0xFFFF;
+
+    private final Map<String, String> headers;
+    // 内部保留可写切片以便走 hasArray 的快速解码，对外只暴露只读视图
+    private final ByteBuffer body;
+
+    private BinaryEnvelope(Map<String, String> headers, ByteBuffer body) {
+        this.headers = headers;
+        this.body = body;
+    }
+
+    public static ByteBuffer encode(Map<String, String> headers, String body) {
+        return encode(headers, body != null ? body.getBytes(StandardCharsets.UTF_8) : new byte[0]);
+    }
+
+    public static ByteBuffer encode(MessageWithHeaders message) {
+        return encode(message.getHeaders(), message.getBody());
+    }
+
+    /**
+     * @return 可直接发送的缓冲区（position 为 0）
+     */
+    public static ByteBuffer encode(Map<String, String> headers, byte[] body) {
+        int count = headers != null ? headers.size() : 0;
+        if (count > MAX_FIELD_LENGTH) {
+            throw new IllegalArgumentException("headers 数量超出上限: " + count);
+        }
+        byte[][] fields = new byte[count * 2][];
+        int size = 1 + 2 + body.length;
+        int i = 0;
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                fields[i] = field(header.getKey());
+                fields[i + 1] = field(header.getValue());
+                size += 4 + fields[i].length + fields[i + 1].length;
+                i += 2;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put((byte) VERSION);
+        buffer.putShort((short) count);
+        for (byte[] field : fields) {
+            buffer.putShort((short) field.length);
+            buffer.put(field);
+        }
+        buffer.put(body);
+        return buffer.flip();
+    }
+
+    private static byte[] field(String value) {
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        if (bytes.length > MAX_FIELD_LENGTH) {
+            throw new IllegalArgumentException("header 长度超出上限: " + bytes.length);
+        }
+        return bytes;
+    }
+
+    /**
+     * 解析信封：顺序读取 headers，body 为 frame 剩余部分的切片（共享底层内存）
+     * 不修改 frame 的 position。
+     *
+     * @throws IllegalArgumentException 版本不支持或长度字段越界
+     */
+    public static BinaryEnvelope parse(ByteBuffer frame) {
+        ByteBuffer in = frame.duplicate();
+        if (in.remaining() < 3) {
+            throw new IllegalArgumentException("信封长度不足: " + in.remaining());
+        }
+        int version = in.get() & 0xFF;
+        if (version != VERSION) {
+            throw new IllegalArgumentException("不支持的信封版本: " + version);
+        }
+        int count = in.getShort() & 0xFFFF;
+        Map<String, String> headers = new LinkedHashMap<>(Math.max(4, count * 2));
+        for (int i = 0; i < count; i++) {
+            String key = readField(in);
+            headers.put(key, readField(in));
+        }
+        return new BinaryEnvelope(headers, in.slice());
+    }
+
+    private static String readField(ByteBuffer in) {
+        if (in.remaining() < 2) {
+            throw new IllegalArgumentException("header 长度字段越界");
+        }
+        int length = in.getShort() & 0xFFFF;
+        if (in.remaining() < length) {
+            throw new IllegalArgumentException("header 内容越界: " + length + " > " + in.remaining());
+        }
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    /**
+     * 复制 body 到独立的数组，返回的信封不再引用原帧
+     * 原帧的缓冲区归容器所有、回调返回后可能被复用时，交给其他线程前先调用。
+     */
+    public BinaryEnvelope copy() {
+        byte[] bytes = new byte[body.remaining()];
+        body.duplicate().get(bytes);
+        return new BinaryEnvelope(headers, ByteBuffer.wrap(bytes));
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public String getHeader(String key) {
+        return headers.get(key);
+    }
+
+    /**
+     * body 的只读切片，每次返回独立的 position / limit
+     */
+    public ByteBuffer getBody() {
+        return body.asReadOnlyBuffer();
+    }
+
+    public int getBodyLength() {
+        return body.remaining();
+    }
+
+    public String getBodyAsString() {
+        if (body.hasArray()) {
+            return new String(body.array(), body.arrayOffset() + body.position(), body.remaining(), StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[body.remaining()];
+        body.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public MessageWithHeaders toMessage() {
+        return new MessageWithHeaders(headers, getBodyAsString());
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.websocket.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * JSON 与二进制信封的编解码耗时对比（64B ~ 64KB body）
+ * 简单的预热 + 计时循环，结果受 JIT 和 GC 影响，只用于比较量级。
+ *
+ * 每个 body 大小输出：
+ * - 编码：JSON 为 writeValueAsString，二进制为 BinaryEnvelope.encode
+ * - 解析 headers：服务端提取 TraceContext 所需的部分，JSON 需要完整反序列化，二进制只读 headers
+ * - 完整解码：headers + body 文本
+ *
+ * 参数：[每项迭代次数=20000]
+ */
+public final class EnvelopeBenchmark {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final int[] BODY_SIZES = {64, 1024, 16 * 1024, 64 * 1024};
+    private static long sink;
+
+    private EnvelopeBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        Map<String, String> headers = new HashMap<>();
+        headers.put("traceparent", "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01");
+        headers.put("response-to", "3c1c2f8e-7f4e-4b38-9a5e-2f1d1b9f3a61");
+        headers.put("timestamp", String.valueOf(System.currentTimeMillis()));
+
+        System.out.printf("%-8s %-6s %10s %12s %16s %14s%n", "body", "format", "wire(B)", "encode(ns)", "headers(ns)", "decode(ns)");
+        for (int size : BODY_SIZES) {
+            String body = body(size);
+            MessageWithHeaders message = new MessageWithHeaders(headers, body);
+            String json = objectMapper.writeValueAsString(message);
+            ByteBuffer binary = BinaryEnvelope.encode(message);
+            int perSize = Math.max(200, iterations * 64 / Math.max(64, size / 16));
+
+            double jsonEncode = measure(perSize, () -> objectMapper.writeValueAsString(message).length());
+            double jsonHeaders = measure(perSize, () -> objectMapper.readValue(json, MessageWithHeaders.class).getHeaders().size());
+            double jsonDecode = measure(perSize, () -> {
+                MessageWithHeaders decoded = objectMapper.readValue(json, MessageWithHeaders.class);
+                return decoded.getHeaders().size() + decoded.getBody().length();
+            });
+            double binaryEncode = measure(perSize, () -> BinaryEnvelope.encode(message).remaining());
+            double binaryHeaders = measure(perSize, () -> BinaryEnvelope.parse(binary).getHeaders().size());
+            double binaryDecode = measure(perSize, () -> {
+                BinaryEnvelope decoded = BinaryEnvelope.parse(binary);
+                return decoded.getHeaders().size() + decoded.getBodyAsString().length();
+            });
+
+            System.out.printf("%-8s %-6s %10d %12.0f %16.0f %14.0f%n", label(size), "json",
+                json.getBytes(StandardCharsets.UTF_8).length, jsonEncode, jsonHeaders, jsonDecode);
+            System.out.printf("%-8s %-6s %10d %12.0f %16.0f %14.0f%n", label(size), "binary",
+                binary.remaining(), binaryEncode, binaryHeaders, binaryDecode);
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    // 预热两轮后取第三轮的平均耗时（纳秒/次）
+    private static double measure(int iterations, Callable<Integer> operation) throws Exception {
+        double result = 0;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink += operation.call();
+            }
+            result = (System.nanoTime() - start) / (double) iterations;
+        }
+        return result;
+    }
+
+    // 中英文混合的文本 body，需要 JSON 转义的引号和换行也包含在内
+    private static String body(int bytes) {
+        String pattern = "订单状态 \"order\": 12345, 配送中\n";
+        int patternBytes = pattern.getBytes(StandardCharsets.UTF_8).length;
+        StringBuilder text = new StringBuilder();
+        int length = 0;
+        for (; length + patternBytes <= bytes; length += patternBytes) {
+            text.append(pattern);
+        }
+        for (; length < bytes; length++) {
+            text.append('x');
+        }
+        return text.toString();
+    }
+
+    private static String label(int bytes) {
+        return bytes >= 1024 ? bytes / 1024 + "KB" : bytes + "B";
+    }
+}
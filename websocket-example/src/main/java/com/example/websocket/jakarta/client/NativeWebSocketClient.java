@@ -1,5 +1,6 @@
 package com.example.websocket.jakarta.client;
 
+import com.example.websocket.common.BinaryEnvelope;
 import com.example.websocket.common.MessageWithHeaders;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.opentelemetry.api.GlobalOpenTelemetry;
@@ -18,6 +19,7 @@ import org.slf4j.LoggerFactory;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -30,6 +32,9 @@ import java.util.Map;
  * - Client 创建连接级别的 Trace
  * - 通过握手时的 HTTP headers 传递 TraceContext 给 Server
  * - Server 提取 TraceContext 并创建子 Span
+ *
+ * 启动参数 -Denvelope=binary 时在握手中请求 {@link BinaryEnvelope#SUBPROTOCOL} 子协议，
+ * 服务端同意后带 headers 的消息改用二进制信封收发，默认为 JSON 文本。
  */
 public class NativeWebSocketClient {
     private static final Logger log = LoggerFactory.getLogger(NativeWebSocketClient.class);
@@ -38,6 +43,7 @@ public class NativeWebSocketClient {
     private static final Tracer tracer;
     private static final OpenTelemetry openTelemetry;
     private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final boolean preferBinary = "binary".equalsIgnoreCase(System.getProperty("envelope", "json"));
     
     static {
         openTelemetry = GlobalOpenTelemetry.get();
@@ -73,6 +79,20 @@ public class NativeWebSocketClient {
         }
     }
     
+    /**
+     * 二进制信封消息
+     */
+    public void onBinaryMessage(ByteBuffer message) {
+        try {
+            BinaryEnvelope envelope = BinaryEnvelope.parse(message);
+            String body = envelope.getBodyAsString();
+            log.info("收到服务器消息（二进制信封） [headers={}]: {}", envelope.getHeaders(), body);
+            handleMessage(body, envelope.getHeaders());
+        } catch (Exception e) {
+            log.error("二进制消息解析失败: {} bytes", message.remaining(), e);
+        }
+    }
+    
     /**
      * 处理消息（带 headers）
      */
@@ -82,6 +102,10 @@ public class NativeWebSocketClient {
             log.debug("消息 headers: {}", headers);
         }
         // 这里可以基于 headers 做不同的处理
+        if (headers != null && "backpressure".equals(headers.get("type"))) {
+            // 服务端入站队列积压：pause 时应暂停或放慢发送，resume 后恢复
+            log.warn("服务端背压: state={}, 排队={}", headers.get("state"), headers.get("queued"));
+        }
     }
 
     public void onClose() {
@@ -118,20 +142,22 @@ public class NativeWebSocketClient {
     public void sendMessage(String message, Map<String, String> headers) {
         try {
             if (session != null && session.isOpen()) {
-                String messageToSend;
-                
-                if (headers != null && !headers.isEmpty()) {
+                if (headers != null && !headers.isEmpty()
+                    && BinaryEnvelope.SUBPROTOCOL.equals(session.getNegotiatedSubprotocol())) {
+                    // 已协商二进制信封
+                    session.getBasicRemote().sendBinary(BinaryEnvelope.encode(headers, message));
+                    log.debug("发送消息（二进制信封）: headers={}, body={}", headers, message);
+                } else if (headers != null && !headers.isEmpty()) {
                     // 如果有 headers，包装成 JSON 格式
                     MessageWithHeaders msgWithHeaders = new MessageWithHeaders(headers, message);
-                    messageToSend = objectMapper.writeValueAsString(msgWithHeaders);
+                    session.getBasicRemote().sendText(objectMapper.writeValueAsString(msgWithHeaders));
                     log.debug("发送消息（带 headers）: headers={}, body={}", headers, message);
                 } else {
                     // 如果没有 headers，直接发送原始消息（向后兼容）
-                    messageToSend = message;
+                    session.getBasicRemote().sendText(message);
                     log.debug("发送消息（普通格式）: {}", message);
                 }
                 
-                session.getBasicRemote().sendText(messageToSend);
                 log.info("发送消息: {}", message);
             } else {
                 log.warn("会话未打开，无法发送消息");
@@ -184,6 +210,12 @@ public class NativeWebSocketClient {
                                 client.onMessage(message);
                             }
                         });
+                        session.addMessageHandler(new MessageHandler.Whole<ByteBuffer>() {
+                            @Override
+                            public void onMessage(ByteBuffer message) {
+                                client.onBinaryMessage(message);
+                            }
+                        });
                     }
 
                     @Override
@@ -236,6 +268,10 @@ public class NativeWebSocketClient {
     private static ClientEndpointConfig createHeaderWithUserProperties() {
         // 创建 ClientEndpointConfig，用于在握手时注入 TraceContext
         ClientEndpointConfig.Builder configBuilder = ClientEndpointConfig.Builder.create();
+        if (preferBinary) {
+            // 请求二进制信封子协议，服务端不支持时回退为 JSON
+            configBuilder.preferredSubprotocols(List.of(BinaryEnvelope.SUBPROTOCOL));
+        }
 
         // 创建 Configurator 来注入 TraceContext 到 HTTP headers
         final Map<String, List<String>> headersMap = new HashMap<>();
@@ -0,0 +1,129 @@
+package com.example.websocket.jakarta.server;
+
+import com.example.websocket.common.MessageWithHeaders;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BroadcastHub 扇出压测（进程内，不经过网络）
+ * 用动态代理模拟会话：正常订阅者的异步发送由线程池立即完成，慢订阅者的发送永远不完成，用于观察队列打满后的丢弃 / 断开。
+ * 对比项为原实现的做法：每个接收者各序列化一次 MessageWithHeaders。
+ *
+ * 参数：[订阅者数=10000] [消息数=100] [慢订阅者比例=0.01] [drop|disconnect] [队列容量=64]
+ */
+public final class BroadcastBenchmark {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private BroadcastBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int subscriberCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int messageCount = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        double slowRatio = args.length > 2 ? Double.parseDouble(args[2]) : 0.01;
+        BroadcastHub.SlowConsumerPolicy policy = BroadcastHub.SlowConsumerPolicy.valueOf(
+            (args.length > 3 ? args[3] : "drop").toUpperCase());
+        int queueCapacity = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+
+        ExecutorService completions = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+        AtomicLong closed = new AtomicLong();
+        BroadcastHub hub = new BroadcastHub(queueCapacity, policy);
+        int slowCount = (int) (subscriberCount * slowRatio);
+        for (int i = 0; i < subscriberCount; i++) {
+            Session session = fakeSession("s" + i, i < slowCount, completions, closed);
+            hub.register(session, false);
+            hub.subscribe(session.getId(), "all");
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("type", "broadcast");
+        headers.put("topic", "all");
+        headers.put("from", "bench");
+        MessageWithHeaders message = new MessageWithHeaders(headers, "广播消息 [bench]: " + "x".repeat(200));
+
+        // 预热序列化，再测原实现：每个接收者各序列化一次
+        for (int i = 0; i < subscriberCount; i++) {
+            objectMapper.writeValueAsString(message);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < subscriberCount; i++) {
+            objectMapper.writeValueAsString(message);
+        }
+        double perRecipientSerializeMs = (System.nanoTime() - start) / 1_000_000.0;
+
+        List<Long> publishNanos = new ArrayList<>();
+        start = System.nanoTime();
+        for (int i = 0; i < messageCount; i++) {
+            long publishStart = System.nanoTime();
+            hub.publish("all", objectMapper.writeValueAsString(message), null, null);
+            publishNanos.add(System.nanoTime() - publishStart);
+        }
+        long expected = (long) (subscriberCount - slowCount) * messageCount;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (hub.getDeliveredCount() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        double totalMs = (System.nanoTime() - start) / 1_000_000.0;
+        completions.shutdown();
+
+        publishNanos.sort(null);
+        System.out.printf("订阅者=%d 慢订阅者=%d 消息=%d 策略=%s 队列容量=%d%n",
+            subscriberCount, slowCount, messageCount, policy, queueCapacity);
+        System.out.printf("原实现每条消息的序列化耗时（%d 次）: %.2f ms%n", subscriberCount, perRecipientSerializeMs);
+        System.out.printf("publish 耗时（序列化一次 + 入队）: p50=%.2f ms p99=%.2f ms max=%.2f ms%n",
+            percentile(publishNanos, 0.50), percentile(publishNanos, 0.99), percentile(publishNanos, 1.0));
+        System.out.printf("全部送达耗时: %.1f ms, 吞吐: %.0f 条/秒%n", totalMs, hub.getDeliveredCount() / (totalMs / 1000));
+        System.out.printf("已送达=%d（期望 %d） 丢弃=%d 断开=%d（close 调用 %d）%n", hub.getDeliveredCount(), expected,
+            hub.getDroppedCount(), hub.getDisconnectedCount(), closed.get());
+    }
+
+    private static double percentile(List<Long> sortedNanos, double quantile) {
+        int rank = (int) Math.ceil(quantile * sortedNanos.size());
+        return sortedNanos.get(Math.max(0, rank - 1)) / 1_000_000.0;
+    }
+
+    // 只实现 BroadcastHub 用到的方法
+    private static Session fakeSession(String id, boolean slow, ExecutorService completions, AtomicLong closed) {
+        RemoteEndpoint.Async remote = (RemoteEndpoint.Async) Proxy.newProxyInstance(BroadcastBenchmark.class.getClassLoader(),
+            new Class<?>[]{RemoteEndpoint.Async.class}, (proxy, method, methodArgs) -> {
+                if (method.getName().equals("sendText") && methodArgs.length == 2 && !slow) {
+                    SendHandler handler = (SendHandler) methodArgs[1];
+                    completions.execute(() -> handler.onResult(new SendResult()));
+                }
+                return null;
+            });
+        return (Session) Proxy.newProxyInstance(BroadcastBenchmark.class.getClassLoader(),
+            new Class<?>[]{Session.class}, (proxy, method, methodArgs) -> {
+                switch (method.getName()) {
+                    case "getId":
+                        return id;
+                    case "isOpen":
+                        return true;
+                    case "getAsyncRemote":
+                        return remote;
+                    case "close":
+                        closed.incrementAndGet();
+                        return null;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == methodArgs[0];
+                    default:
+                        return null;
+                }
+            });
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.websocket.jakarta.server;
+
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 高扇出广播引擎
+ * - 按主题订阅：发布只遍历该主题的订阅者，而不是所有会话
+ * - 一次序列化：调用方序列化一次，所有订阅者共享同一个字符串
+ * - 异步发送：每个会话一个有界发送队列，同一时刻最多一个 getAsyncRemote 发送在途，完成回调里发送下一条，
+ *   发布线程只负责入队，不会被某个连接的网络写阻塞
+ * - 慢消费者：队列满时按策略丢弃该订阅者的新消息（DROP）或断开该会话（DISCONNECT）
+ *
+ * 会话的所有出站消息（包括点对点回复）都经过同一个队列，保证单个会话内的发送顺序。
+ * 协商了二进制信封的会话收到二进制帧，共享的 ByteBuffer 每次发送前 duplicate，互不影响读位置。
+ */
+final class BroadcastHub {
+    private static final Logger log = LoggerFactory.getLogger(BroadcastHub.class);
+
+    enum SlowConsumerPolicy {
+        DROP,
+        DISCONNECT
+    }
+
+    private final Map<String, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final Map<String, Set<Subscriber>> topics = new ConcurrentHashMap<>();
+    private final int queueCapacity;
+    private final SlowConsumerPolicy slowConsumerPolicy;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong disconnected = new AtomicLong();
+
+    /**
+     * @param queueCapacity      每个会话最多排队的消息数（不含在途的一条）
+     * @param slowConsumerPolicy 队列满时的处理策略
+     */
+    BroadcastHub(int queueCapacity, SlowConsumerPolicy slowConsumerPolicy) {
+        this.queueCapacity = queueCapacity;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
+    /**
+     * @param binary 会话是否使用二进制信封
+     */
+    void register(Session session, boolean binary) {
+        subscribers.put(session.getId(), new Subscriber(session, binary));
+    }
+
+    /**
+     * 移除会话及其所有主题订阅，丢弃尚未发送的消息
+     */
+    void unregister(String sessionId) {
+        Subscriber subscriber = subscribers.remove(sessionId);
+        if (subscriber != null) {
+            subscriber.close();
+            for (String topic : subscriber.topics) {
+                leave(topic, subscriber);
+            }
+        }
+    }
+
+    boolean subscribe(String sessionId, String topic) {
+        Subscriber subscriber = subscribers.get(sessionId);
+        if (subscriber == null || !subscriber.topics.add(topic)) {
+            return false;
+        }
+        topics.computeIfAbsent(topic, key -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        return true;
+    }
+
+    boolean unsubscribe(String sessionId, String topic) {
+        Subscriber subscriber = subscribers.get(sessionId);
+        if (subscriber == null || !subscriber.topics.remove(topic)) {
+            return false;
+        }
+        leave(topic, subscriber);
+        return true;
+    }
+
+    private void leave(String topic, Subscriber subscriber) {
+        topics.computeIfPresent(topic, (key, members) -> {
+            members.remove(subscriber);
+            return members.isEmpty() ? null : members;
+        });
+    }
+
+    /**
+     * 向主题的所有订阅者发送同一条已序列化的消息
+     *
+     * @param text             JSON 文本格式
+     * @param binary           二进制信封格式，为 null 时所有订阅者都收到文本
+     * @param excludeSessionId 不接收该消息的会话（通常是发布者），可以为 null
+     * @return 成功入队的订阅者数
+     */
+    int publish(String topic, String text, ByteBuffer binary, String excludeSessionId) {
+        Set<Subscriber> members = topics.get(topic);
+        if (members == null) {
+            return 0;
+        }
+        int accepted = 0;
+        for (Subscriber subscriber : members) {
+            if (!subscriber.session.getId().equals(excludeSessionId)
+                && subscriber.offer(subscriber.binary && binary != null ? binary : text)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * 向单个会话发送消息，与广播共用该会话的发送队列
+     */
+    boolean send(String sessionId, String text) {
+        Subscriber subscriber = subscribers.get(sessionId);
+        return subscriber != null && subscriber.offer(text);
+    }
+
+    boolean sendBinary(String sessionId, ByteBuffer data) {
+        Subscriber subscriber = subscribers.get(sessionId);
+        return subscriber != null && subscriber.offer(data);
+    }
+
+    int getSubscriberCount(String topic) {
+        Set<Subscriber> members = topics.get(topic);
+        return members != null ? members.size() : 0;
+    }
+
+    long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    long getDisconnectedCount() {
+        return disconnected.get();
+    }
+
+    /**
+     * 单个会话的发送状态：有界队列 + 至多一条在途的异步发送
+     * 队列元素为 String（文本帧）或 ByteBuffer（二进制帧）
+     */
+    private final class Subscriber implements SendHandler {
+        private final Session session;
+        private final boolean binary;
+        private final Set<String> topics = ConcurrentHashMap.newKeySet();
+        private final ArrayDeque<Object> queue = new ArrayDeque<>();
+        private boolean sending;
+        private boolean closed;
+        // 当前的发送循环；完成回调若在该循环的 sendText 内同步触发，把下一条交给它发送，避免递归
+        private Pump activePump;
+
+        Subscriber(Session session, boolean binary) {
+            this.session = session;
+            this.binary = binary;
+        }
+
+        boolean offer(Object payload) {
+            boolean full;
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+                full = sending && queue.size() >= queueCapacity;
+                if (!full) {
+                    if (sending) {
+                        queue.addLast(payload);
+                        return true;
+                    }
+                    sending = true;
+                }
+            }
+            if (full) {
+                return overflow();
+            }
+            pump(payload);
+            return true;
+        }
+
+        private boolean overflow() {
+            if (slowConsumerPolicy == SlowConsumerPolicy.DROP) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            if (close()) {
+                disconnected.incrementAndGet();
+                log.warn("慢消费者已断开: sessionId={}, 队列容量={}", session.getId(), queueCapacity);
+                try {
+                    session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "slow consumer"));
+                } catch (Exception e) {
+                    log.debug("关闭慢消费者失败 [{}]: {}", session.getId(), e.getMessage());
+                }
+            }
+            return false;
+        }
+
+        private void pump(Object payload) {
+            Pump current = new Pump(Thread.currentThread());
+            synchronized (this) {
+                activePump = current;
+            }
+            try {
+                while (payload != null) {
+                    try {
+                        if (payload instanceof ByteBuffer) {
+                            session.getAsyncRemote().sendBinary(((ByteBuffer) payload).duplicate(), this);
+                        } else {
+                            session.getAsyncRemote().sendText((String) payload, this);
+                        }
+                    } catch (Exception e) {
+                        log.debug("异步发送失败 [{}]: {}", session.getId(), e.getMessage());
+                        close();
+                        return;
+                    }
+                    synchronized (this) {
+                        payload = current.next;
+                        current.next = null;
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    if (activePump == current) {
+                        activePump = null;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onResult(SendResult result) {
+            if (!result.isOK()) {
+                log.debug("异步发送失败 [{}]: {}", session.getId(),
+                    result.getException() != null ? result.getException().getMessage() : "unknown");
+                close();
+                return;
+            }
+            delivered.incrementAndGet();
+            Object next;
+            synchronized (this) {
+                next = closed ? null : queue.pollFirst();
+                if (next == null) {
+                    sending = false;
+                    return;
+                }
+                // 在发送循环自己的线程上同步回调：交给该循环，由它在 sendText 返回后发送
+                if (activePump != null && activePump.thread == Thread.currentThread()) {
+                    activePump.next = next;
+                    return;
+                }
+            }
+            pump(next);
+        }
+
+        /**
+         * @return 是否由本次调用关闭
+         */
+        synchronized boolean close() {
+            if (closed) {
+                return false;
+            }
+            closed = true;
+            queue.clear();
+            return true;
+        }
+    }
+
+    /**
+     * 一次发送循环：所属线程及交给它的下一条消息，字段由所属 Subscriber 的锁保护
+     */
+    private static final class Pump {
+        private final Thread thread;
+        private Object next;
+
+        Pump(Thread thread) {
+            this.thread = thread;
+        }
+    }
+}
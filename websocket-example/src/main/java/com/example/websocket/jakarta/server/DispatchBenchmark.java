@@ -0,0 +1,222 @@
+package com.example.websocket.jakarta.server;
+
+import ch.qos.logback.classic.Level;
+import com.example.websocket.common.MessageWithHeaders;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.websocket.ClientEndpointConfig;
+import jakarta.websocket.ContainerProvider;
+import jakarta.websocket.Endpoint;
+import jakarta.websocket.EndpointConfig;
+import jakarta.websocket.MessageHandler;
+import jakarta.websocket.Session;
+import jakarta.websocket.WebSocketContainer;
+import org.glassfish.tyrus.server.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 入站分发吞吐压测
+ * 进程内启动 Tyrus 服务器，多个与 NativeWebSocketClient 相同写法的客户端（Endpoint + MessageHandler.Whole，JSON 消息带 headers）
+ * 在固定窗口内连续发送，统计回显吞吐和往返延迟；慢客户端持续发送 sleep:<毫秒> 模拟耗时处理，其延迟不计入统计。
+ *
+ * 参数：[客户端数=50] [每客户端消息数=2000] [窗口=16] [慢客户端数=2] [慢处理毫秒=200]
+ * 与容器线程直接处理对比：加 -Ddispatch.enabled=false 再运行一次；线程池类型等见 NativeWebSocketServer 的系统属性。
+ */
+public final class DispatchBenchmark {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final int PORT = 18091;
+
+    private DispatchBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clientCount = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int messagesPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int window = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int slowClientCount = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        long slowMillis = args.length > 4 ? Long.parseLong(args[4]) : 200;
+
+        // 服务端每条消息都有 info 日志，压测时只保留告警
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        Server server = new Server("localhost", PORT, "/", null, NativeWebSocketServer.class);
+        server.start();
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        URI uri = URI.create("ws://localhost:" + PORT + "/native/ws");
+        try {
+            List<BenchClient> slowClients = new ArrayList<>();
+            for (int i = 0; i < slowClientCount; i++) {
+                BenchClient client = new BenchClient(1);
+                client.connect(container, uri);
+                slowClients.add(client);
+            }
+            List<BenchClient> clients = new ArrayList<>();
+            for (int i = 0; i < clientCount; i++) {
+                BenchClient client = new BenchClient(window);
+                client.connect(container, uri);
+                clients.add(client);
+            }
+
+            CountDownLatch done = new CountDownLatch(clientCount);
+            List<Thread> senders = new ArrayList<>();
+            for (BenchClient client : slowClients) {
+                senders.add(new Thread(() -> client.sendUntilInterrupted("sleep:" + slowMillis), "bench-slow"));
+            }
+            long start = System.nanoTime();
+            for (BenchClient client : clients) {
+                senders.add(new Thread(() -> {
+                    client.send(messagesPerClient, "hello");
+                    done.countDown();
+                }, "bench-sender"));
+            }
+            senders.forEach(Thread::start);
+            boolean finished = done.await(5, TimeUnit.MINUTES);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            senders.forEach(Thread::interrupt);
+
+            long[] latencies = clients.stream()
+                .flatMapToLong(client -> client.latencies().stream().mapToLong(Long::longValue))
+                .sorted().toArray();
+            long backpressureSignals = clients.stream().mapToLong(client -> client.backpressure.get()).sum()
+                + slowClients.stream().mapToLong(client -> client.backpressure.get()).sum();
+            System.out.printf("dispatch.enabled=%s 客户端=%d 慢客户端=%d(sleep %d ms) 每客户端消息=%d 窗口=%d%s%n",
+                System.getProperty("dispatch.enabled", "true"), clientCount, slowClientCount, slowMillis,
+                messagesPerClient, window, finished ? "" : "（超时未完成）");
+            System.out.printf("回显 %d 条，耗时 %.2f s，吞吐 %.0f 条/秒%n", latencies.length, seconds, latencies.length / seconds);
+            System.out.printf("往返延迟: p50=%.2f ms p99=%.2f ms max=%.2f ms，背压信号=%d%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 1.0), backpressureSignals);
+
+            for (BenchClient client : clients) {
+                client.close();
+            }
+            for (BenchClient client : slowClients) {
+                client.close();
+            }
+        } finally {
+            server.stop();
+        }
+        System.exit(0);
+    }
+
+    private static double percentile(long[] sortedNanos, double quantile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sortedNanos.length);
+        return sortedNanos[Math.max(0, rank - 1)] / 1_000_000.0;
+    }
+
+    /**
+     * 在窗口内连续发送的客户端，按回显顺序计算往返延迟（服务端对单个会话有序处理）
+     */
+    private static final class BenchClient {
+        private final Semaphore window;
+        private final ConcurrentLinkedQueue<Long> sentAt = new ConcurrentLinkedQueue<>();
+        private final List<Long> latencies = new ArrayList<>();
+        private final AtomicLong backpressure = new AtomicLong();
+        private Session session;
+
+        BenchClient(int window) {
+            this.window = new Semaphore(window);
+        }
+
+        void connect(WebSocketContainer container, URI uri) throws Exception {
+            session = container.connectToServer(new Endpoint() {
+                @Override
+                public void onOpen(Session session, EndpointConfig config) {
+                    session.addMessageHandler(new MessageHandler.Whole<String>() {
+                        @Override
+                        public void onMessage(String message) {
+                            BenchClient.this.onMessage(message);
+                        }
+                    });
+                }
+            }, ClientEndpointConfig.Builder.create().build(), uri);
+        }
+
+        private void onMessage(String message) {
+            MessageWithHeaders msgWithHeaders;
+            try {
+                msgWithHeaders = objectMapper.readValue(message, MessageWithHeaders.class);
+            } catch (Exception e) {
+                // 欢迎消息是普通文本
+                return;
+            }
+            if ("backpressure".equals(msgWithHeaders.getHeader("type"))) {
+                backpressure.incrementAndGet();
+            } else if (msgWithHeaders.getHeader("response-to") != null) {
+                Long sent = sentAt.poll();
+                if (sent != null) {
+                    synchronized (latencies) {
+                        latencies.add(System.nanoTime() - sent);
+                    }
+                }
+                window.release();
+            }
+        }
+
+        void send(int count, String body) {
+            for (int i = 0; i < count && !Thread.currentThread().isInterrupted(); i++) {
+                if (!sendOne(body)) {
+                    return;
+                }
+            }
+            // 等待窗口内的回显全部返回
+            try {
+                while (!sentAt.isEmpty()) {
+                    Thread.sleep(1);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void sendUntilInterrupted(String body) {
+            while (!Thread.currentThread().isInterrupted() && sendOne(body)) {
+                // 持续制造慢处理
+            }
+        }
+
+        private boolean sendOne(String body) {
+            try {
+                window.acquire();
+                Map<String, String> headers = new HashMap<>();
+                headers.put("client", session.getId());
+                String text = objectMapper.writeValueAsString(new MessageWithHeaders(headers, body));
+                sentAt.add(System.nanoTime());
+                session.getBasicRemote().sendText(text);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        List<Long> latencies() {
+            synchronized (latencies) {
+                return new ArrayList<>(latencies);
+            }
+        }
+
+        void close() {
+            try {
+                session.close();
+            } catch (Exception e) {
+                // 压测结束，忽略
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.websocket.jakarta.server;
 
+import com.example.websocket.common.BinaryEnvelope;
 import com.example.websocket.common.MessageWithHeaders;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.opentelemetry.api.GlobalOpenTelemetry;
@@ -18,11 +19,13 @@ import org.apache.logging.log4j.message.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * Java WebSocket 原生 API 服务器端示例
@@ -31,8 +34,15 @@ import java.util.concurrent.ConcurrentHashMap;
  * 可观测性实现：
  * - 从握手时的 HTTP headers 提取 Client 传递的 TraceContext
  * - 基于 TraceContext 创建子 Span，与 Client 的 Trace 串联
+ *
+ * 消息格式：默认为 JSON 文本（MessageWithHeaders）；握手时协商了 {@link BinaryEnvelope#SUBPROTOCOL} 子协议的连接
+ * 使用二进制信封，服务端只解析 headers，body 在处理时才解码。
+ *
+ * 线程模型：入站消息经 {@link SessionDispatcher} 交给工作线程处理（会话内有序、会话间并行），容器 I/O 线程只负责入队；
+ * 出站消息经 {@link BroadcastHub} 异步发送。-Ddispatch.enabled=false 时退回在容器线程上直接处理。
  */
-@ServerEndpoint(value = "/native/ws", configurator = NativeWebSocketServer.TraceContextConfigurator.class)
+@ServerEndpoint(value = "/native/ws", subprotocols = {BinaryEnvelope.SUBPROTOCOL},
+    configurator = NativeWebSocketServer.TraceContextConfigurator.class)
 public class NativeWebSocketServer {
     private static final Logger log = LoggerFactory.getLogger(NativeWebSocketServer.class);
     
@@ -54,6 +64,46 @@ public class NativeWebSocketServer {
     // Trace 管理：存储每个会话对应的连接级别 Context
     private static final Map<String, Context> connectionTraceContexts = new ConcurrentHashMap<>();
 
+    // 默认主题：所有会话连接时自动订阅，"broadcast:" 消息发布到该主题
+    private static final String DEFAULT_TOPIC = "all";
+
+    // 入站消息分发，可通过 -Ddispatch.pool=platform|virtual / -Ddispatch.threads / -Ddispatch.queue-capacity 调整
+    private static final SessionDispatcher dispatcher = Boolean.parseBoolean(System.getProperty("dispatch.enabled", "true"))
+        ? new SessionDispatcher(
+            SessionDispatcher.PoolType.valueOf(System.getProperty("dispatch.pool", "platform").toUpperCase()),
+            Integer.getInteger("dispatch.threads", Math.max(16, Runtime.getRuntime().availableProcessors() * 4)),
+            Integer.getInteger("dispatch.queue-capacity", 256),
+            new SessionDispatcher.BackpressureListener() {
+                @Override
+                public void onPause(String sessionId, int queued) {
+                    signalBackpressure(sessionId, "pause", queued);
+                }
+
+                @Override
+                public void onResume(String sessionId, int queued) {
+                    signalBackpressure(sessionId, "resume", queued);
+                }
+            })
+        : null;
+
+    // 消息 headers 的 TraceContext 提取器，无状态，所有消息共享
+    private static final TextMapGetter<Map<String, String>> messageHeaderGetter = new TextMapGetter<Map<String, String>>() {
+        @Override
+        public Iterable<String> keys(Map<String, String> carrier) {
+            return carrier != null ? carrier.keySet() : Collections.emptySet();
+        }
+
+        @Override
+        public String get(Map<String, String> carrier, String key) {
+            return carrier != null ? carrier.get(key) : null;
+        }
+    };
+
+    // 出站消息与主题广播，可通过 -Dbroadcast.queue-capacity / -Dbroadcast.slow-consumer=drop|disconnect 调整
+    private static final BroadcastHub broadcastHub = new BroadcastHub(
+        Integer.getInteger("broadcast.queue-capacity", 1024),
+        BroadcastHub.SlowConsumerPolicy.valueOf(System.getProperty("broadcast.slow-consumer", "drop").toUpperCase()));
+
     /**
      * Configurator 用于在握手时提取 TraceContext
      */
@@ -88,6 +138,8 @@ public class NativeWebSocketServer {
     public void onOpen(Session session, EndpointConfig config) {
         String sessionId = session.getId();
         sessions.put(sessionId, session);
+        broadcastHub.register(session, isBinary(session));
+        broadcastHub.subscribe(sessionId, DEFAULT_TOPIC);
 
         // 从 config 的 userProperties 中提取 TraceContext（在 Configurator 中设置）
         Context parentContext = Context.current();
@@ -99,7 +151,8 @@ public class NativeWebSocketServer {
         // 将 Client 链路上下文作为父级上下文
         connectionTraceContexts.put(sessionId, parentContext);
 
-        log.info("客户端连接: sessionId={}, 当前连接数={}, 已从 Client TraceContext 创建子 Span", sessionId, sessions.size());
+        log.info("客户端连接: sessionId={}, 当前连接数={}, 消息格式={}, 已从 Client TraceContext 创建子 Span",
+            sessionId, sessions.size(), isBinary(session) ? BinaryEnvelope.SUBPROTOCOL : "json");
         
         // 发送欢迎消息
         sendMessage(session, "欢迎连接！您的会话ID: " + sessionId);
@@ -107,41 +160,71 @@ public class NativeWebSocketServer {
     
     @OnMessage
     public void onMessage(String message, Session session) {
-        String sessionId = session.getId();
-
-        try {
-            // 尝试解析为带 headers 的消息
-            MessageWithHeaders msgWithHeaders = objectMapper.readValue(message, MessageWithHeaders.class);
-            Map<String, String> headers = msgWithHeaders.getHeaders();
-            Context remoteContext = openTelemetry.getPropagators().getTextMapPropagator()
-                .extract(Context.current(),
-                    headers, new TextMapGetter<Map<String, String>>() {
-                        @Override
-                        public Iterable<String> keys(Map<String, String> headersMap) {
-                            return headersMap.keySet();
-                        }
-
-                        @Override
-                        public String get(Map<String, String> headersMap, String key) {
-                            return headersMap.getOrDefault(key, null);
-                        }
-                    });
-            Span serverSpan = tracer.spanBuilder("Server handle message")
-                .setParent(remoteContext).startSpan();
-            try (Scope scope = serverSpan.makeCurrent()) {
-                String body = msgWithHeaders.getBody();
-
-                log.info("收到消息 [{}] [headers={}]: {}", sessionId, headers, body);
-
-                // 处理消息（带 headers）
-                handleMessage(session, body, headers);
+        long receivedAt = System.nanoTime();
+        dispatch(session, () -> {
+            try {
+                // 尝试解析为带 headers 的消息
+                MessageWithHeaders msgWithHeaders = objectMapper.readValue(message, MessageWithHeaders.class);
+                processMessage(session, msgWithHeaders.getHeaders(), msgWithHeaders::getBody, receivedAt);
             } catch (Exception e) {
-                serverSpan.recordException(e);
-            } finally {
-                serverSpan.end();
+                log.error("消息接受失败 [{}]: {}", session.getId(), message, e);
             }
+        });
+    }
+
+    /**
+     * 二进制信封消息：在容器线程上解析 headers 并把 body 复制为独立数组，进入处理 Span 后再解码
+     * message 归容器所有，JSR 356 不保证回调返回后缓冲区不被复用（如 Tomcat 会复用读缓冲区），
+     * 因此交给工作线程的任务不能再引用原帧。
+     */
+    @OnMessage
+    public void onBinaryMessage(ByteBuffer message, Session session) {
+        long receivedAt = System.nanoTime();
+        BinaryEnvelope envelope;
+        try {
+            envelope = BinaryEnvelope.parse(message).copy();
         } catch (Exception e) {
-            log.error("消息接受失败 [{}]: {}", sessionId, message, e);
+            log.error("二进制消息接受失败 [{}]: {} bytes", session.getId(), message.remaining(), e);
+            return;
+        }
+        dispatch(session, () -> processMessage(session, envelope.getHeaders(), envelope::getBodyAsString, receivedAt));
+    }
+
+    /**
+     * 交给会话的有序队列处理；队列已满时丢弃该消息（客户端此前已收到 pause 信号）
+     */
+    private void dispatch(Session session, Runnable task) {
+        if (dispatcher == null) {
+            task.run();
+        } else if (!dispatcher.dispatch(session.getId(), task)) {
+            log.warn("入站队列已满，消息被丢弃: sessionId={}, 累计丢弃={}", session.getId(), dispatcher.getRejectedCount());
+        }
+    }
+
+    /**
+     * 以消息 headers 中的 TraceContext 为父级创建 Span 并处理消息
+     *
+     * @param receivedAt 容器线程收到消息的时间（System.nanoTime），用于记录排队耗时
+     */
+    private void processMessage(Session session, Map<String, String> headers, Supplier<String> bodySupplier, long receivedAt) {
+        String sessionId = session.getId();
+        Context remoteContext = openTelemetry.getPropagators().getTextMapPropagator()
+            .extract(Context.current(), headers, messageHeaderGetter);
+        Span serverSpan = tracer.spanBuilder("Server handle message")
+            .setParent(remoteContext)
+            .setAttribute("websocket.dispatch.wait_ms", (System.nanoTime() - receivedAt) / 1_000_000.0)
+            .startSpan();
+        try (Scope scope = serverSpan.makeCurrent()) {
+            String body = bodySupplier.get();
+
+            log.info("收到消息 [{}] [headers={}]: {}", sessionId, headers, body);
+
+            // 处理消息（带 headers）
+            handleMessage(session, body, headers);
+        } catch (Exception e) {
+            serverSpan.recordException(e);
+        } finally {
+            serverSpan.end();
         }
     }
     
@@ -159,13 +242,39 @@ public class NativeWebSocketServer {
         String responseBody = "服务器收到: " + body;
         sendMessage(session, responseBody, responseHeaders);
         
-        // 如果是广播消息（以 "broadcast:" 开头）
+        // 如果是广播消息（以 "broadcast:" 开头），发给默认主题的其他订阅者
         if (body.startsWith("broadcast:")) {
             String broadcastMsg = body.substring("broadcast:".length());
-            Map<String, String> broadcastHeaders = new HashMap<>();
-            broadcastHeaders.put("type", "broadcast");
-            broadcastHeaders.put("from", sessionId);
-            broadcastMessage(sessionId, "广播消息 [" + sessionId + "]: " + broadcastMsg, broadcastHeaders);
+            broadcastMessage(sessionId, DEFAULT_TOPIC, "广播消息 [" + sessionId + "]: " + broadcastMsg);
+        } else if (body.startsWith("subscribe:")) {
+            // 订阅主题："subscribe:<topic>"
+            String topic = body.substring("subscribe:".length()).trim();
+            if (!topic.isEmpty() && broadcastHub.subscribe(sessionId, topic)) {
+                log.info("会话订阅主题: sessionId={}, topic={}, 订阅数={}", sessionId, topic, broadcastHub.getSubscriberCount(topic));
+            }
+        } else if (body.startsWith("unsubscribe:")) {
+            // 取消订阅："unsubscribe:<topic>"
+            String topic = body.substring("unsubscribe:".length()).trim();
+            if (broadcastHub.unsubscribe(sessionId, topic)) {
+                log.info("会话取消订阅: sessionId={}, topic={}", sessionId, topic);
+            }
+        } else if (body.startsWith("sleep:")) {
+            // 模拟耗时处理："sleep:<毫秒>"，只阻塞该会话的处理
+            try {
+                Thread.sleep(Long.parseLong(body.substring("sleep:".length()).trim()));
+            } catch (NumberFormatException e) {
+                log.debug("无效的 sleep 时长: {}", body);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else if (body.startsWith("publish:")) {
+            // 发布到主题："publish:<topic>:<消息>"
+            String rest = body.substring("publish:".length());
+            int separator = rest.indexOf(':');
+            if (separator > 0) {
+                String topic = rest.substring(0, separator).trim();
+                broadcastMessage(sessionId, topic, "主题消息 [" + topic + "] [" + sessionId + "]: " + rest.substring(separator + 1));
+            }
         }
     }
     
@@ -174,6 +283,10 @@ public class NativeWebSocketServer {
         String sessionId = session.getId();
         sessions.remove(sessionId);
         connectionTraceContexts.remove(sessionId);
+        broadcastHub.unregister(sessionId);
+        if (dispatcher != null) {
+            dispatcher.remove(sessionId);
+        }
         log.info("客户端断开: sessionId={}, 剩余连接数={}, Trace已结束", sessionId, sessions.size());
     }
     
@@ -186,51 +299,86 @@ public class NativeWebSocketServer {
     /**
      * 发送消息给指定会话（普通文本，无 headers）
      */
-    private void sendMessage(Session session, String message) {
+    private static void sendMessage(Session session, String message) {
         sendMessage(session, message, null);
     }
     
     /**
      * 发送消息给指定会话（带 headers）
+     * 经会话的异步发送队列发出，与广播消息保持顺序；二进制信封会话收到二进制帧
      * 
      * @param session 会话
      * @param message 消息内容
      * @param headers 消息 headers（可以为 null）
      */
-    private void sendMessage(Session session, String message, Map<String, String> headers) {
+    private static void sendMessage(Session session, String message, Map<String, String> headers) {
         try {
             if (session.isOpen()) {
-                String messageToSend;
+                boolean queued;
                 
-                if (headers != null && !headers.isEmpty()) {
+                if (headers != null && !headers.isEmpty() && isBinary(session)) {
+                    // 协商了二进制信封的会话，headers + 原始 body
+                    queued = broadcastHub.sendBinary(session.getId(), BinaryEnvelope.encode(headers, message));
+                    log.debug("发送消息（二进制信封）: headers={}, body={}", headers, message);
+                } else if (headers != null && !headers.isEmpty()) {
                     // 如果有 headers，包装成 JSON 格式
                     MessageWithHeaders msgWithHeaders = new MessageWithHeaders(headers, message);
-                    messageToSend = objectMapper.writeValueAsString(msgWithHeaders);
+                    queued = broadcastHub.send(session.getId(), objectMapper.writeValueAsString(msgWithHeaders));
                     log.debug("发送消息（带 headers）: headers={}, body={}", headers, message);
                 } else {
                     // 如果没有 headers，直接发送原始消息（向后兼容）
-                    messageToSend = message;
+                    queued = broadcastHub.send(session.getId(), message);
                     log.debug("发送消息（普通格式）: {}", message);
                 }
                 
-                session.getBasicRemote().sendText(messageToSend);
+                if (!queued) {
+                    log.warn("发送队列已满或会话已关闭，消息被丢弃: sessionId={}", session.getId());
+                }
             }
-        } catch (IOException e) {
-            log.error("发送消息失败: {}", e.getMessage(), e);
         } catch (Exception e) {
             log.error("序列化消息失败: {}", e.getMessage(), e);
         }
     }
     
     /**
-     * 广播消息给所有会话（除了发送者，带 headers）
+     * 广播消息给主题的所有订阅者（除了发送者，带 headers）
+     * JSON 和二进制信封各只编码一次，同一格式的订阅者共享同一份数据
      */
-    private void broadcastMessage(String excludeSessionId, String message, Map<String, String> headers) {
-        sessions.entrySet().stream()
-            .filter(entry -> !entry.getKey().equals(excludeSessionId))
-            .forEach(entry -> sendMessage(entry.getValue(), message, headers));
+    private void broadcastMessage(String fromSessionId, String topic, String message) {
+        Map<String, String> broadcastHeaders = new HashMap<>();
+        broadcastHeaders.put("type", "broadcast");
+        broadcastHeaders.put("topic", topic);
+        broadcastHeaders.put("from", fromSessionId);
+        try {
+            MessageWithHeaders msgWithHeaders = new MessageWithHeaders(broadcastHeaders, message);
+            int accepted = broadcastHub.publish(topic, objectMapper.writeValueAsString(msgWithHeaders),
+                BinaryEnvelope.encode(msgWithHeaders), fromSessionId);
+            log.debug("广播消息: topic={}, 订阅数={}, 入队={}", topic, broadcastHub.getSubscriberCount(topic), accepted);
+        } catch (Exception e) {
+            log.error("序列化广播消息失败: {}", e.getMessage(), e);
+        }
     }
     
+    /**
+     * 入站队列的背压信号：headers 为 type=backpressure、state=pause|resume，客户端收到 pause 后应暂停或放慢发送
+     */
+    private static void signalBackpressure(String sessionId, String state, int queued) {
+        Session session = sessions.get(sessionId);
+        if (session == null) {
+            return;
+        }
+        Map<String, String> headers = new HashMap<>();
+        headers.put("type", "backpressure");
+        headers.put("state", state);
+        headers.put("queued", String.valueOf(queued));
+        sendMessage(session, "backpressure:" + state, headers);
+        log.info("入站背压: sessionId={}, state={}, 排队={}", sessionId, state, queued);
+    }
+
+    private static boolean isBinary(Session session) {
+        return BinaryEnvelope.SUBPROTOCOL.equals(session.getNegotiatedSubprotocol());
+    }
+
     /**
      * 获取当前连接数
      */
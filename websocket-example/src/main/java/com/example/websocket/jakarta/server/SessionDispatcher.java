@@ -0,0 +1,230 @@
+package com.example.websocket.jakarta.server;
+
+import io.opentelemetry.context.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 会话内有序、会话间并行的入站消息分发器
+ * 容器 I/O 线程只负责入队，消息的解析、Trace 提取、日志和业务处理都在工作线程上执行，慢处理不会占住 selector。
+ *
+ * - 每个会话一个有界队列，同一会话同一时刻最多一个任务在执行，保证处理顺序与到达顺序一致
+ * - 队列长度达到高水位时回调 {@link BackpressureListener#onPause}，降到低水位以下时回调 onResume；队列满时拒绝入队
+ * - 入队时捕获当前的 OpenTelemetry Context，在工作线程上恢复
+ * - 每次最多连续处理 {@link #BATCH_SIZE} 条后重新提交，避免一个繁忙会话长期占用工作线程
+ */
+final class SessionDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(SessionDispatcher.class);
+    private static final int BATCH_SIZE = 32;
+
+    enum PoolType {
+        PLATFORM,
+        VIRTUAL
+    }
+
+    /**
+     * 背压信号，在入队 / 处理线程上同步回调，实现中不应阻塞
+     */
+    interface BackpressureListener {
+        void onPause(String sessionId, int queued);
+
+        void onResume(String sessionId, int queued);
+    }
+
+    private final Map<String, SerialQueue> queues = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final int queueCapacity;
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final BackpressureListener backpressureListener;
+
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param poolType      工作线程类型；虚拟线程需要 JDK 21+，不可用时退回平台线程
+     * @param threads       平台线程池大小
+     * @param queueCapacity 每个会话最多排队的消息数
+     */
+    SessionDispatcher(PoolType poolType, int threads, int queueCapacity, BackpressureListener backpressureListener) {
+        this.executor = createExecutor(poolType, threads);
+        this.queueCapacity = queueCapacity;
+        this.highWatermark = Math.max(1, queueCapacity * 3 / 4);
+        this.lowWatermark = queueCapacity / 4;
+        this.backpressureListener = backpressureListener;
+    }
+
+    private static ExecutorService createExecutor(PoolType poolType, int threads) {
+        if (poolType == PoolType.VIRTUAL) {
+            try {
+                // 按 JDK 17 编译，运行在 21+ 时通过反射使用虚拟线程
+                ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                log.info("消息分发使用虚拟线程");
+                return executor;
+            } catch (ReflectiveOperationException e) {
+                log.warn("当前 JDK 不支持虚拟线程，消息分发退回平台线程池: threads={}", threads);
+            }
+        }
+        AtomicInteger index = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "ws-dispatch-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        log.info("消息分发使用平台线程池: threads={}", threads);
+        return Executors.newFixedThreadPool(threads, threadFactory);
+    }
+
+    /**
+     * 把会话的一条消息交给工作线程处理
+     *
+     * @return false 表示该会话队列已满或分发器已关闭，消息未被接收
+     */
+    boolean dispatch(String sessionId, Runnable task) {
+        SerialQueue queue = queues.computeIfAbsent(sessionId, SerialQueue::new);
+        if (!queue.offer(Context.current().wrap(task))) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 会话关闭时丢弃尚未处理的消息，正在执行的任务不受影响
+     */
+    void remove(String sessionId) {
+        SerialQueue queue = queues.remove(sessionId);
+        if (queue != null) {
+            queue.clear();
+        }
+    }
+
+    int getQueuedCount(String sessionId) {
+        SerialQueue queue = queues.get(sessionId);
+        return queue != null ? queue.size() : 0;
+    }
+
+    long getProcessedCount() {
+        return processed.get();
+    }
+
+    long getRejectedCount() {
+        return rejected.get();
+    }
+
+    void shutdown(long timeoutMillis) throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 单个会话的串行队列
+     */
+    private final class SerialQueue implements Runnable {
+        private final String sessionId;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private boolean scheduled;
+        private boolean paused;
+
+        SerialQueue(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        boolean offer(Runnable task) {
+            boolean schedule;
+            boolean pause;
+            int queued;
+            synchronized (this) {
+                if (tasks.size() >= queueCapacity) {
+                    return false;
+                }
+                tasks.addLast(task);
+                queued = tasks.size();
+                schedule = !scheduled;
+                scheduled = true;
+                pause = !paused && queued >= highWatermark;
+                if (pause) {
+                    paused = true;
+                }
+            }
+            if (pause) {
+                backpressureListener.onPause(sessionId, queued);
+            }
+            if (schedule) {
+                return submit();
+            }
+            return true;
+        }
+
+        private boolean submit() {
+            try {
+                executor.execute(this);
+                return true;
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    tasks.clear();
+                    scheduled = false;
+                }
+                return false;
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                Runnable task;
+                boolean resume = false;
+                int queued;
+                synchronized (this) {
+                    task = tasks.pollFirst();
+                    if (task == null) {
+                        scheduled = false;
+                        return;
+                    }
+                    queued = tasks.size();
+                    if (paused && queued <= lowWatermark) {
+                        paused = false;
+                        resume = true;
+                    }
+                }
+                if (resume) {
+                    backpressureListener.onResume(sessionId, queued);
+                }
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("消息处理异常 [{}]: {}", sessionId, e.getMessage(), e);
+                }
+                processed.incrementAndGet();
+            }
+            boolean more;
+            synchronized (this) {
+                more = !tasks.isEmpty();
+                scheduled = more;
+            }
+            if (more) {
+                submit();
+            }
+        }
+
+        synchronized int size() {
+            return tasks.size();
+        }
+
+        synchronized void clear() {
+            tasks.clear();
+        }
+    }
+}